@@ -0,0 +1,238 @@
+package com.projects.tradingMachine.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.projects.tradingMachine.server.BookOrder;
+import com.projects.tradingMachine.server.CancelReplaceRequest;
+import com.projects.tradingMachine.server.MarketDataManager;
+import com.projects.tradingMachine.server.MatchingShards;
+import com.projects.tradingMachine.server.MissingQuotePolicy;
+import com.projects.tradingMachine.server.OrderExpiry;
+import com.projects.tradingMachine.server.journal.JournalReader;
+import com.projects.tradingMachine.services.simulation.orders.RandomOrdersBuilder;
+import com.projects.tradingMachine.utility.SymbolRegistry;
+import com.projects.tradingMachine.utility.Utility;
+import com.projects.tradingMachine.utility.database.creditCheck.ICreditCheck;
+import com.projects.tradingMachine.utility.marketData.MarketData;
+import com.projects.tradingMachine.utility.order.OrderSide;
+import com.projects.tradingMachine.utility.order.SimpleOrder;
+
+import quickfix.field.TimeInForce;
+
+/**
+ * Offline load of the matching shards, as fast as the producer can publish, to measure the engine's ceiling on its own:
+ * no ActiveMQ, no FIX session, no credit check database and no journal. The inputs are built before the clock starts, either
+ * generated by {@link RandomOrdersBuilder} and {@link Utility#buildRandomMarketDataItem(int, String)}, or read back from the inbound records
+ * of a journal, i.e. recorded orders, cancel/replace requests and quotes, see {@link JournalReader}.
+ * Reports orders/sec and fills/sec, from the first publication to the last acceptance, and the latency percentiles of each order
+ * from its publication to its acceptance report leaving the outbound ring buffer: since nothing throttles the producer, they include the time queued in the ring buffers.
+ * A first run on separate shards warms the JIT up, then the measured run starts from empty books.
+ * The shards follow tradingMachine.properties, without the symbol assignment.
+ * */
+public final class EngineLoadHarness {
+	private static final Logger logger = LoggerFactory.getLogger(EngineLoadHarness.class);
+
+	private final Properties properties;
+	private final SymbolRegistry symbolRegistry;
+
+	public EngineLoadHarness(final Properties properties, final SymbolRegistry symbolRegistry) {
+		this.properties = properties;
+		this.symbolRegistry = symbolRegistry;
+	}
+
+	/**
+	 * Random orders, with a quote of a random symbol every given number of orders, after a first quote for every symbol.
+	 * Each order gets its index as OrderID, so that its acceptance report finds its publication time.
+	 * */
+	public List<Object> generate(final int orders, final int ordersPerQuote) {
+		final List<Object> result = new ArrayList<>(orders + orders / ordersPerQuote + symbolRegistry.size());
+		for (final String symbol : symbolRegistry.getSymbols())
+			result.add(Utility.buildRandomMarketDataItem(symbolRegistry.getId(symbol), symbol));
+		for (int i = 0; i < orders; i++) {
+			if (i % ordersPerQuote == ordersPerQuote - 1) {
+				final String symbol = symbolRegistry.getSymbol(i % symbolRegistry.size());
+				result.add(Utility.buildRandomMarketDataItem(symbolRegistry.getId(symbol), symbol));
+			}
+			result.add(toBookOrder(RandomOrdersBuilder.build(symbolRegistry), i));
+		}
+		return result;
+	}
+
+	private static BookOrder toBookOrder(final SimpleOrder order, final int index) {
+		final char timeInForce = order.getTimeInForce().toFIXTimeInForce().getValue();
+		return new BookOrder(order.getID(), String.valueOf(index), null, order.getSymbol(), order.getSymbolId(),
+				order.getSide() == OrderSide.BUY ? quickfix.field.Side.BUY : quickfix.field.Side.SELL, order.getType().toFIXOrderType().getValue(),
+				timeInForce, order.getLimitPrice(), order.getStopPrice(), order.getQuantity(),
+				timeInForce == TimeInForce.GOOD_TILL_DATE ? order.getExpireTime().getTime() : OrderExpiry.NEVER);
+	}
+
+	/**
+	 * Inbound records of every shard journal under the given directory, shard after shard, ticks left out.
+	 * */
+	public List<Object> load(final Path journalDirectory) throws IOException {
+		final List<Path> shardDirectories;
+		try (final Stream<Path> files = Files.list(journalDirectory)) {
+			shardDirectories = files.filter(Files::isDirectory).sorted().collect(Collectors.toList());
+		}
+		final List<Object> result = new ArrayList<>();
+		final int[] orders = new int[1];
+		for (final Path shardDirectory : shardDirectories)
+			new JournalReader(shardDirectory).read(1, record -> {
+				switch(record.getType()) {
+					case NEW_ORDER: result.add(withOrderID(record.toBookOrder(), orders[0]++)); break;
+					case CANCEL_REPLACE: result.add(record.toCancelReplaceRequest()); break;
+					case QUOTE: result.add(record.toMarketData()); break;
+					default: break;
+				}
+			});
+		return result;
+	}
+
+	private static BookOrder withOrderID(final BookOrder order, final int index) {
+		return new BookOrder(order.getClOrdID(), String.valueOf(index), order.getSessionID(), order.getSymbol(), order.getSymbolId(), order.getSide(),
+				order.getType(), order.getTimeInForce(), order.getPrice(), order.getStopPrice(), order.getQuantity(), order.getExpireTime());
+	}
+
+	/**
+	 * Publishes the inputs onto fresh shards, waits for every order to be accepted, then stops the shards.
+	 * */
+	public Result run(final List<Object> inputs) throws IOException, InterruptedException {
+		final int orders = (int)inputs.stream().filter(input -> input instanceof BookOrder).count();
+		final long[] publishTimes = new long[orders];
+		final long[] latencies = new long[orders];
+		final AtomicLong accepted = new AtomicLong();
+		final AtomicLong lastAcceptTime = new AtomicLong();
+		final LongAdder fills = new LongAdder();
+		final MarketDataManager marketDataManager = new MarketDataManager(symbolRegistry,
+				MissingQuotePolicy.valueOf(properties.getProperty("marketData.missingQuotePolicy", MissingQuotePolicy.SYNTHETIC.name())));
+		final MatchingShards matchingShards = MatchingShards.builder(marketDataManager, new UnlimitedCreditCheck(), event -> {
+			switch(event.getType()) {
+				case NEW: {
+					final long now = System.nanoTime();
+					final int index = Integer.parseInt(event.getOrder().getOrderID());
+					latencies[index] = now - publishTimes[index];
+					lastAcceptTime.accumulateAndGet(now, Math::max);
+					accepted.incrementAndGet(); //publishes the latency to the waiting thread.
+					break;
+				}
+				case FILL: fills.increment(); break;
+				default: break;
+			}
+		}).shards(Integer.valueOf(properties.getProperty("matchingShards.number"))).ringBufferSize(Integer.valueOf(properties.getProperty("matchingShards.ringBufferSize")))
+				.waitStrategy(properties.getProperty("matchingShards.waitStrategy", "blocking")).orderExpiry(OrderExpiry.from(properties)).build();
+		marketDataManager.addQuoteListener(matchingShards);
+		matchingShards.start();
+		final long start = System.nanoTime();
+		int published = 0;
+		for (final Object input : inputs) {
+			if (input instanceof BookOrder) {
+				publishTimes[published++] = System.nanoTime();
+				matchingShards.onNewOrder((BookOrder)input);
+			}
+			else if (input instanceof CancelReplaceRequest)
+				matchingShards.onCancelReplace((CancelReplaceRequest)input);
+			else
+				marketDataManager.update((MarketData)input);
+		}
+		while (accepted.get() < orders)
+			LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+		final long elapsed = Math.max(lastAcceptTime.get() - start, 1);
+		matchingShards.stop();
+		return new Result(orders, fills.sum(), elapsed, latencies);
+	}
+
+	/**
+	 * Throughput and latency of one run.
+	 * */
+	public static final class Result {
+		private final int orders;
+		private final long fills;
+		private final long elapsedNanos;
+		private final long[] sortedLatencies;
+
+		private Result(final int orders, final long fills, final long elapsedNanos, final long[] latencies) {
+			this.orders = orders;
+			this.fills = fills;
+			this.elapsedNanos = elapsedNanos;
+			sortedLatencies = latencies.clone();
+			Arrays.sort(sortedLatencies);
+		}
+
+		public double getOrdersPerSecond() {
+			return orders * 1e9 / elapsedNanos;
+		}
+
+		public double getFillsPerSecond() {
+			return fills * 1e9 / elapsedNanos;
+		}
+
+		/**
+		 * @param percentile In [0, 100].
+		 * @return the latency, in nanoseconds, of the given percentile of the orders.
+		 * */
+		public long getLatency(final double percentile) {
+			if (sortedLatencies.length == 0)
+				return 0;
+			final int rank = (int)Math.ceil(percentile / 100 * sortedLatencies.length);
+			return sortedLatencies[Math.min(Math.max(rank, 1), sortedLatencies.length) - 1];
+		}
+
+		@Override
+		public String toString() {
+			return String.format("Result [orders=%d, fills=%d, elapsed=%d ms, orders/sec=%.0f, fills/sec=%.0f, latency us p50=%.1f, p90=%.1f, p99=%.1f, "
+					+ "p99.9=%.1f, max=%.1f]", orders, fills, TimeUnit.NANOSECONDS.toMillis(elapsedNanos), getOrdersPerSecond(), getFillsPerSecond(),
+					getLatency(50) / 1e3, getLatency(90) / 1e3, getLatency(99) / 1e3, getLatency(99.9) / 1e3, getLatency(100) / 1e3);
+		}
+	}
+
+	/**
+	 * The engine's ceiling leaves the credit check database out.
+	 * */
+	private static final class UnlimitedCreditCheck implements ICreditCheck {
+		@Override
+		public boolean hasEnoughCredit(final double credit) {
+			return true;
+		}
+
+		@Override
+		public void setCredit(final double credit) {
+		}
+
+		@Override
+		public void closeConnection() {
+		}
+	}
+
+	/**
+	 * @param args Either the number of generated orders, 1000000 by default, and of orders per quote, 10 by default,
+	 * or "journal" and the journal directory to read the recorded inputs from.
+	 * */
+	public static void main(final String[] args) throws Exception {
+		final Properties properties = Utility.getApplicationProperties("tradingMachine.properties");
+		final EngineLoadHarness harness = new EngineLoadHarness(properties, SymbolRegistry.load(properties));
+		final boolean recorded = args.length > 0 && args[0].equals("journal");
+		final int orders = !recorded && args.length > 0 ? Integer.valueOf(args[0]) : 1000000;
+		final int ordersPerQuote = !recorded && args.length > 1 ? Integer.valueOf(args[1]) : 10;
+		final Path journalDirectory = recorded ? Paths.get(args.length > 1 ? args[1] : properties.getProperty("journal.directory")) : null;
+		for (final String run : new String[] {"Warm-up", "Measured"}) {
+			final List<Object> inputs = recorded ? harness.load(journalDirectory) : harness.generate(orders, ordersPerQuote);
+			logger.info(run+" run of "+inputs.size()+" inputs: "+harness.run(inputs));
+		}
+	}
+}
@@ -0,0 +1,75 @@
+package com.projects.tradingMachine.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.jms.JMSException;
+
+import org.apache.activemq.command.ActiveMQObjectMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.projects.tradingMachine.server.MarketDataManager;
+import com.projects.tradingMachine.server.MissingQuotePolicy;
+import com.projects.tradingMachine.utility.SymbolRegistry;
+import com.projects.tradingMachine.utility.Utility;
+import com.projects.tradingMachine.utility.marketData.MarketData;
+
+/**
+ * Quote look ups, as done for every order, and the handling of one market data message of the topic, 
+ * i.e. deserializing the quotes list and storing each quote, without any quote listener.
+ * */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MarketDataManagerBenchmark {
+	private static final List<String> SYMBOLS = Arrays.asList("RIOT", "AMZN", "GOOG", "AAPL", "MSFT", "INTC", "ORCL", "IBM", "CSCO", "NVDA");
+	
+	private MarketDataManager marketDataManager;
+	private int symbolId;
+	private ActiveMQObjectMessage message;
+	
+	@Setup
+	public void setUp() throws JMSException {
+		final SymbolRegistry symbolRegistry = new SymbolRegistry(SYMBOLS);
+		marketDataManager = new MarketDataManager(symbolRegistry, MissingQuotePolicy.REJECT);
+		final ArrayList<MarketData> marketDataList = new ArrayList<>();
+		for (final String symbol : SYMBOLS)
+			marketDataList.add(Utility.buildRandomMarketDataItem(symbolRegistry.getId(symbol), symbol));
+		marketDataList.forEach(marketDataManager::update);
+		symbolId = symbolRegistry.getId("MSFT");
+		message = new ActiveMQObjectMessage();
+		message.setObject(marketDataList);
+	}
+	
+	@Benchmark
+	public MarketData getBySymbolId() {
+		return marketDataManager.get(symbolId, "MSFT");
+	}
+	
+	@Benchmark
+	public MarketData getBySymbol() {
+		return marketDataManager.get("MSFT");
+	}
+	
+	/**
+	 * One message carrying a quote for each of the symbols.
+	 * */
+	@Benchmark
+	public void onMessage() {
+		marketDataManager.onMessage(message);
+	}
+}
@@ -0,0 +1,150 @@
+package com.projects.tradingMachine.benchmarks;
+
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.projects.tradingMachine.server.BookOrder;
+import com.projects.tradingMachine.server.CancelReplaceRequest;
+import com.projects.tradingMachine.server.ExecutionListener;
+import com.projects.tradingMachine.server.MarketDataManager;
+import com.projects.tradingMachine.server.MatchingEngine;
+import com.projects.tradingMachine.server.MissingQuotePolicy;
+import com.projects.tradingMachine.server.OrderExpiry;
+import com.projects.tradingMachine.utility.FixedPointPrice;
+import com.projects.tradingMachine.utility.SymbolRegistry;
+import com.projects.tradingMachine.utility.database.creditCheck.ICreditCheck;
+import com.projects.tradingMachine.utility.marketData.MarketData;
+
+import quickfix.field.OrdType;
+import quickfix.field.Side;
+import quickfix.field.TimeInForce;
+
+/**
+ * Cost of one order through the matching engine, on the shard thread, without the ring buffers and the FIX reports around it:
+ * a market order filled by the quote, and a limit order resting in the book, then crossed by the next one. 
+ * Each invocation builds its orders, as the acceptor does for every NewOrderSingle, so that the allocation per order includes them.
+ * */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MatchingEngineBenchmark {
+	private static final String SYMBOL = "ABC";
+	
+	private MarketDataManager marketDataManager;
+	private MatchingEngine matchingEngine;
+	private int symbolId;
+	private long price;
+	
+	/**
+	 * Executions only go to the blackhole, the credit check always passes.
+	 * */
+	@Setup
+	public void setUp(final Blackhole blackhole) {
+		marketDataManager = new MarketDataManager(new SymbolRegistry(Arrays.asList(SYMBOL, "XYZ")), MissingQuotePolicy.REJECT);
+		symbolId = marketDataManager.getSymbolId(SYMBOL);
+		price = FixedPointPrice.fromDouble(10.0);
+		matchingEngine = MatchingEngine.builder(marketDataManager, new ICreditCheck() {
+			@Override
+			public boolean hasEnoughCredit(final double credit) {
+				return true;
+			}
+
+			@Override
+			public void setCredit(final double credit) {
+			}
+
+			@Override
+			public void closeConnection() {
+			}
+		}, new BlackholeExecutionListener(blackhole)).orderExpiry(new OrderExpiry(LocalTime.MAX, ZoneId.systemDefault(), 1000, 4096)).build();
+		marketDataManager.update(new MarketData("MD", SYMBOL, 9.0, 11.0, 1000, 1000, new Date()));
+		matchingEngine.onQuote(marketDataManager.get(SYMBOL));
+	}
+	
+	@Benchmark
+	public BookOrder marketOrderFilledByQuote() {
+		final BookOrder order = new BookOrder("1", "1", null, SYMBOL, symbolId, Side.BUY, OrdType.MARKET, TimeInForce.DAY, FixedPointPrice.NONE, 
+				FixedPointPrice.NONE, 100, OrderExpiry.NEVER);
+		matchingEngine.onNewOrder(order);
+		return order;
+	}
+	
+	/**
+	 * Two orders per invocation: the sell rests, within the quote spread, then the buy fills it in full, leaving the book empty again.
+	 * */
+	@Benchmark
+	public BookOrder limitOrderCrossingRestingOrder() {
+		matchingEngine.onNewOrder(new BookOrder("1", "1", null, SYMBOL, symbolId, Side.SELL, OrdType.LIMIT, TimeInForce.DAY, price, 
+				FixedPointPrice.NONE, 100, OrderExpiry.NEVER));
+		final BookOrder order = new BookOrder("2", "2", null, SYMBOL, symbolId, Side.BUY, OrdType.LIMIT, TimeInForce.DAY, price, 
+				FixedPointPrice.NONE, 100, OrderExpiry.NEVER);
+		matchingEngine.onNewOrder(order);
+		return order;
+	}
+	
+	private static final class BlackholeExecutionListener implements ExecutionListener {
+		private final Blackhole blackhole;
+		
+		private BlackholeExecutionListener(final Blackhole blackhole) {
+			this.blackhole = blackhole;
+		}
+		
+		@Override
+		public void onNew(final BookOrder order) {
+			blackhole.consume(order);
+		}
+
+		@Override
+		public void onFill(final BookOrder order, final long price, final int quantity, final String reference) {
+			blackhole.consume(quantity);
+		}
+
+		@Override
+		public void onReject(final BookOrder order, final boolean creditCheckFailed) {
+			throw new IllegalStateException("Rejected "+order);
+		}
+
+		@Override
+		public void onCancel(final BookOrder order, final String reason) {
+			throw new IllegalStateException("Cancelled "+order+", "+reason);
+		}
+
+		@Override
+		public void onDoneForDay(final BookOrder order) {
+			blackhole.consume(order);
+		}
+
+		@Override
+		public void onCancelRequest(final BookOrder order, final String clOrdID) {
+			blackhole.consume(order);
+		}
+
+		@Override
+		public void onReplace(final BookOrder replacement, final String origClOrdID) {
+			blackhole.consume(replacement);
+		}
+
+		@Override
+		public void onCancelReject(final CancelReplaceRequest request, final int cxlRejReason, final String reason) {
+			blackhole.consume(request);
+		}
+	}
+}
@@ -0,0 +1,71 @@
+package com.projects.tradingMachine.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.projects.tradingMachine.orderRouter.OrderManager;
+import com.projects.tradingMachine.utility.order.OrderSide;
+import com.projects.tradingMachine.utility.order.OrderTimeInForce;
+import com.projects.tradingMachine.utility.order.OrderType;
+import com.projects.tradingMachine.utility.order.SimpleOrder;
+
+/**
+ * Order router bookkeeping: tracking a new order, then updating it when its execution report comes back, 
+ * with a given number of orders already tracked.
+ * */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OrderManagerBenchmark {
+	@Param({"1000", "100000"})
+	private int trackedOrders;
+	
+	private OrderManager orderManager;
+	private SimpleOrder[] orders;
+	private int next;
+	
+	/**
+	 * A fresh manager per iteration, so that it only grows by the orders added during one iteration.
+	 * */
+	@Setup(Level.Iteration)
+	public void setUp() {
+		orderManager = new OrderManager();
+		orders = new SimpleOrder[trackedOrders];
+		for (int i = 0; i < trackedOrders; i++) {
+			orders[i] = new SimpleOrder(String.valueOf(i), "MSFT", 100, OrderSide.BUY, OrderType.LIMIT, OrderTimeInForce.DAY, 10.0, null, null, null, 
+					null, false, null, false);
+			orderManager.add(orders[i]);
+		}
+	}
+	
+	@Benchmark
+	public SimpleOrder add() {
+		final SimpleOrder order = new SimpleOrder();
+		orderManager.add(order);
+		return order;
+	}
+	
+	@Benchmark
+	public SimpleOrder getAndUpdate() {
+		final SimpleOrder order = orderManager.getOrder(orders[next].getID());
+		next = next + 1 == orders.length ? 0 : next + 1;
+		order.setAvgPx(order.getAvgPx() + 1); //stays working.
+		orderManager.updateOrder(order);
+		return order;
+	}
+}
@@ -0,0 +1,100 @@
+package com.projects.tradingMachine.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.projects.tradingMachine.utility.Utility;
+
+import quickfix.ApplicationAdapter;
+import quickfix.ConfigError;
+import quickfix.DefaultSessionFactory;
+import quickfix.MemoryStoreFactory;
+import quickfix.Session;
+import quickfix.SessionID;
+import quickfix.SessionSettings;
+import quickfix.field.AvgPx;
+import quickfix.field.ClOrdID;
+import quickfix.field.CumQty;
+import quickfix.field.ExecID;
+import quickfix.field.ExecType;
+import quickfix.field.LastPx;
+import quickfix.field.LastQty;
+import quickfix.field.LeavesQty;
+import quickfix.field.OrdStatus;
+import quickfix.field.OrderID;
+import quickfix.field.OrderQty;
+import quickfix.field.Side;
+import quickfix.field.Symbol;
+import quickfix.fix50.ExecutionReport;
+
+/**
+ * Sending one fill execution report through {@link Utility#sendMessage(SessionID, quickfix.Message)}: session look up, 
+ * data dictionary validation, then the session's sequencing and storing, against an in-memory session with no counterparty logged on, 
+ * so that no socket write gets measured.
+ * */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SendMessageBenchmark {
+	private SessionID sessionID;
+	private Session session;
+	
+	/**
+	 * Same session settings as the acceptor, see tradingMachineFixEngine.properties, with a memory store and no log.
+	 * */
+	@Setup
+	public void setUp() throws ConfigError {
+		sessionID = new SessionID("FIXT.1.1", "MyExecutor", "MyInitiator");
+		final SessionSettings settings = new SessionSettings();
+		settings.setString(sessionID, "ConnectionType", "acceptor");
+		settings.setString(sessionID, "StartTime", "00:00:00");
+		settings.setString(sessionID, "EndTime", "00:00:00");
+		settings.setString(sessionID, "HeartBtInt", "30");
+		settings.setString(sessionID, "UseDataDictionary", "Y");
+		settings.setString(sessionID, "DefaultApplVerID", "FIX.5.0");
+		session = new DefaultSessionFactory(new ApplicationAdapter(), new MemoryStoreFactory(), null).create(sessionID, settings);
+	}
+	
+	/**
+	 * The memory store keeps every message sent for resending, it gets emptied between iterations.
+	 * */
+	@Setup(Level.Iteration)
+	public void resetStore() throws IOException {
+		session.getStore().reset();
+	}
+	
+	@TearDown
+	public void tearDown() throws IOException {
+		session.close();
+	}
+	
+	@Benchmark
+	public ExecutionReport sendFill() {
+		final ExecutionReport executionReport = new ExecutionReport(new OrderID("0-1"), new ExecID("0-2"), new ExecType(ExecType.TRADE), 
+				new OrdStatus(OrdStatus.FILLED), new Side(Side.BUY), new LeavesQty(0), new CumQty(100));
+		executionReport.set(new ClOrdID("1"));
+		executionReport.set(new Symbol("MSFT"));
+		executionReport.set(new OrderQty(100));
+		executionReport.set(new LastQty(100));
+		executionReport.set(new LastPx(10.0));
+		executionReport.set(new AvgPx(10.0));
+		Utility.sendMessage(sessionID, executionReport);
+		return executionReport;
+	}
+}
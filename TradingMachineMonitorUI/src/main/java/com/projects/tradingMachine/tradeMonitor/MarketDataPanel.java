@@ -9,12 +9,9 @@ import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
-import java.util.Map.Entry;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
 
 import javax.jms.JMSException;
 import javax.swing.BorderFactory;
@@ -30,6 +27,8 @@ import com.projects.tradingMachine.tradeMonitor.util.DatetimeTableCellRenderer;
 import com.projects.tradingMachine.tradeMonitor.util.MarketDataSummary;
 import com.projects.tradingMachine.tradeMonitor.util.PanelCleanUp;
 import com.projects.tradingMachine.tradeMonitor.util.SwingUtility;
+import com.projects.tradingMachine.utility.FixedPointPrice;
+import com.projects.tradingMachine.utility.SymbolRegistry;
 import com.projects.tradingMachine.utility.Utility;
 import com.projects.tradingMachine.utility.marketData.MarketData;
 
@@ -39,14 +38,16 @@ import com.projects.tradingMachine.utility.marketData.MarketData;
 public final class MarketDataPanel extends JPanel implements PanelCleanUp {
 	private static final long serialVersionUID = 1L;
 	private final List<MarketData> marketDataItems;
+	private final SymbolRegistry symbolRegistry;
 	private final List<MarketDataSummary> marketDataSummaryItems = new ArrayList<>();
 	private final JTable marketDataTable;
 	private final JTable marketDataSummaryTable;
 	private final ScheduledExecutorService es = Executors.newScheduledThreadPool(1);
 
-	public MarketDataPanel(final List<MarketData> marketDataItems) throws FileNotFoundException, IOException, JMSException {
+	public MarketDataPanel(final List<MarketData> marketDataItems, final SymbolRegistry symbolRegistry) throws FileNotFoundException, IOException, JMSException {
 		super(new BorderLayout(10, 20)); 
 		this.marketDataItems = marketDataItems;
+		this.symbolRegistry = symbolRegistry;
 		buildMarketDataSummary();
 		marketDataTable = buildMarketDataTable(false);
 		marketDataSummaryTable = buildMarketDataTable(true);
@@ -62,21 +63,34 @@ public final class MarketDataPanel extends JPanel implements PanelCleanUp {
         }, 1, 1, TimeUnit.SECONDS); 
 	}
 	
+	/**
+	 * Single pass over the market data items, summing into arrays indexed by symbol id. Items of symbols not in the registry are skipped.
+	 * */
 	private void buildMarketDataSummary() {
 		marketDataSummaryItems.clear();
 		final ArrayList<MarketData> marketDataItemsCopy= new ArrayList<>(marketDataItems);
-		final Map<String, Long> itemsNumber = marketDataItemsCopy.parallelStream().
-				collect(Collectors.groupingBy(MarketData::getSymbol, Collectors.counting()));
-		final Map<String, Double> avgBid = marketDataItemsCopy.parallelStream().
-				collect(Collectors.groupingBy(MarketData::getSymbol, Collectors.averagingDouble(MarketData::getBid)));
-		final Map<String, Double> avgAsk = marketDataItemsCopy.parallelStream().
-				collect(Collectors.groupingBy(MarketData::getSymbol, Collectors.averagingDouble(MarketData::getAsk)));
-		final Map<String, Double> avgBidSize = marketDataItemsCopy.parallelStream().
-				collect(Collectors.groupingBy(MarketData::getSymbol, Collectors.averagingDouble(MarketData::getBidSize)));
-		final Map<String, Double> avgAskSize = marketDataItemsCopy.parallelStream().
-				collect(Collectors.groupingBy(MarketData::getSymbol, Collectors.averagingDouble(MarketData::getAskSize)));
-		for(final Entry<String, Long> entry : itemsNumber.entrySet()) 
-			marketDataSummaryItems.add(new MarketDataSummary(entry.getKey(), avgBid.get(entry.getKey()), avgAsk.get(entry.getKey()), avgBidSize.get(entry.getKey()), avgAskSize.get(entry.getKey()), entry.getValue()));
+		final int symbols = symbolRegistry.size();
+		final long[] itemsNumber = new long[symbols];
+		final long[] bidSum = new long[symbols];
+		final long[] askSum = new long[symbols];
+		final long[] bidSizeSum = new long[symbols];
+		final long[] askSizeSum = new long[symbols];
+		for (final MarketData marketData : marketDataItemsCopy) {
+			final int symbolId = symbolRegistry.isId(marketData.getSymbolId(), marketData.getSymbol()) ? marketData.getSymbolId() : symbolRegistry.getId(marketData.getSymbol());
+			if (symbolId == SymbolRegistry.UNKNOWN)
+				continue;
+			itemsNumber[symbolId]++;
+			bidSum[symbolId] += marketData.getBidPrice();
+			askSum[symbolId] += marketData.getAskPrice();
+			bidSizeSum[symbolId] += marketData.getBidSize();
+			askSizeSum[symbolId] += marketData.getAskSize();
+		}
+		for (int symbolId = 0; symbolId < symbols; symbolId++) {
+			final long n = itemsNumber[symbolId];
+			if (n > 0)
+				marketDataSummaryItems.add(new MarketDataSummary(symbolRegistry.getSymbol(symbolId), FixedPointPrice.toDouble(bidSum[symbolId]) / n, 
+						FixedPointPrice.toDouble(askSum[symbolId]) / n, (double)bidSizeSum[symbolId] / n, (double)askSizeSum[symbolId] / n, n));
+		}
 	}
 
 	private JTable buildMarketDataTable(boolean isSummaryTable) throws FileNotFoundException, IOException, JMSException {
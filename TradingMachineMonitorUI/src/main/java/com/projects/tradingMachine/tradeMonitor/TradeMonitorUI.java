@@ -8,7 +8,6 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
@@ -31,6 +30,7 @@ import org.slf4j.LoggerFactory;
 import com.projects.tradingMachine.services.database.noSql.MongoDBConnection;
 import com.projects.tradingMachine.services.database.noSql.MongoDBManager;
 import com.projects.tradingMachine.services.simulation.orders.RandomOrdersBuilder;
+import com.projects.tradingMachine.utility.SymbolRegistry;
 import com.projects.tradingMachine.utility.TradingMachineMessageConsumer;
 import com.projects.tradingMachine.utility.Utility;
 import com.projects.tradingMachine.utility.Utility.DestinationType;
@@ -52,11 +52,13 @@ public final class TradeMonitorUI implements MessageListener {
 	private final List<SimpleOrder> filledOrders;
 	private final List<SimpleOrder> rejectedOrders;
 	private final List<MarketData> marketDataItems;
+	private final SymbolRegistry symbolRegistry;
 	private final OrdersPanel ordersPanel;
 	private final MarketDataPanel marketDataPanel;
 	private static final boolean isWithoutLiveFeed = false;
 	
 	public TradeMonitorUI(final Properties p) throws JMSException, FileNotFoundException, IOException {
+		symbolRegistry = SymbolRegistry.load(p);
 		mongoDBManager = new MongoDBManager(new MongoDBConnection(new DatabaseProperties(p.getProperty("mongoDB.host"), 
 				Integer.valueOf(p.getProperty("mongoDB.port")), p.getProperty("mongoDB.database"))), p.getProperty("mongoDB.executedOrdersCollection"), p.getProperty("mongoDB.marketDataCollection"));
 		executedOrdersConsumer = new TradingMachineMessageConsumer(p.getProperty("activeMQ.url"), 
@@ -69,7 +71,7 @@ public final class TradeMonitorUI implements MessageListener {
 		rejectedOrders = backEndOrders.stream().filter(o -> o.isRejected()).sorted(dateComparator.reversed()).collect(Collectors.toList());
 		ordersPanel = new OrdersPanel(filledOrders, rejectedOrders);
 		//ordersPanel.getFilledOrdersTable().getColumnModel().getColumn(10).setCellRenderer(new TooltipCellRenderer(marketDataItems));
-		marketDataPanel = new MarketDataPanel(marketDataItems);
+		marketDataPanel = new MarketDataPanel(marketDataItems, symbolRegistry);
 		executedOrdersConsumer.start();
 		marketDataConsumer.start();
 		if (isWithoutLiveFeed)
@@ -156,8 +158,8 @@ public final class TradeMonitorUI implements MessageListener {
     	Executors.newSingleThreadScheduledExecutor().execute(() -> {
     		IntStream.range(1, 100000).forEach(i -> 
     		{
-    			Arrays.asList("ABBN","BION","HBMN","AEVS","SAHN","RO","RIEN","UBSN","CSGN").stream().forEach(a -> {
-    				marketDataItems.add(Utility.buildRandomMarketDataItem(a));
+    			symbolRegistry.getSymbols().forEach(a -> {
+    				marketDataItems.add(Utility.buildRandomMarketDataItem(symbolRegistry.getId(a), a));
     				((AbstractTableModel)marketDataPanel.getMarketDataTable().getModel()).fireTableDataChanged();
     				});
     			try {
@@ -169,7 +171,7 @@ public final class TradeMonitorUI implements MessageListener {
     	});
     	Executors.newSingleThreadScheduledExecutor().execute(() -> {
     		IntStream.range(0, 10000).forEach(i -> {
-    			final SimpleOrder randomOrder = RandomOrdersBuilder.build(Arrays.asList("RIEN", "UBSN", "CSGN"));
+    			final SimpleOrder randomOrder = RandomOrdersBuilder.build(symbolRegistry);
     			if (randomOrder.isRejected()) {
     				rejectedOrders.add(randomOrder);
         			((AbstractTableModel)ordersPanel.getRejectedOrdersTable().getModel()).fireTableDataChanged();
@@ -1,30 +1,142 @@
 package com.projects.tradingMachine.orderRouter;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 
 import com.projects.tradingMachine.utility.order.SimpleOrder;
 
 /**
- * Traces all orders sent to the acceptor and updates them when come back. 
+ * Traces all orders sent to the acceptor and updates them when come back.
+ * Working orders are kept in a hash map, by ClOrdID and by the ClOrdIDs of their cancel and cancel/replace requests.
+ * Once filled, rejected or cancelled, an order moves to a ring buffer of the latest terminal orders, still found by any of its ClOrdIDs
+ * for the late execution reports, until it's evicted by the newer ones or by age. This way the memory used doesn't grow with the orders of the day.
+ * Updates are made under the manager's lock, while working orders are looked up without it.
  * */
 public final class OrderManager {
-
+	public static final int DEFAULT_MAX_ARCHIVED_ORDERS = 100_000;
+	public static final long DEFAULT_MAX_ARCHIVE_AGE_MILLIS = TimeUnit.HOURS.toMillis(1);
+	
 	private final ConcurrentMap<String, SimpleOrder> orders;
+	private final Map<String, List<String>> requestIDs; //ClOrdIDs of the cancel and cancel/replace requests, by working order ID.
+	private final long maxArchiveAgeMillis;
+	private final SimpleOrder[] archivedOrders;
+	private final String[][] archivedIDs;
+	private final long[] archivedAt;
+	private final Map<String, Long> archiveIndex; //archive sequence by ClOrdID.
+	private long archiveHead; //sequence of the next archived order.
+	private long archiveTail; //sequence of the oldest archived order.
 	
 	public OrderManager() {
+		this(DEFAULT_MAX_ARCHIVED_ORDERS, DEFAULT_MAX_ARCHIVE_AGE_MILLIS);
+	}
+	
+	/**
+	 * @param maxArchivedOrders Terminal orders kept for the late execution reports, the oldest one being evicted first.
+	 * @param maxArchiveAgeMillis Terminal orders archived longer ago than that are evicted too.
+	 * */
+	public OrderManager(final int maxArchivedOrders, final long maxArchiveAgeMillis) {
+		if (maxArchivedOrders < 1)
+			throw new IllegalArgumentException("Invalid maximum number of archived orders: "+maxArchivedOrders);
 		orders = new ConcurrentHashMap<>();
+		requestIDs = new HashMap<>();
+		this.maxArchiveAgeMillis = maxArchiveAgeMillis;
+		archivedOrders = new SimpleOrder[maxArchivedOrders];
+		archivedIDs = new String[maxArchivedOrders][];
+		archivedAt = new long[maxArchivedOrders];
+		archiveIndex = new HashMap<>();
 	}
 	
-	public void add(final SimpleOrder order) {
+	public synchronized void add(final SimpleOrder order) {
 		orders.putIfAbsent(order.getID(), order);
 	}
 	
+	/**
+	 * Makes the order reachable by the ClOrdID of a cancel or cancel/replace request too, since the execution reports answering it carry that one.
+	 * */
+	public synchronized void addID(final SimpleOrder order, final String newId) {
+		if (orders.get(order.getID()) != order)
+			return; //terminal already, the request will be rejected.
+		orders.put(newId, order);
+		requestIDs.computeIfAbsent(order.getID(), id -> new ArrayList<>(1)).add(newId);
+	}
+	
+	/**
+	 * @return the working order, or the archived one, null if unknown or evicted.
+	 * */
 	public SimpleOrder getOrder(final String orderId) {
-		return orders.get(orderId);
+		final SimpleOrder order = orders.get(orderId);
+		return order != null ? order : getArchivedOrder(orderId);
+	}
+	
+	private synchronized SimpleOrder getArchivedOrder(final String orderId) {
+		final Long sequence = archiveIndex.get(orderId);
+		return sequence == null ? null : archivedOrders[slot(sequence)];
+	}
+	
+	/**
+	 * Archives the order once it's terminal. Archived orders updated by late execution reports stay where they are.
+	 * */
+	public synchronized void updateOrder(final SimpleOrder order) {
+		if (isTerminal(order) && orders.get(order.getID()) == order)
+			archive(order, System.currentTimeMillis());
+	}
+	
+	static boolean isTerminal(final SimpleOrder order) {
+		return order.isRejected() || order.getCanceled() || (order.getQuantity() > 0 && order.getExecuted() >= order.getQuantity());
+	}
+	
+	private void archive(final SimpleOrder order, final long now) {
+		final List<String> orderRequestIDs = requestIDs.remove(order.getID());
+		final String[] ids = new String[orderRequestIDs == null ? 1 : 1 + orderRequestIDs.size()];
+		ids[0] = order.getID();
+		for (int i = 1; i < ids.length; i++)
+			ids[i] = orderRequestIDs.get(i - 1);
+		for (final String id : ids)
+			orders.remove(id);
+		if (archiveHead - archiveTail == archivedOrders.length)
+			evictOldest();
+		final int slot = slot(archiveHead);
+		archivedOrders[slot] = order;
+		archivedIDs[slot] = ids;
+		archivedAt[slot] = now;
+		for (final String id : ids)
+			archiveIndex.put(id, archiveHead);
+		archiveHead++;
+		while (archiveTail < archiveHead && now - archivedAt[slot(archiveTail)] > maxArchiveAgeMillis)
+			evictOldest();
+	}
+	
+	private void evictOldest() {
+		final int slot = slot(archiveTail);
+		for (final String id : archivedIDs[slot])
+			archiveIndex.remove(id, archiveTail);
+		archivedOrders[slot] = null;
+		archivedIDs[slot] = null;
+		archiveTail++;
+	}
+	
+	private int slot(final long sequence) {
+		return (int)(sequence % archivedOrders.length);
+	}
+	
+	/**
+	 * @return the ClOrdIDs of the working orders, including the ones of their requests.
+	 * */
+	public int getWorkingIDs() {
+		return orders.size();
+	}
+	
+	public synchronized int getArchivedOrders() {
+		return (int)(archiveHead - archiveTail);
 	}
 	
-	public void updateOrder(final SimpleOrder order) {
-		orders.put(order.getID(), order);
+	@Override
+	public synchronized String toString() {
+		return "OrderManager [working ClOrdIDs=" + orders.size() + ", archived orders=" + getArchivedOrders() + ", archived ClOrdIDs=" + archiveIndex.size() + "]";
 	}
-}
\ No newline at end of file
+}
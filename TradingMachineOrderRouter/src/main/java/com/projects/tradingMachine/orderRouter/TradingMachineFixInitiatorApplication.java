@@ -2,10 +2,10 @@ package com.projects.tradingMachine.orderRouter;
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.math.BigDecimal;
 import java.util.HashSet;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import javax.jms.ExceptionListener;
 import javax.jms.JMSException;
@@ -39,11 +39,13 @@ import quickfix.field.AvgPx;
 import quickfix.field.ClOrdID;
 import quickfix.field.CumQty;
 import quickfix.field.ExecType;
+import quickfix.field.ExpireTime;
 import quickfix.field.HandlInst;
 import quickfix.field.LeavesQty;
 import quickfix.field.MsgType;
 import quickfix.field.OrdStatus;
 import quickfix.field.OrderQty;
+import quickfix.field.OrigClOrdID;
 import quickfix.field.Price;
 import quickfix.field.StopPx;
 import quickfix.field.Symbol;
@@ -52,6 +54,7 @@ import quickfix.field.TransactTime;
 
 /**
  * FIX initiator application implementor. It listens to the OrdersQueue for orders to send to the FIX executor.
+ * Messages with the Action property set to CANCEL or REPLACE carry a cancel or cancel/replace request instead: an order whose originalID is the ID of the order to cancel or replace.
  * It finally publishes filled orders to the FilledOrdersTopic.
  * */
 public class TradingMachineFixInitiatorApplication implements Application, MessageListener, ExceptionListener {
@@ -66,7 +69,8 @@ public class TradingMachineFixInitiatorApplication implements Application, Messa
 	public TradingMachineFixInitiatorApplication(final SessionSettings settings) throws JMSException, FileNotFoundException, IOException {
 		this.settings = settings;
 		final Properties p = Utility.getApplicationProperties("tradingMachineOrderRouter.properties");
-		orderManager = new OrderManager();
+		orderManager = new OrderManager(Integer.valueOf(p.getProperty("orderManager.maxArchivedOrders", String.valueOf(OrderManager.DEFAULT_MAX_ARCHIVED_ORDERS))), 
+				TimeUnit.SECONDS.toMillis(Long.valueOf(p.getProperty("orderManager.maxArchiveAgeSeconds", "3600"))));
 		loggedOnSessions = new HashSet<SessionID>();
 		//ordersQueue 注文データの消費[<= ordersQueue]
 		ordersConsumer = new TradingMachineMessageConsumer(p.getProperty("activeMQ.url"), p.getProperty("activeMQ.ordersQueue"), DestinationType.Queue, this, "FixInitiatorApplication", null, this);
@@ -126,11 +130,13 @@ public class TradingMachineFixInitiatorApplication implements Application, Messa
 		try {
 			
             final MsgType msgType = new MsgType();
-            logger.info("["+message.getString(ExecType.FIELD)+"]");
             logger.info("["+message.getHeader().getField(msgType).getField()+"]"+"["+message.getHeader().getField(msgType).getValue()+"]"+message.toString());
-            if (message.getHeader().getField(msgType).valueEquals("8")) {
+            if (message.getHeader().getField(msgType).valueEquals(MsgType.EXECUTION_REPORT)) {
+                logger.info("["+message.getString(ExecType.FIELD)+"]");
                 executionReport(message, sessionId);
             }
+            else if (message.getHeader().getField(msgType).valueEquals(MsgType.ORDER_CANCEL_REJECT))
+            	cancelReject(message);
         } catch (final Exception e) {
         	logger.warn(e.getMessage());
             e.printStackTrace();
@@ -157,6 +163,8 @@ public class TradingMachineFixInitiatorApplication implements Application, Messa
         }
         //else market order.
         newOrderSingle.setField(order.getTimeInForce().toFIXTimeInForce());
+        if (order.getExpireTime() != null)
+        	newOrderSingle.set(new ExpireTime(order.getExpireTime()));
         try {
             Session.sendToTarget(newOrderSingle, order.getSessionID());
             orderManager.add(order);
@@ -166,6 +174,64 @@ public class TradingMachineFixInitiatorApplication implements Application, Messa
         }
     }
 	
+	/**
+	 * Sends an OrderCancelRequest for the order whose ID is the originalID of the given one, which provides the new ClOrdID.
+	 * */
+	public void cancel(final SimpleOrder request) {
+		final SimpleOrder order = orderManager.getOrder(request.getOriginalID());
+		if (order == null) {
+			logger.warn("Unable to cancel unknown order "+request.getOriginalID());
+			return;
+		}
+		final quickfix.fix50.OrderCancelRequest orderCancelRequest = new quickfix.fix50.OrderCancelRequest(new OrigClOrdID(order.getID()), 
+				new ClOrdID(request.getID()), order.getSide().toFIXSide(), new TransactTime());
+		orderCancelRequest.set(new Symbol(order.getSymbol()));
+		orderCancelRequest.set(new OrderQty(order.getQuantity()));
+		orderManager.addID(order, request.getID());
+		sendToTarget(orderCancelRequest, order.getSessionID());
+	}
+
+	/**
+	 * Sends an OrderCancelReplaceRequest for the order whose ID is the originalID of the given one, which provides the new ClOrdID,
+	 * quantity and limit/ stop price. Side, type and time in force can't be changed.
+	 * */
+	public void replace(final SimpleOrder request) {
+		final SimpleOrder order = orderManager.getOrder(request.getOriginalID());
+		if (order == null) {
+			logger.warn("Unable to replace unknown order "+request.getOriginalID());
+			return;
+		}
+		final quickfix.fix50.OrderCancelReplaceRequest orderCancelReplaceRequest = new quickfix.fix50.OrderCancelReplaceRequest(
+				new OrigClOrdID(order.getID()), new ClOrdID(request.getID()), order.getSide().toFIXSide(), new TransactTime(), order.getType().toFIXOrderType());
+		orderCancelReplaceRequest.set(new Symbol(order.getSymbol()));
+		orderCancelReplaceRequest.set(new OrderQty(request.getQuantity()));
+		if (request.getLimit() != null)
+			orderCancelReplaceRequest.set(new Price(request.getLimit()));
+		if (request.getStop() != null)
+			orderCancelReplaceRequest.set(new StopPx(request.getStop()));
+		orderCancelReplaceRequest.set(order.getTimeInForce().toFIXTimeInForce());
+		orderManager.addID(order, request.getID());
+		sendToTarget(orderCancelReplaceRequest, order.getSessionID());
+	}
+
+	private void sendToTarget(final Message message, final SessionID sessionID) {
+		try {
+			Session.sendToTarget(message, sessionID);
+			logger.info("Sent "+message);
+		} catch (final SessionNotFound e) {
+			logger.warn("Unable to send "+message, e);
+		}
+	}
+
+	private void cancelReject(final Message message) throws FieldNotFound {
+		final SimpleOrder order = orderManager.getOrder(message.getString(OrigClOrdID.FIELD));
+		if (order == null)
+			return;
+		if (message.isSetField(Text.FIELD))
+			order.setMessage(message.getString(Text.FIELD));
+		logger.info("Cancel request "+message.getString(ClOrdID.FIELD)+" rejected for order "+order.getID()+": "+order.getMessage());
+	}
+	
 	private void executionReport(final Message message, final SessionID sessionID) throws FieldNotFound, JMSException {
         final SimpleOrder order = orderManager.getOrder(message.getField(new ClOrdID()).getValue());
         if (order == null) 
@@ -174,14 +240,21 @@ public class TradingMachineFixInitiatorApplication implements Application, Messa
             order.setMessage(message.getField(new Text()).getValue());
         } 
         catch (final FieldNotFound e) {e.printStackTrace();}
-        BigDecimal fillSize;
-        final LeavesQty leavesQty = new LeavesQty();
-        message.getField(leavesQty);
-        fillSize = new BigDecimal(order.getQuantity()).subtract(new BigDecimal(leavesQty.getValue()));
-
-        if (fillSize.compareTo(BigDecimal.ZERO) > 0) {
-        	//execution.
-            order.setOpen(order.getOpen() - (int) Double.parseDouble(fillSize.toPlainString()));
+        if (message.getChar(ExecType.FIELD) == ExecType.REPLACE) {
+        	//new quantity and prices, the executed quantity stays.
+        	order.setQuantity((int)message.getDouble(OrderQty.FIELD));
+        	order.setOpen((int)message.getDouble(LeavesQty.FIELD));
+        	if (message.isSetField(Price.FIELD))
+        		order.setLimit(message.getDouble(Price.FIELD));
+        	if (message.isSetField(StopPx.FIELD))
+        		order.setStop(message.getDouble(StopPx.FIELD));
+        	orderManager.updateOrder(order);
+        	return;
+        }
+        final int leavesQty = (int)message.getDouble(LeavesQty.FIELD);
+        if (order.getQuantity() - leavesQty > 0) {
+        	//execution, reporting what's left rather than what's been filled by this one.
+            order.setOpen(leavesQty);
             order.setExecuted(new Integer(message.getString(CumQty.FIELD)));
             order.setAvgPx(new Double(message.getString(AvgPx.FIELD)));
         }
@@ -219,6 +292,15 @@ public class TradingMachineFixInitiatorApplication implements Application, Messa
 	public void onMessage(final javax.jms.Message message) {
 		if (message instanceof ObjectMessage)
 			try {
+				final String action = message.getStringProperty("Action");
+				if ("CANCEL".equals(action)) {
+					cancel((SimpleOrder)((ObjectMessage)message).getObject());
+					return;
+				}
+				if ("REPLACE".equals(action)) {
+					replace((SimpleOrder)((ObjectMessage)message).getObject());
+					return;
+				}
 				loggedOnSessions.forEach(sessionID -> {
 					try {
 						final SimpleOrder order = (SimpleOrder)((ObjectMessage)message).getObject();
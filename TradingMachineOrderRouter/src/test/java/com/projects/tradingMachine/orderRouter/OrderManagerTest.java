@@ -0,0 +1,116 @@
+package com.projects.tradingMachine.orderRouter;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.Timeout;
+
+import com.projects.tradingMachine.utility.order.SimpleOrder;
+
+public class OrderManagerTest {
+  @Rule
+  public final Timeout globalTimeout = new Timeout(10000);
+
+  @Rule
+  public final ExpectedException thrown = ExpectedException.none();
+
+  private static SimpleOrder order(final String id) {
+    final SimpleOrder order = new SimpleOrder(id);
+    order.setQuantity(100);
+    order.setOpen(100);
+    return order;
+  }
+
+  private static SimpleOrder canceled(final OrderManager orderManager, final String id) {
+    final SimpleOrder order = order(id);
+    orderManager.add(order);
+    order.setCanceled(true);
+    orderManager.updateOrder(order);
+    return order;
+  }
+
+  @Test
+  public void terminalOrdersAreArchivedUnderAllTheirIDs() {
+    final OrderManager orderManager = new OrderManager(10, 60000);
+    final SimpleOrder order = order("1");
+    orderManager.add(order);
+    orderManager.addID(order, "1-cancel");
+    orderManager.addID(order, "1-replace");
+    order.setExecuted(50);
+    orderManager.updateOrder(order);
+    Assert.assertEquals(0, orderManager.getArchivedOrders()); //still working.
+    order.setExecuted(100);
+    orderManager.updateOrder(order);
+    Assert.assertEquals(1, orderManager.getArchivedOrders());
+    Assert.assertEquals(0, orderManager.getWorkingIDs());
+    Assert.assertSame(order, orderManager.getOrder("1"));
+    Assert.assertSame(order, orderManager.getOrder("1-cancel"));
+    Assert.assertSame(order, orderManager.getOrder("1-replace"));
+  }
+
+  @Test
+  public void oldestArchivedOrdersAreEvictedByCount() {
+    final OrderManager orderManager = new OrderManager(2, 60000);
+    canceled(orderManager, "1");
+    canceled(orderManager, "2");
+    canceled(orderManager, "3");
+    Assert.assertEquals(2, orderManager.getArchivedOrders());
+    Assert.assertNull(orderManager.getOrder("1"));
+    Assert.assertNotNull(orderManager.getOrder("2"));
+    Assert.assertNotNull(orderManager.getOrder("3"));
+  }
+
+  @Test
+  public void archivedOrdersAreEvictedByAge() throws Exception {
+    final OrderManager orderManager = new OrderManager(10, 50);
+    canceled(orderManager, "1");
+    canceled(orderManager, "2");
+    Thread.sleep(100);
+    canceled(orderManager, "3");
+    Assert.assertEquals(1, orderManager.getArchivedOrders());
+    Assert.assertNull(orderManager.getOrder("1"));
+    Assert.assertNull(orderManager.getOrder("2"));
+    Assert.assertNotNull(orderManager.getOrder("3"));
+  }
+
+  @Test
+  public void evictionKeepsANewerOrderReusingTheID() {
+    final OrderManager orderManager = new OrderManager(2, 60000);
+    canceled(orderManager, "1");
+    final SimpleOrder newer = canceled(orderManager, "1");
+    canceled(orderManager, "2"); //evicts the first one.
+    Assert.assertSame(newer, orderManager.getOrder("1"));
+  }
+
+  @Test
+  public void requestIDsOfTerminalOrdersAreIgnored() {
+    final OrderManager orderManager = new OrderManager(10, 60000);
+    final SimpleOrder order = canceled(orderManager, "1");
+    orderManager.addID(order, "1-cancel");
+    Assert.assertNull(orderManager.getOrder("1-cancel"));
+    Assert.assertEquals(0, orderManager.getWorkingIDs());
+  }
+
+  @Test
+  public void lateExecutionReportsFindTheArchivedOrder() {
+    final OrderManager orderManager = new OrderManager(10, 60000);
+    final SimpleOrder order = order("1");
+    orderManager.add(order);
+    order.setRejected(true);
+    orderManager.updateOrder(order);
+    final SimpleOrder archived = orderManager.getOrder("1");
+    Assert.assertSame(order, archived);
+    archived.setMessage("late report");
+    orderManager.updateOrder(archived);
+    Assert.assertEquals(0, orderManager.getWorkingIDs());
+    Assert.assertEquals(1, orderManager.getArchivedOrders());
+    Assert.assertEquals("late report", orderManager.getOrder("1").getMessage());
+  }
+
+  @Test
+  public void invalidArchiveSize() {
+    thrown.expect(IllegalArgumentException.class);
+    new OrderManager(0, 60000);
+  }
+}
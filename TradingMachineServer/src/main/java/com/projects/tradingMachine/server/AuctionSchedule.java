@@ -0,0 +1,111 @@
+package com.projects.tradingMachine.server;
+
+import java.time.Instant;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Properties;
+
+/**
+ * When the matching engine runs periodic call auctions rather than continuous matching, e.g. for the opening and closing bursts:
+ * within each window, the orders accumulate in the book and get uncrossed in one pass at the end of each call period, see {@link MatchingEngine}.
+ * Periods are aligned on the epoch, like the expiry ticks, so that they don't depend on when the engine started.
+ * Configuration parameters:
+ * <ul>
+ * 	<li>auction.windows: comma separated local time windows, e.g. 08:50-09:00,17:25-17:30, empty for continuous matching only.</li>
+ *  <li>auction.intervalMillis: call period within a window, 0 to uncross once, at the end of the window.</li>
+ * </ul>
+ * */
+public final class AuctionSchedule {
+	/**
+	 * Period of the times out of any window, when matching is continuous.
+	 * */
+	public static final long CONTINUOUS = Long.MIN_VALUE;
+
+	private final LocalTime[] starts;
+	private final LocalTime[] ends;
+	private final ZoneId zoneId;
+	private final long intervalMillis;
+
+	/**
+	 * @param windows Comma separated start-end local times, each window within a day.
+	 * */
+	public AuctionSchedule(final String windows, final ZoneId zoneId, final long intervalMillis) {
+		final String[] ranges = windows.trim().isEmpty() ? new String[0] : windows.split(",");
+		starts = new LocalTime[ranges.length];
+		ends = new LocalTime[ranges.length];
+		for (int i = 0; i < ranges.length; i++) {
+			final String[] startEnd = ranges[i].split("-");
+			if (startEnd.length != 2)
+				throw new IllegalArgumentException("Invalid auction window: "+ranges[i]);
+			starts[i] = LocalTime.parse(startEnd[0].trim());
+			ends[i] = LocalTime.parse(startEnd[1].trim());
+			if (!starts[i].isBefore(ends[i]))
+				throw new IllegalArgumentException("Auction window ending before its start: "+ranges[i]);
+		}
+		if (intervalMillis < 0)
+			throw new IllegalArgumentException("Invalid auction interval: "+intervalMillis);
+		this.zoneId = zoneId;
+		this.intervalMillis = intervalMillis;
+	}
+
+	public static AuctionSchedule from(final Properties properties) {
+		return new AuctionSchedule(properties.getProperty("auction.windows", ""), ZoneId.systemDefault(),
+				Long.valueOf(properties.getProperty("auction.intervalMillis", "0")));
+	}
+
+	/**
+	 * Continuous matching only.
+	 * */
+	public static AuctionSchedule none() {
+		return new AuctionSchedule("", ZoneId.systemDefault(), 0);
+	}
+
+	/**
+	 * @return the call period the given time falls in, which changes whenever an uncross is due, or {@link #CONTINUOUS}.
+	 * */
+	public long getPeriod(final long time) {
+		if (starts.length == 0)
+			return CONTINUOUS;
+		final ZonedDateTime dateTime = Instant.ofEpochMilli(time).atZone(zoneId);
+		final LocalTime localTime = dateTime.toLocalTime();
+		for (int i = 0; i < starts.length; i++)
+			if (!localTime.isBefore(starts[i]) && localTime.isBefore(ends[i]))
+				return intervalMillis > 0 ? Math.floorDiv(time, intervalMillis) : dateTime.with(starts[i]).toInstant().toEpochMilli();
+		return CONTINUOUS;
+	}
+
+	/**
+	 * @return the time the period of the given time ends at, so that the period needs no look up before then.
+	 * */
+	public long getPeriodEnd(final long time) {
+		if (starts.length == 0)
+			return Long.MAX_VALUE;
+		final ZonedDateTime dateTime = Instant.ofEpochMilli(time).atZone(zoneId);
+		long result = dateTime.toLocalDate().plusDays(1).atStartOfDay(zoneId).toInstant().toEpochMilli();
+		for (int i = 0; i < starts.length; i++) {
+			final long start = dateTime.with(starts[i]).toInstant().toEpochMilli();
+			final long end = dateTime.with(ends[i]).toInstant().toEpochMilli();
+			if (time < start)
+				result = Math.min(result, start);
+			else if (time < end) {
+				result = Math.min(result, end);
+				if (intervalMillis > 0)
+					result = Math.min(result, (Math.floorDiv(time, intervalMillis) + 1) * intervalMillis);
+			}
+		}
+		return result;
+	}
+
+	public boolean isEnabled() {
+		return starts.length > 0;
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder windows = new StringBuilder();
+		for (int i = 0; i < starts.length; i++)
+			windows.append(i == 0 ? "" : ",").append(starts[i]).append("-").append(ends[i]);
+		return "AuctionSchedule [windows=" + windows + ", zoneId=" + zoneId + ", intervalMillis=" + intervalMillis + "]";
+	}
+}
@@ -0,0 +1,217 @@
+package com.projects.tradingMachine.server;
+
+import com.projects.tradingMachine.utility.FixedPointPrice;
+
+import quickfix.FieldNotFound;
+import quickfix.SessionID;
+import quickfix.field.ExpireTime;
+import quickfix.field.OrdType;
+import quickfix.field.Price;
+import quickfix.field.Side;
+import quickfix.field.StopPx;
+import quickfix.field.TimeInForce;
+
+/**
+ * Working state of an order accepted by the matching engine, from its acceptance until it gets filled, rejected or cancelled.
+ * Side, order type and time in force are kept as their FIX values.
+ * */
+public final class BookOrder {
+	private final String clOrdID;
+	private String orderID;
+	private final SessionID sessionID;
+	private final String symbol;
+	private final int symbolId;
+	private final char side;
+	private final char type;
+	private final char timeInForce;
+	private final long price;
+	private final long stopPrice;
+	private final int quantity;
+	private final long expireTime;
+	private int cumQty;
+	private long cumValue;
+	private TimerWheel.Timer<BookOrder> expiryTimer;
+	//links of the price level the order is in, see PriceLevel.
+	PriceLevel level;
+	BookOrder prevInLevel;
+	BookOrder nextInLevel;
+
+	public BookOrder(final String clOrdID, final String orderID, final SessionID sessionID, final String symbol, final int symbolId, final char side, 
+			final char type, final char timeInForce, final long price, final long stopPrice, final int quantity, 
+			final long expireTime) {
+		this.clOrdID = clOrdID;
+		this.orderID = orderID;
+		this.sessionID = sessionID;
+		this.symbol = symbol;
+		this.symbolId = symbolId;
+		this.side = side;
+		this.type = type;
+		this.timeInForce = timeInForce;
+		this.price = price;
+		this.stopPrice = stopPrice;
+		this.quantity = quantity;
+		this.expireTime = expireTime;
+	}
+
+	/**
+	 * Builds the working order out of an incoming NewOrderSingle. Limit and stop prices are only read for the order types using them, 
+	 * and turned into fixed-point prices. ExpireTime is only read for GTD orders. The OrderID is given later on, by the matching shard owning the symbol.
+	 * */
+	public static BookOrder from(final quickfix.fix50.NewOrderSingle order, final SessionID sessionID, final MarketDataManager marketDataManager) 
+			throws FieldNotFound {
+		final char type = order.getChar(OrdType.FIELD);
+		final String symbol = order.getSymbol().getValue();
+		final char timeInForce = order.isSetField(TimeInForce.FIELD) ? order.getChar(TimeInForce.FIELD) : TimeInForce.DAY;
+		return new BookOrder(order.getClOrdID().getValue(), null, sessionID, symbol, 
+				marketDataManager.getSymbolId(symbol), order.getChar(Side.FIELD), type, timeInForce,
+				type == OrdType.LIMIT ? FixedPointPrice.fromDouble(order.getDouble(Price.FIELD)) : FixedPointPrice.NONE, 
+				type == OrdType.STOP ? FixedPointPrice.fromDouble(order.getDouble(StopPx.FIELD)) : FixedPointPrice.NONE,
+				(int)order.getOrderQty().getValue(), 
+				timeInForce == TimeInForce.GOOD_TILL_DATE && order.isSetField(ExpireTime.FIELD) ? order.getUtcTimeStamp(ExpireTime.FIELD).getTime() : OrderExpiry.NEVER);
+	}
+
+	public String getClOrdID() {
+		return clOrdID;
+	}
+
+	public String getOrderID() {
+		return orderID;
+	}
+
+	void setOrderID(final String orderID) {
+		this.orderID = orderID;
+	}
+
+	public SessionID getSessionID() {
+		return sessionID;
+	}
+
+	public String getSymbol() {
+		return symbol;
+	}
+
+	/**
+	 * Id of the symbol in the market data quote table.
+	 * */
+	public int getSymbolId() {
+		return symbolId;
+	}
+
+	public char getSide() {
+		return side;
+	}
+
+	public boolean isBuy() {
+		return side == Side.BUY;
+	}
+
+	public char getType() {
+		return type;
+	}
+
+	public char getTimeInForce() {
+		return timeInForce;
+	}
+
+	/**
+	 * Fixed-point limit price, see {@link FixedPointPrice}.
+	 * */
+	public long getPrice() {
+		return price;
+	}
+
+	/**
+	 * Fixed-point stop price, see {@link FixedPointPrice}.
+	 * */
+	public long getStopPrice() {
+		return stopPrice;
+	}
+
+	public int getQuantity() {
+		return quantity;
+	}
+
+	/**
+	 * Expiry time of GTD orders, in milliseconds, or {@link OrderExpiry#NEVER}.
+	 * */
+	public long getExpireTime() {
+		return expireTime;
+	}
+
+	public int getCumQty() {
+		return cumQty;
+	}
+
+	public int getLeavesQty() {
+		return quantity - cumQty;
+	}
+
+	public double getAvgPx() {
+		return cumQty == 0 ? 0 : FixedPointPrice.toDouble(cumValue) / cumQty;
+	}
+
+	/**
+	 * True if this order can trade at the given contra price: market orders trade at any price, limit orders at their limit or better.
+	 * */
+	public boolean isPriceAcceptable(final long contraPrice) {
+		if (type != OrdType.LIMIT)
+			return true;
+		return isBuy() ? contraPrice <= price : contraPrice >= price;
+	}
+
+	/**
+	 * Builds the order replacing this one, under a new ClOrdID and with its new quantity and prices, but carrying over the executed quantity.
+	 * Prices set to {@link FixedPointPrice#NONE} are kept.
+	 * */
+	BookOrder replace(final String newClOrdID, final int newQuantity, final long newPrice, final long newStopPrice) {
+		final BookOrder result = new BookOrder(newClOrdID, orderID, sessionID, symbol, symbolId, side, type, timeInForce, 
+				newPrice == FixedPointPrice.NONE ? price : newPrice, newStopPrice == FixedPointPrice.NONE ? stopPrice : newStopPrice, newQuantity, expireTime);
+		result.cumQty = cumQty;
+		result.cumValue = cumValue;
+		return result;
+	}
+
+	/**
+	 * Copy of the order with its executed quantity, but not linked to any book or timer.
+	 * */
+	BookOrder copy() {
+		final BookOrder result = new BookOrder(clOrdID, orderID, sessionID, symbol, symbolId, side, type, timeInForce, price, stopPrice, quantity, expireTime);
+		result.setExecuted(cumQty, cumValue);
+		return result;
+	}
+
+	/**
+	 * Fixed-point value executed so far, i.e. the sum of price times quantity of the fills.
+	 * */
+	long getCumValue() {
+		return cumValue;
+	}
+
+	void setExecuted(final int cumQty, final long cumValue) {
+		this.cumQty = cumQty;
+		this.cumValue = cumValue;
+	}
+
+	void fill(final long fillPrice, final int fillQuantity) {
+		cumQty += fillQuantity;
+		cumValue += fillPrice * fillQuantity;
+	}
+
+	/**
+	 * Expiry timer of the working order, null if it never expires or it's no longer working.
+	 * */
+	TimerWheel.Timer<BookOrder> getExpiryTimer() {
+		return expiryTimer;
+	}
+
+	void setExpiryTimer(final TimerWheel.Timer<BookOrder> expiryTimer) {
+		this.expiryTimer = expiryTimer;
+	}
+
+	@Override
+	public String toString() {
+		return "BookOrder [clOrdID=" + clOrdID + ", orderID=" + orderID + ", symbol=" + symbol + ", side=" + side + ", type=" + type
+				+ ", timeInForce=" + timeInForce + ", price=" + FixedPointPrice.toString(price) + ", stopPrice=" + FixedPointPrice.toString(stopPrice) + ", quantity=" + quantity
+				+ ", cumQty=" + cumQty + "]";
+	}
+}
@@ -0,0 +1,121 @@
+package com.projects.tradingMachine.server;
+
+import com.projects.tradingMachine.utility.FixedPointPrice;
+
+import quickfix.FieldNotFound;
+import quickfix.SessionID;
+import quickfix.field.ClOrdID;
+import quickfix.field.OrderQty;
+import quickfix.field.OrigClOrdID;
+import quickfix.field.Price;
+import quickfix.field.Side;
+import quickfix.field.StopPx;
+import quickfix.field.Symbol;
+
+/**
+ * Incoming OrderCancelRequest or OrderCancelReplaceRequest, pointing to the working order by its OrigClOrdID.
+ * A replace can change quantity, limit and stop price, while side, order type and time in force are kept from the original order.
+ * */
+public final class CancelReplaceRequest {
+	private final String clOrdID;
+	private final String origClOrdID;
+	private final SessionID sessionID;
+	private final String symbol;
+	private final int symbolId;
+	private final char side;
+	private final boolean replace;
+	private final int quantity;
+	private final long price;
+	private final long stopPrice;
+
+	public CancelReplaceRequest(final String clOrdID, final String origClOrdID, final SessionID sessionID, final String symbol, final int symbolId,
+			final char side, final boolean replace, final int quantity, final long price, final long stopPrice) {
+		this.clOrdID = clOrdID;
+		this.origClOrdID = origClOrdID;
+		this.sessionID = sessionID;
+		this.symbol = symbol;
+		this.symbolId = symbolId;
+		this.side = side;
+		this.replace = replace;
+		this.quantity = quantity;
+		this.price = price;
+		this.stopPrice = stopPrice;
+	}
+
+	public static CancelReplaceRequest from(final quickfix.fix50.OrderCancelRequest request, final SessionID sessionID,
+			final MarketDataManager marketDataManager) throws FieldNotFound {
+		final String symbol = request.getString(Symbol.FIELD);
+		return new CancelReplaceRequest(request.getString(ClOrdID.FIELD), request.getString(OrigClOrdID.FIELD), sessionID, symbol,
+				marketDataManager.getSymbolId(symbol), request.getChar(Side.FIELD), false, 0, FixedPointPrice.NONE, FixedPointPrice.NONE);
+	}
+
+	/**
+	 * Prices not set in the request are kept from the original order.
+	 * */
+	public static CancelReplaceRequest from(final quickfix.fix50.OrderCancelReplaceRequest request, final SessionID sessionID,
+			final MarketDataManager marketDataManager) throws FieldNotFound {
+		final String symbol = request.getString(Symbol.FIELD);
+		return new CancelReplaceRequest(request.getString(ClOrdID.FIELD), request.getString(OrigClOrdID.FIELD), sessionID, symbol,
+				marketDataManager.getSymbolId(symbol), request.getChar(Side.FIELD), true, (int)request.getDouble(OrderQty.FIELD),
+				request.isSetField(Price.FIELD) ? FixedPointPrice.fromDouble(request.getDouble(Price.FIELD)) : FixedPointPrice.NONE,
+				request.isSetField(StopPx.FIELD) ? FixedPointPrice.fromDouble(request.getDouble(StopPx.FIELD)) : FixedPointPrice.NONE);
+	}
+
+	public String getClOrdID() {
+		return clOrdID;
+	}
+
+	public String getOrigClOrdID() {
+		return origClOrdID;
+	}
+
+	public SessionID getSessionID() {
+		return sessionID;
+	}
+
+	public String getSymbol() {
+		return symbol;
+	}
+
+	public int getSymbolId() {
+		return symbolId;
+	}
+
+	public char getSide() {
+		return side;
+	}
+
+	/**
+	 * False for a plain cancel.
+	 * */
+	public boolean isReplace() {
+		return replace;
+	}
+
+	/**
+	 * New total order quantity, executed quantity included.
+	 * */
+	public int getQuantity() {
+		return quantity;
+	}
+
+	/**
+	 * New fixed-point limit price or {@link FixedPointPrice#NONE} to keep the current one.
+	 * */
+	public long getPrice() {
+		return price;
+	}
+
+	/**
+	 * New fixed-point stop price or {@link FixedPointPrice#NONE} to keep the current one.
+	 * */
+	public long getStopPrice() {
+		return stopPrice;
+	}
+
+	@Override
+	public String toString() {
+		return "CancelReplaceRequest [clOrdID=" + clOrdID + ", origClOrdID=" + origClOrdID + ", symbol=" + symbol + ", side=" + side + ", replace=" + replace
+				+ ", quantity=" + quantity + ", price=" + FixedPointPrice.toString(price) + ", stopPrice=" + FixedPointPrice.toString(stopPrice) + "]";
+	}
+}
@@ -0,0 +1,251 @@
+package com.projects.tradingMachine.server;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import com.projects.tradingMachine.utility.marketData.MarketData;
+
+import quickfix.SessionID;
+
+/**
+ * Matching engine state as of a journal sequence: working orders, with their place in the book and their expiry, last quotes, auction period
+ * and net filled quantity of each counterparty and symbol.
+ * The order and execution ids don't need to be part of it, since their blocks are reserved on disk, see {@link com.projects.tradingMachine.utility.id.IdGenerator}. Restoring it, then replaying the journal after its sequence, gives back the engine state,
+ * see {@link MatchingEngine#restore(EngineSnapshot)}.
+ * */
+public final class EngineSnapshot {
+	/**
+	 * Where a working order is kept by its book.
+	 * */
+	public enum Place {RESTING, STOP, AWAITING_QUOTE, AUCTION}
+
+	private static final int VERSION = 4;
+
+	private final long journalSequence;
+	private final long time;
+	private final long auctionPeriod;
+	private final List<MarketData> quotes;
+	private final List<WorkingOrder> orders;
+	private final List<Integer> expiryOrder;
+	private final List<Position> positions;
+
+	/**
+	 * @param orders Working orders, in book order.
+	 * @param expiryOrder Indexes of the orders with an expiry, in the order they have to be scheduled.
+	 * @param positions Non-zero net filled quantities.
+	 * */
+	EngineSnapshot(final long journalSequence, final long time, final long auctionPeriod, final List<MarketData> quotes,
+			final List<WorkingOrder> orders, final List<Integer> expiryOrder, final List<Position> positions) {
+		this.journalSequence = journalSequence;
+		this.time = time;
+		this.auctionPeriod = auctionPeriod;
+		this.quotes = quotes;
+		this.orders = orders;
+		this.expiryOrder = expiryOrder;
+		this.positions = positions;
+	}
+
+	/**
+	 * Sequence of the last journal record the snapshot includes.
+	 * */
+	public long getJournalSequence() {
+		return journalSequence;
+	}
+
+	/**
+	 * Engine time, in milliseconds, the snapshot was taken at.
+	 * */
+	public long getTime() {
+		return time;
+	}
+
+	/**
+	 * Call period the engine was in, see {@link AuctionSchedule#getPeriod(long)}.
+	 * */
+	public long getAuctionPeriod() {
+		return auctionPeriod;
+	}
+
+	public int getWorkingOrders() {
+		return orders.size();
+	}
+
+	List<MarketData> getQuotes() {
+		return Collections.unmodifiableList(quotes);
+	}
+
+	List<WorkingOrder> getOrders() {
+		return Collections.unmodifiableList(orders);
+	}
+
+	List<Integer> getExpiryOrder() {
+		return Collections.unmodifiableList(expiryOrder);
+	}
+
+	List<Position> getPositions() {
+		return Collections.unmodifiableList(positions);
+	}
+
+	public void writeTo(final DataOutput out) throws IOException {
+		out.writeInt(VERSION);
+		out.writeLong(journalSequence);
+		out.writeLong(time);
+		out.writeLong(auctionPeriod);
+		out.writeInt(quotes.size());
+		for (final MarketData quote : quotes) {
+			writeString(out, quote.getID());
+			writeString(out, quote.getSymbol());
+			out.writeInt(quote.getSymbolId());
+			out.writeLong(quote.getBidPrice());
+			out.writeLong(quote.getAskPrice());
+			out.writeInt(quote.getBidSize());
+			out.writeInt(quote.getAskSize());
+			out.writeLong(quote.getQuoteTime() == null ? 0 : quote.getQuoteTime().getTime());
+		}
+		out.writeInt(orders.size());
+		for (final WorkingOrder workingOrder : orders) {
+			final BookOrder order = workingOrder.getOrder();
+			writeString(out, order.getClOrdID());
+			writeString(out, order.getOrderID());
+			writeString(out, order.getSessionID() == null ? null : order.getSessionID().toString());
+			writeString(out, order.getSymbol());
+			out.writeInt(order.getSymbolId());
+			out.writeChar(order.getSide());
+			out.writeChar(order.getType());
+			out.writeChar(order.getTimeInForce());
+			out.writeLong(order.getPrice());
+			out.writeLong(order.getStopPrice());
+			out.writeInt(order.getQuantity());
+			out.writeLong(order.getExpireTime());
+			out.writeInt(order.getCumQty());
+			out.writeLong(order.getCumValue());
+			out.writeByte(workingOrder.getPlace().ordinal());
+			out.writeLong(workingOrder.getDeadline());
+		}
+		out.writeInt(expiryOrder.size());
+		for (final int index : expiryOrder)
+			out.writeInt(index);
+		out.writeInt(positions.size());
+		for (final Position position : positions) {
+			writeString(out, position.getCounterparty());
+			writeString(out, position.getSymbol());
+			out.writeLong(position.getQuantity());
+		}
+	}
+
+	public static EngineSnapshot readFrom(final DataInput in) throws IOException {
+		final int version = in.readInt();
+		if (version != VERSION)
+			throw new IOException("Unsupported snapshot version: "+version);
+		final long journalSequence = in.readLong();
+		final long time = in.readLong();
+		final long auctionPeriod = in.readLong();
+		final int quotesNumber = in.readInt();
+		final List<MarketData> quotes = new ArrayList<>(quotesNumber);
+		for (int i = 0; i < quotesNumber; i++) {
+			final String id = readString(in);
+			final String symbol = readString(in);
+			final int symbolId = in.readInt();
+			final long bid = in.readLong();
+			final long ask = in.readLong();
+			final int bidSize = in.readInt();
+			final int askSize = in.readInt();
+			final long quoteTime = in.readLong();
+			quotes.add(new MarketData(id, symbol, symbolId, bid, ask, bidSize, askSize, quoteTime == 0 ? null : new Date(quoteTime)));
+		}
+		final int ordersNumber = in.readInt();
+		final List<WorkingOrder> orders = new ArrayList<>(ordersNumber);
+		for (int i = 0; i < ordersNumber; i++) {
+			final String clOrdID = readString(in);
+			final String orderID = readString(in);
+			final String sessionID = readString(in);
+			final BookOrder order = new BookOrder(clOrdID, orderID, sessionID == null ? null : new SessionID(sessionID), readString(in), in.readInt(),
+					in.readChar(), in.readChar(), in.readChar(), in.readLong(), in.readLong(), in.readInt(), in.readLong());
+			order.setExecuted(in.readInt(), in.readLong());
+			orders.add(new WorkingOrder(order, Place.values()[in.readByte()], in.readLong()));
+		}
+		final int expiries = in.readInt();
+		final List<Integer> expiryOrder = new ArrayList<>(expiries);
+		for (int i = 0; i < expiries; i++)
+			expiryOrder.add(in.readInt());
+		final int positionsNumber = in.readInt();
+		final List<Position> positions = new ArrayList<>(positionsNumber);
+		for (int i = 0; i < positionsNumber; i++)
+			positions.add(new Position(readString(in), readString(in), in.readLong()));
+		return new EngineSnapshot(journalSequence, time, auctionPeriod, quotes, orders, expiryOrder, positions);
+	}
+
+	private static void writeString(final DataOutput out, final String value) throws IOException {
+		out.writeBoolean(value != null);
+		if (value != null)
+			out.writeUTF(value);
+	}
+
+	private static String readString(final DataInput in) throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+
+	static final class WorkingOrder {
+		private final BookOrder order;
+		private final Place place;
+		private final long deadline;
+
+		WorkingOrder(final BookOrder order, final Place place, final long deadline) {
+			this.order = order;
+			this.place = place;
+			this.deadline = deadline;
+		}
+
+		BookOrder getOrder() {
+			return order;
+		}
+
+		Place getPlace() {
+			return place;
+		}
+
+		/**
+		 * Expiry time or {@link OrderExpiry#NEVER}.
+		 * */
+		long getDeadline() {
+			return deadline;
+		}
+	}
+
+	/**
+	 * Net filled quantity of a counterparty in a symbol, negative if short.
+	 * */
+	static final class Position {
+		private final String counterparty;
+		private final String symbol;
+		private final long quantity;
+
+		Position(final String counterparty, final String symbol, final long quantity) {
+			this.counterparty = counterparty;
+			this.symbol = symbol;
+			this.quantity = quantity;
+		}
+
+		String getCounterparty() {
+			return counterparty;
+		}
+
+		String getSymbol() {
+			return symbol;
+		}
+
+		long getQuantity() {
+			return quantity;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "EngineSnapshot [journalSequence=" + journalSequence + ", time=" + time + ", auctionPeriod=" + auctionPeriod + ", quotes=" + quotes.size() + ", workingOrders=" + orders.size() + ", positions=" + positions.size() + "]";
+	}
+}
@@ -0,0 +1,158 @@
+package com.projects.tradingMachine.server;
+
+import com.projects.tradingMachine.utility.id.IdGenerator;
+
+/**
+ * Preallocated outbound ring buffer slot: what the matching engine reported about an order. 
+ * Since the order keeps changing on the matching thread, its quantities and prices are copied at publication time.
+ * The ExecID is encoded into the slot's own buffer, so that giving it out allocates nothing on the matching thread.
+ * */
+public final class ExecutionEvent {
+	public enum Type {NEW, FILL, REJECT, CANCEL, DONE_FOR_DAY, REPLACE, CANCEL_REJECT}
+	private static final int MAX_EXEC_ID_LENGTH = 32;
+	
+	private Type type;
+	private BookOrder order;
+	private CancelReplaceRequest cancelReplaceRequest;
+	private String clOrdID;
+	private String origClOrdID;
+	private int cxlRejReason;
+	private int leavesQty;
+	private int cumQty;
+	private double avgPx;
+	private long lastPx;
+	private int lastQty;
+	private String text;
+	private boolean creditCheckFailed;
+	private final char[] execID = new char[MAX_EXEC_ID_LENGTH];
+	private int execIDLength;
+	private long publishTime; //System.nanoTime(), to measure the wait in the ring buffer.
+	
+	ExecutionEvent set(final Type type, final BookOrder order, final long lastPx, final int lastQty, final String text, final boolean creditCheckFailed) {
+		this.type = type;
+		this.order = order;
+		cancelReplaceRequest = null;
+		clOrdID = order.getClOrdID();
+		origClOrdID = null;
+		leavesQty = order.getLeavesQty();
+		cumQty = order.getCumQty();
+		avgPx = order.getAvgPx();
+		this.lastPx = lastPx;
+		this.lastQty = lastQty;
+		this.text = text;
+		this.creditCheckFailed = creditCheckFailed;
+		publishTime = System.nanoTime();
+		return this;
+	}
+
+	/**
+	 * Reports made on behalf of a cancel or cancel/replace request carry its ClOrdID and the one of the order it pointed to.
+	 * */
+	void setClOrdIDs(final String clOrdID, final String origClOrdID) {
+		this.clOrdID = clOrdID;
+		this.origClOrdID = origClOrdID;
+	}
+
+	void setCancelReject(final CancelReplaceRequest cancelReplaceRequest, final int cxlRejReason, final String text) {
+		type = Type.CANCEL_REJECT;
+		order = null;
+		this.cancelReplaceRequest = cancelReplaceRequest;
+		clOrdID = cancelReplaceRequest.getClOrdID();
+		origClOrdID = cancelReplaceRequest.getOrigClOrdID();
+		this.cxlRejReason = cxlRejReason;
+		leavesQty = cumQty = lastQty = 0;
+		avgPx = lastPx = 0;
+		this.text = text;
+		creditCheckFailed = false;
+		publishTime = System.nanoTime();
+	}
+	
+	void setExecID(final IdGenerator execIds) {
+		execIDLength = execIds.nextId(execID);
+	}
+	
+	long getPublishTime() {
+		return publishTime;
+	}
+	
+	void clear() {
+		order = null;
+		cancelReplaceRequest = null;
+		clOrdID = origClOrdID = text = null;
+		execIDLength = 0;
+	}
+
+	public Type getType() {
+		return type;
+	}
+
+	/**
+	 * Only the order immutable fields (ids, symbol, side, quantity...) can be read from it.
+	 * */
+	public BookOrder getOrder() {
+		return order;
+	}
+
+	/**
+	 * Set for {@link Type#CANCEL_REJECT} events only, when there's no order.
+	 * */
+	public CancelReplaceRequest getCancelReplaceRequest() {
+		return cancelReplaceRequest;
+	}
+
+	/**
+	 * FIX CxlRejReason of {@link Type#CANCEL_REJECT} events.
+	 * */
+	public int getCxlRejReason() {
+		return cxlRejReason;
+	}
+
+	public String getClOrdID() {
+		return clOrdID;
+	}
+
+	/**
+	 * Null unless the report answers a cancel or cancel/replace request.
+	 * */
+	public String getOrigClOrdID() {
+		return origClOrdID;
+	}
+
+	public int getLeavesQty() {
+		return leavesQty;
+	}
+
+	public int getCumQty() {
+		return cumQty;
+	}
+
+	public double getAvgPx() {
+		return avgPx;
+	}
+
+	/**
+	 * Fixed-point last fill price.
+	 * */
+	public long getLastPx() {
+		return lastPx;
+	}
+
+	public int getLastQty() {
+		return lastQty;
+	}
+
+	/**
+	 * @return null if no ExecID has been given.
+	 * */
+	public String getExecID() {
+		return execIDLength == 0 ? null : new String(execID, 0, execIDLength);
+	}
+
+	public String getText() {
+		return text;
+	}
+
+	public boolean isCreditCheckFailed() {
+		return creditCheckFailed;
+	}
+}
@@ -0,0 +1,75 @@
+package com.projects.tradingMachine.server;
+
+import com.projects.tradingMachine.server.pipeline.RingBuffer;
+import com.projects.tradingMachine.utility.id.IdGenerator;
+
+/**
+ * Publishes the matching engine outcome onto the outbound ring buffer, where the execution reports get built and sent by another thread.
+ * Each report gets its ExecID here, from the shard's own generator.
+ * */
+final class ExecutionEventPublisher implements ExecutionListener {
+	private final RingBuffer<ExecutionEvent> ringBuffer;
+	private final IdGenerator execIds;
+	
+	ExecutionEventPublisher(final RingBuffer<ExecutionEvent> ringBuffer, final IdGenerator execIds) {
+		this.ringBuffer = ringBuffer;
+		this.execIds = execIds;
+	}
+
+	@Override
+	public void onNew(final BookOrder order) {
+		publish(ExecutionEvent.Type.NEW, order, 0, 0, "new order", false);
+	}
+
+	@Override
+	public void onFill(final BookOrder order, final long price, final int quantity, final String reference) {
+		publish(ExecutionEvent.Type.FILL, order, price, quantity, reference, false);
+	}
+
+	@Override
+	public void onReject(final BookOrder order, final boolean creditCheckFailed) {
+		publish(ExecutionEvent.Type.REJECT, order, 0, 0, "000000000000", creditCheckFailed);
+	}
+
+	@Override
+	public void onCancel(final BookOrder order, final String reason) {
+		publish(ExecutionEvent.Type.CANCEL, order, 0, 0, reason, false);
+	}
+	
+	@Override
+	public void onDoneForDay(final BookOrder order) {
+		publish(ExecutionEvent.Type.DONE_FOR_DAY, order, 0, 0, "DAY order expired", false);
+	}
+	
+	@Override
+	public void onCancelRequest(final BookOrder order, final String clOrdID) {
+		final long sequence = ringBuffer.next();
+		final ExecutionEvent event = ringBuffer.get(sequence).set(ExecutionEvent.Type.CANCEL, order, 0, 0, "cancelled on request", false);
+		event.setClOrdIDs(clOrdID, order.getClOrdID());
+		event.setExecID(execIds);
+		ringBuffer.publish(sequence);
+	}
+
+	@Override
+	public void onReplace(final BookOrder replacement, final String origClOrdID) {
+		final long sequence = ringBuffer.next();
+		final ExecutionEvent event = ringBuffer.get(sequence).set(ExecutionEvent.Type.REPLACE, replacement, 0, 0, "replaced", false);
+		event.setClOrdIDs(replacement.getClOrdID(), origClOrdID);
+		event.setExecID(execIds);
+		ringBuffer.publish(sequence);
+	}
+
+	@Override
+	public void onCancelReject(final CancelReplaceRequest request, final int cxlRejReason, final String reason) {
+		final long sequence = ringBuffer.next();
+		ringBuffer.get(sequence).setCancelReject(request, cxlRejReason, reason);
+		ringBuffer.publish(sequence);
+	}
+	
+	private void publish(final ExecutionEvent.Type type, final BookOrder order, final long lastPx, final int lastQty, final String text, 
+			final boolean creditCheckFailed) {
+		final long sequence = ringBuffer.next();
+		ringBuffer.get(sequence).set(type, order, lastPx, lastQty, text, creditCheckFailed).setExecID(execIds);
+		ringBuffer.publish(sequence);
+	}
+}
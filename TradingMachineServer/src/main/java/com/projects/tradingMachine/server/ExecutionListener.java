@@ -0,0 +1,70 @@
+package com.projects.tradingMachine.server;
+
+/**
+ * Receives the outcome of the matching engine for each order. The matching engine calls it once the order state has already been updated.
+ * */
+public interface ExecutionListener {
+
+	/**
+	 * The order has been accepted.
+	 * */
+	void onNew(BookOrder order);
+
+	/**
+	 * The order has been filled, either partially or fully.
+	 *
+	 * @param order Filled order.
+	 * @param price Fixed-point fill price.
+	 * @param quantity Fill quantity.
+	 * @param reference What the order traded against: the market data id or the contra order ClOrdID.
+	 */
+	void onFill(BookOrder order, long price, int quantity, String reference);
+
+	/**
+	 * The order, or what's left of it, has been rejected.
+	 *
+	 * @param order Rejected order.
+	 * @param creditCheckFailed True if the rejection is due to the credit check.
+	 */
+	void onReject(BookOrder order, boolean creditCheckFailed);
+
+	/**
+	 * What's left of the order has been cancelled.
+	 *
+	 * @param order Cancelled order.
+	 * @param reason Free text reason.
+	 */
+	void onCancel(BookOrder order, String reason);
+
+	/**
+	 * The DAY order has expired at the end of the trading day, with what's left of it.
+	 *
+	 * @param order Expired order.
+	 */
+	void onDoneForDay(BookOrder order);
+
+	/**
+	 * What's left of the order has been cancelled on request.
+	 *
+	 * @param order Cancelled order.
+	 * @param clOrdID ClOrdID of the OrderCancelRequest.
+	 */
+	void onCancelRequest(BookOrder order, String clOrdID);
+
+	/**
+	 * The order has been replaced, the replacement is then matched as a new order.
+	 *
+	 * @param replacement Order replacing the original one, under the ClOrdID of the OrderCancelReplaceRequest.
+	 * @param origClOrdID ClOrdID of the replaced order.
+	 */
+	void onReplace(BookOrder replacement, String origClOrdID);
+
+	/**
+	 * The cancel or cancel/replace request has been rejected, e.g. the order is no longer working.
+	 *
+	 * @param request Rejected request.
+	 * @param cxlRejReason FIX CxlRejReason value.
+	 * @param reason Free text reason.
+	 */
+	void onCancelReject(CancelReplaceRequest request, int cxlRejReason, String reason);
+}
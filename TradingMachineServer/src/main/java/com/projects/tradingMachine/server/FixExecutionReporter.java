@@ -0,0 +1,180 @@
+package com.projects.tradingMachine.server;
+
+import com.projects.tradingMachine.server.pipeline.EventHandler;
+import com.projects.tradingMachine.utility.FixedPointPrice;
+import com.projects.tradingMachine.utility.Utility;
+
+import quickfix.field.Account;
+import quickfix.field.AvgPx;
+import quickfix.field.ClOrdID;
+import quickfix.field.CumQty;
+import quickfix.field.CxlRejReason;
+import quickfix.field.CxlRejResponseTo;
+import quickfix.field.ExecID;
+import quickfix.field.ExecType;
+import quickfix.field.LastPx;
+import quickfix.field.LastQty;
+import quickfix.field.LeavesQty;
+import quickfix.field.OrdStatus;
+import quickfix.field.OrderID;
+import quickfix.field.OrderQty;
+import quickfix.field.OrigClOrdID;
+import quickfix.field.Price;
+import quickfix.field.Side;
+import quickfix.field.StopPx;
+import quickfix.field.Symbol;
+import quickfix.field.Text;
+
+/**
+ * Last pipeline stage: turns the matching engine outcome into FIX 5.0 execution reports and sends them back to the session the order came from.
+ * */
+public final class FixExecutionReporter implements EventHandler<ExecutionEvent> {
+	private final StageLatencies stageLatencies; //null if not timed.
+	
+	public FixExecutionReporter() {
+		this(null);
+	}
+	
+	/**
+	 * @param stageLatencies Where the wait in the ring buffer, the report build and its sending get timed, null not to time them.
+	 * */
+	public FixExecutionReporter(final StageLatencies stageLatencies) {
+		this.stageLatencies = stageLatencies;
+	}
+
+	@Override
+	public void onEvent(final ExecutionEvent event) {
+		try {
+			long start = stageLatencies != null ? stageLatencies.recordSince(StageLatencies.Stage.REPORT_QUEUE, event.getPublishTime()) : 0;
+			final quickfix.Message report;
+			switch(event.getType()) {
+				case NEW: report = buildNew(event); break;
+				case FILL: report = buildFill(event); break;
+				case REJECT: report = buildReject(event); break;
+				case CANCEL: report = buildCancel(event, ExecType.CANCELED, OrdStatus.CANCELED); break;
+				case DONE_FOR_DAY: report = buildCancel(event, ExecType.DONE_FOR_DAY, OrdStatus.DONE_FOR_DAY); break;
+				case REPLACE: report = buildReplace(event); break;
+				case CANCEL_REJECT: report = buildCancelReject(event); break;
+				default: throw new IllegalArgumentException("Unknown execution event: "+event.getType());
+			}
+			if (stageLatencies != null)
+				start = stageLatencies.recordSince(StageLatencies.Stage.REPORT_BUILD, start);
+			Utility.sendMessage(event.getOrder() != null ? event.getOrder().getSessionID() : event.getCancelReplaceRequest().getSessionID(), report);
+			if (stageLatencies != null)
+				stageLatencies.recordSince(StageLatencies.Stage.SESSION_SEND, start);
+		}
+		finally {
+			event.clear();
+		}
+	}
+	
+	private static quickfix.Message buildNew(final ExecutionEvent event) {
+		final BookOrder order = event.getOrder();
+		final quickfix.fix50.ExecutionReport accept = new quickfix.fix50.ExecutionReport(
+				new OrderID(order.getOrderID()), new ExecID(event.getExecID()), new ExecType(ExecType.FILL), new OrdStatus(OrdStatus.NEW),
+				new Side(order.getSide()), new LeavesQty(event.getLeavesQty()), new CumQty(0));
+		accept.set(new ClOrdID(order.getClOrdID()));
+		accept.set(new Symbol(order.getSymbol()));
+		accept.set(new Text(event.getText()));
+		//注文受付通知
+		return accept;
+	}
+
+	private static quickfix.Message buildFill(final ExecutionEvent event) {
+		final BookOrder order = event.getOrder();
+		final boolean filled = event.getLeavesQty() == 0;
+		//約定通知
+		final quickfix.fix50.ExecutionReport executionReport = new quickfix.fix50.ExecutionReport(
+				new OrderID(order.getOrderID()), new ExecID(event.getExecID()), new ExecType(filled ? ExecType.FILL : ExecType.PARTIAL_FILL),
+				new OrdStatus(filled ? OrdStatus.FILLED : OrdStatus.PARTIALLY_FILLED), new Side(order.getSide()),
+				new LeavesQty(event.getLeavesQty()), new CumQty(event.getCumQty()));
+		executionReport.set(new ClOrdID(order.getClOrdID()));
+		executionReport.set(new Symbol(order.getSymbol()));
+		executionReport.set(new OrderQty(order.getQuantity()));
+		executionReport.set(new Text(event.getText()));
+		executionReport.set(new LastQty(event.getLastQty()));
+		executionReport.set(new LastPx(FixedPointPrice.toDouble(event.getLastPx())));
+		executionReport.set(new AvgPx(event.getAvgPx()));
+		return executionReport;
+	}
+
+	private static quickfix.Message buildReject(final ExecutionEvent event) {
+		final BookOrder order = event.getOrder();
+		final quickfix.fix50.ExecutionReport executionReport = new quickfix.fix50.ExecutionReport(
+				new OrderID(order.getOrderID()), new ExecID(event.getExecID()), new ExecType(ExecType.REJECTED), new OrdStatus(OrdStatus.REJECTED),
+				new Side(order.getSide()), new LeavesQty(event.getLeavesQty()), new CumQty(event.getCumQty()));
+		executionReport.set(new ClOrdID(order.getClOrdID()));
+		executionReport.set(new Text(event.getText()));
+		if (event.isCreditCheckFailed()) {
+			executionReport.set(new Account("Failed Credit Check"));//indicates not enough credit.
+		}
+		return executionReport;
+	}
+
+	/**
+	 * What's left of the order is no longer working, either cancelled or expired at the end of the day.
+	 * */
+	private static quickfix.Message buildCancel(final ExecutionEvent event, final char execType, final char ordStatus) {
+		final BookOrder order = event.getOrder();
+		final quickfix.fix50.ExecutionReport executionReport = new quickfix.fix50.ExecutionReport(
+				new OrderID(order.getOrderID()), new ExecID(event.getExecID()), new ExecType(execType), new OrdStatus(ordStatus),
+				new Side(order.getSide()), new LeavesQty(0), new CumQty(event.getCumQty()));
+		executionReport.set(new ClOrdID(event.getClOrdID()));
+		if (event.getOrigClOrdID() != null)
+			executionReport.set(new OrigClOrdID(event.getOrigClOrdID()));
+		executionReport.set(new Symbol(order.getSymbol()));
+		executionReport.set(new Text(event.getText()));
+		return executionReport;
+	}
+
+	private static quickfix.Message buildReplace(final ExecutionEvent event) {
+		final BookOrder order = event.getOrder();
+		final quickfix.fix50.ExecutionReport executionReport = new quickfix.fix50.ExecutionReport(
+				new OrderID(order.getOrderID()), new ExecID(event.getExecID()), new ExecType(ExecType.REPLACE), 
+				new OrdStatus(event.getCumQty() == 0 ? OrdStatus.NEW : OrdStatus.PARTIALLY_FILLED), new Side(order.getSide()), 
+				new LeavesQty(event.getLeavesQty()), new CumQty(event.getCumQty()));
+		executionReport.set(new ClOrdID(event.getClOrdID()));
+		executionReport.set(new OrigClOrdID(event.getOrigClOrdID()));
+		executionReport.set(new Symbol(order.getSymbol()));
+		executionReport.set(new OrderQty(order.getQuantity()));
+		if (order.getPrice() != FixedPointPrice.NONE)
+			executionReport.set(new Price(FixedPointPrice.toDouble(order.getPrice())));
+		if (order.getStopPrice() != FixedPointPrice.NONE)
+			executionReport.set(new StopPx(FixedPointPrice.toDouble(order.getStopPrice())));
+		executionReport.set(new AvgPx(event.getAvgPx()));
+		executionReport.set(new Text(event.getText()));
+		return executionReport;
+	}
+
+	/**
+	 * The order breached a pre-trade risk limit, it never got to its matching shard, hence no OrderID, see {@link PreTradeRisk}.
+	 * */
+	static quickfix.Message buildRiskReject(final BookOrder order, final String reason) {
+		final quickfix.fix50.ExecutionReport executionReport = new quickfix.fix50.ExecutionReport(
+				new OrderID("NONE"), new ExecID("RISK-"+order.getClOrdID()), new ExecType(ExecType.REJECTED), new OrdStatus(OrdStatus.REJECTED),
+				new Side(order.getSide()), new LeavesQty(0), new CumQty(0));
+		executionReport.set(new ClOrdID(order.getClOrdID()));
+		executionReport.set(new Symbol(order.getSymbol()));
+		executionReport.set(new Text(reason));
+		return executionReport;
+	}
+	
+	static quickfix.Message buildRiskCancelReject(final CancelReplaceRequest request, final String reason) {
+		final quickfix.fix50.OrderCancelReject cancelReject = new quickfix.fix50.OrderCancelReject(new OrderID("NONE"), 
+				new ClOrdID(request.getClOrdID()), new OrigClOrdID(request.getOrigClOrdID()), new OrdStatus(OrdStatus.REJECTED), 
+				new CxlRejResponseTo(request.isReplace() ? CxlRejResponseTo.ORDER_CANCEL_REPLACE_REQUEST : CxlRejResponseTo.ORDER_CANCEL_REQUEST));
+		cancelReject.set(new CxlRejReason(CxlRejReason.OTHER));
+		cancelReject.set(new Text(reason));
+		return cancelReject;
+	}
+	
+	private static quickfix.Message buildCancelReject(final ExecutionEvent event) {
+		final CancelReplaceRequest request = event.getCancelReplaceRequest();
+		final quickfix.fix50.OrderCancelReject cancelReject = new quickfix.fix50.OrderCancelReject(new OrderID("NONE"), 
+				new ClOrdID(event.getClOrdID()), new OrigClOrdID(event.getOrigClOrdID()), new OrdStatus(OrdStatus.REJECTED), 
+				new CxlRejResponseTo(request.isReplace() ? CxlRejResponseTo.ORDER_CANCEL_REPLACE_REQUEST : CxlRejResponseTo.ORDER_CANCEL_REQUEST));
+		cancelReject.set(new CxlRejReason(event.getCxlRejReason()));
+		cancelReject.set(new Text(event.getText()));
+		return cancelReject;
+	}
+}
@@ -1,9 +1,11 @@
 package com.projects.tradingMachine.server;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Properties;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
 
 import javax.jms.JMSException;
 import javax.jms.Message;
@@ -14,52 +16,199 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.projects.tradingMachine.utility.ServiceLifeCycle;
+import com.projects.tradingMachine.utility.SymbolRegistry;
 import com.projects.tradingMachine.utility.TradingMachineMessageConsumer;
 import com.projects.tradingMachine.utility.Utility;
 import com.projects.tradingMachine.utility.Utility.DestinationType;
 import com.projects.tradingMachine.utility.marketData.MarketData;
 
 /**
- *  Receives market data from a given Topic.
+ * Receives market data from one or more Topics, one per venue, and notifies the registered quote listeners once the new quote is stored.
+ * Quotes are kept in a table indexed by the {@link SymbolRegistry} id, so that the matching engine gets them with a single array read.
+ * With several venues, the stored quote of a symbol is the consolidated best bid/offer of the venues, see {@link QuoteTable}: 
+ * listeners, hence the matching engine and its journal, only get consolidated quotes, in the order they were consolidated.
+ * Quotes of symbols not in the registry are dropped.
+ * Configuration parameters:
+ * <ul>
+ *  <li>activeMQ.marketDataTopics: optional comma separated list of topics, one per venue, activeMQ.marketDataTopic being the only one if missing or blank.</li>
+ *  <li>marketData.missingQuotePolicy: what to do with orders of symbols without quote, see {@link MissingQuotePolicy}.</li>
+ * </ul>
  * */
 public class MarketDataManager implements MessageListener, ServiceLifeCycle {
-	private final TradingMachineMessageConsumer marketDataConsumer;
-	private final ConcurrentMap<String, MarketData> marketDataRepository;
+	private final List<TradingMachineMessageConsumer> marketDataConsumers;
+	private final SymbolRegistry symbolRegistry;
+	private final QuoteTable quoteTable;
+	private final MissingQuotePolicy missingQuotePolicy;
+	private final List<QuoteListener> quoteListeners;
 	private final static Logger logger = LoggerFactory.getLogger(MarketDataManager.class);
 	
-	public MarketDataManager(final Properties properties) throws JMSException {
-		marketDataRepository = new ConcurrentHashMap<>();
+	public MarketDataManager(final Properties properties, final SymbolRegistry symbolRegistry) throws JMSException {
+		this.symbolRegistry = symbolRegistry;
+		final String venueTopics = properties.getProperty("activeMQ.marketDataTopics", "");
+		//blank means a single venue.
+		final List<String> topics = parseTopics(venueTopics.trim().isEmpty() ? properties.getProperty("activeMQ.marketDataTopic", "") : venueTopics);
+		quoteTable = new QuoteTable(symbolRegistry.size(), topics.size());
+		missingQuotePolicy = MissingQuotePolicy.valueOf(properties.getProperty("marketData.missingQuotePolicy", MissingQuotePolicy.SYNTHETIC.name()));
+		quoteListeners = new CopyOnWriteArrayList<>();
 		
-		//marketDataTopic 価格データの消費[<= marketDataTopic]
-		marketDataConsumer =  new TradingMachineMessageConsumer(properties.getProperty("activeMQ.url"), properties.getProperty("activeMQ.marketDataTopic"), 
-				DestinationType.Topic, this, "MarketDataManager", null,  null);
+		//marketDataTopic 価格データの消費[<= marketDataTopic], 市場ごとに一つ
+		marketDataConsumers = new ArrayList<>(topics.size());
+		for (int venue = 0; venue < topics.size(); venue++) {
+			final int consumerVenue = venue;
+			marketDataConsumers.add(new TradingMachineMessageConsumer(properties.getProperty("activeMQ.url"), topics.get(venue), 
+					DestinationType.Topic, message -> onMessage(consumerVenue, message), "MarketDataManager", null,  null));
+		}
+		logger.info("Consuming market data from venues "+topics);
+	}
+	
+	private static List<String> parseTopics(final String topics) {
+		final List<String> result = Arrays.stream(topics.split(",")).map(String::trim).filter(s -> !s.isEmpty()).collect(Collectors.toList());
+		if (result.isEmpty())
+			throw new IllegalArgumentException("No market data topic configured.");
+		return result;
+	}
+	
+	/**
+	 * This is used when the quotes are fed in-process by {@link #update(MarketData)}, e.g. by tests and benchmarks, rather than by the topic.
+	 * */
+	public MarketDataManager(final SymbolRegistry symbolRegistry, final MissingQuotePolicy missingQuotePolicy) {
+		this(symbolRegistry, missingQuotePolicy, 1);
+	}
+	
+	/**
+	 * Quotes fed in-process by {@link #update(int, MarketData)}, from the given number of venues.
+	 * */
+	public MarketDataManager(final SymbolRegistry symbolRegistry, final MissingQuotePolicy missingQuotePolicy, final int venues) {
+		this.symbolRegistry = symbolRegistry;
+		quoteTable = new QuoteTable(symbolRegistry.size(), venues);
+		this.missingQuotePolicy = missingQuotePolicy;
+		quoteListeners = new CopyOnWriteArrayList<>();
+		marketDataConsumers = null;
+	}
+	
+	public SymbolRegistry getSymbolRegistry() {
+		return symbolRegistry;
+	}
+	
+	/**
+	 * @return the symbol id or {@link SymbolRegistry#UNKNOWN}.
+	 * */
+	public int getSymbolId(final String symbol) {
+		return symbolRegistry.getId(symbol);
+	}
+	
+	/**
+	 * Gets the latest quote of the symbol.
+	 * 
+	 * @return null if no quote has been received yet, unless the missing quote policy is {@link MissingQuotePolicy#SYNTHETIC}:
+	 * a new random quote then, with the symbol id of this registry. 
+	 * */
+	public MarketData get(final int symbolId, final String symbol) {
+		final MarketData marketData = symbolId == SymbolRegistry.UNKNOWN ? null : quoteTable.get(symbolId);
+		if (marketData == null && missingQuotePolicy == MissingQuotePolicy.SYNTHETIC)
+			return Utility.buildRandomMarketDataItem(symbolId, symbol);
+		return marketData;
 	}
 	
 	public MarketData get(final String symbol) {
-		return marketDataRepository.getOrDefault(symbol, Utility.buildRandomMarketDataItem(symbol));
+		return get(getSymbolId(symbol), symbol);
+	}
+	
+	/**
+	 * @return the latest quote of the symbol, null if none has been received yet, whatever the missing quote policy.
+	 * */
+	public MarketData getQuote(final int symbolId) {
+		return quoteTable.get(symbolId);
+	}
+	
+	/**
+	 * Gets the latest quote of the symbol received from the given venue, not consolidated.
+	 * 
+	 * @return null if the venue hasn't quoted the symbol yet.
+	 * */
+	public MarketData getVenueQuote(final int venue, final String symbol) {
+		final int symbolId = getSymbolId(symbol);
+		return symbolId == SymbolRegistry.UNKNOWN ? null : quoteTable.get(venue, symbolId);
+	}
+	
+	public int getVenues() {
+		return quoteTable.getVenues();
+	}
+	
+	public MissingQuotePolicy getMissingQuotePolicy() {
+		return missingQuotePolicy;
+	}
+	
+	public void addQuoteListener(final QuoteListener quoteListener) {
+		quoteListeners.add(quoteListener);
 	}
 	
+	/**
+	 * Quotes of the first venue.
+	 * */
 	@Override
 	public void onMessage(final Message message) {
+		onMessage(0, message);
+	}
+	
+	private void onMessage(final int venue, final Message message) {
 		//receive from marketDataTopic created by [TradingMachineServices]
 		try {
 			@SuppressWarnings("unchecked")
 			final ArrayList<MarketData> marketDataList = (ArrayList<MarketData>)((ObjectMessage)message).getObject();
 			logger.info(marketDataList.toString());
-			marketDataList.forEach(marketData -> 
-									marketDataRepository.merge(marketData.getSymbol(), marketData, (oldValue, newValue) -> marketData));
+			marketDataList.forEach(marketData -> update(venue, marketData));
 		} catch (final JMSException e) {
 			throw new RuntimeException(e);
 		}
 	}
+	
+	/**
+	 * Quote of the first venue.
+	 * */
+	public void update(final MarketData marketData) {
+		update(0, marketData);
+	}
+	
+	/**
+	 * Stores the new quote of the venue, then notifies the quote listeners of the symbol's quote, consolidated across the venues. 
+	 * The symbol id set by the producer is checked against this registry, the quote gets the right one if they don't match.
+	 * */
+	public void update(final int venue, final MarketData marketData) {
+		final MarketData checkedMarketData;
+		if (symbolRegistry.isId(marketData.getSymbolId(), marketData.getSymbol()))
+			checkedMarketData = marketData;
+		else {
+			final int symbolId = symbolRegistry.getId(marketData.getSymbol());
+			if (symbolId == SymbolRegistry.UNKNOWN) {
+				logger.warn("Dropping market data of unknown symbol: "+marketData);
+				return;
+			}
+			checkedMarketData = marketData.withSymbolId(symbolId);
+		}
+		if (quoteTable.getVenues() == 1) {
+			quoteTable.put(venue, checkedMarketData.getSymbolId(), checkedMarketData);
+			quoteListeners.forEach(quoteListener -> quoteListener.onQuote(checkedMarketData));
+			return;
+		}
+		//venues of the same symbol hand over their consolidated quotes one at a time, so that the listeners never get an outdated one last.
+		synchronized (quoteTable.getLock(checkedMarketData.getSymbolId())) {
+			final MarketData consolidated = quoteTable.put(venue, checkedMarketData.getSymbolId(), checkedMarketData);
+			quoteListeners.forEach(quoteListener -> quoteListener.onQuote(consolidated));
+		}
+	}
 
 	@Override
 	public void start() throws Exception {
-		marketDataConsumer.start();
+		if (marketDataConsumers != null)
+			for (final TradingMachineMessageConsumer marketDataConsumer : marketDataConsumers)
+				marketDataConsumer.start();
 	}
 
 	@Override
 	public void stop() throws Exception {
-		marketDataConsumer.stop();
+		if (marketDataConsumers != null)
+			for (final TradingMachineMessageConsumer marketDataConsumer : marketDataConsumers)
+				marketDataConsumer.stop();
 	}
 }
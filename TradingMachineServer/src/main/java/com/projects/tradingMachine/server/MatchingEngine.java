@@ -1,230 +1,750 @@
 package com.projects.tradingMachine.server;
 
-import java.sql.SQLException;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
 
-import org.apache.commons.dbcp2.BasicDataSource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.projects.tradingMachine.utility.Utility;
-import com.projects.tradingMachine.utility.database.creditCheck.CreditCheck;
+import com.projects.tradingMachine.utility.FixedPointPrice;
+import com.projects.tradingMachine.utility.SymbolRegistry;
 import com.projects.tradingMachine.utility.database.creditCheck.ICreditCheck;
 import com.projects.tradingMachine.utility.marketData.MarketData;
 
-import quickfix.FieldNotFound;
-import quickfix.LogUtil;
-import quickfix.Message;
 import quickfix.SessionID;
-import quickfix.field.Account;
-import quickfix.field.AvgPx;
-import quickfix.field.CumQty;
-import quickfix.field.ExecID;
-import quickfix.field.ExecType;
-import quickfix.field.LastPx;
-import quickfix.field.LastQty;
-import quickfix.field.LeavesQty;
-import quickfix.field.OrdStatus;
+import quickfix.field.CxlRejReason;
 import quickfix.field.OrdType;
-import quickfix.field.OrderID;
-import quickfix.field.Price;
 import quickfix.field.Side;
-import quickfix.field.StopPx;
-import quickfix.field.Symbol;
-import quickfix.field.Text;
 import quickfix.field.TimeInForce;
 
 /**
- * Given an order and a link to the market data manager, it tries to match limit and stop orders based on the current market data. 
- * It always fills market orders unless they are FOK and no immediate fill is possible.
- * The market data provides bid, ask prices and sizes for a given symbol. 
+ * Continuous matching engine keeping a limit order book per symbol, in an array indexed by symbol id.
+ * An incoming market or limit order first crosses the resting orders of the opposite side, in price-time priority,
+ * then what's left of it is matched against the current market data, which provides bid, ask prices and sizes for the symbol.
+ * Limit orders not fully filled rest in the book, unless they are IOC (remainder cancelled) or FOK (rejected when no immediate full fill is possible).
+ * Market orders are always filled unless they are FOK and no immediate fill is possible.
+ * Stop orders are matched against the market data only and, until triggered, they're parked in the book by stop price.
+ * Each market data update re-evaluates only the resting limit and parked stop orders whose price it crosses. 
+ * Orders of symbols without market data are handled according to the {@link MissingQuotePolicy}.
+ * Working DAY and GTD orders are scheduled on a {@link TimerWheel} and, once expired, removed from the book and reported as done for day or cancelled, 
+ * see {@link OrderExpiry}. The wheel is advanced by {@link #onTick(long)}.
+ * Working orders are indexed by session and ClOrdID, so that cancel and cancel/replace requests find them in constant time.
+ * Within the windows of the {@link AuctionSchedule}, matching switches to periodic call auctions: orders and quotes only accumulate,
+ * then each book gets uncrossed in one pass, at the end of every call period, at the price executing the most quantity, the quote's sizes included,
+ * see {@link OrderBook#getAuctionUncross(MarketData)}. Market orders left unfilled are cancelled, as are IOC and FOK orders entered during the call. Once the window is over, the books are re-evaluated against their quotes as on an update.
+ * Every fill of every order, buyer or seller, aggressor or resting, continuous or auction, is credit checked and takes its value off the credit,
+ * as each fill against the market data always did: an order failing the check is rejected, or cancelled if partly filled already, and leaves the book.
+ * Prices are compared as fixed-point longs, see {@link FixedPointPrice}.
+ * The engine matches against the last quote passed in by {@link #onQuote(MarketData)}, falling back to the {@link MarketDataManager} only for symbols 
+ * without one, and takes the time from {@link #setCurrentTime(long)}: given the same inputs, the quotes looked up and the credit check answers, 
+ * it always makes the same decisions, which is what the journal replay relies on. Its state can be saved and restored through an {@link EngineSnapshot}.
+ * The state includes the net filled quantity of each counterparty, i.e. TargetCompID, and symbol, so that the pre-trade risk positions survive restarts, 
+ * see {@link PreTradeRisk#restore(EngineSnapshot)}.
+ * It's not thread safe per symbol: all the orders and quote updates of a given symbol must be passed in by the same thread, see {@link MatchingShards}.
  * */
-public final class MatchingEngine implements Runnable {
+public final class MatchingEngine implements QuoteListener {
 	private static final Logger log = LoggerFactory.getLogger(MatchingEngine.class);
-	
-	private static final AtomicInteger orderIdSequence = new AtomicInteger(0);
-    private static final AtomicInteger execIdSequence = new AtomicInteger(0);
+
     private final MarketDataManager marketDataManager;
-	private final quickfix.fix50.NewOrderSingle order;
-	private final SessionID sessionID;
 	private final ICreditCheck creditCheck;
-    
-	public MatchingEngine(final BasicDataSource creditCheckConnectionPool, final MarketDataManager marketDataManager, final quickfix.fix50.NewOrderSingle order, final SessionID sessionID) throws NumberFormatException, ClassNotFoundException, SQLException {
-		this.marketDataManager = marketDataManager;
-		this.order = order;
-		this.sessionID = sessionID;
-		creditCheck = new CreditCheck(creditCheckConnectionPool.getConnection());
-	}
-	
+	private final ExecutionListener executionListener;
+	private final SymbolRegistry symbolRegistry;
+	private final OrderBook[] orderBooks;
+	private final OrderExpiry orderExpiry;
+	private final TimerWheel<BookOrder> expiryWheel;
+	private final Map<SessionID, Map<String, BookOrder>> workingOrders;
+	private final Map<String, long[]> positions; //net filled quantity per counterparty, indexed by symbol id.
+	private final MarketData[] quotes; //last quote per symbol id.
+	private final QuoteListener quoteObserver;
+	private final AuctionSchedule auctionSchedule;
+	private final StageLatencies stageLatencies; //null if not timed.
+	private long currentTime;
+	private long auctionPeriod; //AuctionSchedule.CONTINUOUS outside the auction windows.
+	private long auctionPeriodEnd;
+
+	private MatchingEngine(final Builder builder) {
+		marketDataManager = builder.marketDataManager;
+		creditCheck = builder.creditCheck;
+		executionListener = builder.executionListener;
+		orderExpiry = builder.orderExpiry;
+		symbolRegistry = marketDataManager.getSymbolRegistry();
+		orderBooks = new OrderBook[symbolRegistry.size()]; //indexed by symbol id.
+		expiryWheel = orderExpiry.newTimerWheel(builder.startTime);
+		workingOrders = new HashMap<>();
+		positions = new HashMap<>();
+		quotes = new MarketData[symbolRegistry.size()];
+		quoteObserver = builder.quoteObserver;
+		stageLatencies = builder.stageLatencies;
+		auctionSchedule = builder.auctionSchedule;
+		currentTime = builder.startTime;
+		auctionPeriod = AuctionSchedule.CONTINUOUS;
+		auctionPeriodEnd = Long.MIN_VALUE;
+	}
+
+	/**
+	 * @return the builder of an engine with the default order expiry, no auction windows, no quote observer and no stage timings, 
+	 * starting at the current time.
+	 * */
+	public static Builder builder(final MarketDataManager marketDataManager, final ICreditCheck creditCheck, final ExecutionListener executionListener) {
+		return new Builder(marketDataManager, creditCheck, executionListener);
+	}
+
+	/**
+	 * Time, in milliseconds, the next events are handled at, e.g. when DAY orders get their expiry.
+	 * */
+	public void setCurrentTime(final long currentTime) {
+		this.currentTime = currentTime;
+	}
+
+	/**
+	 * Accepts the order and tries to fill it straight away.
+	 * */
+	public void onNewOrder(final BookOrder order) {
+		checkAuctionPeriod();
+		executionListener.onNew(order);
+		if (order.getSymbolId() == SymbolRegistry.UNKNOWN) {
+			log.info("Unknown symbol "+order.getSymbol()+", rejecting order "+order.getClOrdID());
+			executionListener.onReject(order, false);
+			return;
+		}
+		submit(order);
+	}
+
+	/**
+	 * Cancels or replaces the working order the request points to. A replaced order loses its time priority and gets matched again, 
+	 * as if it were new, with its executed quantity carried over.
+	 * */
+	public void onCancelReplace(final CancelReplaceRequest request) {
+		checkAuctionPeriod();
+		final BookOrder order = getWorkingOrder(request.getSessionID(), request.getOrigClOrdID());
+		if (order == null || order.getSymbolId() != request.getSymbolId()) {
+			log.info("Unknown order "+request.getOrigClOrdID()+", rejecting "+request);
+			executionListener.onCancelReject(request, CxlRejReason.UNKNOWN_ORDER, "Unknown order");
+			return;
+		}
+		if (request.isReplace() && request.getQuantity() <= order.getCumQty()) {
+			executionListener.onCancelReject(request, CxlRejReason.OTHER, "Order quantity not above executed quantity");
+			return;
+		}
+		orderBooks[order.getSymbolId()].removeWorking(order);
+		stopWorking(order);
+		if (!request.isReplace()) {
+			executionListener.onCancelRequest(order, request.getClOrdID());
+			return;
+		}
+		final BookOrder replacement = order.replace(request.getClOrdID(), request.getQuantity(), request.getPrice(), request.getStopPrice());
+		executionListener.onReplace(replacement, order.getClOrdID());
+		submit(replacement);
+	}
+
+	private void submit(final BookOrder order) {
+		final OrderBook orderBook = getOrCreateOrderBook(order);
+		if (auctionPeriod != AuctionSchedule.CONTINUOUS) {
+			collect(orderBook, order);
+			return;
+		}
+		try {
+			final long lookupStart = stageLatencies != null ? System.nanoTime() : 0;
+			final MarketData marketData = getQuote(order.getSymbolId(), order.getSymbol());
+			if (stageLatencies != null)
+				stageLatencies.recordSince(StageLatencies.Stage.QUOTE_LOOKUP, lookupStart);
+			if (marketData == null)
+				onMissingQuote(orderBook, order);
+			else
+				match(orderBook, order, marketData);
+		}
+		catch(final Exception e) {
+			log.warn("Unable to match order "+order+", due to: "+e.getMessage(), e);
+		}
+	}
+
+	private OrderBook getOrCreateOrderBook(final BookOrder order) {
+		OrderBook result = orderBooks[order.getSymbolId()];
+		if (result == null)
+			result = orderBooks[order.getSymbolId()] = new OrderBook(order.getSymbol());
+		return result;
+	}
+
+	/**
+	 * Looks the quote up from the {@link MarketDataManager} the first time, then keeps it until the next one is passed in.
+	 * A synthetic quote is kept as well, until the first real one replaces it, so that the symbol's orders are all matched against the same prices
+	 * and the journal replay, which only sees the quotes looked up, rebuilds the same fills.
+	 * */
+	private MarketData getQuote(final int symbolId, final String symbol) {
+		MarketData result = quotes[symbolId];
+		if (result == null && (result = marketDataManager.get(symbolId, symbol)) != null) {
+			quotes[symbolId] = result;
+			if (quoteObserver != null)
+				quoteObserver.onQuote(result);
+		}
+		return result;
+	}
+
+	private void match(final OrderBook orderBook, final BookOrder order, final MarketData marketData) {
+		if (order.getType() == OrdType.STOP)
+			matchStopOrder(orderBook, order, marketData);
+		else
+			match(orderBook, order, getMarketPriceQuantity(order, marketData));
+	}
+
+	private void onMissingQuote(final OrderBook orderBook, final BookOrder order) {
+		switch(marketDataManager.getMissingQuotePolicy()) {
+			case WAIT:
+				orderBook.addAwaitingQuote(order);
+				startWorking(order);
+				break;
+			default:
+				log.info("No market data for "+order.getSymbol()+", rejecting order "+order.getClOrdID());
+				executionListener.onReject(order, false);
+		}
+	}
+
+	/**
+	 * Fills the parked stop orders triggered by the new market data, then the resting limit orders it makes marketable.
+	 * The market data symbol id must be the one of the {@link MarketDataManager} registry.
+	 * Finally, the orders held waiting for the first quote of the symbol get matched.
+	 * */
 	@Override
-	public void run() {
+	public void onQuote(final MarketData marketData) {
+		checkAuctionPeriod();
+		quotes[marketData.getSymbolId()] = marketData;
+		final OrderBook orderBook = orderBooks[marketData.getSymbolId()];
+		if (orderBook == null || auctionPeriod != AuctionSchedule.CONTINUOUS)
+			return;
+		evaluate(orderBook, marketData);
+	}
+
+	private void evaluate(final OrderBook orderBook, final MarketData marketData) {
 		try {
-            final quickfix.fix50.ExecutionReport accept = new quickfix.fix50.ExecutionReport(
-            		buildOrderID(), buildExecID(), new ExecType(ExecType.FILL), new OrdStatus(OrdStatus.NEW), order.getSide(), 
-            		new LeavesQty(order.getOrderQty().getValue()), new CumQty(0));
-            
-            accept.set(order.getClOrdID());
-            accept.set(order.getSymbol());
-            accept.set(new Text("new order"));
-            //注文受付通知
-            Utility.sendMessage(sessionID, accept);
-            
-            //try to fill now.
-            final PriceQuantity priceQuantity = findPriceAndQuantity(order, 100);
-            if (priceQuantity != null) {
-            	if (!creditCheck.hasEnoughCredit(priceQuantity.getValue())) 
-            		sendReject(order, sessionID, true);
-            	else {
-            		//約定通知
-            		final quickfix.fix50.ExecutionReport executionReport = new quickfix.fix50.ExecutionReport(
-                            buildOrderID(), buildExecID(), new ExecType(ExecType.FILL), new OrdStatus(
-                                    OrdStatus.FILLED), order.getSide(), new LeavesQty(0), new CumQty(priceQuantity.getQuantity()));
-                    executionReport.set(order.getClOrdID());
-                    executionReport.set(order.getSymbol());
-                    executionReport.set(order.getOrderQty());
-                    executionReport.set(new Text(String.valueOf(priceQuantity.getMarketDataId())));
-                    executionReport.set(new LastQty(priceQuantity.getQuantity()));
-                    executionReport.set(new LastPx(priceQuantity.getPrice()));
-                    executionReport.set(new AvgPx(priceQuantity.getPrice()));
-                    creditCheck.setCredit(-priceQuantity.getValue());
-                    Utility.sendMessage(sessionID, executionReport);
-            	}
-            }
-            else //order rejected.
-            	sendReject(order, sessionID, false);
-        } catch (final Exception e) {
-            LogUtil.logThrowable(sessionID, e.getMessage(), e);
-        }
-		finally {
-			try {
-				creditCheck.closeConnection();
-			} catch (final SQLException e) {
-				log.warn("Unable to close credit check database connection:\n"+e.getMessage());
+			for (final BookOrder order : orderBook.getTriggeredStops(marketData.getBidPrice(), marketData.getAskPrice())) {
+				final PriceQuantity marketPriceQuantity = getMarketPriceQuantity(order, marketData);
+				if (isFillable(order, marketPriceQuantity, order.getLeavesQty())) {
+					log.info("Found filling price for stop order, market price: "+FixedPointPrice.toString(marketPriceQuantity.getPrice())
+							+", stop price: "+FixedPointPrice.toString(order.getStopPrice()));
+					orderBook.removeStop(order);
+					stopWorking(order);
+					fillAgainstMarketData(order, marketPriceQuantity);
+				}
+			}
+			for (final BookOrder order : orderBook.getMarketableOrders(marketData.getBidPrice(), marketData.getAskPrice())) {
+				final PriceQuantity marketPriceQuantity = getMarketPriceQuantity(order, marketData);
+				if (isFillable(order, marketPriceQuantity, order.getLeavesQty())) {
+					orderBook.remove(order);
+					stopWorking(order);
+					fillAgainstMarketData(order, marketPriceQuantity);
+				}
+			}
+			for (final BookOrder order : orderBook.drainAwaitingQuote()) {
+				stopWorking(order);
+				match(orderBook, order, marketData);
+			}
+		}
+		catch(final Exception e) {
+			log.warn("Unable to match orders on "+marketData+", due to: "+e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Expires the working orders whose deadline is up to the given time.
+	 * */
+	public void onTick(final long now) {
+		currentTime = now;
+		checkAuctionPeriod();
+		try {
+			expiryWheel.advance(now, this::expire);
+		}
+		catch(final Exception e) {
+			log.warn("Unable to expire orders, due to: "+e.getMessage(), e);
+		}
+	}
+
+	private void expire(final BookOrder order) {
+		order.setExpiryTimer(null);
+		if (!orderBooks[order.getSymbolId()].removeWorking(order))
+			return;
+		stopWorking(order);
+		log.info("Expired order "+order.getClOrdID());
+		if (order.getTimeInForce() == TimeInForce.DAY)
+			executionListener.onDoneForDay(order);
+		else
+			executionListener.onCancel(order, "GTD order expired");
+	}
+
+	/**
+	 * Uncrosses the books as soon as the current time leaves the call period, then re-evaluates them if matching goes back to continuous.
+	 * */
+	private void checkAuctionPeriod() {
+		if (currentTime < auctionPeriodEnd)
+			return;
+		final long period = auctionSchedule.getPeriod(currentTime);
+		auctionPeriodEnd = auctionSchedule.getPeriodEnd(currentTime);
+		if (period == auctionPeriod)
+			return;
+		final long previousPeriod = auctionPeriod;
+		auctionPeriod = period;
+		if (previousPeriod == AuctionSchedule.CONTINUOUS) {
+			log.info("Auction call started");
+			return;
+		}
+		for (int symbolId = 0; symbolId < orderBooks.length; symbolId++)
+			if (orderBooks[symbolId] != null && !orderBooks[symbolId].isEmpty())
+				uncross(symbolId, orderBooks[symbolId]);
+		if (period != AuctionSchedule.CONTINUOUS)
+			return;
+		log.info("Back to continuous matching");
+		for (int symbolId = 0; symbolId < orderBooks.length; symbolId++)
+			if (orderBooks[symbolId] != null && !orderBooks[symbolId].isEmpty() && quotes[symbolId] != null)
+				evaluate(orderBooks[symbolId], quotes[symbolId]);
+	}
+
+	/**
+	 * Adds the order to the call auction: limit orders rest in the book even if they cross it, market orders are held until the uncross
+	 * and stop orders get parked.
+	 * */
+	private void collect(final OrderBook orderBook, final BookOrder order) {
+		if (order.getTimeInForce() == TimeInForce.IMMEDIATE_OR_CANCEL || order.getTimeInForce() == TimeInForce.FILL_OR_KILL) {
+			executionListener.onCancel(order, "IOC/ FOK orders can't join the auction call");
+			return;
+		}
+		switch(order.getType()) {
+			case OrdType.LIMIT: orderBook.add(order); break;
+			case OrdType.STOP: orderBook.addStop(order); break;
+			default: orderBook.addAuctionMarketOrder(order);
+		}
+		startWorking(order);
+	}
+
+	/**
+	 * Executes the book's auction at the uncross price: the buyers, then the sellers, in priority order, up to the quantity the other side, 
+	 * including the quote, can take. The market orders left are cancelled.
+	 * Both sides are credit checked as in continuous matching: the quantity an order failing the check doesn't trade is left to the quote, 
+	 * as any fill against the market data.
+	 * */
+	private void uncross(final int symbolId, final OrderBook orderBook) {
+		try {
+			final MarketData quote = getQuote(symbolId, orderBook.getSymbol());
+			final OrderBook.Uncross uncross = orderBook.getAuctionUncross(quote);
+			if (uncross != null) {
+				log.info("Uncrossing "+orderBook.getSymbol()+", "+uncross);
+				final long price = uncross.getPrice();
+				final List<BookOrder> buyers = orderBook.getAuctionParticipants(true, price);
+				final List<BookOrder> sellers = orderBook.getAuctionParticipants(false, price);
+				final boolean quoted = quote != null && quote.getBidPrice() != FixedPointPrice.NONE && quote.getAskPrice() != FixedPointPrice.NONE 
+						&& quote.getBidPrice() < quote.getAskPrice();
+				final long quoteDemand = quoted && quote.getBidPrice() >= price ? quote.getBidSize() : 0;
+				final long bought = fill(orderBook, buyers, Math.min(getLeavesQty(buyers), uncross.getVolume()), price);
+				fill(orderBook, sellers, Math.min(getLeavesQty(sellers), bought + quoteDemand), price);
+			}
+			for (final BookOrder order : orderBook.drainAuctionMarketOrders()) {
+				stopWorking(order);
+				if (order.getLeavesQty() > 0)
+					executionListener.onCancel(order, "Market order not filled by the auction");
+			}
+		}
+		catch(final Exception e) {
+			log.warn("Unable to uncross "+orderBook+", due to: "+e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * @return the quantity filled, less than the given one if some orders failed the credit check.
+	 * */
+	private long fill(final OrderBook orderBook, final List<BookOrder> orders, final long quantity, final long price) {
+		long remaining = quantity;
+		for (final BookOrder order : orders) {
+			if (remaining == 0)
+				break;
+			final int fillQuantity = (int)Math.min(order.getLeavesQty(), remaining);
+			if (!hasEnoughCredit(order, price, fillQuantity)) {
+				orderBook.removeWorking(order);
+				stopWorking(order);
+				continue;
+			}
+			order.fill(price, fillQuantity);
+			remaining -= fillQuantity;
+			if (order.getLeavesQty() == 0 && order.getType() != OrdType.MARKET) {
+				orderBook.remove(order);
+				stopWorking(order);
+			}
+			onFill(order, price, fillQuantity, "auction");
+		}
+		return quantity - remaining;
+	}
+
+	private static long getLeavesQty(final List<BookOrder> orders) {
+		long result = 0;
+		for (final BookOrder order : orders)
+			result += order.getLeavesQty();
+		return result;
+	}
+
+	/**
+	 * Indexes the order, which has just been added to its book, and schedules its expiry.
+	 * */
+	private void startWorking(final BookOrder order) {
+		index(order);
+		final long deadline = orderExpiry.getDeadline(order, currentTime);
+		if (deadline != OrderExpiry.NEVER)
+			order.setExpiryTimer(expiryWheel.schedule(deadline, order));
+	}
+
+	private void index(final BookOrder order) {
+		workingOrders.computeIfAbsent(order.getSessionID(), sessionID -> new HashMap<>()).put(order.getClOrdID(), order);
+	}
+
+	/**
+	 * Called as soon as the order stops working, so that neither the index nor the wheel hold it any longer.
+	 * */
+	private void stopWorking(final BookOrder order) {
+		final Map<String, BookOrder> sessionOrders = workingOrders.get(order.getSessionID());
+		if (sessionOrders != null)
+			sessionOrders.remove(order.getClOrdID(), order);
+		final TimerWheel.Timer<BookOrder> expiryTimer = order.getExpiryTimer();
+		if (expiryTimer != null) {
+			expiryWheel.cancel(expiryTimer);
+			order.setExpiryTimer(null);
+		}
+	}
+
+	private BookOrder getWorkingOrder(final SessionID sessionID, final String clOrdID) {
+		final Map<String, BookOrder> sessionOrders = workingOrders.get(sessionID);
+		return sessionOrders == null ? null : sessionOrders.get(clOrdID);
+	}
+
+	/**
+	 * Takes the engine state, it must be called by the thread passing the events in.
+	 *
+	 * @param journalSequence Last journal record the state includes.
+	 * */
+	public EngineSnapshot snapshot(final long journalSequence) {
+		final List<MarketData> quoteList = new ArrayList<>();
+		for (int symbolId = 0; symbolId < quotes.length; symbolId++)
+			if (quotes[symbolId] != null)
+				quoteList.add(quotes[symbolId].getSymbolId() == symbolId ? quotes[symbolId] : quotes[symbolId].withSymbolId(symbolId));
+		final List<EngineSnapshot.WorkingOrder> orders = new ArrayList<>();
+		final Map<BookOrder, Integer> indexes = new IdentityHashMap<>();
+		for (final OrderBook orderBook : orderBooks) {
+			if (orderBook == null)
+				continue;
+			addWorkingOrders(orderBook.getRestingOrders(), EngineSnapshot.Place.RESTING, orders, indexes);
+			addWorkingOrders(orderBook.getStopOrders(), EngineSnapshot.Place.STOP, orders, indexes);
+			addWorkingOrders(orderBook.getOrdersAwaitingQuote(), EngineSnapshot.Place.AWAITING_QUOTE, orders, indexes);
+			addWorkingOrders(orderBook.getAuctionMarketOrders(), EngineSnapshot.Place.AUCTION, orders, indexes);
+		}
+		final List<Integer> expiryOrder = new ArrayList<>();
+		expiryWheel.forEach(timer -> expiryOrder.add(indexes.get(timer.getPayload())));
+		final List<EngineSnapshot.Position> positionList = new ArrayList<>();
+		positions.forEach((counterparty, quantities) -> {
+			for (int symbolId = 0; symbolId < quantities.length; symbolId++)
+				if (quantities[symbolId] != 0)
+					positionList.add(new EngineSnapshot.Position(counterparty, symbolRegistry.getSymbol(symbolId), quantities[symbolId]));
+		});
+		return new EngineSnapshot(journalSequence, currentTime, auctionPeriod, quoteList, orders, expiryOrder, positionList);
+	}
+
+	private static void addWorkingOrders(final List<BookOrder> bookOrders, final EngineSnapshot.Place place, final List<EngineSnapshot.WorkingOrder> orders, 
+			final Map<BookOrder, Integer> indexes) {
+		for (final BookOrder order : bookOrders) {
+			indexes.put(order, orders.size());
+			orders.add(new EngineSnapshot.WorkingOrder(order.copy(), place, order.getExpiryTimer() == null ? OrderExpiry.NEVER : order.getExpiryTimer().getDeadline()));
+		}
+	}
+
+	/**
+	 * Loads the snapshot state into this engine, which must have no working orders yet. The orders are copied, so the snapshot can be restored more than once.
+	 * Quotes and positions are put back by symbol, whatever the symbol id they were saved with, those of symbols no longer in the registry being skipped.
+	 * */
+	public void restore(final EngineSnapshot snapshot) {
+		currentTime = snapshot.getTime();
+		auctionPeriod = snapshot.getAuctionPeriod();
+		auctionPeriodEnd = Long.MIN_VALUE;
+		for (final MarketData quote : snapshot.getQuotes()) {
+			final int symbolId = symbolRegistry.getId(quote.getSymbol());
+			if (symbolId == SymbolRegistry.UNKNOWN) {
+				log.warn("Skipping the snapshot quote of unknown symbol "+quote.getSymbol());
+				continue;
+			}
+			quotes[symbolId] = quote.getSymbolId() == symbolId ? quote : quote.withSymbolId(symbolId);
+		}
+		final List<EngineSnapshot.WorkingOrder> orders = snapshot.getOrders();
+		final BookOrder[] restored = new BookOrder[orders.size()];
+		for (int i = 0; i < restored.length; i++) {
+			final BookOrder order = restored[i] = orders.get(i).getOrder().copy();
+			final OrderBook orderBook = getOrCreateOrderBook(order);
+			switch(orders.get(i).getPlace()) {
+				case RESTING: orderBook.add(order); break;
+				case STOP: orderBook.addStop(order); break;
+				case AWAITING_QUOTE: orderBook.addAwaitingQuote(order); break;
+				case AUCTION: orderBook.addAuctionMarketOrder(order); break;
+			}
+			index(order);
+		}
+		for (final int index : snapshot.getExpiryOrder())
+			restored[index].setExpiryTimer(expiryWheel.schedule(orders.get(index).getDeadline(), restored[index]));
+		for (final EngineSnapshot.Position position : snapshot.getPositions()) {
+			final int symbolId = symbolRegistry.getId(position.getSymbol());
+			if (symbolId == SymbolRegistry.UNKNOWN) {
+				log.warn("Skipping the snapshot position of unknown symbol "+position.getSymbol());
+				continue;
 			}
+			positions.computeIfAbsent(position.getCounterparty(), counterparty -> new long[orderBooks.length])[symbolId] += position.getQuantity();
 		}
+		log.info("Restored "+snapshot);
 	}
-	
-	private static void sendReject(final quickfix.fix50.NewOrderSingle  order, final SessionID sessionID, final boolean creditCheckFailed) throws FieldNotFound {
-		final quickfix.fix50.ExecutionReport executionReport = new quickfix.fix50.ExecutionReport(
-                buildOrderID(), buildExecID(), new ExecType(ExecType.REJECTED), new OrdStatus(OrdStatus.REJECTED), 
-                order.getSide(), new LeavesQty(order.getOrderQty().getValue()), new CumQty(0));
-    	executionReport.set(order.getClOrdID());
-    	executionReport.set(new Text("000000000000"));
-    	if (creditCheckFailed) {
-            executionReport.set(new Account("Failed Credit Check"));//indicates not enough credit.
-    	}
-    	Utility.sendMessage(sessionID, executionReport);
-	}
-	
-	private PriceQuantity findPriceAndQuantity(final quickfix.fix50.NewOrderSingle order, final int maxNrTrials) throws FieldNotFound, InterruptedException {
-		int counter = 0;
-		final int orderQuantity = (int)(order.getOrderQty().getValue());
-		switch(order.getChar(OrdType.FIELD)) {
+
+	/**
+	 * Number of working orders scheduled to expire.
+	 * */
+	public int getScheduledExpiries() {
+		return expiryWheel.size();
+	}
+
+	public OrderBook getOrderBook(final String symbol) {
+		final int symbolId = symbolRegistry.getId(symbol);
+		return symbolId == SymbolRegistry.UNKNOWN ? null : orderBooks[symbolId];
+	}
+
+	private void match(final OrderBook orderBook, final BookOrder order, final PriceQuantity marketPriceQuantity) {
+		if (order.getTimeInForce() == TimeInForce.FILL_OR_KILL && !isFullyFillable(orderBook, order, marketPriceQuantity)) {
+			executionListener.onReject(order, false);
+			return;
+		}
+		//internal crossing against the resting orders.
+		BookOrder resting;
+		while (order.getLeavesQty() > 0 && (resting = orderBook.getBestContra(order)) != null && order.isPriceAcceptable(resting.getPrice())) {
+			final int quantity = Math.min(order.getLeavesQty(), resting.getLeavesQty());
+			if (!hasEnoughCredit(order, resting.getPrice(), quantity))
+				return;
+			if (!hasEnoughCredit(resting, resting.getPrice(), quantity)) {
+				releaseCredit(resting.getPrice(), quantity); //the aggressor doesn't trade with it after all.
+				orderBook.remove(resting);
+				stopWorking(resting);
+				continue;
+			}
+			order.fill(resting.getPrice(), quantity);
+			resting.fill(resting.getPrice(), quantity);
+			if (resting.getLeavesQty() == 0) {
+				orderBook.remove(resting);
+				stopWorking(resting);
+			}
+			log.info("Crossed "+order.getClOrdID()+" with "+resting.getClOrdID()+", price: "+FixedPointPrice.toString(resting.getPrice())+", quantity: "+quantity);
+			onFill(resting, resting.getPrice(), quantity, order.getClOrdID());
+			onFill(order, resting.getPrice(), quantity, resting.getClOrdID());
+		}
+		//then against the market data.
+		if (order.getLeavesQty() > 0 && isFillable(order, marketPriceQuantity, order.getLeavesQty())) {
+			if (!fillAgainstMarketData(order, marketPriceQuantity))
+				return;
+		}
+		if (order.getLeavesQty() > 0) {
+			if (order.getTimeInForce() == TimeInForce.IMMEDIATE_OR_CANCEL)
+				executionListener.onCancel(order, "IOC order not fully filled");
+			else {
+				orderBook.add(order);
+				startWorking(order);
+			}
+		}
+	}
+
+	/**
+	 * Fills the stop order if the current market data already triggers it, otherwise it gets parked.
+	 * */
+	private void matchStopOrder(final OrderBook orderBook, final BookOrder order, final MarketData marketData) {
+		final PriceQuantity marketPriceQuantity = getMarketPriceQuantity(order, marketData);
+		if (isFillable(order, marketPriceQuantity, order.getLeavesQty())) {
+			log.info("Found filling price for stop order, market price: "+FixedPointPrice.toString(marketPriceQuantity.getPrice())
+							+", stop price: "+FixedPointPrice.toString(order.getStopPrice()));
+			fillAgainstMarketData(order, marketPriceQuantity);
+		}
+		else {
+			orderBook.addStop(order);
+			startWorking(order);
+		}
+	}
+
+	/**
+	 * FOK orders need the whole quantity to be available from the book and the market data, before any fill takes place.
+	 * */
+	private static boolean isFullyFillable(final OrderBook orderBook, final BookOrder order, final PriceQuantity marketPriceQuantity) {
+		final int remainingQuantity = order.getLeavesQty() - orderBook.getContraQuantity(order);
+		return remainingQuantity <= 0 || isFillable(order, marketPriceQuantity, remainingQuantity);
+	}
+
+	/**
+	 * Checks whether the given quantity of the order can be filled at the market price.
+	 * */
+	private static boolean isFillable(final BookOrder order, final PriceQuantity marketPriceQuantity, final int quantity) {
+		switch(order.getType()) {
 		case OrdType.LIMIT: //指値
-			final double limitPrice = order.getDouble(Price.FIELD);
-        	//loop until the limit order price is executable.
-        	final char limitOrderSide = order.getChar(Side.FIELD);
-        	while(counter < maxNrTrials) {
-        		final PriceQuantity marketPriceQuantity = getMarketPriceQuantity(order);
-        		if (
-        			 (
-        				   (limitOrderSide == Side.BUY && Double.compare(marketPriceQuantity.getPrice(), limitPrice) < 0)   //買注文の価格＞＝最良売気配
-                        || (limitOrderSide == Side.SELL && Double.compare(marketPriceQuantity.getPrice(), limitPrice) > 0)) //売注文の価格＜＝最良買気配
-        			  && (orderQuantity >= marketPriceQuantity.getQuantity())  //売買数量＞＝最良気配数量
-        		){
-        			log.info("Found filling price/ quantity for limit order, market price: "+marketPriceQuantity.getPrice()+", "
-        					+ "limit price: "+limitPrice+", quantity: "+orderQuantity);
-        			return new PriceQuantity(marketPriceQuantity.getPrice(), orderQuantity, marketPriceQuantity.getMarketDataId());
-        		}
-        		else {
-        			//FOK
-        			if (order.getChar(TimeInForce.FIELD) == TimeInForce.FILL_OR_KILL) {
-        				return null;
-        			}
-        			log.debug("Looping to find filling price for limit order, market price: "+marketPriceQuantity.getQuantity()+", limit price: "+limitPrice);
-        			Thread.sleep(500);
-        			counter++;
-        		}
-        	}
-        	return null; //price/ quantity not found.
+			final long limitPrice = order.getPrice();
+			final boolean fillable =
+					(
+					   (order.getSide() == Side.BUY && marketPriceQuantity.getPrice() < limitPrice)   //買注文の価格＞＝最良売気配
+	                || (order.getSide() == Side.SELL && marketPriceQuantity.getPrice() > limitPrice)) //売注文の価格＜＝最良買気配
+				  && (quantity >= marketPriceQuantity.getQuantity());  //売買数量＞＝最良気配数量
+			if (fillable)
+				log.info("Found filling price/ quantity for limit order, market price: "+FixedPointPrice.toString(marketPriceQuantity.getPrice())+", "
+						+ "limit price: "+FixedPointPrice.toString(limitPrice)+", quantity: "+quantity);
+			return fillable;
 		case OrdType.STOP: //逆指値
-			final double stopPrice = order.getDouble(StopPx.FIELD);
-    		//loop until the stop order price is executable.
-        	final char stopOrderSide = order.getChar(Side.FIELD);
-        	while(counter < maxNrTrials) {
-        		//最良気配のみ
-        		final PriceQuantity marketPriceQuantity = getMarketPriceQuantity(order);
-        		if (
-        			(   (stopOrderSide == Side.BUY && Double.compare(marketPriceQuantity.getPrice(), stopPrice) > 0)
-                     || (stopOrderSide == Side.SELL && Double.compare(marketPriceQuantity.getPrice(), stopPrice) < 0)
-                    ) 
-        			&& (orderQuantity >= marketPriceQuantity.getQuantity())
-        		) {
-        			log.info("Found filling price for stop order, market price: "+marketPriceQuantity.getPrice()+", stop price: "+stopPrice);
-        			return new PriceQuantity(marketPriceQuantity.getPrice(), orderQuantity, marketPriceQuantity.getMarketDataId());
-        		}
-        		else {
-        			log.debug("Looping to find filling price for stop order, market price: "+marketPriceQuantity.getPrice()+", stop price: "+stopPrice);
-        			Thread.sleep(500);
-        			counter++;
-        		}
-        	}
-        	return null; //price/ quantity not found.
-        default:  //成行
-        	final PriceQuantity marketPriceQuantity = getMarketPriceQuantity(order);
-        	if (orderQuantity > marketPriceQuantity.getQuantity() && order.getChar(TimeInForce.FIELD) == TimeInForce.FILL_OR_KILL) {
-            	return null;
-        	}
-            return new PriceQuantity(marketPriceQuantity.getPrice(), orderQuantity, marketPriceQuantity.getMarketDataId());
-		}
-    }
-	
+			final long stopPrice = order.getStopPrice();
+			return (   (order.getSide() == Side.BUY && marketPriceQuantity.getPrice() > stopPrice)
+	                || (order.getSide() == Side.SELL && marketPriceQuantity.getPrice() < stopPrice)
+	               )
+				   && (quantity >= marketPriceQuantity.getQuantity());
+		default:  //成行
+			return order.getTimeInForce() != TimeInForce.FILL_OR_KILL || quantity <= marketPriceQuantity.getQuantity();
+		}
+	}
+
+	/**
+	 * Fills what's left of the order at the market price.
+	 *
+	 * @return false if the order got rejected or cancelled by the credit check.
+	 * */
+	private boolean fillAgainstMarketData(final BookOrder order, final PriceQuantity marketPriceQuantity) {
+		final int quantity = order.getLeavesQty();
+		if (!hasEnoughCredit(order, marketPriceQuantity.getPrice(), quantity))
+			return false;
+		order.fill(marketPriceQuantity.getPrice(), quantity);
+		onFill(order, marketPriceQuantity.getPrice(), quantity, marketPriceQuantity.getMarketDataId());
+		return true;
+	}
+
+	/**
+	 * Adds the fill to the net filled quantity of the order's counterparty, then reports it.
+	 * */
+	private void onFill(final BookOrder order, final long price, final int quantity, final String reference) {
+		if (order.getSessionID() != null)
+			positions.computeIfAbsent(order.getSessionID().getTargetCompID(), counterparty -> new long[orderBooks.length])[order.getSymbolId()] += 
+				order.getSide() == Side.BUY ? quantity : -quantity;
+		executionListener.onFill(order, price, quantity, reference);
+	}
+
+	/**
+	 * Checks and then takes the credit for a fill. When there's not enough credit, the order gets rejected,
+	 * or cancelled if some of it has already been filled, by an earlier crossing or auction.
+	 * */
+	private boolean hasEnoughCredit(final BookOrder order, final long price, final int quantity) {
+		final double value = FixedPointPrice.value(price, quantity);
+		final long checkStart = stageLatencies != null ? System.nanoTime() : 0;
+		final boolean enoughCredit = creditCheck.hasEnoughCredit(value);
+		if (enoughCredit)
+			creditCheck.setCredit(-value);
+		if (stageLatencies != null)
+			stageLatencies.recordSince(StageLatencies.Stage.CREDIT_CHECK, checkStart);
+		if (!enoughCredit) {
+			if (order.getCumQty() > 0)
+				executionListener.onCancel(order, "Credit check failed");
+			else
+				executionListener.onReject(order, true);
+		}
+		return enoughCredit;
+	}
+
+	/**
+	 * Gives back the credit taken for a fill that didn't take place after all.
+	 * */
+	private void releaseCredit(final long price, final int quantity) {
+		creditCheck.setCredit(FixedPointPrice.value(price, quantity));
+	}
+
 	private static class PriceQuantity {
-		private final double price;
+		private final long price;
 		private final double quantity;
 		private final String marketDataId;
-		
-		public PriceQuantity(final double price, final double quantity, final String marketDataId) {
+
+		public PriceQuantity(final long price, final double quantity, final String marketDataId) {
 			this.price = price;
 			this.quantity = quantity;
 			this.marketDataId = marketDataId;
 		}
-		
-		public double getPrice() {
+
+		public long getPrice() {
 			return price;
 		}
-		
+
 		public double getQuantity() {
 			return quantity;
 		}
-		
+
 		public String getMarketDataId() {
 			return marketDataId;
 		}
-		
-		public double getValue() {
-			return price * quantity;
-		}
-		
 	}
-	
-	private PriceQuantity getMarketPriceQuantity(final Message message) throws FieldNotFound {
-		final MarketData marketData = marketDataManager.get(message.getString(Symbol.FIELD));
-		switch (message.getChar(Side.FIELD)) {
+
+	private static PriceQuantity getMarketPriceQuantity(final BookOrder order, final MarketData marketData) {
+		switch (order.getSide()) {
 			case Side.BUY:  //買
-				return new PriceQuantity(marketData.getAsk(), marketData.getAskSize(), marketData.getID());
+				return new PriceQuantity(marketData.getAskPrice(), marketData.getAskSize(), marketData.getID());
 			case Side.SELL: //売
-				return new PriceQuantity(marketData.getBid(), marketData.getBidSize(), marketData.getID());
+				return new PriceQuantity(marketData.getBidPrice(), marketData.getBidSize(), marketData.getID());
 			default:
-				throw new RuntimeException("Invalid order side: " + message.getChar(Side.FIELD));
+				throw new RuntimeException("Invalid order side: " + order.getSide());
 		}
 	}
-	
-	private static OrderID buildOrderID() {
-        return new OrderID(String.valueOf(orderIdSequence.incrementAndGet()));
-    }
 
-    private static ExecID buildExecID() {
-        return new ExecID(String.valueOf(execIdSequence.incrementAndGet()));
-    }
-}
\ No newline at end of file
+	/**
+	 * Optional settings of the engine, see {@link MatchingEngine#builder(MarketDataManager, ICreditCheck, ExecutionListener)}.
+	 * */
+	public static final class Builder {
+		private final MarketDataManager marketDataManager;
+		private final ICreditCheck creditCheck;
+		private final ExecutionListener executionListener;
+		private OrderExpiry orderExpiry;
+		private AuctionSchedule auctionSchedule;
+		private QuoteListener quoteObserver;
+		private StageLatencies stageLatencies;
+		private long startTime;
+
+		private Builder(final MarketDataManager marketDataManager, final ICreditCheck creditCheck, final ExecutionListener executionListener) {
+			this.marketDataManager = marketDataManager;
+			this.creditCheck = creditCheck;
+			this.executionListener = executionListener;
+			orderExpiry = OrderExpiry.defaults();
+			auctionSchedule = AuctionSchedule.none();
+			startTime = System.currentTimeMillis();
+		}
+
+		public Builder orderExpiry(final OrderExpiry orderExpiry) {
+			this.orderExpiry = orderExpiry;
+			return this;
+		}
+
+		public Builder auctionSchedule(final AuctionSchedule auctionSchedule) {
+			this.auctionSchedule = auctionSchedule;
+			return this;
+		}
+
+		/**
+		 * @param quoteObserver Notified of the quotes looked up from the {@link MarketDataManager}, rather than passed in.
+		 * */
+		public Builder quoteObserver(final QuoteListener quoteObserver) {
+			this.quoteObserver = quoteObserver;
+			return this;
+		}
+
+		/**
+		 * @param stageLatencies Where the quote look ups and credit checks get timed.
+		 * */
+		public Builder stageLatencies(final StageLatencies stageLatencies) {
+			this.stageLatencies = stageLatencies;
+			return this;
+		}
+
+		/**
+		 * @param startTime Current time, in milliseconds, until the first {@link MatchingEngine#setCurrentTime(long)}.
+		 * */
+		public Builder startTime(final long startTime) {
+			this.startTime = startTime;
+			return this;
+		}
+
+		public MatchingEngine build() {
+			return new MatchingEngine(this);
+		}
+	}
+}
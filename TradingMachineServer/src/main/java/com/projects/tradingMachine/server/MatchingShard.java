@@ -0,0 +1,264 @@
+package com.projects.tradingMachine.server;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.projects.tradingMachine.server.journal.Journal;
+import com.projects.tradingMachine.server.journal.JournalRecord;
+import com.projects.tradingMachine.server.journal.JournalSettings;
+import com.projects.tradingMachine.server.journal.JournalingCreditCheck;
+import com.projects.tradingMachine.server.journal.JournalingExecutionListener;
+import com.projects.tradingMachine.server.journal.ShardFollower;
+import com.projects.tradingMachine.server.journal.SnapshotStore;
+import com.projects.tradingMachine.server.pipeline.EventHandler;
+import com.projects.tradingMachine.server.pipeline.RingBuffer;
+import com.projects.tradingMachine.server.pipeline.RingBufferConsumer;
+import com.projects.tradingMachine.server.pipeline.WaitStrategy;
+import com.projects.tradingMachine.utility.database.creditCheck.ICreditCheck;
+import com.projects.tradingMachine.utility.id.IdBlockStore;
+import com.projects.tradingMachine.utility.id.IdGenerator;
+import com.projects.tradingMachine.utility.marketData.MarketData;
+
+/**
+ * Pipeline of the symbols assigned to one shard: 
+ * <ul>
+ * 	<li>inbound ring buffer, where the FIX and market data threads publish new orders, cancel/replace requests and quote updates.</li>
+ *  <li>matching thread, the only one touching the shard's matching engine and order books.</li>
+ *  <li>outbound ring buffer, where the matching engine outcome gets published.</li>
+ *  <li>report thread, building and sending the execution reports, so that the matching thread never waits on the FIX session.</li>
+ * </ul>
+ * Producers only wait when a ring buffer is full.
+ * When journaling is enabled, the matching thread journals each inbound event before handing it over to the matching engine, 
+ * together with what the engine gets from outside, i.e. quotes looked up and credit check answers, and its executions, see {@link Journal}.
+ * The matching thread also writes the engine snapshots, in between events. On creation, the shard restores its latest snapshot, then replays the journal after it,
+ * unless a standby replica hands over the engine it already caught up with the journal, see {@link ShardFollower}.
+ * The matching thread gives out the shard's OrderIDs and ExecIDs, prefixed by the shard id, out of blocks reserved next to the journal,
+ * or seeded with the start time if journaling is disabled, see {@link IdGenerator}.
+ * Orders and requests get timed from their publication to their handling, as are the quote look ups and credit checks, see {@link StageLatencies}.
+ * */
+final class MatchingShard {
+	private static final Logger logger = LoggerFactory.getLogger(MatchingShard.class);
+	
+
+	private final RingBuffer<OrderEvent> inbound;
+	private final RingBuffer<ExecutionEvent> outbound;
+	private final MatchingEngine matchingEngine;
+	private final RingBufferConsumer<OrderEvent> matchingConsumer;
+	private final RingBufferConsumer<ExecutionEvent> reportConsumer;
+	private final Journal journal; //null if journaling is disabled.
+	private final JournalRecord journalRecord;
+	private final SnapshotStore snapshotStore; //null if journaling is disabled.
+	private final IdBlockStore orderIdBlocks;
+	private final IdBlockStore execIdBlocks;
+	private final IdGenerator orderIds;
+	private final StageLatencies stageLatencies; //null if not timed.
+	
+	MatchingShard(final int id, final int ringBufferSize, final String waitStrategy, final MarketDataManager marketDataManager, 
+			final ICreditCheck creditCheck, final OrderExpiry orderExpiry, final AuctionSchedule auctionSchedule, final JournalSettings journalSettings, 
+			final ShardFollower follower, final StageLatencies stageLatencies, final EventHandler<ExecutionEvent> executionHandler) throws IOException {
+		inbound = new RingBuffer<>(ringBufferSize, OrderEvent::new, WaitStrategy.fromName(waitStrategy));
+		outbound = new RingBuffer<>(ringBufferSize, ExecutionEvent::new, WaitStrategy.fromName(waitStrategy));
+		journalRecord = new JournalRecord();
+		this.stageLatencies = stageLatencies;
+		final long now = System.currentTimeMillis();
+		orderIdBlocks = journalSettings.isEnabled() ? journalSettings.openIdBlockStore(id, "orderId") : IdBlockStore.startingAt(now);
+		execIdBlocks = journalSettings.isEnabled() ? journalSettings.openIdBlockStore(id, "execId") : IdBlockStore.startingAt(now);
+		orderIds = new IdGenerator(id + "-", orderIdBlocks);
+		final IdGenerator execIds = new IdGenerator(id + "-", execIdBlocks);
+		if (journalSettings.isEnabled()) {
+			journal = journalSettings.open(id);
+			final JournalRecord quoteRecord = new JournalRecord();
+			matchingEngine = MatchingEngine.builder(marketDataManager, new JournalingCreditCheck(creditCheck, journal::append), 
+					new JournalingExecutionListener(journal::append, new ExecutionEventPublisher(outbound, execIds))).orderExpiry(orderExpiry).auctionSchedule(auctionSchedule)
+					.quoteObserver(marketData -> journal.append(quoteRecord.setQuote(marketData, true, System.currentTimeMillis()))).stageLatencies(stageLatencies)
+					.startTime(now).build();
+			snapshotStore = journalSettings.openSnapshotStore(id);
+			recover(follower != null ? follower : ShardFollower.open(journalSettings.getShardDirectory(id), marketDataManager.getSymbolRegistry(), 
+					marketDataManager.getMissingQuotePolicy(), orderExpiry, auctionSchedule));
+		}
+		else {
+			journal = null;
+			snapshotStore = null;
+			matchingEngine = MatchingEngine.builder(marketDataManager, creditCheck, new ExecutionEventPublisher(outbound, execIds)).orderExpiry(orderExpiry)
+					.auctionSchedule(auctionSchedule).stageLatencies(stageLatencies).startTime(now).build();
+		}
+		matchingConsumer = new RingBufferConsumer<>(inbound, this::onEvent, "MatchingShard-"+id);
+		reportConsumer = new RingBufferConsumer<>(outbound, executionHandler, "ExecutionReports-"+id);
+	}
+	
+	/**
+	 * Takes over the engine state the follower rebuilt out of the latest snapshot and the journal records after it, without sending any report.
+	 * */
+	private void recover(final ShardFollower follower) throws IOException {
+		follower.finish();
+		if (follower.getLastSequence() != journal.getLastSequence())
+			throw new IllegalStateException("The follower of "+follower.getDirectory()+" stopped at "+follower.getLastSequence()+", while the journal goes on to "
+					+journal.getLastSequence());
+		if (follower.getMatchingEngine() != null)
+			matchingEngine.restore(follower.getMatchingEngine().snapshot(follower.getLastSequence()));
+		logger.info("Recovered "+follower);
+	}
+	
+	/**
+	 * Engine state as recovered on creation, it must be called before the shard starts.
+	 * */
+	EngineSnapshot getRecoveredState() {
+		return matchingEngine.snapshot(journal == null ? 0 : journal.getLastSequence());
+	}
+	
+	void start() {
+		reportConsumer.start();
+		matchingConsumer.start();
+	}
+	
+	/**
+	 * Lets the shard match the events already published, then send their reports, before its threads end.
+	 * */
+	void stop(final long timeout, final TimeUnit timeUnit) throws InterruptedException {
+		matchingConsumer.stop(timeout, timeUnit);
+		reportConsumer.stop(timeout, timeUnit);
+		if (journal != null)
+			journal.close();
+		closeIdBlocks(orderIdBlocks);
+		closeIdBlocks(execIdBlocks);
+	}
+	
+	private static void closeIdBlocks(final IdBlockStore idBlocks) {
+		if (!(idBlocks instanceof Closeable))
+			return;
+		try {
+			((Closeable)idBlocks).close();
+		}
+		catch(final IOException e) {
+			logger.warn("Unable to close "+idBlocks+", due to: "+e.getMessage());
+		}
+	}
+	
+	/**
+	 * Flushes the journal to disk, it can be called by any thread.
+	 * */
+	void forceJournal() {
+		if (journal != null)
+			journal.force();
+	}
+	
+	void onNewOrder(final BookOrder order) {
+		final long sequence = inbound.next();
+		inbound.get(sequence).setNewOrder(order);
+		inbound.publish(sequence);
+	}
+	
+	void onCancelReplace(final CancelReplaceRequest request) {
+		final long sequence = inbound.next();
+		inbound.get(sequence).setCancelReplace(request);
+		inbound.publish(sequence);
+	}
+	
+	void onQuote(final MarketData marketData) {
+		final long sequence = inbound.next();
+		inbound.get(sequence).setQuote(marketData);
+		inbound.publish(sequence);
+	}
+	
+	void onTick(final long time) {
+		final long sequence = inbound.next();
+		inbound.get(sequence).setTick(time);
+		inbound.publish(sequence);
+	}
+	
+	/**
+	 * Asks the matching thread to snapshot the engine, as of the events published so far.
+	 * */
+	void snapshot() {
+		if (snapshotStore == null)
+			return;
+		final long sequence = inbound.next();
+		inbound.get(sequence).setSnapshot();
+		inbound.publish(sequence);
+	}
+	
+	private void onEvent(final OrderEvent event) {
+		try {
+			if (stageLatencies != null && (event.getType() == OrderEvent.Type.NEW_ORDER || event.getType() == OrderEvent.Type.CANCEL_REPLACE))
+				stageLatencies.recordSince(StageLatencies.Stage.INBOUND_QUEUE, event.getPublishTime());
+			final long now = System.currentTimeMillis();
+			matchingEngine.setCurrentTime(now);
+			//unlike an ExecID, encoded into its ring buffer slot and gone with the report, the OrderID lives as long as the order:
+			//reported, journaled and snapshotted again and again, it's made a String once here, along with the order it belongs to.
+			if (event.getType() == OrderEvent.Type.NEW_ORDER && event.getOrder().getOrderID() == null)
+				event.getOrder().setOrderID(orderIds.nextId());
+			if (journal != null && !journal(event, now))
+				return;
+			switch(event.getType()) {
+				case NEW_ORDER: matchingEngine.onNewOrder(event.getOrder()); break;
+				case CANCEL_REPLACE: matchingEngine.onCancelReplace(event.getCancelReplaceRequest()); break;
+				case QUOTE: matchingEngine.onQuote(event.getMarketData()); break;
+				case TICK: matchingEngine.onTick(event.getTime()); break;
+				case SNAPSHOT: writeSnapshot(); break;
+			}
+		}
+		finally {
+			event.clear();
+		}
+	}
+	
+	private void writeSnapshot() {
+		try {
+			snapshotStore.write(matchingEngine.snapshot(journal.getLastSequence()));
+		}
+		catch(final IOException e) {
+			logger.warn("Unable to write the snapshot of "+journal.getDirectory()+", due to: "+e.getMessage(), e);
+		}
+	}
+	
+	/**
+	 * Orders and requests too long for the journal are rejected by the acceptor beforehand, so this only skips such quotes.
+	 * 
+	 * @return false if the event can't be journaled, hence mustn't reach the engine either.
+	 * */
+	private boolean journal(final OrderEvent event, final long now) {
+		try {
+			switch(event.getType()) {
+				case SNAPSHOT: return true;
+				case NEW_ORDER: journalRecord.setNewOrder(event.getOrder(), now); break;
+				case CANCEL_REPLACE: journalRecord.setCancelReplace(event.getCancelReplaceRequest(), now); break;
+				case QUOTE: journalRecord.setQuote(event.getMarketData(), false, now); break;
+				case TICK: journalRecord.setTick(event.getTime(), now); break;
+			}
+		}
+		catch(final IllegalArgumentException ex) {
+			logger.warn("Skipping "+event.getType()+" event, unable to journal it: "+ex.getMessage());
+			return false;
+		}
+		journal.append(journalRecord);
+		return true;
+	}
+	
+	int getQueueDepth() {
+		return inbound.getDepth();
+	}
+	
+	int getMaxQueueDepth() {
+		return inbound.getMaxDepth();
+	}
+	
+	int getReportQueueDepth() {
+		return outbound.getDepth();
+	}
+	
+	int getMaxReportQueueDepth() {
+		return outbound.getMaxDepth();
+	}
+	
+	long getProcessedTasks() {
+		return matchingConsumer.getProcessedEvents();
+	}
+	
+	long getSentReports() {
+		return reportConsumer.getProcessedEvents();
+	}
+}
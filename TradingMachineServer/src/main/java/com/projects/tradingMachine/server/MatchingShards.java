@@ -0,0 +1,309 @@
+package com.projects.tradingMachine.server;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.projects.tradingMachine.server.journal.JournalSettings;
+import com.projects.tradingMachine.server.journal.ShardFollower;
+import com.projects.tradingMachine.server.pipeline.EventHandler;
+import com.projects.tradingMachine.utility.ServiceLifeCycle;
+import com.projects.tradingMachine.utility.SymbolRegistry;
+import com.projects.tradingMachine.utility.database.creditCheck.ICreditCheck;
+import com.projects.tradingMachine.utility.marketData.MarketData;
+
+/**
+ * Symbol-affinity shards: each symbol is assigned to exactly one shard, so all its orders and quote updates are handled, in order, 
+ * by one thread. This way the per-symbol state has a single writer and needs no locking. 
+ * Symbols can be explicitly assigned to shards, the remaining ones are spread by symbol id.
+ * Each shard has its own matching engine, fed and drained through preallocated ring buffers, see {@link MatchingShard}.
+ * Order expiry runs on the shard threads as well: periodic ticks are published to every shard, which advances its own timer wheel, see {@link OrderExpiry}.
+ * Each shard can journal its events to its own directory, see {@link JournalSettings}, and periodically snapshot its state there:
+ * on creation, each shard gets back the state of its latest snapshot and journal, while the order and execution ids go on from blocks never given out before.
+ * Configuration parameters, see {@link Builder#configure(Properties)}:
+ * <ul>
+ * 	<li>matchingShards.number: number of shards.</li>
+ *  <li>matchingShards.ringBufferSize: number of slots of each shard's inbound and outbound ring buffers, it must be a power of 2.</li>
+ *  <li>matchingShards.waitStrategy: how the shard threads wait for events, one of blocking, yielding or busySpin.</li>
+ *  <li>matchingShards.symbolAssignment: optional comma separated list of SYMBOL:shard pairs.</li>
+ * </ul>
+ * */
+public final class MatchingShards implements MatchingShardsMXBean, QuoteListener, ServiceLifeCycle {
+	private static final Logger logger = LoggerFactory.getLogger(MatchingShards.class);
+	
+	private final MatchingShard[] shards;
+	private final SymbolRegistry symbolRegistry;
+	private final int[] symbolShards; //indexed by symbol id.
+	
+	private MatchingShards(final Builder builder) throws IOException {
+		final int shardsNumber = builder.shardsNumber;
+		final ShardFollower[] followers = builder.followers;
+		if (followers != null && followers.length != shardsNumber)
+			throw new IllegalArgumentException("Followers: "+followers.length+", shards: "+shardsNumber);
+		shards = new MatchingShard[shardsNumber];
+		for (int i = 0; i < shardsNumber; i++)
+			shards[i] = new MatchingShard(i, builder.ringBufferSize, builder.waitStrategy, builder.marketDataManager, builder.creditCheck, builder.orderExpiry, 
+					builder.auctionSchedule, builder.journalSettings, followers == null ? null : followers[i], builder.stageLatencies, builder.executionHandler);
+		symbolRegistry = builder.marketDataManager.getSymbolRegistry();
+		symbolShards = new int[symbolRegistry.size()];
+		for (int symbolId = 0; symbolId < symbolShards.length; symbolId++)
+			symbolShards[symbolId] = symbolId % shardsNumber;
+		builder.symbolAssignment.forEach((symbol, shard) -> {
+			if (shard < 0 || shard >= shardsNumber)
+				throw new IllegalArgumentException("Symbol "+symbol+" assigned to unknown shard "+shard);
+			final int symbolId = symbolRegistry.getId(symbol);
+			if (symbolId == SymbolRegistry.UNKNOWN)
+				throw new IllegalArgumentException("Unknown symbol "+symbol+" assigned to shard "+shard);
+			symbolShards[symbolId] = shard;
+		});
+	}
+	
+	/**
+	 * @return the builder of one shard, with ring buffers of 1024 slots, the blocking wait strategy, the default order expiry, no auction windows, 
+	 * no journal and no stage timings.
+	 * */
+	public static Builder builder(final MarketDataManager marketDataManager, final ICreditCheck creditCheck, final EventHandler<ExecutionEvent> executionHandler) {
+		return new Builder(marketDataManager, creditCheck, executionHandler);
+	}
+	
+	private static Map<String, Integer> parseSymbolAssignment(final String symbolAssignment) {
+		final Map<String, Integer> result = new HashMap<>();
+		Arrays.stream(symbolAssignment.split(",")).map(String::trim).filter(s -> !s.isEmpty()).forEach(s -> {
+			final String[] symbolShard = s.split(":");
+			result.put(symbolShard[0].trim(), Integer.valueOf(symbolShard[1].trim()));
+		});
+		return result;
+	}
+	
+	/**
+	 * Publishes the order on the shard owning its symbol, waiting if that shard's ring buffer is full.
+	 * */
+	public void onNewOrder(final BookOrder order) {
+		shards[getShard(order.getSymbolId())].onNewOrder(order);
+	}
+	
+	/**
+	 * Publishes the cancel or cancel/replace request on the shard owning its symbol, where the order it points to is working.
+	 * */
+	public void onCancelReplace(final CancelReplaceRequest request) {
+		shards[getShard(request.getSymbolId())].onCancelReplace(request);
+	}
+	
+	/**
+	 * Publishes the market data update on the shard owning its symbol, waiting if that shard's ring buffer is full.
+	 * */
+	@Override
+	public void onQuote(final MarketData marketData) {
+		shards[getShard(marketData.getSymbolId())].onQuote(marketData);
+	}
+	
+	/**
+	 * Publishes a timer tick on every shard, so that each one expires its own orders.
+	 * */
+	public void onTick(final long time) {
+		for (final MatchingShard shard : shards)
+			shard.onTick(time);
+	}
+	
+	/**
+	 * State of each shard as recovered on creation, e.g. to take back the pre-trade risk state: it must be called before {@link #start()}.
+	 * */
+	public List<EngineSnapshot> getRecoveredStates() {
+		final List<EngineSnapshot> result = new ArrayList<>(shards.length);
+		for (final MatchingShard shard : shards)
+			result.add(shard.getRecoveredState());
+		return result;
+	}
+	
+	/**
+	 * Asks every shard to snapshot its state, as of the events published so far.
+	 * */
+	public void snapshot() {
+		for (final MatchingShard shard : shards)
+			shard.snapshot();
+	}
+	
+	/**
+	 * Flushes the shard journals to disk.
+	 * */
+	public void forceJournals() {
+		for (final MatchingShard shard : shards)
+			shard.forceJournal();
+	}
+	
+	@Override
+	public int getShard(final String symbol) {
+		return getShard(symbolRegistry.getId(symbol));
+	}
+	
+	/**
+	 * Orders of unknown symbols go to the first shard, where they get rejected.
+	 * */
+	private int getShard(final int symbolId) {
+		return symbolId == SymbolRegistry.UNKNOWN ? 0 : symbolShards[symbolId];
+	}
+	
+	@Override
+	public void start() {
+		Arrays.stream(shards).forEach(MatchingShard::start);
+		logger.info("Started "+shards.length+" matching shards.");
+	}
+	
+	@Override
+	public void stop() throws InterruptedException {
+		for (final MatchingShard shard : shards)
+			shard.stop(5, TimeUnit.SECONDS);
+	}
+	
+	@Override
+	public int[] getQueueDepths() {
+		return Arrays.stream(shards).mapToInt(MatchingShard::getQueueDepth).toArray();
+	}
+	
+	@Override
+	public int[] getMaxQueueDepths() {
+		return Arrays.stream(shards).mapToInt(MatchingShard::getMaxQueueDepth).toArray();
+	}
+	
+	@Override
+	public long[] getProcessedTasks() {
+		return Arrays.stream(shards).mapToLong(MatchingShard::getProcessedTasks).toArray();
+	}
+	
+	@Override
+	public int[] getReportQueueDepths() {
+		return Arrays.stream(shards).mapToInt(MatchingShard::getReportQueueDepth).toArray();
+	}
+	
+	@Override
+	public int[] getMaxReportQueueDepths() {
+		return Arrays.stream(shards).mapToInt(MatchingShard::getMaxReportQueueDepth).toArray();
+	}
+	
+	@Override
+	public long[] getSentReports() {
+		return Arrays.stream(shards).mapToLong(MatchingShard::getSentReports).toArray();
+	}
+	
+	@Override
+	public String toString() {
+		return "MatchingShards [queue depths=" + Arrays.toString(getQueueDepths()) + ", max queue depths=" + Arrays.toString(getMaxQueueDepths()) 
+				+ ", processed tasks=" + Arrays.toString(getProcessedTasks()) + ", report queue depths=" + Arrays.toString(getReportQueueDepths()) 
+				+ ", max report queue depths=" + Arrays.toString(getMaxReportQueueDepths()) + ", sent reports=" + Arrays.toString(getSentReports()) + "]";
+	}
+	
+	/**
+	 * Settings of the shards, see {@link MatchingShards#builder(MarketDataManager, ICreditCheck, EventHandler)}.
+	 * */
+	public static final class Builder {
+		private final MarketDataManager marketDataManager;
+		private final ICreditCheck creditCheck;
+		private final EventHandler<ExecutionEvent> executionHandler;
+		private int shardsNumber;
+		private int ringBufferSize;
+		private String waitStrategy;
+		private Map<String, Integer> symbolAssignment;
+		private OrderExpiry orderExpiry;
+		private AuctionSchedule auctionSchedule;
+		private JournalSettings journalSettings;
+		private ShardFollower[] followers;
+		private StageLatencies stageLatencies;
+		
+		private Builder(final MarketDataManager marketDataManager, final ICreditCheck creditCheck, final EventHandler<ExecutionEvent> executionHandler) {
+			this.marketDataManager = marketDataManager;
+			this.creditCheck = creditCheck;
+			this.executionHandler = executionHandler;
+			shardsNumber = 1;
+			ringBufferSize = 1024;
+			waitStrategy = "blocking";
+			symbolAssignment = Collections.emptyMap();
+			orderExpiry = OrderExpiry.defaults();
+			auctionSchedule = AuctionSchedule.none();
+			journalSettings = JournalSettings.disabled();
+		}
+		
+		/**
+		 * Takes the shards, order expiry, auction and journal settings out of the configuration parameters.
+		 * */
+		public Builder configure(final Properties properties) {
+			shardsNumber = Integer.valueOf(properties.getProperty("matchingShards.number"));
+			ringBufferSize = Integer.valueOf(properties.getProperty("matchingShards.ringBufferSize"));
+			waitStrategy = properties.getProperty("matchingShards.waitStrategy", "blocking");
+			symbolAssignment = parseSymbolAssignment(properties.getProperty("matchingShards.symbolAssignment", ""));
+			orderExpiry = OrderExpiry.from(properties);
+			auctionSchedule = AuctionSchedule.from(properties);
+			journalSettings = JournalSettings.from(properties);
+			return this;
+		}
+		
+		public Builder shards(final int shardsNumber) {
+			this.shardsNumber = shardsNumber;
+			return this;
+		}
+		
+		/**
+		 * @param ringBufferSize Number of slots of each shard's inbound and outbound ring buffers, it must be a power of 2.
+		 * */
+		public Builder ringBufferSize(final int ringBufferSize) {
+			this.ringBufferSize = ringBufferSize;
+			return this;
+		}
+		
+		public Builder waitStrategy(final String waitStrategy) {
+			this.waitStrategy = waitStrategy;
+			return this;
+		}
+		
+		/**
+		 * @param symbolAssignment Shard of each explicitly assigned symbol.
+		 * */
+		public Builder symbolAssignment(final Map<String, Integer> symbolAssignment) {
+			this.symbolAssignment = symbolAssignment;
+			return this;
+		}
+		
+		public Builder orderExpiry(final OrderExpiry orderExpiry) {
+			this.orderExpiry = orderExpiry;
+			return this;
+		}
+		
+		public Builder auctionSchedule(final AuctionSchedule auctionSchedule) {
+			this.auctionSchedule = auctionSchedule;
+			return this;
+		}
+		
+		public Builder journalSettings(final JournalSettings journalSettings) {
+			this.journalSettings = journalSettings;
+			return this;
+		}
+		
+		/**
+		 * @param followers Engines of a standby replica taking over, one per shard, null to recover the shards out of their journals.
+		 * */
+		public Builder followers(final ShardFollower[] followers) {
+			this.followers = followers;
+			return this;
+		}
+		
+		/**
+		 * @param stageLatencies Where the shards time their stages, null not to time them.
+		 * */
+		public Builder stageLatencies(final StageLatencies stageLatencies) {
+			this.stageLatencies = stageLatencies;
+			return this;
+		}
+		
+		public MatchingShards build() throws IOException {
+			return new MatchingShards(this);
+		}
+	}
+}
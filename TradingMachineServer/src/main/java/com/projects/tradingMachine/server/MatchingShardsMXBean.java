@@ -0,0 +1,21 @@
+package com.projects.tradingMachine.server;
+
+/**
+ * JMX view of the matching shards, each array being indexed by shard id.
+ * */
+public interface MatchingShardsMXBean {
+
+	int[] getQueueDepths();
+	
+	int[] getMaxQueueDepths();
+	
+	long[] getProcessedTasks();
+	
+	int[] getReportQueueDepths();
+	
+	int[] getMaxReportQueueDepths();
+	
+	long[] getSentReports();
+	
+	int getShard(String symbol);
+}
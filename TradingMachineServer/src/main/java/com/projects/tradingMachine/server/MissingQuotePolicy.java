@@ -0,0 +1,20 @@
+package com.projects.tradingMachine.server;
+
+/**
+ * What the matching engine does with an order whose symbol has no market data yet.
+ * */
+public enum MissingQuotePolicy {
+	/**
+	 * The order is rejected.
+	 * */
+	REJECT, 
+	/**
+	 * The order is held, unmatched, until the first quote of its symbol arrives.
+	 * */
+	WAIT, 
+	/**
+	 * The order is matched against a random quote, built on the spot and not stored by the {@link MarketDataManager}.
+	 * The matching engine keeps it, in its journal and snapshots too, until the first real quote of the symbol replaces it. Only meant for simulations.
+	 * */
+	SYNTHETIC
+}
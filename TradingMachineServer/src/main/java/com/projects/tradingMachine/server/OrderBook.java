@@ -0,0 +1,347 @@
+package com.projects.tradingMachine.server;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import com.projects.tradingMachine.utility.FixedPointPrice;
+import com.projects.tradingMachine.utility.marketData.MarketData;
+
+import quickfix.field.OrdType;
+
+/**
+ * Limit order book of a single symbol. Resting orders are kept by price level, best price first, and in arrival order within a level,
+ * which gives price-time priority. Levels are keyed by fixed-point price, so that equal prices always fall into the same level. Stop orders are parked by stop price, in the order the market data would trigger them.
+ * Each level links its orders directly, see {@link PriceLevel}, so removing a given order, e.g. on cancel, doesn't scan the level.
+ * During a call auction, the book may cross and also holds the market orders until the uncross, see {@link #getAuctionUncross(MarketData)}.
+ * It's not thread safe: the matching engine serializes the access to each book.
+ * */
+public final class OrderBook {
+	private final String symbol;
+	private final NavigableMap<Long, PriceLevel> bids;
+	private final NavigableMap<Long, PriceLevel> asks;
+	private final NavigableMap<Long, PriceLevel> buyStops;
+	private final NavigableMap<Long, PriceLevel> sellStops;
+	private final ArrayDeque<BookOrder> awaitingQuote;
+	private final ArrayDeque<BookOrder> auctionMarketOrders;
+
+	public OrderBook(final String symbol) {
+		this.symbol = symbol;
+		bids = new TreeMap<>(Collections.reverseOrder());
+		asks = new TreeMap<>();
+		buyStops = new TreeMap<>(); //triggered by a rising ask, lowest stop price first.
+		sellStops = new TreeMap<>(Collections.reverseOrder()); //triggered by a falling bid, highest stop price first.
+		awaitingQuote = new ArrayDeque<>();
+		auctionMarketOrders = new ArrayDeque<>();
+	}
+
+	public String getSymbol() {
+		return symbol;
+	}
+
+	/**
+	 * Rests the order at the back of its price level.
+	 * */
+	public void add(final BookOrder order) {
+		sameSide(order).computeIfAbsent(order.getPrice(), PriceLevel::new).addLast(order);
+	}
+
+	/**
+	 * Removes a resting order, e.g. once it's fully filled.
+	 *
+	 * @return true if the order was resting in this book.
+	 * */
+	public boolean remove(final BookOrder order) {
+		return remove(sameSide(order), order);
+	}
+
+	/**
+	 * Parks a stop order until the market data triggers it.
+	 * */
+	public void addStop(final BookOrder order) {
+		(order.isBuy() ? buyStops : sellStops).computeIfAbsent(order.getStopPrice(), PriceLevel::new).addLast(order);
+	}
+
+	/**
+	 * Removes a parked stop order, e.g. once it's filled.
+	 *
+	 * @return true if the order was parked in this book.
+	 * */
+	public boolean removeStop(final BookOrder order) {
+		return remove(order.isBuy() ? buyStops : sellStops, order);
+	}
+
+	/**
+	 * Holds an order, in arrival order, until the first quote of the symbol arrives.
+	 * */
+	public void addAwaitingQuote(final BookOrder order) {
+		awaitingQuote.addLast(order);
+	}
+
+	/**
+	 * Takes out all the orders held waiting for a quote, in arrival order.
+	 * */
+	public List<BookOrder> drainAwaitingQuote() {
+		final List<BookOrder> result = new ArrayList<>(awaitingQuote);
+		awaitingQuote.clear();
+		return result;
+	}
+
+	/**
+	 * Holds a market order, in arrival order, until the call auction uncross.
+	 * */
+	public void addAuctionMarketOrder(final BookOrder order) {
+		auctionMarketOrders.addLast(order);
+	}
+
+	/**
+	 * Takes out all the market orders held for the call auction, in arrival order.
+	 * */
+	public List<BookOrder> drainAuctionMarketOrders() {
+		final List<BookOrder> result = new ArrayList<>(auctionMarketOrders);
+		auctionMarketOrders.clear();
+		return result;
+	}
+
+	/**
+	 * Removes the order wherever it's working: resting, parked as stop or held waiting for a quote or an auction, e.g. once it expires.
+	 *
+	 * @return true if the order was working in this book.
+	 * */
+	public boolean removeWorking(final BookOrder order) {
+		return (order.getType() == OrdType.STOP ? removeStop(order) : remove(order)) || awaitingQuote.remove(order) || auctionMarketOrders.remove(order);
+	}
+
+	/**
+	 * Gets the stop orders triggered by the given market prices, i.e. buy stops below the ask and sell stops above the bid.
+	 * Only the stop levels crossed by the market data are visited.
+	 * */
+	public List<BookOrder> getTriggeredStops(final long bid, final long ask) {
+		final List<BookOrder> result = new ArrayList<>();
+		collect(buyStops.headMap(ask, false), result);
+		collect(sellStops.headMap(bid, false), result);
+		return result;
+	}
+
+	/**
+	 * Gets the resting orders whose limit price crosses the given market prices, i.e. bids above the ask and asks below the bid, 
+	 * in price-time priority. Only the crossed levels are visited.
+	 * */
+	public List<BookOrder> getMarketableOrders(final long bid, final long ask) {
+		final List<BookOrder> result = new ArrayList<>();
+		collect(bids.headMap(ask, false), result);
+		collect(asks.headMap(bid, false), result);
+		return result;
+	}
+
+	/**
+	 * Gets the resting order with the highest priority on the opposite side of the given order.
+	 *
+	 * @return the first order of the best contra level or null if that side is empty.
+	 * */
+	public BookOrder getBestContra(final BookOrder order) {
+		final Map.Entry<Long, PriceLevel> bestLevel = contraSide(order).firstEntry();
+		return bestLevel == null ? null : bestLevel.getValue().peekFirst();
+	}
+
+	/**
+	 * Sums the contra quantity the given order could trade against, stopping as soon as the order quantity is reached.
+	 * */
+	public int getContraQuantity(final BookOrder order) {
+		int result = 0;
+		for (final Map.Entry<Long, PriceLevel> level : contraSide(order).entrySet()) {
+			if (!order.isPriceAcceptable(level.getKey()))
+				break;
+			for (BookOrder resting = level.getValue().peekFirst(); resting != null; resting = resting.nextInLevel) {
+				result += resting.getLeavesQty();
+				if (result >= order.getLeavesQty())
+					return result;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Finds the call auction price: the one executing the most quantity between the buyers and the sellers at or better than it,
+	 * i.e. the market orders held, the resting orders and the quote sizes, then leaving the least imbalance, then the nearest to the reference price,
+	 * the quote mid or else the mid of the best bid and ask. The quote only counts as liquidity if it isn't crossed.
+	 *
+	 * @param quote Null if there's none.
+	 * @return null if nothing would execute.
+	 * */
+	public Uncross getAuctionUncross(final MarketData quote) {
+		final boolean quoted = quote != null && quote.getBidPrice() != FixedPointPrice.NONE && quote.getAskPrice() != FixedPointPrice.NONE 
+				&& quote.getBidPrice() < quote.getAskPrice();
+		final TreeSet<Long> prices = new TreeSet<>(bids.keySet());
+		prices.addAll(asks.keySet());
+		if (quoted) {
+			prices.add(quote.getBidPrice());
+			prices.add(quote.getAskPrice());
+		}
+		if (prices.isEmpty())
+			return null;
+		final long[] candidates = new long[prices.size()];
+		int n = 0;
+		for (final long price : prices)
+			candidates[n++] = price;
+		//buyers at or above each candidate price, sellers at or below.
+		final long[] demand = new long[n];
+		final long[] supply = new long[n];
+		long cumulated = getLeavesQty(auctionMarketOrders, true);
+		final Iterator<PriceLevel> bidLevels = bids.values().iterator();
+		PriceLevel level = bidLevels.hasNext() ? bidLevels.next() : null;
+		for (int i = n - 1; i >= 0; i--) {
+			for (; level != null && level.getPrice() >= candidates[i]; level = bidLevels.hasNext() ? bidLevels.next() : null)
+				cumulated += getLeavesQty(level);
+			demand[i] = cumulated + (quoted && quote.getBidPrice() >= candidates[i] ? quote.getBidSize() : 0);
+		}
+		cumulated = getLeavesQty(auctionMarketOrders, false);
+		final Iterator<PriceLevel> askLevels = asks.values().iterator();
+		level = askLevels.hasNext() ? askLevels.next() : null;
+		for (int i = 0; i < n; i++) {
+			for (; level != null && level.getPrice() <= candidates[i]; level = askLevels.hasNext() ? askLevels.next() : null)
+				cumulated += getLeavesQty(level);
+			supply[i] = cumulated + (quoted && quote.getAskPrice() <= candidates[i] ? quote.getAskSize() : 0);
+		}
+		final long reference = quoted ? (quote.getBidPrice() + quote.getAskPrice()) / 2 
+				: !bids.isEmpty() && !asks.isEmpty() ? (bids.firstKey() + asks.firstKey()) / 2 : candidates[0];
+		int best = -1;
+		for (int i = 0; i < n; i++) {
+			final long volume = Math.min(demand[i], supply[i]);
+			if (volume == 0)
+				continue;
+			if (best < 0 || volume > Math.min(demand[best], supply[best]))
+				best = i;
+			else if (volume == Math.min(demand[best], supply[best])) {
+				final long imbalance = Math.abs(demand[i] - supply[i]), bestImbalance = Math.abs(demand[best] - supply[best]);
+				if (imbalance < bestImbalance || (imbalance == bestImbalance && Math.abs(candidates[i] - reference) < Math.abs(candidates[best] - reference)))
+					best = i;
+			}
+		}
+		return best < 0 ? null : new Uncross(candidates[best], Math.min(demand[best], supply[best]));
+	}
+
+	/**
+	 * Orders of the given side taking part in the uncross at the given price, in priority order: market orders, then the resting orders at or better than it.
+	 * */
+	List<BookOrder> getAuctionParticipants(final boolean buy, final long price) {
+		final List<BookOrder> result = new ArrayList<>();
+		for (final BookOrder order : auctionMarketOrders)
+			if (order.isBuy() == buy)
+				result.add(order);
+		collect(buy ? bids.headMap(price, true) : asks.headMap(price, true), result);
+		return result;
+	}
+
+	/**
+	 * Resting orders, bids then asks, in price-time priority: adding them back in this order rebuilds the same levels.
+	 * */
+	List<BookOrder> getRestingOrders() {
+		final List<BookOrder> result = new ArrayList<>();
+		collect(bids, result);
+		collect(asks, result);
+		return result;
+	}
+
+	/**
+	 * Parked stop orders, buy stops then sell stops, in trigger order.
+	 * */
+	List<BookOrder> getStopOrders() {
+		final List<BookOrder> result = new ArrayList<>();
+		collect(buyStops, result);
+		collect(sellStops, result);
+		return result;
+	}
+
+	List<BookOrder> getOrdersAwaitingQuote() {
+		return new ArrayList<>(awaitingQuote);
+	}
+
+	List<BookOrder> getAuctionMarketOrders() {
+		return new ArrayList<>(auctionMarketOrders);
+	}
+
+	public boolean isEmpty() {
+		return bids.isEmpty() && asks.isEmpty() && buyStops.isEmpty() && sellStops.isEmpty() && awaitingQuote.isEmpty() && auctionMarketOrders.isEmpty();
+	}
+
+	private static long getLeavesQty(final PriceLevel level) {
+		long result = 0;
+		for (BookOrder order = level.peekFirst(); order != null; order = order.nextInLevel)
+			result += order.getLeavesQty();
+		return result;
+	}
+
+	private static long getLeavesQty(final ArrayDeque<BookOrder> orders, final boolean buy) {
+		long result = 0;
+		for (final BookOrder order : orders)
+			if (order.isBuy() == buy)
+				result += order.getLeavesQty();
+		return result;
+	}
+
+	/**
+	 * O(1) but for dropping the level once empty.
+	 * */
+	private static boolean remove(final NavigableMap<Long, PriceLevel> levels, final BookOrder order) {
+		final PriceLevel level = order.level;
+		if (level == null || !level.remove(order))
+			return false;
+		if (level.isEmpty())
+			levels.remove(level.getPrice(), level);
+		return true;
+	}
+
+	private static void collect(final NavigableMap<Long, PriceLevel> levels, final List<BookOrder> result) {
+		for (final PriceLevel level : levels.values())
+			for (BookOrder order = level.peekFirst(); order != null; order = order.nextInLevel)
+				result.add(order);
+	}
+
+	private NavigableMap<Long, PriceLevel> sameSide(final BookOrder order) {
+		return order.isBuy() ? bids : asks;
+	}
+
+	private NavigableMap<Long, PriceLevel> contraSide(final BookOrder order) {
+		return order.isBuy() ? asks : bids;
+	}
+
+	@Override
+	public String toString() {
+		return "OrderBook [symbol=" + symbol + ", bid levels=" + bids.size() + ", ask levels=" + asks.size() 
+				+ ", buy stop levels=" + buyStops.size() + ", sell stop levels=" + sellStops.size() + ", awaiting quote=" + awaitingQuote.size() 
+				+ ", auction market orders=" + auctionMarketOrders.size() + "]";
+	}
+
+	/**
+	 * Price and quantity of a call auction uncross.
+	 * */
+	public static final class Uncross {
+		private final long price;
+		private final long volume;
+
+		Uncross(final long price, final long volume) {
+			this.price = price;
+			this.volume = volume;
+		}
+
+		public long getPrice() {
+			return price;
+		}
+
+		public long getVolume() {
+			return volume;
+		}
+
+		@Override
+		public String toString() {
+			return "Uncross [price=" + FixedPointPrice.toString(price) + ", volume=" + volume + "]";
+		}
+	}
+}
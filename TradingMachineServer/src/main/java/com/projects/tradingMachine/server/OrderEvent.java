@@ -0,0 +1,89 @@
+package com.projects.tradingMachine.server;
+
+import com.projects.tradingMachine.utility.marketData.MarketData;
+
+/**
+ * Preallocated inbound ring buffer slot: either a new order, a cancel or cancel/replace request, a market data update or a timer tick to hand over to the matching engine,
+ * or a request to snapshot the engine state.
+ * */
+final class OrderEvent {
+	enum Type {NEW_ORDER, CANCEL_REPLACE, QUOTE, TICK, SNAPSHOT}
+	
+	private Type type;
+	private BookOrder order;
+	private CancelReplaceRequest cancelReplaceRequest;
+	private MarketData marketData;
+	private long time;
+	private long publishTime; //System.nanoTime() of orders and requests, to measure their wait in the ring buffer.
+	
+	void setNewOrder(final BookOrder order) {
+		type = Type.NEW_ORDER;
+		this.order = order;
+		publishTime = System.nanoTime();
+		cancelReplaceRequest = null;
+		marketData = null;
+	}
+	
+	void setCancelReplace(final CancelReplaceRequest cancelReplaceRequest) {
+		type = Type.CANCEL_REPLACE;
+		this.cancelReplaceRequest = cancelReplaceRequest;
+		publishTime = System.nanoTime();
+		order = null;
+		marketData = null;
+	}
+	
+	void setQuote(final MarketData marketData) {
+		type = Type.QUOTE;
+		this.marketData = marketData;
+		order = null;
+		cancelReplaceRequest = null;
+	}
+	
+	void setTick(final long time) {
+		type = Type.TICK;
+		this.time = time;
+		order = null;
+		cancelReplaceRequest = null;
+		marketData = null;
+	}
+	
+	void setSnapshot() {
+		type = Type.SNAPSHOT;
+		order = null;
+		cancelReplaceRequest = null;
+		marketData = null;
+	}
+	
+	/**
+	 * Drops the references once processed, so that the slot doesn't keep them alive.
+	 * */
+	void clear() {
+		order = null;
+		cancelReplaceRequest = null;
+		marketData = null;
+	}
+
+	Type getType() {
+		return type;
+	}
+
+	BookOrder getOrder() {
+		return order;
+	}
+
+	CancelReplaceRequest getCancelReplaceRequest() {
+		return cancelReplaceRequest;
+	}
+
+	MarketData getMarketData() {
+		return marketData;
+	}
+
+	long getPublishTime() {
+		return publishTime;
+	}
+
+	long getTime() {
+		return time;
+	}
+}
@@ -0,0 +1,85 @@
+package com.projects.tradingMachine.server;
+
+import java.time.Instant;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Properties;
+
+import quickfix.field.TimeInForce;
+
+/**
+ * When working orders expire: DAY orders at the end of the trading day, GTD orders at their ExpireTime, while GTC orders never do.
+ * Expiry is driven by a {@link TimerWheel} per matching engine, advanced by periodic ticks.
+ * Configuration parameters:
+ * <ul>
+ * 	<li>orderExpiry.endOfDay: local time DAY orders expire at, e.g. 17:30.</li>
+ *  <li>orderExpiry.tickMillis: timer wheel tick, i.e. expiry resolution.</li>
+ *  <li>orderExpiry.wheelSize: number of timer wheel slots, it must be a power of 2.</li>
+ * </ul>
+ * */
+public final class OrderExpiry {
+	/**
+	 * Deadline of the orders which never expire.
+	 * */
+	public static final long NEVER = 0;
+
+	private final LocalTime endOfDay;
+	private final ZoneId zoneId;
+	private final long tickMillis;
+	private final int wheelSize;
+
+	public OrderExpiry(final LocalTime endOfDay, final ZoneId zoneId, final long tickMillis, final int wheelSize) {
+		this.endOfDay = endOfDay;
+		this.zoneId = zoneId;
+		this.tickMillis = tickMillis;
+		this.wheelSize = wheelSize;
+	}
+
+	public static OrderExpiry from(final Properties properties) {
+		return new OrderExpiry(LocalTime.parse(properties.getProperty("orderExpiry.endOfDay", "23:59:59")), ZoneId.systemDefault(),
+				Long.valueOf(properties.getProperty("orderExpiry.tickMillis", "1000")), Integer.valueOf(properties.getProperty("orderExpiry.wheelSize", "4096")));
+	}
+
+	/**
+	 * DAY orders expire at the end of the day, or of the following day if that's already past.
+	 * */
+	public static OrderExpiry defaults() {
+		return new OrderExpiry(LocalTime.of(23, 59, 59), ZoneId.systemDefault(), 1000, 4096);
+	}
+
+	/**
+	 * @return the time, in milliseconds, the order expires at if it's still working, or {@link #NEVER}.
+	 * */
+	public long getDeadline(final BookOrder order, final long now) {
+		switch(order.getTimeInForce()) {
+			case TimeInForce.DAY: return getEndOfDay(now);
+			case TimeInForce.GOOD_TILL_DATE: return order.getExpireTime();
+			default: return NEVER;
+		}
+	}
+
+	/**
+	 * First end of day after the given time.
+	 * */
+	long getEndOfDay(final long now) {
+		final ZonedDateTime time = Instant.ofEpochMilli(now).atZone(zoneId);
+		ZonedDateTime result = time.with(endOfDay);
+		if (!result.isAfter(time))
+			result = result.plusDays(1);
+		return result.toInstant().toEpochMilli();
+	}
+
+	public TimerWheel<BookOrder> newTimerWheel(final long startTime) {
+		return new TimerWheel<>(wheelSize, tickMillis, startTime);
+	}
+
+	public long getTickMillis() {
+		return tickMillis;
+	}
+
+	@Override
+	public String toString() {
+		return "OrderExpiry [endOfDay=" + endOfDay + ", zoneId=" + zoneId + ", tickMillis=" + tickMillis + ", wheelSize=" + wheelSize + "]";
+	}
+}
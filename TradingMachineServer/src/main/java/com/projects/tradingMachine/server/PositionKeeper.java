@@ -0,0 +1,220 @@
+package com.projects.tradingMachine.server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.projects.tradingMachine.utility.FixedPointPrice;
+import com.projects.tradingMachine.utility.SymbolRegistry;
+import com.projects.tradingMachine.utility.marketData.MarketData;
+
+import quickfix.SessionID;
+
+/**
+ * Net quantity, average cost, realized and unrealized P&L of each counterparty and symbol, kept up to date by the fills of the execution stream,
+ * in O(1) per fill, rather than out of the stored orders. The positions are the counterparties' ones: a BUY fill makes them longer.
+ * Each counterparty has an array of positions indexed by symbol id, each position being written by the report thread of its symbol's shard.
+ * Unrealized P&L is marked at the mid of the latest quote, see {@link MarketDataManager#getQuote(int)}, when it's read.
+ * Symbol and total figures are added up when they're read. Positions start flat on each start.
+ * */
+public final class PositionKeeper implements PositionKeeperMXBean {
+	private final MarketDataManager marketDataManager;
+	private final SymbolRegistry symbolRegistry;
+	private final Map<String, Position[]> positions; //by counterparty.
+	
+	public PositionKeeper(final MarketDataManager marketDataManager) {
+		this.marketDataManager = marketDataManager;
+		symbolRegistry = marketDataManager.getSymbolRegistry();
+		positions = new ConcurrentHashMap<>();
+	}
+	
+	/**
+	 * Called on the report threads, the other execution types leave the positions as they are.
+	 * */
+	public void onExecution(final ExecutionEvent event) {
+		if (event.getType() != ExecutionEvent.Type.FILL || event.getOrder().getSymbolId() == SymbolRegistry.UNKNOWN)
+			return;
+		final BookOrder order = event.getOrder();
+		getPositions(getCounterparty(order.getSessionID()))[order.getSymbolId()].onFill(order.getSide() == quickfix.field.Side.BUY,
+				event.getLastQty(), FixedPointPrice.toDouble(event.getLastPx()));
+	}
+	
+	private static String getCounterparty(final SessionID sessionID) {
+		return sessionID == null ? "NONE" : sessionID.getTargetCompID();
+	}
+	
+	private Position[] getPositions(final String counterparty) {
+		Position[] result = positions.get(counterparty);
+		if (result == null)
+			result = positions.computeIfAbsent(counterparty, c -> {
+				final Position[] symbolPositions = new Position[symbolRegistry.size()];
+				for (int i = 0; i < symbolPositions.length; i++)
+					symbolPositions[i] = new Position();
+				return symbolPositions;
+			});
+		return result;
+	}
+	
+	/**
+	 * Mid of the latest quote, or the side there is, NaN without quote.
+	 * */
+	private double getMark(final int symbolId) {
+		final MarketData quote = marketDataManager.getQuote(symbolId);
+		if (quote == null)
+			return Double.NaN;
+		if (quote.getBidPrice() == FixedPointPrice.NONE)
+			return quote.getAskPrice() == FixedPointPrice.NONE ? Double.NaN : FixedPointPrice.toDouble(quote.getAskPrice());
+		if (quote.getAskPrice() == FixedPointPrice.NONE)
+			return FixedPointPrice.toDouble(quote.getBidPrice());
+		return (FixedPointPrice.toDouble(quote.getBidPrice()) + FixedPointPrice.toDouble(quote.getAskPrice())) / 2;
+	}
+	
+	@Override
+	public String[] getCounterparties() {
+		return positions.keySet().stream().sorted().toArray(String[]::new);
+	}
+	
+	@Override
+	public String[] getPositions() {
+		final List<String> result = new ArrayList<>();
+		for (final String counterparty : getCounterparties()) {
+			final Position[] symbolPositions = positions.get(counterparty);
+			for (int symbolId = 0; symbolId < symbolPositions.length; symbolId++)
+				if (symbolPositions[symbolId].isOpened())
+					result.add(counterparty+" "+symbolRegistry.getSymbol(symbolId)+" "+symbolPositions[symbolId].toString(getMark(symbolId)));
+		}
+		return result.toArray(new String[result.size()]);
+	}
+	
+	@Override
+	public long getNetQuantity(final String counterparty, final String symbol) {
+		final Position[] symbolPositions = positions.get(counterparty);
+		final int symbolId = symbolRegistry.getId(symbol);
+		return symbolPositions == null || symbolId == SymbolRegistry.UNKNOWN ? 0 : symbolPositions[symbolId].getNetQuantity();
+	}
+	
+	@Override
+	public double getRealizedPnl(final String counterparty) {
+		final Position[] symbolPositions = positions.get(counterparty);
+		double result = 0;
+		if (symbolPositions != null)
+			for (final Position position : symbolPositions)
+				result += position.getRealizedPnl();
+		return result;
+	}
+	
+	@Override
+	public double getUnrealizedPnl(final String counterparty) {
+		final Position[] symbolPositions = positions.get(counterparty);
+		double result = 0;
+		if (symbolPositions != null)
+			for (int symbolId = 0; symbolId < symbolPositions.length; symbolId++)
+				result += symbolPositions[symbolId].getUnrealizedPnl(getMark(symbolId));
+		return result;
+	}
+	
+	@Override
+	public long getSymbolNetQuantity(final String symbol) {
+		final int symbolId = symbolRegistry.getId(symbol);
+		long result = 0;
+		if (symbolId != SymbolRegistry.UNKNOWN)
+			for (final Position[] symbolPositions : positions.values())
+				result += symbolPositions[symbolId].getNetQuantity();
+		return result;
+	}
+	
+	@Override
+	public double getSymbolRealizedPnl(final String symbol) {
+		final int symbolId = symbolRegistry.getId(symbol);
+		double result = 0;
+		if (symbolId != SymbolRegistry.UNKNOWN)
+			for (final Position[] symbolPositions : positions.values())
+				result += symbolPositions[symbolId].getRealizedPnl();
+		return result;
+	}
+	
+	@Override
+	public double getSymbolUnrealizedPnl(final String symbol) {
+		final int symbolId = symbolRegistry.getId(symbol);
+		double result = 0;
+		if (symbolId != SymbolRegistry.UNKNOWN) {
+			final double mark = getMark(symbolId);
+			for (final Position[] symbolPositions : positions.values())
+				result += symbolPositions[symbolId].getUnrealizedPnl(mark);
+		}
+		return result;
+	}
+	
+	@Override
+	public double getTotalRealizedPnl() {
+		return positions.keySet().stream().mapToDouble(this::getRealizedPnl).sum();
+	}
+	
+	@Override
+	public double getTotalUnrealizedPnl() {
+		return positions.keySet().stream().mapToDouble(this::getUnrealizedPnl).sum();
+	}
+	
+	@Override
+	public String toString() {
+		return "PositionKeeper [counterparties=" + positions.size() + ", realized P&L=" + getTotalRealizedPnl() + ", unrealized P&L="
+				+ getTotalUnrealizedPnl() + "]";
+	}
+	
+	/**
+	 * Position of one counterparty in one symbol. A fill on the position's side adds to it at the weighted average cost,
+	 * a fill on the other side realizes the P&L of the quantity it closes against the average cost, whatever is left over opening a new position at the fill price.
+	 * */
+	static final class Position {
+		private long netQuantity;
+		private double averageCost;
+		private double realizedPnl;
+		private boolean opened;
+	
+		synchronized void onFill(final boolean buy, final int quantity, final double price) {
+			opened = true;
+			final long signedQuantity = buy ? quantity : -quantity;
+			if (netQuantity == 0 || (netQuantity > 0) == buy) {
+				final long absoluteNet = Math.abs(netQuantity);
+				averageCost = (averageCost * absoluteNet + price * quantity) / (absoluteNet + quantity);
+				netQuantity += signedQuantity;
+				return;
+			}
+			final long closed = Math.min(quantity, Math.abs(netQuantity));
+			realizedPnl += closed * (price - averageCost) * Long.signum(netQuantity);
+			netQuantity += signedQuantity;
+			if (netQuantity == 0)
+				averageCost = 0;
+			else if (quantity > closed)
+				averageCost = price; //flipped.
+		}
+	
+		synchronized long getNetQuantity() {
+			return netQuantity;
+		}
+	
+		synchronized double getAverageCost() {
+			return averageCost;
+		}
+	
+		synchronized double getRealizedPnl() {
+			return realizedPnl;
+		}
+	
+		/**
+		 * @return 0 if flat or without mark.
+		 * */
+		synchronized double getUnrealizedPnl(final double mark) {
+			return netQuantity == 0 || Double.isNaN(mark) ? 0 : netQuantity * (mark - averageCost);
+		}
+	
+		synchronized boolean isOpened() {
+			return opened;
+		}
+	
+		synchronized String toString(final double mark) {
+			return "net=" + netQuantity + ", averageCost=" + averageCost + ", realized=" + realizedPnl + ", unrealized=" + getUnrealizedPnl(mark);
+		}
+	}
+}
@@ -0,0 +1,30 @@
+package com.projects.tradingMachine.server;
+
+/**
+ * JMX view of the positions and P&L, the counterparty being the TargetCompID of the FIX session the orders came from.
+ * */
+public interface PositionKeeperMXBean {
+	
+	String[] getCounterparties();
+	
+	/**
+	 * @return one line per position opened so far: counterparty, symbol, net quantity, average cost, realized and unrealized P&L.
+	 * */
+	String[] getPositions();
+	
+	long getNetQuantity(String counterparty, String symbol);
+	
+	double getRealizedPnl(String counterparty);
+	
+	double getUnrealizedPnl(String counterparty);
+	
+	long getSymbolNetQuantity(String symbol);
+	
+	double getSymbolRealizedPnl(String symbol);
+	
+	double getSymbolUnrealizedPnl(String symbol);
+	
+	double getTotalRealizedPnl();
+	
+	double getTotalUnrealizedPnl();
+}
@@ -0,0 +1,223 @@
+package com.projects.tradingMachine.server;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.Collectors;
+
+import com.projects.tradingMachine.utility.FixedPointPrice;
+import com.projects.tradingMachine.utility.SymbolRegistry;
+import com.projects.tradingMachine.utility.marketData.MarketData;
+
+import quickfix.SessionID;
+import quickfix.field.OrdType;
+
+/**
+ * Per counterparty limits checked in memory before an order is handed over to its matching shard, never calling the database:
+ * order quantity, order notional, net filled position of each symbol including the order, and number of working orders.
+ * The counterparty is the TargetCompID of the FIX session the order came from. Limits and state are kept in arrays indexed by counterparty,
+ * and by counterparty then symbol id for the positions. Checks of a counterparty run on its session's thread,
+ * while the positions and working orders follow the executions, on the report threads, see {@link #onExecution(ExecutionEvent)}.
+ * On start, the positions and working orders are taken back from the state the shards recovered, see {@link #restore(EngineSnapshot)}.
+ * Configuration parameters:
+ * <ul>
+ * 	<li>risk.counterparties: comma separated counterparties allowed to trade, no check at all if empty.</li>
+ *  <li>risk.default.maxOrderQuantity, risk.default.maxNotional, risk.default.maxPosition, risk.default.maxOpenOrders: limits of every counterparty,
+ *  each one can be overridden by risk.COUNTERPARTY.maxOrderQuantity and so on.</li>
+ * </ul>
+ * */
+public final class PreTradeRisk {
+	private final Map<String, Integer> counterpartyIds;
+	private final MarketDataManager marketDataManager;
+	private final int symbols;
+	private final int[] maxOrderQuantity;
+	private final long[] maxNotional; //fixed-point.
+	private final long[] maxPosition;
+	private final int[] maxOpenOrders;
+	private final AtomicLongArray positions; //indexed by counterparty * symbols + symbol id.
+	private final AtomicIntegerArray openOrders;
+	
+	/**
+	 * @param limits Limits of each counterparty, the counterparty ids follow the iteration order.
+	 * */
+	public PreTradeRisk(final Map<String, Limits> limits, final MarketDataManager marketDataManager) {
+		this.marketDataManager = marketDataManager;
+		symbols = marketDataManager.getSymbolRegistry().size();
+		counterpartyIds = new HashMap<>();
+		maxOrderQuantity = new int[limits.size()];
+		maxNotional = new long[limits.size()];
+		maxPosition = new long[limits.size()];
+		maxOpenOrders = new int[limits.size()];
+		limits.forEach((counterparty, counterpartyLimits) -> {
+			final int id = counterpartyIds.size();
+			counterpartyIds.put(counterparty, id);
+			maxOrderQuantity[id] = counterpartyLimits.maxOrderQuantity;
+			maxNotional[id] = FixedPointPrice.fromDouble(counterpartyLimits.maxNotional);
+			maxPosition[id] = counterpartyLimits.maxPosition;
+			maxOpenOrders[id] = counterpartyLimits.maxOpenOrders;
+		});
+		positions = new AtomicLongArray(limits.size() * symbols);
+		openOrders = new AtomicIntegerArray(limits.size());
+	}
+	
+	/**
+	 * @return null if no counterparty is configured.
+	 * */
+	public static PreTradeRisk from(final Properties properties, final MarketDataManager marketDataManager) {
+		final List<String> counterparties = Arrays.stream(properties.getProperty("risk.counterparties", "").split(",")).map(String::trim)
+				.filter(s -> !s.isEmpty()).collect(Collectors.toList());
+		if (counterparties.isEmpty())
+			return null;
+		final Map<String, Limits> limits = new LinkedHashMap<>();
+		for (final String counterparty : counterparties)
+			limits.put(counterparty, new Limits(Integer.valueOf(getLimit(properties, counterparty, "maxOrderQuantity")),
+					Double.valueOf(getLimit(properties, counterparty, "maxNotional")), Long.valueOf(getLimit(properties, counterparty, "maxPosition")),
+					Integer.valueOf(getLimit(properties, counterparty, "maxOpenOrders"))));
+		return new PreTradeRisk(limits, marketDataManager);
+	}
+	
+	private static String getLimit(final Properties properties, final String counterparty, final String limit) {
+		return properties.getProperty("risk."+counterparty+"."+limit, properties.getProperty("risk.default."+limit));
+	}
+	
+	/**
+	 * Checks the new order and, if it passes, counts it as working.
+	 * 
+	 * @return null if the order can be matched, the breached limit otherwise.
+	 * */
+	public String check(final BookOrder order) {
+		final int counterparty = getCounterparty(order.getSessionID());
+		if (counterparty < 0)
+			return "Unknown counterparty";
+		if (order.getSymbolId() == SymbolRegistry.UNKNOWN)
+			return null; //rejected by the matching engine.
+		final String breach = check(counterparty, order.getSymbolId(), order.getSide() == quickfix.field.Side.BUY, order.getQuantity(),
+				order.getType() == OrdType.STOP ? order.getStopPrice() : order.getPrice());
+		if (breach != null)
+			return breach;
+		if (openOrders.incrementAndGet(counterparty) > maxOpenOrders[counterparty]) {
+			openOrders.decrementAndGet(counterparty);
+			return "Open orders limit";
+		}
+		return null;
+	}
+	
+	/**
+	 * Checks the replacement order, which takes over the working order of the original one.
+	 * 
+	 * @return null if the request can be handed over, the breached limit otherwise.
+	 * */
+	public String check(final CancelReplaceRequest request) {
+		final int counterparty = getCounterparty(request.getSessionID());
+		if (counterparty < 0)
+			return "Unknown counterparty";
+		if (!request.isReplace() || request.getSymbolId() == SymbolRegistry.UNKNOWN)
+			return null;
+		return check(counterparty, request.getSymbolId(), request.getSide() == quickfix.field.Side.BUY, request.getQuantity(),
+				request.getPrice() != FixedPointPrice.NONE ? request.getPrice() : request.getStopPrice());
+	}
+	
+	/**
+	 * Market orders are valued at the latest quote, if any.
+	 * */
+	private String check(final int counterparty, final int symbolId, final boolean buy, final int quantity, final long price) {
+		if (quantity > maxOrderQuantity[counterparty])
+			return "Order quantity limit";
+		long notionalPrice = price;
+		if (notionalPrice == FixedPointPrice.NONE) {
+			final MarketData quote = marketDataManager.getQuote(symbolId);
+			if (quote != null)
+				notionalPrice = buy ? quote.getAskPrice() : quote.getBidPrice();
+		}
+		if (notionalPrice != FixedPointPrice.NONE && notionalPrice * quantity > maxNotional[counterparty])
+			return "Order notional limit";
+		final long position = positions.get(counterparty * symbols + symbolId) + (buy ? quantity : -quantity);
+		if (Math.abs(position) > maxPosition[counterparty])
+			return "Position limit";
+		return null;
+	}
+	
+	/**
+	 * Counts the working orders and adds the net filled positions of a shard's state, before the shard starts and any new order is checked.
+	 * Orders and positions of counterparties no longer configured are left out.
+	 * */
+	public void restore(final EngineSnapshot snapshot) {
+		final SymbolRegistry symbolRegistry = marketDataManager.getSymbolRegistry();
+		for (final EngineSnapshot.WorkingOrder workingOrder : snapshot.getOrders()) {
+			final BookOrder order = workingOrder.getOrder();
+			final int counterparty = getCounterparty(order.getSessionID());
+			if (counterparty >= 0 && order.getSymbolId() != SymbolRegistry.UNKNOWN)
+				openOrders.incrementAndGet(counterparty);
+		}
+		for (final EngineSnapshot.Position position : snapshot.getPositions()) {
+			final Integer counterparty = counterpartyIds.get(position.getCounterparty());
+			final int symbolId = symbolRegistry.getId(position.getSymbol());
+			if (counterparty != null && symbolId != SymbolRegistry.UNKNOWN)
+				positions.addAndGet(counterparty * symbols + symbolId, position.getQuantity());
+		}
+	}
+	
+	/**
+	 * Fills move the position, while done orders are no longer counted as working. Called on the report threads, before the report is sent.
+	 * */
+	public void onExecution(final ExecutionEvent event) {
+		final BookOrder order = event.getOrder();
+		if (order == null || order.getSymbolId() == SymbolRegistry.UNKNOWN)
+			return;
+		final int counterparty = getCounterparty(order.getSessionID());
+		if (counterparty < 0)
+			return;
+		switch(event.getType()) {
+			case FILL: {
+				positions.addAndGet(counterparty * symbols + order.getSymbolId(), order.getSide() == quickfix.field.Side.BUY ? event.getLastQty() : -event.getLastQty());
+				if (event.getLeavesQty() == 0)
+					orderDone(counterparty);
+				break;
+			}
+			case REJECT: case CANCEL: case DONE_FOR_DAY: orderDone(counterparty); break;
+			default: break;
+		}
+	}
+	
+	private void orderDone(final int counterparty) {
+		openOrders.decrementAndGet(counterparty);
+	}
+	
+	private int getCounterparty(final SessionID sessionID) {
+		final Integer result = sessionID == null ? null : counterpartyIds.get(sessionID.getTargetCompID());
+		return result == null ? -1 : result;
+	}
+	
+	/**
+	 * @return the net filled position, negative if short.
+	 * */
+	public long getPosition(final String counterparty, final int symbolId) {
+		return positions.get(counterpartyIds.get(counterparty) * symbols + symbolId);
+	}
+	
+	public int getOpenOrders(final String counterparty) {
+		return openOrders.get(counterpartyIds.get(counterparty));
+	}
+	
+	/**
+	 * Limits of one counterparty.
+	 * */
+	public static final class Limits {
+		private final int maxOrderQuantity;
+		private final double maxNotional;
+		private final long maxPosition;
+		private final int maxOpenOrders;
+	
+		public Limits(final int maxOrderQuantity, final double maxNotional, final long maxPosition, final int maxOpenOrders) {
+			this.maxOrderQuantity = maxOrderQuantity;
+			this.maxNotional = maxNotional;
+			this.maxPosition = maxPosition;
+			this.maxOpenOrders = maxOpenOrders;
+		}
+	}
+}
@@ -0,0 +1,68 @@
+package com.projects.tradingMachine.server;
+
+/**
+ * Orders of one price level, in arrival order. It's an intrusive doubly linked list, threaded through the orders themselves,
+ * so that any order can be taken out in O(1), e.g. when it gets cancelled, without scanning the level.
+ * An order can be in one level at most.
+ * */
+final class PriceLevel {
+	private final long price;
+	private BookOrder head;
+	private BookOrder tail;
+	private int size;
+
+	PriceLevel(final long price) {
+		this.price = price;
+	}
+
+	long getPrice() {
+		return price;
+	}
+
+	void addLast(final BookOrder order) {
+		order.level = this;
+		order.prevInLevel = tail;
+		order.nextInLevel = null;
+		if (tail == null)
+			head = order;
+		else
+			tail.nextInLevel = order;
+		tail = order;
+		size++;
+	}
+
+	/**
+	 * @return false if the order isn't in this level.
+	 * */
+	boolean remove(final BookOrder order) {
+		if (order.level != this)
+			return false;
+		if (order.prevInLevel == null)
+			head = order.nextInLevel;
+		else
+			order.prevInLevel.nextInLevel = order.nextInLevel;
+		if (order.nextInLevel == null)
+			tail = order.prevInLevel;
+		else
+			order.nextInLevel.prevInLevel = order.prevInLevel;
+		order.level = null;
+		order.prevInLevel = order.nextInLevel = null;
+		size--;
+		return true;
+	}
+
+	/**
+	 * @return the oldest order of the level, then follow {@link BookOrder#nextInLevel} for the others.
+	 * */
+	BookOrder peekFirst() {
+		return head;
+	}
+
+	boolean isEmpty() {
+		return head == null;
+	}
+
+	int size() {
+		return size;
+	}
+}
@@ -0,0 +1,11 @@
+package com.projects.tradingMachine.server;
+
+import com.projects.tradingMachine.utility.marketData.MarketData;
+
+/**
+ * Notified by the market data manager each time a symbol gets a new quote.
+ * */
+public interface QuoteListener {
+
+	void onQuote(MarketData marketData);
+}
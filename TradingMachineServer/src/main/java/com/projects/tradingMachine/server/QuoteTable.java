@@ -0,0 +1,99 @@
+package com.projects.tradingMachine.server;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.projects.tradingMachine.utility.FixedPointPrice;
+import com.projects.tradingMachine.utility.marketData.MarketData;
+
+/**
+ * Latest quote of each symbol, indexed by symbol id. Reading a quote is a plain volatile array access, with no locking nor allocation.
+ * With several venues, each one keeps its own quote per symbol, and the symbol's quote is their consolidated best bid/offer:
+ * the highest bid and the lowest ask across the venues, with the sizes of all the venues at those prices.
+ * It's rebuilt in O(venues) on each venue quote, under the symbol's lock, see {@link #getLock(int)}. A single venue's quotes are stored as they are.
+ * */
+final class QuoteTable {
+	private final AtomicReferenceArray<MarketData> quotes;
+	private final MarketData[][] venueQuotes; //indexed by symbol id then venue, guarded by the symbol's row.
+	
+	QuoteTable(final int symbols) {
+		this(symbols, 1);
+	}
+	
+	QuoteTable(final int symbols, final int venues) {
+		if (venues < 1)
+			throw new IllegalArgumentException("Invalid number of venues: "+venues);
+		quotes = new AtomicReferenceArray<>(symbols);
+		venueQuotes = new MarketData[symbols][venues];
+	}
+	
+	/**
+	 * @return the latest quote, consolidated across the venues, or null if none has been received yet.
+	 * */
+	MarketData get(final int symbolId) {
+		return quotes.get(symbolId);
+	}
+	
+	/**
+	 * @return the latest quote of the venue or null if none has been received yet.
+	 * */
+	MarketData get(final int venue, final int symbolId) {
+		synchronized (venueQuotes[symbolId]) {
+			return venueQuotes[symbolId][venue];
+		}
+	}
+	
+	/**
+	 * Lock of the symbol's quotes, to be held while storing a venue quote and handing over the consolidated one,
+	 * so that two venues can't hand them over out of order.
+	 * */
+	Object getLock(final int symbolId) {
+		return venueQuotes[symbolId];
+	}
+	
+	/**
+	 * Stores the venue's quote then the symbol's consolidated one, the symbol's lock being held.
+	 * 
+	 * @return the consolidated quote, the given one if there's a single venue.
+	 * */
+	MarketData put(final int venue, final int symbolId, final MarketData marketData) {
+		final MarketData[] symbolQuotes = venueQuotes[symbolId];
+		symbolQuotes[venue] = marketData;
+		final MarketData result = symbolQuotes.length == 1 ? marketData : consolidate(symbolQuotes, marketData);
+		quotes.set(symbolId, result);
+		return result;
+	}
+	
+	/**
+	 * Best bid/offer of the venues, with the id and time of the last venue quote.
+	 * */
+	private static MarketData consolidate(final MarketData[] symbolQuotes, final MarketData last) {
+		long bid = FixedPointPrice.NONE, ask = FixedPointPrice.NONE;
+		long bidSize = 0, askSize = 0;
+		for (final MarketData quote : symbolQuotes) {
+			if (quote == null)
+				continue;
+			if (quote.getBidPrice() != FixedPointPrice.NONE) {
+				if (bid == FixedPointPrice.NONE || quote.getBidPrice() > bid) {
+					bid = quote.getBidPrice();
+					bidSize = quote.getBidSize();
+				}
+				else if (quote.getBidPrice() == bid)
+					bidSize += quote.getBidSize();
+			}
+			if (quote.getAskPrice() != FixedPointPrice.NONE) {
+				if (ask == FixedPointPrice.NONE || quote.getAskPrice() < ask) {
+					ask = quote.getAskPrice();
+					askSize = quote.getAskSize();
+				}
+				else if (quote.getAskPrice() == ask)
+					askSize += quote.getAskSize();
+			}
+		}
+		return new MarketData(last.getID(), last.getSymbol(), last.getSymbolId(), bid, ask, (int)Math.min(bidSize, Integer.MAX_VALUE),
+				(int)Math.min(askSize, Integer.MAX_VALUE), last.getQuoteTime());
+	}
+	
+	int getVenues() {
+		return venueQuotes.length == 0 ? 1 : venueQuotes[0].length;
+	}
+}
@@ -0,0 +1,109 @@
+package com.projects.tradingMachine.server;
+
+import java.util.Arrays;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+/**
+ * Latency of each stage an order goes through, from its reception to its execution reports, recorded by every thread of the pipeline.
+ * Each stage has its own HdrHistogram {@link Recorder}, so that recording never blocks. The percentiles are those of the last interval,
+ * from one {@link #roll()} to the next, exposed over JMX and logged by the acceptor.
+ * */
+public final class StageLatencies implements StageLatenciesMXBean {
+	public enum Stage {
+		/** fromApp: cracking the FIX message, up to its publication on the shard's ring buffer, included the wait if that's full. */
+		FROM_APP,
+		/** Time spent in the shard's inbound ring buffer. */
+		INBOUND_QUEUE,
+		/** Quote look up of a new order. */
+		QUOTE_LOOKUP,
+		/** Credit check and credit update of a fill, one per order side of a cross. */
+		CREDIT_CHECK,
+		/** Time spent in the shard's outbound ring buffer. */
+		REPORT_QUEUE,
+		/** Execution report build. */
+		REPORT_BUILD,
+		/** Validation and Session.send of the execution report. */
+		SESSION_SEND
+	}
+	private static final Stage[] STAGES = Stage.values();
+	
+	private final Recorder[] recorders;
+	private final Histogram[] intervals; //last interval of each stage.
+	
+	public StageLatencies() {
+		recorders = new Recorder[STAGES.length];
+		intervals = new Histogram[STAGES.length];
+		for (int i = 0; i < STAGES.length; i++) {
+			recorders[i] = new Recorder(3);
+			intervals[i] = recorders[i].getIntervalHistogram();
+		}
+	}
+	
+	/**
+	 * Records the time elapsed since the given {@link System#nanoTime()}.
+	 * 
+	 * @return the current {@link System#nanoTime()}, so that the next stage can start from it.
+	 * */
+	public long recordSince(final Stage stage, final long startNanos) {
+		final long now = System.nanoTime();
+		recorders[stage.ordinal()].recordValue(Math.max(now - startNanos, 0));
+		return now;
+	}
+	
+	/**
+	 * Ends the current interval: the percentiles then cover the values recorded since the previous call.
+	 * */
+	public synchronized void roll() {
+		for (int i = 0; i < STAGES.length; i++)
+			intervals[i] = recorders[i].getIntervalHistogram(intervals[i]);
+	}
+	
+	@Override
+	public String[] getStages() {
+		return Arrays.stream(STAGES).map(Stage::name).toArray(String[]::new);
+	}
+	
+	@Override
+	public synchronized long[] getCounts() {
+		return Arrays.stream(intervals).mapToLong(Histogram::getTotalCount).toArray();
+	}
+	
+	@Override
+	public double[] getP50Micros() {
+		return getPercentileMicros(50);
+	}
+	
+	@Override
+	public double[] getP99Micros() {
+		return getPercentileMicros(99);
+	}
+	
+	@Override
+	public double[] getP999Micros() {
+		return getPercentileMicros(99.9);
+	}
+	
+	@Override
+	public synchronized double[] getMaxMicros() {
+		return Arrays.stream(intervals).mapToDouble(histogram -> histogram.getMaxValue() / 1e3).toArray();
+	}
+	
+	private synchronized double[] getPercentileMicros(final double percentile) {
+		return Arrays.stream(intervals).mapToDouble(histogram -> histogram.getValueAtPercentile(percentile) / 1e3).toArray();
+	}
+	
+	/**
+	 * Last interval of each stage, in microseconds.
+	 * */
+	@Override
+	public synchronized String toString() {
+		final StringBuilder result = new StringBuilder("StageLatencies [");
+		for (int i = 0; i < STAGES.length; i++)
+			result.append(i == 0 ? "" : ", ").append(STAGES[i]).append(String.format(" count=%d p50=%.1f p99=%.1f p99.9=%.1f max=%.1f", 
+					intervals[i].getTotalCount(), intervals[i].getValueAtPercentile(50) / 1e3, intervals[i].getValueAtPercentile(99) / 1e3, 
+					intervals[i].getValueAtPercentile(99.9) / 1e3, intervals[i].getMaxValue() / 1e3));
+		return result.append("]").toString();
+	}
+}
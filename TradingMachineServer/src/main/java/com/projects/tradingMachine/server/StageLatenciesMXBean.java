@@ -0,0 +1,19 @@
+package com.projects.tradingMachine.server;
+
+/**
+ * JMX view of the order pipeline stage latencies, over the last interval, each array being indexed like {@link #getStages()}.
+ * */
+public interface StageLatenciesMXBean {
+
+	String[] getStages();
+	
+	long[] getCounts();
+	
+	double[] getP50Micros();
+	
+	double[] getP99Micros();
+	
+	double[] getP999Micros();
+	
+	double[] getMaxMicros();
+}
@@ -0,0 +1,79 @@
+package com.projects.tradingMachine.server;
+
+import java.io.IOException;
+import java.util.Properties;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.projects.tradingMachine.server.journal.JournalSettings;
+import com.projects.tradingMachine.server.journal.PrimaryLock;
+import com.projects.tradingMachine.server.journal.ShardFollower;
+import com.projects.tradingMachine.utility.SymbolRegistry;
+
+/**
+ * Hot standby of the acceptor: it follows the journal of each primary's shard, applying every record to an in-memory copy of the shard's engine,
+ * until it gets the {@link PrimaryLock}, i.e. the primary process is gone. The caught up engines are then handed over to the acceptor starting in its place,
+ * which binds the FIX acceptor port and goes on journaling after the primary's last record.
+ * The primary's heartbeat is its journal: the timer ticks alone add records every tick. A primary which stops journaling but still holds the lock
+ * is reported, not taken over, since it might still write.
+ * Configuration parameters:
+ * <ul>
+ * 	<li>replica.pollMillis: how often the journals are polled and the lock is tried.</li>
+ *  <li>replica.heartbeatTimeoutMillis: journal silence after which the primary is reported as stalled.</li>
+ * </ul>
+ * */
+public final class StandbyReplica {
+	private static final Logger logger = LoggerFactory.getLogger(StandbyReplica.class);
+
+	private final JournalSettings journalSettings;
+	private final ShardFollower[] followers;
+	private final long pollMillis;
+	private final long heartbeatTimeoutMillis;
+
+	public StandbyReplica(final Properties properties, final SymbolRegistry symbolRegistry) throws IOException {
+		journalSettings = JournalSettings.from(properties);
+		if (!journalSettings.isEnabled())
+			throw new IllegalArgumentException("The standby replica needs the primary's journal.directory");
+		final MissingQuotePolicy missingQuotePolicy = MissingQuotePolicy.valueOf(properties.getProperty("marketData.missingQuotePolicy",
+				MissingQuotePolicy.SYNTHETIC.name()));
+		final OrderExpiry orderExpiry = OrderExpiry.from(properties);
+		final AuctionSchedule auctionSchedule = AuctionSchedule.from(properties);
+		followers = new ShardFollower[Integer.valueOf(properties.getProperty("matchingShards.number"))];
+		for (int i = 0; i < followers.length; i++)
+			followers[i] = ShardFollower.open(journalSettings.getShardDirectory(i), symbolRegistry, missingQuotePolicy, orderExpiry, auctionSchedule);
+		pollMillis = Long.valueOf(properties.getProperty("replica.pollMillis", "10"));
+		heartbeatTimeoutMillis = Long.valueOf(properties.getProperty("replica.heartbeatTimeoutMillis", "5000"));
+	}
+
+	/**
+	 * Follows the primary's journals until this process gets the primary lock.
+	 *
+	 * @return the shard engines, caught up with the last journal records, to start the acceptor with.
+	 * */
+	public ShardFollower[] awaitTakeover() throws IOException, InterruptedException {
+		logger.info("Following the primary's journals in "+journalSettings);
+		long lastProgress = System.currentTimeMillis();
+		boolean stalled = false;
+		while (!PrimaryLock.tryAcquire(journalSettings.getDirectory())) {
+			int records = 0;
+			for (final ShardFollower follower : followers)
+				records += follower.poll();
+			final long now = System.currentTimeMillis();
+			if (records > 0) {
+				lastProgress = now;
+				stalled = false;
+			}
+			else if (!stalled && now - lastProgress > heartbeatTimeoutMillis) {
+				logger.warn("No journal record for "+(now - lastProgress)+" ms, but the primary still holds its lock.");
+				stalled = true;
+			}
+			Thread.sleep(pollMillis);
+		}
+		for (final ShardFollower follower : followers) {
+			follower.finish();
+			logger.info("Taking over "+follower);
+		}
+		return followers;
+	}
+}
@@ -0,0 +1,142 @@
+package com.projects.tradingMachine.server;
+
+import java.util.function.Consumer;
+
+/**
+ * Hashed timer wheel: a ring of slots, each one being a doubly linked list of the timers due in that slot, possibly some rounds later.
+ * Scheduling and cancelling are O(1), while each tick only visits the timers of one slot.
+ * Ticks are aligned to the epoch rather than to the start time, so that a timer expires on the same {@link #advance(long, Consumer)} call 
+ * whenever the wheel was created, e.g. when the engine state is rebuilt from the journal.
+ * It's not thread safe: it's meant to be owned, scheduled and advanced by a single thread, e.g. a matching shard.
+ * */
+public final class TimerWheel<T> {
+	private final Timer<T>[] slots;
+	private final int mask;
+	private final long tickMillis;
+	private long currentTick;
+	private int size;
+
+	/**
+	 * @param wheelSize Number of slots, it must be a power of 2.
+	 * @param tickMillis Time span of each slot.
+	 * @param startTime Time of the first tick, in milliseconds.
+	 */
+	public TimerWheel(final int wheelSize, final long tickMillis, final long startTime) {
+		if (wheelSize < 1 || Integer.bitCount(wheelSize) != 1)
+			throw new IllegalArgumentException("Timer wheel size must be a power of 2: "+wheelSize);
+		if (tickMillis < 1)
+			throw new IllegalArgumentException("Timer wheel tick must be at least 1 ms: "+tickMillis);
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		final Timer<T>[] timers = new Timer[wheelSize];
+		slots = timers;
+		mask = wheelSize - 1;
+		this.tickMillis = tickMillis;
+		currentTick = Math.floorDiv(startTime, tickMillis);
+	}
+
+	/**
+	 * Schedules the payload to expire at the given time, or at the next tick if that's already past.
+	 * */
+	public Timer<T> schedule(final long deadline, final T payload) {
+		final long deadlineTick = Math.max(currentTick, Math.floorDiv(deadline + tickMillis - 1, tickMillis));
+		final Timer<T> timer = new Timer<>(payload, deadline);
+		timer.remainingRounds = (deadlineTick - currentTick) / slots.length;
+		timer.slot = (int)(deadlineTick & mask);
+		timer.next = slots[timer.slot];
+		if (timer.next != null)
+			timer.next.prev = timer;
+		slots[timer.slot] = timer;
+		size++;
+		return timer;
+	}
+
+	/**
+	 * @return false if the timer had already expired or been cancelled.
+	 * */
+	public boolean cancel(final Timer<T> timer) {
+		if (timer.slot < 0)
+			return false;
+		unlink(timer);
+		return true;
+	}
+
+	/**
+	 * Processes all the ticks up to the given time, handing the expired payloads to the handler.
+	 * The handler can schedule new timers, but it mustn't cancel other ones.
+	 * */
+	public void advance(final long now, final Consumer<T> expiryHandler) {
+		final long targetTick = Math.floorDiv(now, tickMillis);
+		for (; currentTick <= targetTick; currentTick++) {
+			Timer<T> timer = slots[(int)(currentTick & mask)];
+			while (timer != null) {
+				final Timer<T> next = timer.next;
+				if (timer.remainingRounds > 0)
+					timer.remainingRounds--;
+				else {
+					unlink(timer);
+					expiryHandler.accept(timer.payload);
+				}
+				timer = next;
+			}
+		}
+	}
+
+	/**
+	 * Visits the scheduled timers slot by slot, earliest scheduled first within each slot, so that scheduling them again in the same order 
+	 * gives the same expiry order.
+	 * */
+	public void forEach(final Consumer<Timer<T>> consumer) {
+		for (final Timer<T> head : slots) {
+			Timer<T> timer = head;
+			while (timer != null && timer.next != null)
+				timer = timer.next;
+			for (; timer != null; timer = timer.prev)
+				consumer.accept(timer);
+		}
+	}
+
+	/**
+	 * Number of scheduled timers.
+	 * */
+	public int size() {
+		return size;
+	}
+
+	private void unlink(final Timer<T> timer) {
+		if (timer.prev != null)
+			timer.prev.next = timer.next;
+		else
+			slots[timer.slot] = timer.next;
+		if (timer.next != null)
+			timer.next.prev = timer.prev;
+		timer.prev = timer.next = null;
+		timer.slot = -1;
+		size--;
+	}
+
+	public static final class Timer<T> {
+		private final T payload;
+		private final long deadline;
+		private long remainingRounds;
+		private int slot;
+		private Timer<T> prev;
+		private Timer<T> next;
+
+		private Timer(final T payload, final long deadline) {
+			this.payload = payload;
+			this.deadline = deadline;
+		}
+
+		public T getPayload() {
+			return payload;
+		}
+
+		public long getDeadline() {
+			return deadline;
+		}
+
+		public boolean isScheduled() {
+			return slot >= 0;
+		}
+	}
+}
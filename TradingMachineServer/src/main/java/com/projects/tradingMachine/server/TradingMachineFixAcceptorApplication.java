@@ -1,24 +1,37 @@
 package com.projects.tradingMachine.server;
 
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Paths;
 import java.sql.SQLException;
 import java.util.Properties;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
+import javax.management.ObjectName;
+
 import org.apache.commons.dbcp2.BasicDataSource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.projects.tradingMachine.server.journal.JournalRecord;
+import com.projects.tradingMachine.server.journal.JournalSettings;
+import com.projects.tradingMachine.server.journal.PrimaryLock;
+import com.projects.tradingMachine.server.journal.ShardFollower;
+import com.projects.tradingMachine.utility.SymbolRegistry;
 import com.projects.tradingMachine.utility.Utility;
 import com.projects.tradingMachine.utility.database.DatabaseProperties;
 import com.projects.tradingMachine.utility.database.PooledDataSourceBuilder;
+import com.projects.tradingMachine.utility.database.creditCheck.CachingCreditCheck;
+import com.projects.tradingMachine.utility.database.creditCheck.CreditLedger;
+import com.projects.tradingMachine.utility.database.creditCheck.CreditSettlement;
+import com.projects.tradingMachine.utility.database.creditCheck.ICreditCheck;
+import com.projects.tradingMachine.utility.database.creditCheck.JdbcCreditStore;
+import com.projects.tradingMachine.utility.database.creditCheck.PooledCreditCheck;
 
-import quickfix.ConfigError;
 import quickfix.Dictionary;
 import quickfix.DoNotSend;
-import quickfix.FieldConvertError;
 import quickfix.FieldNotFound;
 import quickfix.IncorrectDataFormat;
 import quickfix.IncorrectTagValue;
@@ -33,40 +46,131 @@ import quickfix.fixt11.Logon;
  * QuickFIX/J acceptor with following key features:
  * <ul>
  * 	<li>Does log-on check.</li>
- *  <li>FIX 5.0 message cracking. Once a message is received, it then gets forwarded, in a separate thread, to a matching engine.</li>
- *  <li>The degree of parallelism can be set by a configuration parameter.</li> 
- *  <li>Receives market data from a given queue.</li>
+ *  <li>FIX 5.0 message cracking. Orders, cancel/replace requests and market data updates are handed over to the matching shard owning their symbol, see {@link MatchingShards}.</li>
+ *  <li>Shards journal and snapshot their state, which a restart or a standby replica takes back, see {@link StandbyReplica}.</li>
+ *  <li>Credit is checked by the database, a write-behind ledger or a cached balance, depending on creditCheck.mode.</li>
+ *  <li>Orders are checked against the limits of their counterparty before reaching their shard, see {@link PreTradeRisk}, while {@link PositionKeeper} follows the fills.</li>
  * </ul>
  * */
 public class TradingMachineFixAcceptorApplication extends quickfix.MessageCracker implements quickfix.Application {
 	private final static Logger logger = LoggerFactory.getLogger(TradingMachineFixAcceptorApplication.class);
 	
     private final MarketDataManager marketDataManager;
-    private final ExecutorService executor;
+    private final MatchingShards matchingShards;
     private final ScheduledExecutorService scheduledExecutorService;
     private final SessionSettings settings;
     private final BasicDataSource creditCheckConnectionPool;
+    private final CreditLedger creditLedger; //null if the credit is checked against the database.
+    private final CreditSettlement creditSettlement; //null unless the database credit check settles in batches, or is cached.
+    private final CachingCreditCheck cachingCreditCheck; //null unless the database credit is cached.
+    private final ICreditCheck creditCheck;
+    private final StageLatencies stageLatencies;
+    private final PreTradeRisk preTradeRisk; //null if there are no limits.
+    private final PositionKeeper positionKeeper;
     
     public TradingMachineFixAcceptorApplication(final SessionSettings settings) throws Exception {
+    	this(settings, null);
+    }
+    
+    /**
+     * @param followers Shard engines handed over by a standby replica taking over, null to start as the primary.
+     * */
+    public TradingMachineFixAcceptorApplication(final SessionSettings settings, final ShardFollower[] followers) throws Exception {
     	this.settings = settings;
     	final Properties applicationProperties = Utility.getApplicationProperties("tradingMachine.properties");
+    	final JournalSettings journalSettings = JournalSettings.from(applicationProperties);
+    	if (journalSettings.isEnabled() && !PrimaryLock.tryAcquire(journalSettings.getDirectory()))
+    		throw new IllegalStateException("Another acceptor is journaling to "+journalSettings.getDirectory()+", start this one as its replica.");
     	//market feed data
-		marketDataManager = new MarketDataManager(applicationProperties);
-		marketDataManager.start();
+		marketDataManager = new MarketDataManager(applicationProperties, SymbolRegistry.load(applicationProperties));
 		
-		//onMessage's executor
-        executor = Executors.newFixedThreadPool(Integer.valueOf(applicationProperties.getProperty("numberProcessingOrderThreads")));
-        
         creditCheckConnectionPool = PooledDataSourceBuilder.getDataSource(new DatabaseProperties(applicationProperties.getProperty("mySQL.host"), 
         		Integer.valueOf(applicationProperties.getProperty("mySQL.port")), applicationProperties.getProperty("mySQL.database"), 
         		applicationProperties.getProperty("mySQL.userName"), applicationProperties.getProperty("mySQL.password")), 
         		Integer.valueOf(applicationProperties.getProperty("creditCheckDatabasePoolConnections")));
+        final String creditCheckMode = applicationProperties.getProperty("creditCheck.mode", "database");
+        if (creditCheckMode.equals("ledger")) {
+        	//in-memory credit, the database gets the debits in batches.
+        	creditLedger = new CreditLedger(new JdbcCreditStore(creditCheckConnectionPool, applicationProperties.getProperty("creditLedger.id", "TradingMachineServer")), 
+        			Paths.get(applicationProperties.getProperty("creditLedger.logFile")), Long.valueOf(applicationProperties.getProperty("creditLedger.flushIntervalMillis", "100")));
+        	creditLedger.start();
+        	creditCheck = creditLedger.getAccount(applicationProperties.getProperty("creditLedger.counterparty", "TRADING_COUNTERPARTY"));
+        	creditSettlement = null;
+        	cachingCreditCheck = null;
+        }
+        else {
+        	creditLedger = null;
+        	final ICreditCheck databaseCreditCheck = new PooledCreditCheck(creditCheckConnectionPool);
+        	final boolean cached = !creditCheckMode.equals("settlement") && Boolean.valueOf(applicationProperties.getProperty("creditCache.enabled", "false"));
+        	if (creditCheckMode.equals("settlement") || cached) {
+        		//debits of each counterparty added up, then applied with one batched update.
+        		creditSettlement = new CreditSettlement(databaseCreditCheck, new JdbcCreditStore(creditCheckConnectionPool, applicationProperties.getProperty("creditLedger.id", "TradingMachineServer")), 
+        				applicationProperties.getProperty("creditLedger.counterparty", "TRADING_COUNTERPARTY"), Integer.valueOf(applicationProperties.getProperty("creditSettlement.maxBatchSize", "100")), 
+        				Long.valueOf(applicationProperties.getProperty("creditSettlement.windowMillis", "20")));
+        		creditSettlement.start();
+        	}
+        	else
+        		creditSettlement = null;
+        	if (cached) {
+        		//local balance refreshed in the background, the debits settled in batches: the matching threads never wait on the database.
+        		cachingCreditCheck = new CachingCreditCheck(creditSettlement, Long.valueOf(applicationProperties.getProperty("creditCache.maxStalenessMillis", "1000")), 
+        				Long.valueOf(applicationProperties.getProperty("creditCache.refreshIntervalMillis", "200")), Long.valueOf(applicationProperties.getProperty("creditCache.latencyThresholdMillis", "100")), 
+        				applicationProperties.getProperty("creditCache.fallback", "failClosed").equals("reducedLimit") ? CachingCreditCheck.Fallback.REDUCED_LIMIT : CachingCreditCheck.Fallback.FAIL_CLOSED, 
+        				Double.valueOf(applicationProperties.getProperty("creditCache.reducedLimitRatio", "0.5")));
+        		cachingCreditCheck.start();
+        		creditCheck = cachingCreditCheck;
+        	}
+        	else {
+        		cachingCreditCheck = null;
+        		creditCheck = creditSettlement != null ? creditSettlement : databaseCreditCheck;
+        	}
+        }
+        
+        //symbol sharded matching pipelines
+        stageLatencies = new StageLatencies();
+        preTradeRisk = PreTradeRisk.from(applicationProperties, marketDataManager);
+        positionKeeper = new PositionKeeper(marketDataManager);
+        final FixExecutionReporter executionReporter = new FixExecutionReporter(stageLatencies);
+        matchingShards = MatchingShards.builder(marketDataManager, creditCheck, event -> {
+        	if (preTradeRisk != null)
+        		preTradeRisk.onExecution(event);
+        	positionKeeper.onExecution(event);
+        	executionReporter.onEvent(event);
+        }).configure(applicationProperties).followers(followers).stageLatencies(stageLatencies).build();
+        //positions and working orders as of the recovered books, which the executions to come move on from.
+        if (preTradeRisk != null)
+        	matchingShards.getRecoveredStates().forEach(preTradeRisk::restore);
+        matchingShards.start();
+        ManagementFactory.getPlatformMBeanServer().registerMBean(matchingShards, new ObjectName("com.projects.tradingMachine.server:type=MatchingShards"));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(stageLatencies, new ObjectName("com.projects.tradingMachine.server:type=StageLatencies"));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(positionKeeper, new ObjectName("com.projects.tradingMachine.server:type=PositionKeeper"));
+        marketDataManager.addQuoteListener(matchingShards);
+        marketDataManager.start();
         
         //DB connection check
-        scheduledExecutorService = Executors.newScheduledThreadPool(1);
+        scheduledExecutorService = Executors.newScheduledThreadPool(3);
         scheduledExecutorService.scheduleWithFixedDelay(() -> {
-			logger.debug("Credit check database pool,  idle: "+creditCheckConnectionPool.getNumIdle()+", active: "+creditCheckConnectionPool.getNumActive());
+			logger.debug("Credit check database pool,  idle: "+creditCheckConnectionPool.getNumIdle()+", active: "+creditCheckConnectionPool.getNumActive()
+					+", credit check: "+creditCheck);
+			logger.debug(matchingShards.toString());
+			logger.debug(positionKeeper.toString());
         }, 1, 60, TimeUnit.SECONDS); 
+        //order expiry: one tick task for all the orders, each shard's timer wheel does the rest.
+        final long expiryTickMillis = OrderExpiry.from(applicationProperties).getTickMillis();
+        scheduledExecutorService.scheduleAtFixedRate(() -> matchingShards.onTick(System.currentTimeMillis()), 
+        		expiryTickMillis, expiryTickMillis, TimeUnit.MILLISECONDS);
+        //per stage latency percentiles of the last interval.
+        final long latencyIntervalSeconds = Long.valueOf(applicationProperties.getProperty("latency.logIntervalSeconds", "60"));
+        scheduledExecutorService.scheduleAtFixedRate(() -> {
+        	stageLatencies.roll();
+        	logger.info(stageLatencies.toString());
+        }, latencyIntervalSeconds, latencyIntervalSeconds, TimeUnit.SECONDS);
+        if (journalSettings.isEnabled() && journalSettings.getForceIntervalMillis() > 0)
+        	scheduledExecutorService.scheduleWithFixedDelay(matchingShards::forceJournals, journalSettings.getForceIntervalMillis(), 
+        			journalSettings.getForceIntervalMillis(), TimeUnit.MILLISECONDS);
+        if (journalSettings.isEnabled() && journalSettings.getSnapshotIntervalMillis() > 0)
+        	scheduledExecutorService.scheduleWithFixedDelay(matchingShards::snapshot, journalSettings.getSnapshotIntervalMillis(), 
+        			journalSettings.getSnapshotIntervalMillis(), TimeUnit.MILLISECONDS);
     }
 
     @Override
@@ -121,34 +225,105 @@ public class TradingMachineFixAcceptorApplication extends quickfix.MessageCracke
     @Override
     public void fromApp(quickfix.Message message, SessionID sessionID) throws FieldNotFound, IncorrectDataFormat,
             IncorrectTagValue, UnsupportedMessageType {
+    	final long received = System.nanoTime();
     	logger.info("[fromApp]"+message.toString());
         crack(message, sessionID);
+        stageLatencies.recordSince(StageLatencies.Stage.FROM_APP, received);
     }
     //@Override
     //message from initiator[FIX client]
     public void onMessage(final quickfix.fix50.NewOrderSingle order, final SessionID sessionID)
-            throws FieldNotFound, UnsupportedMessageType, IncorrectTagValue, NumberFormatException, ClassNotFoundException, SQLException, ConfigError, FieldConvertError {
+            throws FieldNotFound, UnsupportedMessageType, IncorrectTagValue {
     	logger.info("[onMessage]"+order.toString());
-    	executor.execute(new MatchingEngine(creditCheckConnectionPool, marketDataManager, order, sessionID));
+    	final BookOrder bookOrder = BookOrder.from(order, sessionID, marketDataManager);
+    	//rejected before the risk check counts it as working, since the shard's journal couldn't take it.
+    	String breach = JournalRecord.checkLengths(bookOrder.getClOrdID(), null, bookOrder.getSymbol(), sessionID);
+    	if (breach == null && preTradeRisk != null)
+    		breach = preTradeRisk.check(bookOrder);
+    	if (breach != null) {
+    		logger.info("Rejecting order "+bookOrder.getClOrdID()+": "+breach);
+    		Utility.sendMessage(sessionID, FixExecutionReporter.buildRiskReject(bookOrder, breach));
+    		return;
+    	}
+    	matchingShards.onNewOrder(bookOrder);
     } 
     
+    public void onMessage(final quickfix.fix50.OrderCancelRequest request, final SessionID sessionID)
+            throws FieldNotFound, UnsupportedMessageType, IncorrectTagValue {
+    	logger.info("[onMessage]"+request.toString());
+    	onCancelReplace(CancelReplaceRequest.from(request, sessionID, marketDataManager));
+    }
+    
+    public void onMessage(final quickfix.fix50.OrderCancelReplaceRequest request, final SessionID sessionID)
+            throws FieldNotFound, UnsupportedMessageType, IncorrectTagValue {
+    	logger.info("[onMessage]"+request.toString());
+    	onCancelReplace(CancelReplaceRequest.from(request, sessionID, marketDataManager));
+    }
+    
+    private void onCancelReplace(final CancelReplaceRequest request) {
+    	String breach = JournalRecord.checkLengths(request.getClOrdID(), request.getOrigClOrdID(), request.getSymbol(), request.getSessionID());
+    	if (breach == null && preTradeRisk != null)
+    		breach = preTradeRisk.check(request);
+    	if (breach != null) {
+    		logger.info("Rejecting "+request+": "+breach);
+    		Utility.sendMessage(request.getSessionID(), FixExecutionReporter.buildRiskCancelReject(request, breach));
+    		return;
+    	}
+    	matchingShards.onCancelReplace(request);
+    }
+    
     public void cleanUp() {
     	try {
-    		Utility.shutdownExecutorService(executor, 5, TimeUnit.SECONDS);
+    		marketDataManager.stop();
     	}
-    	catch(final InterruptedException ex) {
-    		logger.warn("Exception while shutting down the matching engine executor service.");
+    	catch(final Exception ex) {
+    		logger.warn("Exception while stopping the market data manager.");
     	}
+    	//no more ticks, snapshots or journal flushes once the shards are stopping.
     	try {
     		Utility.shutdownExecutorService(scheduledExecutorService, 5, TimeUnit.SECONDS);
     	}
     	catch(final InterruptedException ex) {
     		logger.warn("Exception while shutting down utility scheduled executor service.");
     	}
+    	try {
+    		matchingShards.snapshot();
+    		matchingShards.stop();
+    	}
+    	catch(final InterruptedException ex) {
+    		logger.warn("Exception while stopping the matching shards.");
+    	}
+    	try {
+    		if (creditLedger != null)
+    			creditLedger.stop();
+    	}
+    	catch(final Exception ex) {
+    		logger.warn("Exception while stopping the credit ledger, its log will be applied on restart.");
+    	}
+    	try {
+    		if (cachingCreditCheck != null)
+    			cachingCreditCheck.stop();
+    	}
+    	catch(final InterruptedException ex) {
+    		logger.warn("Exception while stopping the credit check refresher.");
+    	}
+    	try {
+    		if (creditSettlement != null)
+    			creditSettlement.stop();
+    	}
+    	catch(final Exception ex) {
+    		logger.warn("Exception while settling the last credit batch: "+creditSettlement);
+    	}
     	try {
 			creditCheckConnectionPool.close();
 		} catch (final SQLException ex) {
 			logger.warn("Exception while closing database connection pool.");
 		}
+    	try {
+    		PrimaryLock.release();
+    	}
+    	catch(final IOException ex) {
+    		logger.warn("Exception while releasing the primary lock.");
+    	}
     }
 }
\ No newline at end of file
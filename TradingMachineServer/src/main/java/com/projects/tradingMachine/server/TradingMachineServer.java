@@ -2,10 +2,16 @@ package com.projects.tradingMachine.server;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Properties;
 
+import org.quickfixj.jmx.JmxExporter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.projects.tradingMachine.server.journal.ShardFollower;
+import com.projects.tradingMachine.utility.SymbolRegistry;
+import com.projects.tradingMachine.utility.Utility;
+
 import quickfix.ConfigError;
 import quickfix.DefaultMessageFactory;
 import quickfix.FileStoreFactory;
@@ -18,7 +24,8 @@ import quickfix.SessionSettings;
 import quickfix.SocketAcceptor;
 
 /**
- * Main class for configuring and starting the FIX acceptor.
+ * Main class for configuring and starting the FIX acceptor. 
+ * Started with the "replica" argument, it first follows the primary's journals as a hot standby, then takes over the acceptor port once the primary is gone.
  * */
 public final class TradingMachineServer {
 	private final static Logger logger = LoggerFactory.getLogger(TradingMachineServer.class);
@@ -26,12 +33,20 @@ public final class TradingMachineServer {
 	private final TradingMachineFixAcceptorApplication application;
 
 	public TradingMachineServer() throws Exception {
+		this(null);
+	}
+
+	/**
+	 * @param followers Shard engines handed over by a standby replica, null to start as the primary.
+	 * */
+	public TradingMachineServer(final ShardFollower[] followers) throws Exception {
 		final SessionSettings settings = getSessionSettings();
-		application = new TradingMachineFixAcceptorApplication(settings);
+		application = new TradingMachineFixAcceptorApplication(settings, followers);
 		final MessageStoreFactory messageStoreFactory = new FileStoreFactory(settings);
 		final LogFactory logFactory = new ScreenLogFactory(true, true, true);
 		final MessageFactory messageFactory = new DefaultMessageFactory();
 		acceptor = new SocketAcceptor(application, messageStoreFactory, settings, logFactory, messageFactory);
+		new JmxExporter().register(acceptor);
 	}
 
 	private SessionSettings getSessionSettings() throws IOException, ConfigError {
@@ -51,7 +66,12 @@ public final class TradingMachineServer {
 
 	public static void main(String[] args) throws Exception {
 		try {
-			final TradingMachineServer executor = new TradingMachineServer();
+			ShardFollower[] followers = null;
+			if (args.length > 0 && args[0].equals("replica")) {
+				final Properties properties = Utility.getApplicationProperties("tradingMachine.properties");
+				followers = new StandbyReplica(properties, SymbolRegistry.load(properties)).awaitTakeover();
+			}
+			final TradingMachineServer executor = new TradingMachineServer(followers);
 			executor.start();
 			logger.info("press <enter> to quit");
 			System.in.read();
@@ -0,0 +1,117 @@
+package com.projects.tradingMachine.server.journal;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append-only journal made of memory-mapped segment files of fixed size, each one named after the sequence of its first record.
+ * Records are written straight into the mapped segment, so they're in the OS page cache, hence safe from a process crash, as soon as appended,
+ * while {@link #force()} flushes them to disk, e.g. periodically, on each segment roll and on close.
+ * Reopening a directory goes on after its last record, with the next sequence.
+ * It's not thread safe: it's meant to have a single writer, e.g. the matching thread of a shard, while {@link #force()} can be called by any thread.
+ * */
+public final class Journal implements AutoCloseable {
+	private static final Logger logger = LoggerFactory.getLogger(Journal.class);
+	static final String SEGMENT_SUFFIX = ".journal";
+
+	private final Path directory;
+	private final int segmentSize;
+	private volatile MappedByteBuffer segment;
+	private int position;
+	private long lastSequence;
+
+	/**
+	 * @param segmentSize Segment file size, in bytes, it's rounded down to a whole number of records.
+	 * */
+	public Journal(final Path directory, final int segmentSize) throws IOException {
+		if (segmentSize < JournalRecord.SIZE)
+			throw new IllegalArgumentException("Journal segment size must be at least "+JournalRecord.SIZE+" bytes: "+segmentSize);
+		this.directory = directory;
+		this.segmentSize = segmentSize - segmentSize % JournalRecord.SIZE;
+		Files.createDirectories(directory);
+		final List<Path> segments = JournalReader.getSegments(directory);
+		if (segments.isEmpty())
+			roll();
+		else
+			recover(segments.get(segments.size() - 1));
+		logger.info("Opened journal "+directory+", last sequence: "+lastSequence);
+	}
+
+	/**
+	 * Finds the last record of the last segment, then goes on after it.
+	 * */
+	private void recover(final Path lastSegment) throws IOException {
+		segment = map(lastSegment);
+		final JournalRecord record = new JournalRecord();
+		lastSequence = JournalReader.getFirstSequence(lastSegment) - 1;
+		for (position = 0; position < segmentSize && record.decode(segment, position); position += JournalRecord.SIZE)
+			lastSequence = record.getSequence();
+		if (position == segmentSize)
+			roll();
+	}
+
+	/**
+	 * Writes the record with the next sequence.
+	 *
+	 * @return the record sequence.
+	 * */
+	public long append(final JournalRecord record) {
+		if (position == segmentSize) {
+			try {
+				roll();
+			}
+			catch(final IOException e) {
+				throw new UncheckedIOException("Unable to roll journal "+directory, e);
+			}
+		}
+		record.encode(segment, position, ++lastSequence);
+		position += JournalRecord.SIZE;
+		return lastSequence;
+	}
+
+	private void roll() throws IOException {
+		if (segment != null)
+			segment.force();
+		segment = map(directory.resolve(String.format("%020d", lastSequence + 1) + SEGMENT_SUFFIX));
+		position = 0;
+	}
+
+	private MappedByteBuffer map(final Path file) throws IOException {
+		try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			return channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+		}
+	}
+
+	/**
+	 * Flushes the current segment to disk.
+	 * */
+	public void force() {
+		segment.force();
+	}
+
+	/**
+	 * Sequence of the last record, 0 if the journal is empty.
+	 * */
+	public long getLastSequence() {
+		return lastSequence;
+	}
+
+	public Path getDirectory() {
+		return directory;
+	}
+
+	@Override
+	public void close() {
+		force();
+		logger.info("Closed journal "+directory+", last sequence: "+lastSequence);
+	}
+}
@@ -0,0 +1,67 @@
+package com.projects.tradingMachine.server.journal;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Reads the records of a journal directory in sequence order, segment after segment, see {@link Journal}.
+ * The same {@link JournalRecord} instance is handed over for each record, copy it to keep it.
+ * */
+public final class JournalReader {
+	private final Path directory;
+
+	public JournalReader(final Path directory) {
+		this.directory = directory;
+	}
+
+	/**
+	 * @param fromSequence First sequence to hand over, earlier records are skipped.
+	 * @return the sequence of the last record read, or fromSequence - 1 if none.
+	 * */
+	public long read(final long fromSequence, final Consumer<JournalRecord> consumer) throws IOException {
+		final JournalRecord record = new JournalRecord();
+		long lastSequence = fromSequence - 1;
+		final List<Path> segments = getSegments(directory);
+		for (int i = 0; i < segments.size(); i++) {
+			if (i + 1 < segments.size() && getFirstSequence(segments.get(i + 1)) <= fromSequence)
+				continue; //all its records are earlier.
+			final MappedByteBuffer segment;
+			try (final FileChannel channel = FileChannel.open(segments.get(i), StandardOpenOption.READ)) {
+				segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			}
+			for (int position = 0; position + JournalRecord.SIZE <= segment.capacity() && record.decode(segment, position);
+					position += JournalRecord.SIZE) {
+				if (record.getSequence() < fromSequence)
+					continue;
+				consumer.accept(record);
+				lastSequence = record.getSequence();
+			}
+		}
+		return lastSequence;
+	}
+
+	/**
+	 * @return the segment files, in sequence order.
+	 * */
+	static List<Path> getSegments(final Path directory) throws IOException {
+		if (!Files.isDirectory(directory))
+			return Collections.emptyList();
+		try (final Stream<Path> files = Files.list(directory)) {
+			return files.filter(file -> file.getFileName().toString().endsWith(Journal.SEGMENT_SUFFIX)).sorted().collect(Collectors.toList());
+		}
+	}
+
+	static long getFirstSequence(final Path segment) {
+		final String name = segment.getFileName().toString();
+		return Long.parseLong(name.substring(0, name.length() - Journal.SEGMENT_SUFFIX.length()));
+	}
+}
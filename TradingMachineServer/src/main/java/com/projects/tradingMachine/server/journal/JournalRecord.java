@@ -0,0 +1,374 @@
+package com.projects.tradingMachine.server.journal;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.zip.CRC32;
+
+import com.projects.tradingMachine.server.BookOrder;
+import com.projects.tradingMachine.server.CancelReplaceRequest;
+import com.projects.tradingMachine.utility.marketData.MarketData;
+
+import quickfix.SessionID;
+
+/**
+ * Fixed layout journal record of {@link #SIZE} bytes, reused as a flyweight: it's filled by one of the setters, then encoded into the segment,
+ * or decoded from it and read back by the getters. Layout, by offset:
+ * <ul>
+ * 	<li>0: sequence, long. Written last, 0 means no record.</li>
+ *  <li>8: timestamp, long, time the record was handled at by the matching thread.</li>
+ *  <li>16: type, side, order type, time in force, flags and execution type bytes.</li>
+ *  <li>24: symbol id, quantity, leaves quantity and cumulative quantity ints.</li>
+ *  <li>40: price, stop price, time and value longs.</li>
+ *  <li>72: ASCII strings, each one prefixed by its length: symbol (16), ClOrdID (40), OrigClOrdID (40), OrderID (24) and SessionID (60).</li>
+ *  <li>252: CRC32 of all the above, sequence included, int.</li>
+ * </ul>
+ * A record whose checksum doesn't match is taken as not written yet: the sequence being written last isn't enough for a reader in another process,
+ * since neither the JIT nor the CPU are bound to keep the order of plain stores to the mapped segment.
+ * Fields are shared among the record types, e.g. a quote stores bid and ask in price and stop price and its id in ClOrdID.
+ * */
+public final class JournalRecord {
+	public static final int SIZE = 256;
+
+	public enum Type {
+		/** Inbound new order. */
+		NEW_ORDER,
+		/** Inbound cancel or cancel/replace request. */
+		CANCEL_REPLACE,
+		/** Inbound market data update. */
+		QUOTE,
+		/** Inbound timer tick. */
+		TICK,
+		/** Quote looked up by the matching engine from the market data table, rather than received in sequence. */
+		OBSERVED_QUOTE,
+		/** Credit check answer given to the matching engine. */
+		CREDIT_CHECK,
+		/** Outbound execution, see {@link ExecutionType}. */
+		EXECUTION;
+
+		/**
+		 * Inbound records drive the matching engine, the others follow the inbound record that caused them.
+		 * */
+		public boolean isInbound() {
+			return this == NEW_ORDER || this == CANCEL_REPLACE || this == QUOTE || this == TICK;
+		}
+	}
+
+	public enum ExecutionType {NEW, FILL, REJECT, CANCEL, DONE_FOR_DAY, CANCEL_REQUEST, REPLACE, CANCEL_REJECT}
+
+	private static final int SEQUENCE = 0;
+	private static final int TIMESTAMP = 8;
+	private static final int TYPE = 16;
+	private static final int SIDE = 17;
+	private static final int ORD_TYPE = 18;
+	private static final int TIME_IN_FORCE = 19;
+	private static final int FLAGS = 20;
+	private static final int EXECUTION_TYPE = 21;
+	private static final int SYMBOL_ID = 24;
+	private static final int QUANTITY = 28;
+	private static final int LEAVES_QTY = 32;
+	private static final int CUM_QTY = 36;
+	private static final int PRICE = 40;
+	private static final int STOP_PRICE = 48;
+	private static final int TIME = 56;
+	private static final int VALUE = 64;
+	private static final int SYMBOL = 72;
+	private static final int SYMBOL_LENGTH = 16;
+	private static final int CL_ORD_ID = SYMBOL + SYMBOL_LENGTH;
+	private static final int CL_ORD_ID_LENGTH = 40;
+	private static final int ORIG_CL_ORD_ID = CL_ORD_ID + CL_ORD_ID_LENGTH;
+	private static final int ORIG_CL_ORD_ID_LENGTH = 40;
+	private static final int ORDER_ID = ORIG_CL_ORD_ID + ORIG_CL_ORD_ID_LENGTH;
+	private static final int ORDER_ID_LENGTH = 24;
+	private static final int SESSION_ID = ORDER_ID + ORDER_ID_LENGTH;
+	private static final int SESSION_ID_LENGTH = 60;
+	private static final int CHECKSUM = SESSION_ID + SESSION_ID_LENGTH;
+
+	private static final byte FLAG_REPLACE = 1;
+	private static final byte FLAG_CREDIT_CHECK_FAILED = 2;
+	private static final byte FLAG_GRANTED = 4;
+
+	private final ByteBuffer buffer = ByteBuffer.allocate(SIZE);
+	private final CRC32 crc = new CRC32();
+
+	/**
+	 * Clears all the fields, then sets the header.
+	 * */
+	private JournalRecord reset(final Type type, final long timestamp) {
+		buffer.clear();
+		for (int i = 0; i < SIZE; i += 8)
+			buffer.putLong(i, 0);
+		buffer.putLong(TIMESTAMP, timestamp);
+		buffer.put(TYPE, (byte)type.ordinal());
+		return this;
+	}
+
+	/**
+	 * Checks the strings of an order or request against their journal field lengths, before it's handed over to its shard.
+	 * 
+	 * @return null if they all fit, the first field too long otherwise.
+	 * */
+	public static String checkLengths(final String clOrdID, final String origClOrdID, final String symbol, final SessionID sessionID) {
+		if (!fits(clOrdID, CL_ORD_ID_LENGTH))
+			return "ClOrdID longer than "+(CL_ORD_ID_LENGTH - 1)+" characters";
+		if (!fits(origClOrdID, ORIG_CL_ORD_ID_LENGTH))
+			return "OrigClOrdID longer than "+(ORIG_CL_ORD_ID_LENGTH - 1)+" characters";
+		if (!fits(symbol, SYMBOL_LENGTH))
+			return "Symbol longer than "+(SYMBOL_LENGTH - 1)+" characters";
+		if (!fits(sessionID == null ? null : sessionID.toString(), SESSION_ID_LENGTH))
+			return "SessionID longer than "+(SESSION_ID_LENGTH - 1)+" characters";
+		return null;
+	}
+
+	/**
+	 * One US-ASCII byte per character, the length prefix being the field's first byte.
+	 * */
+	private static boolean fits(final String value, final int fieldLength) {
+		return value == null || value.length() < fieldLength;
+	}
+
+	public JournalRecord setNewOrder(final BookOrder order, final long timestamp) {
+		reset(Type.NEW_ORDER, timestamp);
+		setOrder(order);
+		buffer.putLong(TIME, order.getExpireTime());
+		return this;
+	}
+
+	public JournalRecord setCancelReplace(final CancelReplaceRequest request, final long timestamp) {
+		reset(Type.CANCEL_REPLACE, timestamp);
+		putString(CL_ORD_ID, CL_ORD_ID_LENGTH, request.getClOrdID());
+		putString(ORIG_CL_ORD_ID, ORIG_CL_ORD_ID_LENGTH, request.getOrigClOrdID());
+		putSessionID(request.getSessionID());
+		putString(SYMBOL, SYMBOL_LENGTH, request.getSymbol());
+		buffer.putInt(SYMBOL_ID, request.getSymbolId());
+		buffer.put(SIDE, (byte)request.getSide());
+		buffer.put(FLAGS, request.isReplace() ? FLAG_REPLACE : 0);
+		buffer.putInt(QUANTITY, request.getQuantity());
+		buffer.putLong(PRICE, request.getPrice());
+		buffer.putLong(STOP_PRICE, request.getStopPrice());
+		return this;
+	}
+
+	/**
+	 * @param observed True if the matching engine looked the quote up itself, see {@link Type#OBSERVED_QUOTE}.
+	 * */
+	public JournalRecord setQuote(final MarketData marketData, final boolean observed, final long timestamp) {
+		reset(observed ? Type.OBSERVED_QUOTE : Type.QUOTE, timestamp);
+		putString(CL_ORD_ID, CL_ORD_ID_LENGTH, marketData.getID());
+		putString(SYMBOL, SYMBOL_LENGTH, marketData.getSymbol());
+		buffer.putInt(SYMBOL_ID, marketData.getSymbolId());
+		buffer.putLong(PRICE, marketData.getBidPrice());
+		buffer.putLong(STOP_PRICE, marketData.getAskPrice());
+		buffer.putInt(QUANTITY, marketData.getBidSize());
+		buffer.putInt(LEAVES_QTY, marketData.getAskSize());
+		buffer.putLong(TIME, marketData.getQuoteTime() == null ? 0 : marketData.getQuoteTime().getTime());
+		return this;
+	}
+
+	public JournalRecord setTick(final long time, final long timestamp) {
+		reset(Type.TICK, timestamp);
+		buffer.putLong(TIME, time);
+		return this;
+	}
+
+	public JournalRecord setCreditCheck(final double value, final boolean granted, final long timestamp) {
+		reset(Type.CREDIT_CHECK, timestamp);
+		buffer.putLong(VALUE, Double.doubleToRawLongBits(value));
+		buffer.put(FLAGS, granted ? FLAG_GRANTED : 0);
+		return this;
+	}
+
+	/**
+	 * @param lastPx Fixed-point fill price, 0 but for fills.
+	 * @param lastQty Fill quantity, 0 but for fills.
+	 * @param reference Fill reference, the OrigClOrdID of replaces and cancels on request or the rejected request's OrigClOrdID.
+	 * */
+	public JournalRecord setExecution(final ExecutionType executionType, final BookOrder order, final long lastPx, final int lastQty,
+			final String reference, final boolean creditCheckFailed, final long timestamp) {
+		reset(Type.EXECUTION, timestamp);
+		buffer.put(EXECUTION_TYPE, (byte)executionType.ordinal());
+		setOrder(order);
+		buffer.putInt(LEAVES_QTY, order.getLeavesQty());
+		buffer.putInt(CUM_QTY, order.getCumQty());
+		buffer.putLong(PRICE, lastPx);
+		buffer.putInt(QUANTITY, lastQty);
+		putString(ORIG_CL_ORD_ID, ORIG_CL_ORD_ID_LENGTH, reference);
+		buffer.put(FLAGS, creditCheckFailed ? FLAG_CREDIT_CHECK_FAILED : 0);
+		return this;
+	}
+
+	/**
+	 * Overrides the ClOrdID of an execution, e.g. the one of the OrderCancelRequest.
+	 * */
+	public JournalRecord setClOrdID(final String clOrdID) {
+		putString(CL_ORD_ID, CL_ORD_ID_LENGTH, clOrdID);
+		return this;
+	}
+
+	public JournalRecord setCancelReject(final CancelReplaceRequest request, final int cxlRejReason, final long timestamp) {
+		reset(Type.EXECUTION, timestamp);
+		buffer.put(EXECUTION_TYPE, (byte)ExecutionType.CANCEL_REJECT.ordinal());
+		putString(CL_ORD_ID, CL_ORD_ID_LENGTH, request.getClOrdID());
+		putString(ORIG_CL_ORD_ID, ORIG_CL_ORD_ID_LENGTH, request.getOrigClOrdID());
+		putSessionID(request.getSessionID());
+		putString(SYMBOL, SYMBOL_LENGTH, request.getSymbol());
+		buffer.putInt(SYMBOL_ID, request.getSymbolId());
+		buffer.putInt(CUM_QTY, cxlRejReason);
+		return this;
+	}
+
+	private void setOrder(final BookOrder order) {
+		putString(CL_ORD_ID, CL_ORD_ID_LENGTH, order.getClOrdID());
+		putString(ORDER_ID, ORDER_ID_LENGTH, order.getOrderID());
+		putSessionID(order.getSessionID());
+		putString(SYMBOL, SYMBOL_LENGTH, order.getSymbol());
+		buffer.putInt(SYMBOL_ID, order.getSymbolId());
+		buffer.put(SIDE, (byte)order.getSide());
+		buffer.put(ORD_TYPE, (byte)order.getType());
+		buffer.put(TIME_IN_FORCE, (byte)order.getTimeInForce());
+		buffer.putInt(QUANTITY, order.getQuantity());
+		buffer.putLong(PRICE, order.getPrice());
+		buffer.putLong(STOP_PRICE, order.getStopPrice());
+	}
+
+	/**
+	 * Copies the record, sequence and checksum included, to the given position. The sequence is written last,
+	 * while the checksum tells a reader whether the rest of the record is there too.
+	 * */
+	void encode(final ByteBuffer target, final int position, final long sequence) {
+		buffer.putLong(SEQUENCE, sequence);
+		buffer.putInt(CHECKSUM, checksum());
+		for (int i = TIMESTAMP; i < SIZE; i += 8)
+			target.putLong(position + i, buffer.getLong(i));
+		target.putLong(position + SEQUENCE, sequence);
+	}
+
+	/**
+	 * @return false if there's no record at the given position, or not a whole one yet.
+	 * */
+	boolean decode(final ByteBuffer source, final int position) {
+		if (source.getLong(position + SEQUENCE) == 0)
+			return false;
+		for (int i = SEQUENCE; i < SIZE; i += 8)
+			buffer.putLong(i, source.getLong(position + i));
+		return buffer.getInt(CHECKSUM) == checksum();
+	}
+
+	private int checksum() {
+		crc.reset();
+		crc.update(buffer.array(), 0, CHECKSUM);
+		return (int)crc.getValue();
+	}
+
+	public long getSequence() {
+		return buffer.getLong(SEQUENCE);
+	}
+
+	public long getTimestamp() {
+		return buffer.getLong(TIMESTAMP);
+	}
+
+	public Type getType() {
+		return Type.values()[buffer.get(TYPE)];
+	}
+
+	public ExecutionType getExecutionType() {
+		return ExecutionType.values()[buffer.get(EXECUTION_TYPE)];
+	}
+
+	public long getTime() {
+		return buffer.getLong(TIME);
+	}
+
+	public boolean isCreditGranted() {
+		return (buffer.get(FLAGS) & FLAG_GRANTED) != 0;
+	}
+
+	public double getCreditValue() {
+		return Double.longBitsToDouble(buffer.getLong(VALUE));
+	}
+
+	public String getClOrdID() {
+		return getString(CL_ORD_ID);
+	}
+
+	public String getOrderID() {
+		return getString(ORDER_ID);
+	}
+
+	public BookOrder toBookOrder() {
+		return new BookOrder(getString(CL_ORD_ID), getString(ORDER_ID), getSessionID(), getString(SYMBOL), buffer.getInt(SYMBOL_ID), (char)buffer.get(SIDE),
+				(char)buffer.get(ORD_TYPE), (char)buffer.get(TIME_IN_FORCE), buffer.getLong(PRICE), buffer.getLong(STOP_PRICE), buffer.getInt(QUANTITY),
+				buffer.getLong(TIME));
+	}
+
+	public CancelReplaceRequest toCancelReplaceRequest() {
+		return new CancelReplaceRequest(getString(CL_ORD_ID), getString(ORIG_CL_ORD_ID), getSessionID(), getString(SYMBOL), buffer.getInt(SYMBOL_ID),
+				(char)buffer.get(SIDE), (buffer.get(FLAGS) & FLAG_REPLACE) != 0, buffer.getInt(QUANTITY), buffer.getLong(PRICE), buffer.getLong(STOP_PRICE));
+	}
+
+	public MarketData toMarketData() {
+		final long quoteTime = buffer.getLong(TIME);
+		return new MarketData(getString(CL_ORD_ID), getString(SYMBOL), buffer.getInt(SYMBOL_ID), buffer.getLong(PRICE), buffer.getLong(STOP_PRICE),
+				buffer.getInt(QUANTITY), buffer.getInt(LEAVES_QTY), quoteTime == 0 ? null : new Date(quoteTime));
+	}
+
+	/**
+	 * Compares everything but sequence, timestamp and checksum, e.g. an execution rebuilt by the replay against the journaled one.
+	 * */
+	public boolean hasSameContent(final JournalRecord other) {
+		for (int i = TYPE; i < CHECKSUM; i++)
+			if (buffer.get(i) != other.buffer.get(i))
+				return false;
+		return true;
+	}
+
+	public JournalRecord copy() {
+		final JournalRecord result = new JournalRecord();
+		result.buffer.put(buffer.array());
+		return result;
+	}
+
+	private void putSessionID(final SessionID sessionID) {
+		putString(SESSION_ID, SESSION_ID_LENGTH, sessionID == null ? null : sessionID.toString());
+	}
+
+	private SessionID getSessionID() {
+		final String sessionID = getString(SESSION_ID);
+		return sessionID == null ? null : new SessionID(sessionID);
+	}
+
+	/**
+	 * Length prefixed and zero padded, null being a length of -1.
+	 * */
+	private void putString(final int offset, final int fieldLength, final String value) {
+		if (value == null) {
+			buffer.put(offset, (byte)-1);
+			return;
+		}
+		final byte[] bytes = value.getBytes(StandardCharsets.US_ASCII);
+		if (!fits(value, fieldLength))
+			throw new IllegalArgumentException("Value too long for a "+fieldLength+" bytes journal field: "+value);
+		buffer.put(offset, (byte)bytes.length);
+		for (int i = 0; i < fieldLength - 1; i++)
+			buffer.put(offset + 1 + i, i < bytes.length ? bytes[i] : 0);
+	}
+
+	private String getString(final int offset) {
+		final int length = buffer.get(offset);
+		if (length < 0)
+			return null;
+		final byte[] bytes = new byte[length];
+		for (int i = 0; i < length; i++)
+			bytes[i] = buffer.get(offset + 1 + i);
+		return new String(bytes, StandardCharsets.US_ASCII);
+	}
+
+	@Override
+	public String toString() {
+		return "JournalRecord [sequence=" + getSequence() + ", timestamp=" + getTimestamp() + ", type=" + getType()
+				+ (getType() == Type.EXECUTION ? ", executionType=" + getExecutionType() : "") + ", symbol=" + getString(SYMBOL)
+				+ ", clOrdID=" + getString(CL_ORD_ID) + ", origClOrdID=" + getString(ORIG_CL_ORD_ID) + ", quantity=" + buffer.getInt(QUANTITY)
+				+ ", price=" + buffer.getLong(PRICE) + "]";
+	}
+}
@@ -0,0 +1,208 @@
+package com.projects.tradingMachine.server.journal;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.projects.tradingMachine.server.AuctionSchedule;
+import com.projects.tradingMachine.server.EngineSnapshot;
+import com.projects.tradingMachine.server.MarketDataManager;
+import com.projects.tradingMachine.server.MatchingEngine;
+import com.projects.tradingMachine.server.MissingQuotePolicy;
+import com.projects.tradingMachine.server.OrderBook;
+import com.projects.tradingMachine.server.OrderExpiry;
+import com.projects.tradingMachine.utility.SymbolRegistry;
+import com.projects.tradingMachine.utility.Utility;
+import com.projects.tradingMachine.utility.database.creditCheck.ICreditCheck;
+
+/**
+ * Rebuilds the matching engine state of one shard out of its journal. Each inbound record is applied to a fresh matching engine, at its journaled time,
+ * once the records following it are known: the quotes the live engine looked up, the credit check answers it got and the executions it produced.
+ * The executions rebuilt by the replay are then checked against the journaled ones, any difference meaning the replay isn't deterministic.
+ * The replay can start from an {@link EngineSnapshot}, then only the journal records after it are needed.
+ * */
+public final class JournalReplayer {
+	private static final Logger logger = LoggerFactory.getLogger(JournalReplayer.class);
+
+	private final MarketDataManager marketDataManager;
+	private final OrderExpiry orderExpiry;
+	private final AuctionSchedule auctionSchedule;
+	private final ArrayDeque<Boolean> creditAnswers;
+	private final ArrayDeque<JournalRecord> journaledExecutions;
+	private final List<JournalRecord> rebuiltExecutions;
+	private MatchingEngine matchingEngine;
+	private JournalRecord pending;
+	private long records;
+	private long mismatches;
+
+	/**
+	 * @param missingQuotePolicy Policy of the live engine.
+	 * */
+	public JournalReplayer(final SymbolRegistry symbolRegistry, final MissingQuotePolicy missingQuotePolicy, final OrderExpiry orderExpiry) {
+		this(symbolRegistry, missingQuotePolicy, orderExpiry, AuctionSchedule.none(), null);
+	}
+
+	/**
+	 * @param auctionSchedule Schedule of the live engine.
+	 * @param snapshot State to start from, or null to start from an empty engine.
+	 * */
+	public JournalReplayer(final SymbolRegistry symbolRegistry, final MissingQuotePolicy missingQuotePolicy, final OrderExpiry orderExpiry, 
+			final AuctionSchedule auctionSchedule, final EngineSnapshot snapshot) {
+		//the live quote lookups are replayed from the journal, never synthesized.
+		marketDataManager = new MarketDataManager(symbolRegistry, missingQuotePolicy == MissingQuotePolicy.WAIT ? MissingQuotePolicy.WAIT : MissingQuotePolicy.REJECT);
+		this.orderExpiry = orderExpiry;
+		this.auctionSchedule = auctionSchedule;
+		creditAnswers = new ArrayDeque<>();
+		journaledExecutions = new ArrayDeque<>();
+		rebuiltExecutions = new ArrayList<>();
+		if (snapshot != null) {
+			matchingEngine = newMatchingEngine(snapshot.getTime());
+			matchingEngine.restore(snapshot);
+		}
+	}
+
+	private MatchingEngine newMatchingEngine(final long startTime) {
+		return MatchingEngine.builder(marketDataManager, new ReplayCreditCheck(), new JournalingExecutionListener(record -> rebuiltExecutions.add(record.copy()), null))
+				.orderExpiry(orderExpiry).auctionSchedule(auctionSchedule).startTime(startTime).build();
+	}
+
+	/**
+	 * Takes the next journal record, in sequence order.
+	 * */
+	public void accept(final JournalRecord record) {
+		records++;
+		if (record.getType().isInbound()) {
+			replayPending();
+			pending = record.copy();
+			return;
+		}
+		if (pending == null)
+			return; //follows an inbound record before the replay start.
+		switch(record.getType()) {
+			case OBSERVED_QUOTE: marketDataManager.update(record.toMarketData()); break;
+			case CREDIT_CHECK: creditAnswers.addLast(record.isCreditGranted()); break;
+			case EXECUTION: journaledExecutions.addLast(record.copy()); break;
+			default: throw new IllegalStateException("Unexpected journal record: "+record);
+		}
+	}
+
+	/**
+	 * Applies the last inbound record, once there are no more records.
+	 * */
+	public void finish() {
+		replayPending();
+	}
+
+	private void replayPending() {
+		if (pending == null)
+			return;
+		if (matchingEngine == null)
+			matchingEngine = newMatchingEngine(pending.getTimestamp());
+		matchingEngine.setCurrentTime(pending.getTimestamp());
+		switch(pending.getType()) {
+			case NEW_ORDER: matchingEngine.onNewOrder(pending.toBookOrder()); break;
+			case CANCEL_REPLACE: matchingEngine.onCancelReplace(pending.toCancelReplaceRequest()); break;
+			case QUOTE: matchingEngine.onQuote(pending.toMarketData()); break;
+			case TICK: matchingEngine.onTick(pending.getTime()); break;
+			default: throw new IllegalStateException("Unexpected journal record: "+pending);
+		}
+		for (final JournalRecord rebuilt : rebuiltExecutions) {
+			final JournalRecord journaled = journaledExecutions.pollFirst();
+			if (journaled == null || !journaled.hasSameContent(rebuilt)) {
+				mismatches++;
+				logger.warn("Replay of "+pending+" rebuilt "+rebuilt+", journaled: "+journaled);
+			}
+		}
+		if (!journaledExecutions.isEmpty() || !creditAnswers.isEmpty()) {
+			mismatches++;
+			logger.warn("Replay of "+pending+" left "+journaledExecutions.size()+" executions and "+creditAnswers.size()+" credit answers unused.");
+		}
+		rebuiltExecutions.clear();
+		journaledExecutions.clear();
+		creditAnswers.clear();
+		pending = null;
+	}
+
+	/**
+	 * @return null if no inbound record has been replayed yet, nor a snapshot restored.
+	 * */
+	public MatchingEngine getMatchingEngine() {
+		return matchingEngine;
+	}
+
+	public long getRecords() {
+		return records;
+	}
+
+	/**
+	 * Number of executions, or of inbound records, the replay didn't rebuild as journaled.
+	 * */
+	public long getMismatches() {
+		return mismatches;
+	}
+
+	/**
+	 * Gives the live engine credit check answers back, in the same order.
+	 * */
+	private final class ReplayCreditCheck implements ICreditCheck {
+		@Override
+		public boolean hasEnoughCredit(final double credit) {
+			final Boolean answer = creditAnswers.pollFirst();
+			if (answer == null) {
+				mismatches++;
+				logger.warn("No journaled credit check answer for "+credit+", replaying "+pending);
+				return false;
+			}
+			return answer;
+		}
+
+		@Override
+		public void setCredit(final double credit) {
+		}
+
+		@Override
+		public void closeConnection() {
+		}
+	}
+
+	/**
+	 * Replays the journal of each shard, from its latest snapshot if any, and logs the rebuilt order books.
+	 *
+	 * @param args Optional journal directory, journal.directory by default.
+	 * */
+	public static void main(final String[] args) throws IOException {
+		final Properties properties = Utility.getApplicationProperties("tradingMachine.properties");
+		final SymbolRegistry symbolRegistry = SymbolRegistry.load(properties);
+		final Path directory = Paths.get(args.length > 0 ? args[0] : properties.getProperty("journal.directory"));
+		final List<Path> shardDirectories;
+		try (final Stream<Path> files = Files.list(directory)) {
+			shardDirectories = files.filter(Files::isDirectory).sorted().collect(Collectors.toList());
+		}
+		for (final Path shardDirectory : shardDirectories) {
+			final EngineSnapshot snapshot = new SnapshotStore(shardDirectory, Integer.MAX_VALUE).loadLatest();
+			final JournalReplayer replayer = new JournalReplayer(symbolRegistry,
+					MissingQuotePolicy.valueOf(properties.getProperty("marketData.missingQuotePolicy", MissingQuotePolicy.SYNTHETIC.name())),
+					OrderExpiry.from(properties), AuctionSchedule.from(properties), snapshot);
+			final long lastSequence = new JournalReader(shardDirectory).read(snapshot == null ? 1 : snapshot.getJournalSequence() + 1, replayer::accept);
+			replayer.finish();
+			logger.info("Replayed "+shardDirectory+", records: "+replayer.getRecords()+", last sequence: "+lastSequence+", mismatches: "+replayer.getMismatches());
+			if (replayer.getMatchingEngine() == null)
+				continue;
+			for (final String symbol : symbolRegistry.getSymbols()) {
+				final OrderBook orderBook = replayer.getMatchingEngine().getOrderBook(symbol);
+				if (orderBook != null)
+					logger.info(orderBook.toString());
+			}
+		}
+	}
+}
@@ -0,0 +1,98 @@
+package com.projects.tradingMachine.server.journal;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Properties;
+
+import com.projects.tradingMachine.utility.id.FileIdBlockStore;
+
+/**
+ * Where and how the matching shards journal their events, one {@link Journal} per shard in its own sub-directory, next to the shard's snapshots
+ * and id blocks.
+ * Configuration parameters:
+ * <ul>
+ * 	<li>journal.directory: root directory of the shard journals, journaling is disabled if empty.</li>
+ *  <li>journal.segmentSize: segment file size, in bytes.</li>
+ *  <li>journal.forceIntervalMillis: how often the journals get flushed to disk, 0 to leave it to the OS.</li>
+ *  <li>snapshot.intervalMillis: how often the shards snapshot their state, 0 to only do it on shutdown.</li>
+ *  <li>snapshot.retained: number of snapshots kept per shard.</li>
+ * </ul>
+ * */
+public final class JournalSettings {
+	private final Path directory;
+	private final int segmentSize;
+	private final long forceIntervalMillis;
+	private final long snapshotIntervalMillis;
+	private final int retainedSnapshots;
+
+	/**
+	 * @param directory Null to disable journaling.
+	 * */
+	public JournalSettings(final Path directory, final int segmentSize, final long forceIntervalMillis, final long snapshotIntervalMillis, 
+			final int retainedSnapshots) {
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+		this.forceIntervalMillis = forceIntervalMillis;
+		this.snapshotIntervalMillis = snapshotIntervalMillis;
+		this.retainedSnapshots = retainedSnapshots;
+	}
+
+	public static JournalSettings from(final Properties properties) {
+		final String directory = properties.getProperty("journal.directory", "").trim();
+		return new JournalSettings(directory.isEmpty() ? null : Paths.get(directory), Integer.valueOf(properties.getProperty("journal.segmentSize", "67108864")),
+				Long.valueOf(properties.getProperty("journal.forceIntervalMillis", "1000")), Long.valueOf(properties.getProperty("snapshot.intervalMillis", "0")),
+				Integer.valueOf(properties.getProperty("snapshot.retained", "2")));
+	}
+
+	public static JournalSettings disabled() {
+		return new JournalSettings(null, 0, 0, 0, 0);
+	}
+
+	public boolean isEnabled() {
+		return directory != null;
+	}
+
+	/**
+	 * Opens the journal of the given shard, going on after its last record if it already exists.
+	 * */
+	public Journal open(final int shard) throws IOException {
+		return new Journal(getShardDirectory(shard), segmentSize);
+	}
+
+	public SnapshotStore openSnapshotStore(final int shard) {
+		return new SnapshotStore(getShardDirectory(shard), retainedSnapshots);
+	}
+
+	/**
+	 * Store of the blocks of the given shard's ids of the given kind, e.g. order or execution ids.
+	 * */
+	public FileIdBlockStore openIdBlockStore(final int shard, final String kind) throws IOException {
+		return new FileIdBlockStore(getShardDirectory(shard).resolve(kind + ".ids"));
+	}
+
+	/**
+	 * Directory of the given shard's journal and snapshots.
+	 * */
+	public Path getShardDirectory(final int shard) {
+		return directory.resolve("shard-"+shard);
+	}
+
+	public Path getDirectory() {
+		return directory;
+	}
+
+	public long getSnapshotIntervalMillis() {
+		return snapshotIntervalMillis;
+	}
+
+	public long getForceIntervalMillis() {
+		return forceIntervalMillis;
+	}
+
+	@Override
+	public String toString() {
+		return "JournalSettings [directory=" + directory + ", segmentSize=" + segmentSize + ", forceIntervalMillis=" + forceIntervalMillis
+				+ ", snapshotIntervalMillis=" + snapshotIntervalMillis + ", retainedSnapshots=" + retainedSnapshots + "]";
+	}
+}
@@ -0,0 +1,81 @@
+package com.projects.tradingMachine.server.journal;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Follows a journal directory while another process appends to it: each {@link #poll(Consumer)} hands over the records written since the previous one,
+ * moving on to the next segment once the current one is full. A record is only seen once its sequence, written last, is there
+ * and its checksum matches, see {@link JournalRecord}: until then the poll stops before it and the next one tries again.
+ * */
+public final class JournalTailer {
+	private final Path directory;
+	private final JournalRecord record;
+	private Path segmentFile;
+	private MappedByteBuffer segment;
+	private int position;
+	private long nextSequence;
+
+	public JournalTailer(final Path directory, final long fromSequence) {
+		this.directory = directory;
+		record = new JournalRecord();
+		nextSequence = fromSequence;
+	}
+
+	/**
+	 * @return the number of records handed over.
+	 * */
+	public int poll(final Consumer<JournalRecord> consumer) throws IOException {
+		int result = 0;
+		while (segment != null || openSegment()) {
+			if (position + JournalRecord.SIZE > segment.capacity()) {
+				//full: the next records are in the next segment, once it exists.
+				if (!openSegment())
+					break;
+				continue;
+			}
+			if (!record.decode(segment, position))
+				break;
+			position += JournalRecord.SIZE;
+			if (record.getSequence() < nextSequence)
+				continue;
+			consumer.accept(record);
+			nextSequence = record.getSequence() + 1;
+			result++;
+		}
+		return result;
+	}
+
+	/**
+	 * Maps the segment holding the next sequence, if it's not the current one.
+	 * */
+	private boolean openSegment() throws IOException {
+		final List<Path> segments = JournalReader.getSegments(directory);
+		Path next = null;
+		for (final Path file : segments)
+			if (JournalReader.getFirstSequence(file) <= nextSequence)
+				next = file;
+		if (next == null || next.equals(segmentFile))
+			return false;
+		try (final FileChannel channel = FileChannel.open(next, StandardOpenOption.READ)) {
+			if (channel.size() < JournalRecord.SIZE)
+				return false; //still being created.
+			segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		segmentFile = next;
+		position = 0;
+		return true;
+	}
+
+	/**
+	 * Sequence the next record handed over will have.
+	 * */
+	public long getNextSequence() {
+		return nextSequence;
+	}
+}
@@ -0,0 +1,38 @@
+package com.projects.tradingMachine.server.journal;
+
+import java.sql.SQLException;
+import java.util.function.Consumer;
+
+import com.projects.tradingMachine.utility.database.creditCheck.ICreditCheck;
+
+/**
+ * Records each credit check answer as a {@link JournalRecord.Type#CREDIT_CHECK} record, since it depends on the database rather than on the journaled events.
+ * */
+public final class JournalingCreditCheck implements ICreditCheck {
+	private final ICreditCheck delegate;
+	private final Consumer<JournalRecord> sink;
+	private final JournalRecord record;
+
+	public JournalingCreditCheck(final ICreditCheck delegate, final Consumer<JournalRecord> sink) {
+		this.delegate = delegate;
+		this.sink = sink;
+		record = new JournalRecord();
+	}
+
+	@Override
+	public boolean hasEnoughCredit(final double credit) {
+		final boolean result = delegate.hasEnoughCredit(credit);
+		sink.accept(record.setCreditCheck(credit, result, System.currentTimeMillis()));
+		return result;
+	}
+
+	@Override
+	public void setCredit(final double credit) {
+		delegate.setCredit(credit);
+	}
+
+	@Override
+	public void closeConnection() throws SQLException {
+		delegate.closeConnection();
+	}
+}
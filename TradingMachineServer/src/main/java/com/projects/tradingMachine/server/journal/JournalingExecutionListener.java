@@ -0,0 +1,89 @@
+package com.projects.tradingMachine.server.journal;
+
+import java.util.function.Consumer;
+
+import com.projects.tradingMachine.server.BookOrder;
+import com.projects.tradingMachine.server.CancelReplaceRequest;
+import com.projects.tradingMachine.server.ExecutionListener;
+import com.projects.tradingMachine.server.journal.JournalRecord.ExecutionType;
+
+/**
+ * Records each matching engine outcome as an {@link JournalRecord.Type#EXECUTION} record, before passing it on to the next listener.
+ * */
+public final class JournalingExecutionListener implements ExecutionListener {
+	private final Consumer<JournalRecord> sink;
+	private final ExecutionListener delegate;
+	private final JournalRecord record;
+
+	/**
+	 * @param sink Where the records go, e.g. {@link Journal#append(JournalRecord)}.
+	 * @param delegate Next listener, it can be null.
+	 * */
+	public JournalingExecutionListener(final Consumer<JournalRecord> sink, final ExecutionListener delegate) {
+		this.sink = sink;
+		this.delegate = delegate;
+		record = new JournalRecord();
+	}
+
+	@Override
+	public void onNew(final BookOrder order) {
+		record(ExecutionType.NEW, order, 0, 0, null, false);
+		if (delegate != null)
+			delegate.onNew(order);
+	}
+
+	@Override
+	public void onFill(final BookOrder order, final long price, final int quantity, final String reference) {
+		record(ExecutionType.FILL, order, price, quantity, reference, false);
+		if (delegate != null)
+			delegate.onFill(order, price, quantity, reference);
+	}
+
+	@Override
+	public void onReject(final BookOrder order, final boolean creditCheckFailed) {
+		record(ExecutionType.REJECT, order, 0, 0, null, creditCheckFailed);
+		if (delegate != null)
+			delegate.onReject(order, creditCheckFailed);
+	}
+
+	@Override
+	public void onCancel(final BookOrder order, final String reason) {
+		record(ExecutionType.CANCEL, order, 0, 0, null, false);
+		if (delegate != null)
+			delegate.onCancel(order, reason);
+	}
+
+	@Override
+	public void onDoneForDay(final BookOrder order) {
+		record(ExecutionType.DONE_FOR_DAY, order, 0, 0, null, false);
+		if (delegate != null)
+			delegate.onDoneForDay(order);
+	}
+
+	@Override
+	public void onCancelRequest(final BookOrder order, final String clOrdID) {
+		sink.accept(record.setExecution(ExecutionType.CANCEL_REQUEST, order, 0, 0, order.getClOrdID(), false, System.currentTimeMillis())
+				.setClOrdID(clOrdID));
+		if (delegate != null)
+			delegate.onCancelRequest(order, clOrdID);
+	}
+
+	@Override
+	public void onReplace(final BookOrder replacement, final String origClOrdID) {
+		record(ExecutionType.REPLACE, replacement, 0, 0, origClOrdID, false);
+		if (delegate != null)
+			delegate.onReplace(replacement, origClOrdID);
+	}
+
+	@Override
+	public void onCancelReject(final CancelReplaceRequest request, final int cxlRejReason, final String reason) {
+		sink.accept(record.setCancelReject(request, cxlRejReason, System.currentTimeMillis()));
+		if (delegate != null)
+			delegate.onCancelReject(request, cxlRejReason, reason);
+	}
+
+	private void record(final ExecutionType executionType, final BookOrder order, final long lastPx, final int lastQty, final String reference,
+			final boolean creditCheckFailed) {
+		sink.accept(record.setExecution(executionType, order, lastPx, lastQty, reference, creditCheckFailed, System.currentTimeMillis()));
+	}
+}
@@ -0,0 +1,58 @@
+package com.projects.tradingMachine.server.journal;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Exclusive lock on the journal directory, held by the acceptor writing the journals, i.e. the primary, for as long as its process lives.
+ * The OS releases it as soon as the primary process is gone, which is when a standby replica can take over: two processes never write the same journals.
+ * */
+public final class PrimaryLock {
+	private static final String FILE_NAME = "primary.lock";
+	private static FileChannel channel;
+	private static FileLock lock;
+
+	private PrimaryLock() {
+	}
+
+	/**
+	 * @return true if this process holds the lock, possibly since a previous call, false if another one does.
+	 * */
+	public static synchronized boolean tryAcquire(final Path journalDirectory) throws IOException {
+		if (lock != null)
+			return true;
+		Files.createDirectories(journalDirectory);
+		final FileChannel lockChannel = FileChannel.open(journalDirectory.resolve(FILE_NAME), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+		FileLock fileLock;
+		try {
+			fileLock = lockChannel.tryLock();
+		}
+		catch(final OverlappingFileLockException e) {
+			fileLock = null; //held through another channel of this process.
+		}
+		if (fileLock == null) {
+			lockChannel.close();
+			return false;
+		}
+		channel = lockChannel;
+		lock = fileLock;
+		return true;
+	}
+
+	/**
+	 * Gives the lock up, e.g. on shutdown.
+	 * */
+	public static synchronized void release() throws IOException {
+		if (lock == null)
+			return;
+		lock.release();
+		channel.close();
+		lock = null;
+		channel = null;
+	}
+}
@@ -0,0 +1,92 @@
+package com.projects.tradingMachine.server.journal;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import com.projects.tradingMachine.server.AuctionSchedule;
+import com.projects.tradingMachine.server.EngineSnapshot;
+import com.projects.tradingMachine.server.MatchingEngine;
+import com.projects.tradingMachine.server.MissingQuotePolicy;
+import com.projects.tradingMachine.server.OrderExpiry;
+import com.projects.tradingMachine.utility.SymbolRegistry;
+
+/**
+ * In-memory copy of one shard's matching engine, kept up to date with its journal: it starts from the latest snapshot,
+ * then applies the journal records as they get written, see {@link JournalTailer}.
+ * An inbound record is applied once the next one shows up, so that its credit check answers and executions are all there,
+ * while {@link #finish()} applies the last one, once the journal writer is gone.
+ * It's used both to recover a shard on startup and by the standby replica, following the primary's journal.
+ * */
+public final class ShardFollower {
+	private final Path directory;
+	private final EngineSnapshot snapshot;
+	private final JournalReplayer replayer;
+	private final JournalTailer tailer;
+
+	private ShardFollower(final Path directory, final EngineSnapshot snapshot, final JournalReplayer replayer) {
+		this.directory = directory;
+		this.snapshot = snapshot;
+		this.replayer = replayer;
+		tailer = new JournalTailer(directory, snapshot == null ? 1 : snapshot.getJournalSequence() + 1);
+	}
+
+	/**
+	 * Restores the latest snapshot of the shard directory, if any, then applies the journal records written so far.
+	 * */
+	public static ShardFollower open(final Path directory, final SymbolRegistry symbolRegistry, final MissingQuotePolicy missingQuotePolicy,
+			final OrderExpiry orderExpiry, final AuctionSchedule auctionSchedule) throws IOException {
+		final EngineSnapshot snapshot = new SnapshotStore(directory, Integer.MAX_VALUE).loadLatest();
+		final ShardFollower result = new ShardFollower(directory, snapshot, new JournalReplayer(symbolRegistry, missingQuotePolicy, orderExpiry, auctionSchedule, snapshot));
+		result.poll();
+		return result;
+	}
+
+	/**
+	 * Applies the records written since the previous poll.
+	 *
+	 * @return the number of records read.
+	 * */
+	public int poll() throws IOException {
+		return tailer.poll(replayer::accept);
+	}
+
+	/**
+	 * Applies all the remaining records, the last one included. The journal mustn't grow any longer.
+	 * */
+	public void finish() throws IOException {
+		poll();
+		replayer.finish();
+	}
+
+	/**
+	 * @return null if there's neither a snapshot nor any journal record.
+	 * */
+	public MatchingEngine getMatchingEngine() {
+		return replayer.getMatchingEngine();
+	}
+
+	/**
+	 * Sequence of the last journal record read.
+	 * */
+	public long getLastSequence() {
+		return tailer.getNextSequence() - 1;
+	}
+
+	public long getRecords() {
+		return replayer.getRecords();
+	}
+
+	public long getMismatches() {
+		return replayer.getMismatches();
+	}
+
+	public Path getDirectory() {
+		return directory;
+	}
+
+	@Override
+	public String toString() {
+		return "ShardFollower [directory=" + directory + ", snapshot=" + snapshot + ", lastSequence=" + getLastSequence() + ", records=" + getRecords()
+				+ ", mismatches=" + getMismatches() + "]";
+	}
+}
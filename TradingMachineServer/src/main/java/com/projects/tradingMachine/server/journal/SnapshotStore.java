@@ -0,0 +1,108 @@
+package com.projects.tradingMachine.server.journal;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.projects.tradingMachine.server.EngineSnapshot;
+
+/**
+ * Snapshot files of one shard, kept next to its journal and named after the journal sequence they include.
+ * Each file is written under a temporary name, synced, then renamed, and ends with a CRC32 of its content: a torn or corrupted snapshot
+ * is skipped in favour of the previous one. Only the latest snapshots are retained.
+ * */
+public final class SnapshotStore {
+	private static final Logger logger = LoggerFactory.getLogger(SnapshotStore.class);
+	private static final String SUFFIX = ".snapshot";
+	private static final int MAGIC = 0x534E4150; //SNAP
+
+	private final Path directory;
+	private final int retained;
+
+	public SnapshotStore(final Path directory, final int retained) {
+		this.directory = directory;
+		this.retained = Math.max(1, retained);
+	}
+
+	public void write(final EngineSnapshot snapshot) throws IOException {
+		Files.createDirectories(directory);
+		final String name = String.format("%020d", snapshot.getJournalSequence());
+		final Path temporary = directory.resolve(name + ".tmp");
+		try (final FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			final BufferedOutputStream file = new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16);
+			final CheckedOutputStream checked = new CheckedOutputStream(file, new CRC32());
+			final DataOutputStream out = new DataOutputStream(checked);
+			out.writeInt(MAGIC);
+			snapshot.writeTo(out);
+			out.flush();
+			new DataOutputStream(file).writeLong(checked.getChecksum().getValue());
+			file.flush();
+			channel.force(true);
+		}
+		Files.move(temporary, directory.resolve(name + SUFFIX), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		logger.info("Written "+snapshot+" to "+directory);
+		final List<Path> snapshots = getSnapshots();
+		for (int i = 0; i < snapshots.size() - retained; i++)
+			Files.deleteIfExists(snapshots.get(i));
+	}
+
+	/**
+	 * @return the latest readable snapshot, or null if there's none.
+	 * */
+	public EngineSnapshot loadLatest() throws IOException {
+		final List<Path> snapshots = getSnapshots();
+		for (int i = snapshots.size() - 1; i >= 0; i--) {
+			try {
+				return read(snapshots.get(i));
+			}
+			catch(final IOException e) {
+				logger.warn("Skipping snapshot "+snapshots.get(i)+", due to: "+e.getMessage());
+			}
+		}
+		return null;
+	}
+
+	private static EngineSnapshot read(final Path file) throws IOException {
+		try (final InputStream stream = new BufferedInputStream(Files.newInputStream(file), 1 << 16)) {
+			final CheckedInputStream checked = new CheckedInputStream(stream, new CRC32());
+			final DataInputStream in = new DataInputStream(checked);
+			if (in.readInt() != MAGIC)
+				throw new IOException("Not a snapshot file");
+			final EngineSnapshot result = EngineSnapshot.readFrom(in);
+			final long checksum = checked.getChecksum().getValue();
+			if (new DataInputStream(stream).readLong() != checksum)
+				throw new IOException("Checksum mismatch");
+			return result;
+		}
+	}
+
+	/**
+	 * @return the snapshot files, oldest first.
+	 * */
+	private List<Path> getSnapshots() throws IOException {
+		if (!Files.isDirectory(directory))
+			return Collections.emptyList();
+		try (final Stream<Path> files = Files.list(directory)) {
+			return files.filter(file -> file.getFileName().toString().endsWith(SUFFIX)).sorted().collect(Collectors.toList());
+		}
+	}
+}
@@ -0,0 +1,42 @@
+package com.projects.tradingMachine.server.pipeline;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+/**
+ * The consumer sleeps on a condition until a producer signals it. Lowest CPU usage, highest wake-up latency.
+ * */
+public final class BlockingWaitStrategy implements WaitStrategy {
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition published = lock.newCondition();
+	private volatile boolean waiting;
+
+	@Override
+	public void await(final BooleanSupplier condition) throws InterruptedException {
+		lock.lock();
+		try {
+			waiting = true;
+			while (!condition.getAsBoolean())
+				published.await(1, TimeUnit.MILLISECONDS);
+		}
+		finally {
+			waiting = false;
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void signal() {
+		if (!waiting)
+			return;
+		lock.lock();
+		try {
+			published.signalAll();
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+}
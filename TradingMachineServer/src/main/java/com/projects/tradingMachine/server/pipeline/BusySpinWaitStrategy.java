@@ -0,0 +1,20 @@
+package com.projects.tradingMachine.server.pipeline;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * The consumer keeps polling. Lowest latency, but it takes a whole core: there should be at least as many cores as consumers.
+ * */
+public final class BusySpinWaitStrategy implements WaitStrategy {
+
+	@Override
+	public void await(final BooleanSupplier condition) {
+		while (!condition.getAsBoolean()) {
+			//spin
+		}
+	}
+
+	@Override
+	public void signal() {
+	}
+}
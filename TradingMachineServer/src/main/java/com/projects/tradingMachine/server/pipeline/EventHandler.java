@@ -0,0 +1,10 @@
+package com.projects.tradingMachine.server.pipeline;
+
+/**
+ * Processes the events taken off a ring buffer. The slot must not be referenced once the call returns, since it gets reused.
+ * */
+@FunctionalInterface
+public interface EventHandler<E> {
+
+	void onEvent(E event) throws Exception;
+}
@@ -0,0 +1,103 @@
+package com.projects.tradingMachine.server.pipeline;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Bounded ring of preallocated slots, in the style of the LMAX Disruptor, handing events over from any number of producers to a single consumer. 
+ * A producer claims a sequence with {@link #next()}, fills the slot returned by {@link #get(long)} and then calls {@link #publish(long)}.
+ * Claims and hand-offs are lock-free: a producer only waits while the ring is full, a consumer while it's empty, 
+ * the latter according to the given wait strategy.
+ * */
+public final class RingBuffer<E> {
+	private final Object[] slots;
+	private final int mask;
+	private final AtomicLong claimed;
+	private final AtomicLongArray published;
+	private final AtomicLong consumed;
+	private final AtomicInteger maxDepth;
+	private final WaitStrategy waitStrategy;
+	
+	/**
+	 * @param size Number of slots, it must be a power of 2.
+	 * @param slotFactory Builds the preallocated slots.
+	 * @param waitStrategy How the consumer waits for new events.
+	 */
+	public RingBuffer(final int size, final Supplier<E> slotFactory, final WaitStrategy waitStrategy) {
+		if (size < 1 || Integer.bitCount(size) != 1)
+			throw new IllegalArgumentException("Ring buffer size must be a power of 2: "+size);
+		slots = new Object[size];
+		published = new AtomicLongArray(size);
+		for (int i = 0; i < size; i++) {
+			slots[i] = slotFactory.get();
+			published.set(i, -1);
+		}
+		mask = size - 1;
+		claimed = new AtomicLong(-1);
+		consumed = new AtomicLong(-1);
+		maxDepth = new AtomicInteger();
+		this.waitStrategy = waitStrategy;
+	}
+	
+	/**
+	 * Claims the next sequence, waiting while the ring is full.
+	 * */
+	public long next() {
+		final long sequence = claimed.incrementAndGet();
+		final long wrapPoint = sequence - slots.length;
+		while (wrapPoint > consumed.get())
+			LockSupport.parkNanos(1);
+		maxDepth.accumulateAndGet((int)(sequence - consumed.get()), Math::max);
+		return sequence;
+	}
+	
+	@SuppressWarnings("unchecked")
+	public E get(final long sequence) {
+		return (E)slots[(int)(sequence & mask)];
+	}
+	
+	/**
+	 * Makes the slot of the given sequence visible to the consumer.
+	 * */
+	public void publish(final long sequence) {
+		published.set((int)(sequence & mask), sequence);
+		waitStrategy.signal();
+	}
+	
+	boolean isPublished(final long sequence) {
+		return published.get((int)(sequence & mask)) == sequence;
+	}
+	
+	long getConsumed() {
+		return consumed.get();
+	}
+	
+	/**
+	 * Gives the slots up to the given sequence back to the producers.
+	 * */
+	void setConsumed(final long sequence) {
+		consumed.lazySet(sequence);
+	}
+	
+	WaitStrategy getWaitStrategy() {
+		return waitStrategy;
+	}
+	
+	public int getSize() {
+		return slots.length;
+	}
+	
+	/**
+	 * Number of claimed sequences not consumed yet.
+	 * */
+	public int getDepth() {
+		return (int)(claimed.get() - consumed.get());
+	}
+	
+	public int getMaxDepth() {
+		return maxDepth.get();
+	}
+}
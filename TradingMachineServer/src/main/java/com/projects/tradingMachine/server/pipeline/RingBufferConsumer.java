@@ -0,0 +1,75 @@
+package com.projects.tradingMachine.server.pipeline;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Single thread consuming, in sequence order, the events published on a ring buffer.
+ * Once stopped, it first drains the events already published.
+ * */
+public final class RingBufferConsumer<E> implements Runnable {
+	private static final Logger logger = LoggerFactory.getLogger(RingBufferConsumer.class);
+	
+	private final RingBuffer<E> ringBuffer;
+	private final EventHandler<E> eventHandler;
+	private final Thread thread;
+	private final AtomicLong processedEvents;
+	private final BooleanSupplier eventAvailableOrStopped;
+	private volatile boolean running;
+	private long nextSequence;
+	
+	public RingBufferConsumer(final RingBuffer<E> ringBuffer, final EventHandler<E> eventHandler, final String threadName) {
+		this.ringBuffer = ringBuffer;
+		this.eventHandler = eventHandler;
+		thread = new Thread(this, threadName);
+		processedEvents = new AtomicLong();
+		eventAvailableOrStopped = () -> !running || ringBuffer.isPublished(nextSequence);
+	}
+	
+	public void start() {
+		running = true;
+		thread.start();
+	}
+	
+	public void stop(final long timeout, final TimeUnit timeUnit) throws InterruptedException {
+		running = false;
+		ringBuffer.getWaitStrategy().signal();
+		thread.join(timeUnit.toMillis(timeout));
+	}
+	
+	@Override
+	public void run() {
+		nextSequence = ringBuffer.getConsumed() + 1;
+		while (true) {
+			if (!ringBuffer.isPublished(nextSequence)) {
+				if (!running)
+					break;
+				try {
+					ringBuffer.getWaitStrategy().await(eventAvailableOrStopped);
+				}
+				catch(final InterruptedException ex) {
+					Thread.currentThread().interrupt();
+					break;
+				}
+				continue;
+			}
+			try {
+				eventHandler.onEvent(ringBuffer.get(nextSequence));
+			}
+			catch(final Exception ex) {
+				logger.warn(thread.getName()+" failed to process event "+nextSequence+", due to: "+ex.getMessage(), ex);
+			}
+			ringBuffer.setConsumed(nextSequence++);
+			processedEvents.lazySet(processedEvents.get() + 1);
+		}
+		logger.info(thread.getName()+" stopped.");
+	}
+	
+	public long getProcessedEvents() {
+		return processedEvents.get();
+	}
+}
@@ -0,0 +1,31 @@
+package com.projects.tradingMachine.server.pipeline;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * How a ring buffer consumer waits for new events: trading latency for CPU usage.
+ * */
+public interface WaitStrategy {
+
+	/**
+	 * Returns once the condition holds.
+	 * */
+	void await(BooleanSupplier condition) throws InterruptedException;
+	
+	/**
+	 * Called by the producers after each publication.
+	 * */
+	void signal();
+	
+	/**
+	 * Builds a new wait strategy out of its configuration name: blocking, yielding or busySpin.
+	 * */
+	static WaitStrategy fromName(final String name) {
+		switch(name) {
+			case "blocking": return new BlockingWaitStrategy();
+			case "yielding": return new YieldingWaitStrategy();
+			case "busySpin": return new BusySpinWaitStrategy();
+			default: throw new IllegalArgumentException("Unknown wait strategy: "+name);
+		}
+	}
+}
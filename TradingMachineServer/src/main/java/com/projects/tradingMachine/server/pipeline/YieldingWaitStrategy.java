@@ -0,0 +1,25 @@
+package com.projects.tradingMachine.server.pipeline;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * The consumer spins for a while and then yields its core to other threads. Low latency without taking a core for good.
+ * */
+public final class YieldingWaitStrategy implements WaitStrategy {
+	private static final int SPIN_TRIES = 100;
+
+	@Override
+	public void await(final BooleanSupplier condition) {
+		int counter = SPIN_TRIES;
+		while (!condition.getAsBoolean()) {
+			if (counter > 0)
+				counter--;
+			else
+				Thread.yield();
+		}
+	}
+
+	@Override
+	public void signal() {
+	}
+}
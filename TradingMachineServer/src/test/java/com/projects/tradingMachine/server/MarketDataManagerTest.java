@@ -0,0 +1,124 @@
+package com.projects.tradingMachine.server;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Properties;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+import com.projects.tradingMachine.utility.FixedPointPrice;
+import com.projects.tradingMachine.utility.SymbolRegistry;
+import com.projects.tradingMachine.utility.Utility;
+import com.projects.tradingMachine.utility.marketData.MarketData;
+
+public class MarketDataManagerTest {
+  @Rule
+  public final Timeout globalTimeout = new Timeout(10000);
+
+  private static final SymbolRegistry symbolRegistry = new SymbolRegistry(Arrays.asList("XYZ", "ABC"));
+
+  private static MarketData quote(final String symbol, final double bid, final double ask, final int bidSize, final int askSize) {
+    return new MarketData("Q", symbol, symbolRegistry.getId(symbol), FixedPointPrice.fromDouble(bid), FixedPointPrice.fromDouble(ask), bidSize, askSize,
+        new Date());
+  }
+
+  /**
+   * Shipped configuration, consuming from an embedded broker.
+   * */
+  private static Properties shippedProperties() throws Exception {
+    final Properties properties = Utility.getApplicationProperties("tradingMachine.properties");
+    properties.setProperty("activeMQ.url", "vm://marketDataManagerTest?broker.persistent=false&broker.useJmx=false");
+    return properties;
+  }
+
+  @Test
+  public void shippedConfigurationConsumesTheSingleTopic() throws Exception {
+    final MarketDataManager marketDataManager = new MarketDataManager(shippedProperties(), symbolRegistry);
+    try {
+      Assert.assertEquals(1, marketDataManager.getVenues());
+    }
+    finally {
+      marketDataManager.stop();
+    }
+  }
+
+  @Test
+  public void venueTopicsOverrideTheSingleTopic() throws Exception {
+    final Properties properties = shippedProperties();
+    properties.setProperty("activeMQ.marketDataTopics", "MarketDataTopic, MarketDataTopic2");
+    final MarketDataManager marketDataManager = new MarketDataManager(properties, symbolRegistry);
+    try {
+      Assert.assertEquals(2, marketDataManager.getVenues());
+    }
+    finally {
+      marketDataManager.stop();
+    }
+  }
+
+  @Test
+  public void syntheticQuotesHaveTheRegistrySymbolId() {
+    final MarketDataManager marketDataManager = new MarketDataManager(symbolRegistry, MissingQuotePolicy.SYNTHETIC);
+    final MarketData synthetic = marketDataManager.get("ABC");
+    Assert.assertEquals("ABC", synthetic.getSymbol());
+    Assert.assertEquals(symbolRegistry.getId("ABC"), synthetic.getSymbolId());
+    Assert.assertNull(marketDataManager.getQuote(symbolRegistry.getId("ABC"))); //not stored.
+  }
+
+  @Test
+  public void singleVenueQuotesAreStoredAsTheyAre() {
+    final MarketDataManager marketDataManager = new MarketDataManager(symbolRegistry, MissingQuotePolicy.REJECT);
+    final MarketData marketData = quote("XYZ", 10, 11, 100, 200);
+    marketDataManager.update(marketData);
+    Assert.assertSame(marketData, marketDataManager.get("XYZ"));
+    Assert.assertNull(marketDataManager.get("ABC"));
+  }
+
+  @Test
+  public void venuesAreConsolidatedIntoTheBestBidOffer() {
+    final MarketDataManager marketDataManager = new MarketDataManager(symbolRegistry, MissingQuotePolicy.REJECT, 3);
+    final List<MarketData> notified = new ArrayList<>();
+    marketDataManager.addQuoteListener(notified::add);
+    marketDataManager.update(0, quote("XYZ", 10, 11, 100, 200));
+    marketDataManager.update(1, quote("XYZ", 10.5, 11, 50, 300));
+    marketDataManager.update(2, quote("XYZ", 10.5, 11.5, 70, 400));
+    final MarketData consolidated = marketDataManager.get("XYZ");
+    Assert.assertEquals(FixedPointPrice.fromDouble(10.5), consolidated.getBidPrice());
+    Assert.assertEquals(120, consolidated.getBidSize());
+    Assert.assertEquals(FixedPointPrice.fromDouble(11), consolidated.getAskPrice());
+    Assert.assertEquals(500, consolidated.getAskSize());
+    Assert.assertEquals(3, notified.size());
+    Assert.assertSame(consolidated, notified.get(2));
+    Assert.assertEquals(FixedPointPrice.fromDouble(10.5), marketDataManager.getVenueQuote(2, "XYZ").getBidPrice());
+    Assert.assertNull(marketDataManager.getVenueQuote(0, "ABC"));
+  }
+
+  @Test
+  public void consolidationFollowsTheVenueUpdates() {
+    final MarketDataManager marketDataManager = new MarketDataManager(symbolRegistry, MissingQuotePolicy.REJECT, 2);
+    marketDataManager.update(0, quote("ABC", 20, 21, 100, 100));
+    marketDataManager.update(1, quote("ABC", 20.5, 20.8, 10, 10));
+    marketDataManager.update(1, quote("ABC", 19, 22, 10, 10));
+    final MarketData consolidated = marketDataManager.get("ABC");
+    Assert.assertEquals(FixedPointPrice.fromDouble(20), consolidated.getBidPrice());
+    Assert.assertEquals(100, consolidated.getBidSize());
+    Assert.assertEquals(FixedPointPrice.fromDouble(21), consolidated.getAskPrice());
+    Assert.assertEquals(100, consolidated.getAskSize());
+  }
+
+  @Test
+  public void missingSidesAreSkipped() {
+    final MarketDataManager marketDataManager = new MarketDataManager(symbolRegistry, MissingQuotePolicy.REJECT, 2);
+    marketDataManager.update(0, new MarketData("Q", "XYZ", 0, FixedPointPrice.NONE, FixedPointPrice.fromDouble(11), 0, 10, new Date()));
+    marketDataManager.update(1, new MarketData("Q", "XYZ", 0, FixedPointPrice.fromDouble(10), FixedPointPrice.NONE, 20, 0, new Date()));
+    final MarketData consolidated = marketDataManager.get("XYZ");
+    Assert.assertEquals(FixedPointPrice.fromDouble(10), consolidated.getBidPrice());
+    Assert.assertEquals(20, consolidated.getBidSize());
+    Assert.assertEquals(FixedPointPrice.fromDouble(11), consolidated.getAskPrice());
+    Assert.assertEquals(10, consolidated.getAskSize());
+  }
+}
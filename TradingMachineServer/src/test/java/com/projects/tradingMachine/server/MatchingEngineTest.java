@@ -0,0 +1,374 @@
+package com.projects.tradingMachine.server;
+
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Deque;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+import com.projects.tradingMachine.utility.FixedPointPrice;
+import com.projects.tradingMachine.utility.SymbolRegistry;
+import com.projects.tradingMachine.utility.database.creditCheck.ICreditCheck;
+import com.projects.tradingMachine.utility.marketData.MarketData;
+
+import quickfix.field.OrdType;
+import quickfix.field.Side;
+import quickfix.field.TimeInForce;
+
+public class MatchingEngineTest {
+  @Rule
+  public final Timeout globalTimeout = new Timeout(10000);
+
+  private static final SymbolRegistry symbolRegistry = new SymbolRegistry(Arrays.asList("XYZ", "ABC"));
+
+  private static final ICreditCheck unlimitedCredit = new ICreditCheck() {
+    @Override
+    public boolean hasEnoughCredit(final double credit) {
+      return true;
+    }
+
+    @Override
+    public void setCredit(final double credit) {
+    }
+
+    @Override
+    public void closeConnection() {
+    }
+  };
+
+  /**
+   * Answers the credit checks from the given answers, then grants them, and records the amounts set.
+   * */
+  private static final class ScriptedCredit implements ICreditCheck {
+    final Deque<Boolean> answers = new ArrayDeque<>();
+    final List<Double> amounts = new ArrayList<>();
+
+    ScriptedCredit(final Boolean... answers) {
+      this.answers.addAll(Arrays.asList(answers));
+    }
+
+    @Override
+    public boolean hasEnoughCredit(final double credit) {
+      return answers.isEmpty() || answers.pollFirst();
+    }
+
+    @Override
+    public void setCredit(final double credit) {
+      amounts.add(credit);
+    }
+
+    @Override
+    public void closeConnection() {
+    }
+  }
+
+  private static final class RecordingListener implements ExecutionListener {
+    final List<String> events = new ArrayList<>();
+
+    @Override
+    public void onNew(final BookOrder order) {
+      events.add("new " + order.getClOrdID());
+    }
+
+    @Override
+    public void onFill(final BookOrder order, final long price, final int quantity, final String reference) {
+      events.add("fill " + order.getClOrdID() + " " + quantity + "@" + FixedPointPrice.toDouble(price));
+    }
+
+    @Override
+    public void onReject(final BookOrder order, final boolean creditCheckFailed) {
+      events.add("reject " + order.getClOrdID());
+    }
+
+    @Override
+    public void onCancel(final BookOrder order, final String reason) {
+      events.add("cancel " + order.getClOrdID());
+    }
+
+    @Override
+    public void onDoneForDay(final BookOrder order) {
+      events.add("doneForDay " + order.getClOrdID());
+    }
+
+    @Override
+    public void onCancelRequest(final BookOrder order, final String clOrdID) {
+      events.add("cancel " + order.getClOrdID() + " by " + clOrdID);
+    }
+
+    @Override
+    public void onReplace(final BookOrder replacement, final String origClOrdID) {
+      events.add("replace " + origClOrdID + " by " + replacement.getClOrdID() + " " + replacement.getLeavesQty() + "@" 
+          + FixedPointPrice.toDouble(replacement.getPrice()));
+    }
+
+    @Override
+    public void onCancelReject(final CancelReplaceRequest request, final int cxlRejReason, final String reason) {
+      events.add("cancelReject " + request.getClOrdID());
+    }
+  }
+
+  private static BookOrder order(final MarketDataManager marketDataManager, final String id, final char side, final char type, 
+      final double price, final int quantity) {
+    return new BookOrder(id, id, null, "ABC", marketDataManager.getSymbolId("ABC"), side, type, TimeInForce.DAY,
+        type == OrdType.LIMIT ? FixedPointPrice.fromDouble(price) : FixedPointPrice.NONE, FixedPointPrice.NONE, quantity, OrderExpiry.NEVER);
+  }
+
+  private static MarketData quote(final double bid, final double ask) {
+    return new MarketData("MD", "ABC", bid, ask, 100, 100, new Date());
+  }
+
+  @Test
+  public void missingQuoteRejects() {
+    final MarketDataManager marketDataManager = new MarketDataManager(symbolRegistry, MissingQuotePolicy.REJECT);
+    final RecordingListener listener = new RecordingListener();
+    final MatchingEngine matchingEngine = MatchingEngine.builder(marketDataManager, unlimitedCredit, listener).build();
+    matchingEngine.onNewOrder(order(marketDataManager, "1", Side.BUY, OrdType.MARKET, 0, 100));
+    Assert.assertEquals("[new 1, reject 1]", listener.events.toString());
+  }
+
+  @Test
+  public void unknownSymbolRejects() {
+    final MarketDataManager marketDataManager = new MarketDataManager(symbolRegistry, MissingQuotePolicy.SYNTHETIC);
+    final RecordingListener listener = new RecordingListener();
+    final MatchingEngine matchingEngine = MatchingEngine.builder(marketDataManager, unlimitedCredit, listener).build();
+    matchingEngine.onNewOrder(new BookOrder("1", "1", null, "NOPE", marketDataManager.getSymbolId("NOPE"), Side.BUY, OrdType.MARKET, 
+        TimeInForce.DAY, FixedPointPrice.NONE, FixedPointPrice.NONE, 100, OrderExpiry.NEVER));
+    Assert.assertEquals("[new 1, reject 1]", listener.events.toString());
+  }
+
+  @Test
+  public void missingQuoteWaitsForFirstQuote() {
+    final MarketDataManager marketDataManager = new MarketDataManager(symbolRegistry, MissingQuotePolicy.WAIT);
+    final RecordingListener listener = new RecordingListener();
+    final MatchingEngine matchingEngine = MatchingEngine.builder(marketDataManager, unlimitedCredit, listener).build();
+    marketDataManager.addQuoteListener(matchingEngine);
+    matchingEngine.onNewOrder(order(marketDataManager, "1", Side.BUY, OrdType.MARKET, 0, 100));
+    Assert.assertEquals("[new 1]", listener.events.toString());
+    marketDataManager.update(quote(9.5, 10.0));
+    Assert.assertEquals("[new 1, fill 1 100@10.0]", listener.events.toString());
+    Assert.assertTrue(matchingEngine.getOrderBook("ABC").isEmpty());
+  }
+
+  @Test
+  public void crossesRestingOrdersBeforeQuote() {
+    final MarketDataManager marketDataManager = new MarketDataManager(symbolRegistry, MissingQuotePolicy.REJECT);
+    final RecordingListener listener = new RecordingListener();
+    final MatchingEngine matchingEngine = MatchingEngine.builder(marketDataManager, unlimitedCredit, listener).build();
+    marketDataManager.update(quote(9.0, 11.0));
+    matchingEngine.onNewOrder(order(marketDataManager, "1", Side.SELL, OrdType.LIMIT, 10.0, 100));
+    matchingEngine.onNewOrder(order(marketDataManager, "2", Side.BUY, OrdType.LIMIT, 10.5, 60));
+    Assert.assertEquals("[new 1, new 2, fill 1 60@10.0, fill 2 60@10.0]", listener.events.toString());
+    Assert.assertEquals(40, matchingEngine.getOrderBook("ABC").getContraQuantity(order(marketDataManager, "3", Side.BUY, OrdType.MARKET, 0, 100)));
+  }
+
+  @Test
+  public void creditFailureAfterACrossingCancelsTheRest() {
+    final MarketDataManager marketDataManager = new MarketDataManager(symbolRegistry, MissingQuotePolicy.REJECT);
+    final RecordingListener listener = new RecordingListener();
+    final ICreditCheck oneFillCredit = new ICreditCheck() {
+      private double credit = 1500; //both sides of the first crossing only.
+
+      @Override
+      public boolean hasEnoughCredit(final double value) {
+        return credit - value >= 0;
+      }
+
+      @Override
+      public void setCredit(final double value) {
+        credit += value;
+      }
+
+      @Override
+      public void closeConnection() {
+      }
+    };
+    final MatchingEngine matchingEngine = MatchingEngine.builder(marketDataManager, oneFillCredit, listener).build();
+    marketDataManager.update(quote(9.0, 11.0));
+    matchingEngine.onNewOrder(order(marketDataManager, "1", Side.SELL, OrdType.LIMIT, 10.0, 60));
+    matchingEngine.onNewOrder(order(marketDataManager, "2", Side.SELL, OrdType.LIMIT, 10.5, 60));
+    matchingEngine.onNewOrder(order(marketDataManager, "3", Side.BUY, OrdType.LIMIT, 10.5, 100));
+    Assert.assertEquals("[new 1, new 2, new 3, fill 1 60@10.0, fill 3 60@10.0, cancel 3]", listener.events.toString());
+    Assert.assertEquals(0, matchingEngine.getOrderBook("ABC").getContraQuantity(order(marketDataManager, "4", Side.SELL, OrdType.MARKET, 0, 100)));
+    Assert.assertEquals(60, matchingEngine.getOrderBook("ABC").getContraQuantity(order(marketDataManager, "5", Side.BUY, OrdType.MARKET, 0, 100)));
+  }
+
+  @Test
+  public void bothSidesOfACrossAreCreditChecked() {
+    final MarketDataManager marketDataManager = new MarketDataManager(symbolRegistry, MissingQuotePolicy.REJECT);
+    final RecordingListener listener = new RecordingListener();
+    final ScriptedCredit credit = new ScriptedCredit(true, false); //the first resting order fails.
+    final MatchingEngine matchingEngine = MatchingEngine.builder(marketDataManager, credit, listener).build();
+    marketDataManager.update(quote(9.0, 11.0));
+    matchingEngine.onNewOrder(order(marketDataManager, "1", Side.SELL, OrdType.LIMIT, 10.0, 60));
+    matchingEngine.onNewOrder(order(marketDataManager, "2", Side.SELL, OrdType.LIMIT, 10.5, 60));
+    matchingEngine.onNewOrder(order(marketDataManager, "3", Side.BUY, OrdType.LIMIT, 10.5, 100));
+    Assert.assertEquals("[new 1, new 2, new 3, reject 1, fill 2 60@10.5, fill 3 60@10.5]", listener.events.toString());
+    Assert.assertEquals("[-600.0, 600.0, -630.0, -630.0]", credit.amounts.toString());
+    Assert.assertEquals(40, matchingEngine.getOrderBook("ABC").getContraQuantity(order(marketDataManager, "4", Side.SELL, OrdType.MARKET, 0, 100)));
+
+    //the aggressor failing leaves the resting order alone.
+    credit.answers.add(false);
+    matchingEngine.onNewOrder(order(marketDataManager, "5", Side.SELL, OrdType.LIMIT, 10.5, 10));
+    Assert.assertEquals("[-600.0, 600.0, -630.0, -630.0]", credit.amounts.toString());
+    Assert.assertEquals("reject 5", listener.events.get(listener.events.size() - 1));
+    Assert.assertEquals(40, matchingEngine.getOrderBook("ABC").getContraQuantity(order(marketDataManager, "6", Side.SELL, OrdType.MARKET, 0, 100)));
+  }
+
+  @Test
+  public void snapshotQuotesAreRestoredBySymbol() {
+    final MarketDataManager marketDataManager = new MarketDataManager(symbolRegistry, MissingQuotePolicy.REJECT);
+    final RecordingListener listener = new RecordingListener();
+    final MatchingEngine matchingEngine = MatchingEngine.builder(marketDataManager, unlimitedCredit, listener).build();
+    matchingEngine.restore(new EngineSnapshot(1, 0, AuctionSchedule.CONTINUOUS, Arrays.asList(
+        new MarketData("MD1", "ABC", SymbolRegistry.UNKNOWN, FixedPointPrice.fromDouble(9.0), FixedPointPrice.fromDouble(10.0), 100, 100, new Date()),
+        new MarketData("MD2", "NOPE", SymbolRegistry.UNKNOWN, FixedPointPrice.fromDouble(9.0), FixedPointPrice.fromDouble(10.0), 100, 100, new Date())),
+        Collections.emptyList(), Collections.emptyList(), Collections.emptyList()));
+    matchingEngine.onNewOrder(order(marketDataManager, "1", Side.BUY, OrdType.MARKET, 0, 100));
+    Assert.assertEquals("[new 1, fill 1 100@10.0]", listener.events.toString());
+    Assert.assertEquals(symbolRegistry.getId("ABC"), matchingEngine.snapshot(2).getQuotes().get(0).getSymbolId());
+  }
+
+  @Test
+  public void gtdOrderExpiresAndFillCancelsExpiry() {
+    final MarketDataManager marketDataManager = new MarketDataManager(symbolRegistry, MissingQuotePolicy.REJECT);
+    final RecordingListener listener = new RecordingListener();
+    final MatchingEngine matchingEngine = MatchingEngine.builder(marketDataManager, unlimitedCredit, listener)
+        .orderExpiry(new OrderExpiry(LocalTime.MAX, ZoneId.systemDefault(), 10, 64)).build();
+    final long now = System.currentTimeMillis();
+    marketDataManager.update(quote(9.0, 11.0));
+    matchingEngine.onNewOrder(new BookOrder("1", "1", null, "ABC", marketDataManager.getSymbolId("ABC"), Side.SELL, OrdType.LIMIT, 
+        TimeInForce.GOOD_TILL_DATE, FixedPointPrice.fromDouble(10.0), FixedPointPrice.NONE, 100, now + 1000));
+    matchingEngine.onNewOrder(new BookOrder("2", "2", null, "ABC", marketDataManager.getSymbolId("ABC"), Side.SELL, OrdType.LIMIT, 
+        TimeInForce.GOOD_TILL_DATE, FixedPointPrice.fromDouble(10.5), FixedPointPrice.NONE, 100, now + 1000));
+    matchingEngine.onNewOrder(new BookOrder("3", "3", null, "ABC", marketDataManager.getSymbolId("ABC"), Side.SELL, OrdType.LIMIT, 
+        TimeInForce.GOOD_TILL_CANCEL, FixedPointPrice.fromDouble(10.5), FixedPointPrice.NONE, 100, OrderExpiry.NEVER));
+    Assert.assertEquals(2, matchingEngine.getScheduledExpiries());
+    matchingEngine.onNewOrder(order(marketDataManager, "4", Side.BUY, OrdType.LIMIT, 10.0, 100));
+    Assert.assertEquals(1, matchingEngine.getScheduledExpiries());
+    matchingEngine.onTick(now + 500);
+    Assert.assertEquals("[new 1, new 2, new 3, new 4, fill 1 100@10.0, fill 4 100@10.0]", listener.events.toString());
+    matchingEngine.onTick(now + 1100);
+    Assert.assertEquals("[new 1, new 2, new 3, new 4, fill 1 100@10.0, fill 4 100@10.0, cancel 2]", listener.events.toString());
+    Assert.assertEquals(0, matchingEngine.getScheduledExpiries());
+    Assert.assertEquals(100, matchingEngine.getOrderBook("ABC").getContraQuantity(order(marketDataManager, "5", Side.BUY, OrdType.MARKET, 0, 1000)));
+  }
+
+  private static CancelReplaceRequest cancel(final MarketDataManager marketDataManager, final String clOrdID, final String origClOrdID) {
+    return new CancelReplaceRequest(clOrdID, origClOrdID, null, "ABC", marketDataManager.getSymbolId("ABC"), Side.SELL, false, 0, 
+        FixedPointPrice.NONE, FixedPointPrice.NONE);
+  }
+
+  @Test
+  public void cancelRemovesWorkingOrder() {
+    final MarketDataManager marketDataManager = new MarketDataManager(symbolRegistry, MissingQuotePolicy.REJECT);
+    final RecordingListener listener = new RecordingListener();
+    final MatchingEngine matchingEngine = MatchingEngine.builder(marketDataManager, unlimitedCredit, listener).build();
+    marketDataManager.update(quote(9.0, 11.0));
+    matchingEngine.onNewOrder(order(marketDataManager, "1", Side.SELL, OrdType.LIMIT, 10.0, 100));
+    matchingEngine.onNewOrder(order(marketDataManager, "2", Side.SELL, OrdType.LIMIT, 10.0, 50));
+    Assert.assertEquals(2, matchingEngine.getScheduledExpiries());
+    matchingEngine.onCancelReplace(cancel(marketDataManager, "3", "1"));
+    matchingEngine.onCancelReplace(cancel(marketDataManager, "4", "1"));
+    Assert.assertEquals("[new 1, new 2, cancel 1 by 3, cancelReject 4]", listener.events.toString());
+    Assert.assertEquals(1, matchingEngine.getScheduledExpiries());
+    Assert.assertEquals(50, matchingEngine.getOrderBook("ABC").getContraQuantity(order(marketDataManager, "5", Side.BUY, OrdType.MARKET, 0, 1000)));
+  }
+
+  @Test
+  public void replaceKeepsExecutedQuantityAndMatchesAgain() {
+    final MarketDataManager marketDataManager = new MarketDataManager(symbolRegistry, MissingQuotePolicy.REJECT);
+    final RecordingListener listener = new RecordingListener();
+    final MatchingEngine matchingEngine = MatchingEngine.builder(marketDataManager, unlimitedCredit, listener).build();
+    marketDataManager.update(quote(9.0, 11.0));
+    matchingEngine.onNewOrder(order(marketDataManager, "1", Side.SELL, OrdType.LIMIT, 10.5, 100));
+    matchingEngine.onNewOrder(order(marketDataManager, "2", Side.BUY, OrdType.LIMIT, 10.5, 40));
+    matchingEngine.onNewOrder(order(marketDataManager, "3", Side.BUY, OrdType.LIMIT, 10.0, 30));
+    listener.events.clear();
+    matchingEngine.onCancelReplace(new CancelReplaceRequest("4", "1", null, "ABC", marketDataManager.getSymbolId("ABC"), Side.SELL, true, 80, 
+        FixedPointPrice.fromDouble(10.0), FixedPointPrice.NONE));
+    Assert.assertEquals("[replace 1 by 4 40@10.0, fill 3 30@10.0, fill 4 30@10.0]", listener.events.toString());
+    listener.events.clear();
+    matchingEngine.onCancelReplace(new CancelReplaceRequest("5", "4", null, "ABC", marketDataManager.getSymbolId("ABC"), Side.SELL, true, 60, 
+        FixedPointPrice.NONE, FixedPointPrice.NONE));
+    Assert.assertEquals("[cancelReject 5]", listener.events.toString());
+    matchingEngine.onCancelReplace(cancel(marketDataManager, "6", "4"));
+    Assert.assertEquals("[cancelReject 5, cancel 4 by 6]", listener.events.toString());
+    Assert.assertTrue(matchingEngine.getOrderBook("ABC").isEmpty());
+  }
+
+  private static MatchingEngine auctionEngine(final MarketDataManager marketDataManager, final RecordingListener listener, final long startTime) {
+    return auctionEngine(marketDataManager, unlimitedCredit, listener, startTime);
+  }
+
+  private static MatchingEngine auctionEngine(final MarketDataManager marketDataManager, final ICreditCheck creditCheck, final RecordingListener listener, 
+      final long startTime) {
+    return MatchingEngine.builder(marketDataManager, creditCheck, listener).orderExpiry(new OrderExpiry(LocalTime.MAX, ZoneId.of("UTC"), 10, 64))
+        .auctionSchedule(new AuctionSchedule("00:00-23:59:59", ZoneId.of("UTC"), 1000)).startTime(startTime).build();
+  }
+
+  @Test
+  public void callAuctionUncrossesAtMaxVolumePrice() {
+    final MarketDataManager marketDataManager = new MarketDataManager(symbolRegistry, MissingQuotePolicy.REJECT);
+    final RecordingListener listener = new RecordingListener();
+    final long start = 1000000000100L;
+    final MatchingEngine matchingEngine = auctionEngine(marketDataManager, listener, start);
+    matchingEngine.setCurrentTime(start);
+    marketDataManager.update(quote(9.0, 11.0));
+    matchingEngine.onNewOrder(order(marketDataManager, "1", Side.SELL, OrdType.LIMIT, 10.0, 100));
+    matchingEngine.onNewOrder(order(marketDataManager, "2", Side.SELL, OrdType.LIMIT, 10.2, 100));
+    matchingEngine.onNewOrder(order(marketDataManager, "3", Side.BUY, OrdType.LIMIT, 10.2, 150));
+    matchingEngine.onNewOrder(order(marketDataManager, "4", Side.BUY, OrdType.MARKET, 0, 50));
+    Assert.assertEquals("[new 1, new 2, new 3, new 4]", listener.events.toString());
+    final OrderBook.Uncross uncross = matchingEngine.getOrderBook("ABC").getAuctionUncross(quote(9.0, 11.0));
+    Assert.assertEquals(FixedPointPrice.fromDouble(10.2), uncross.getPrice());
+    Assert.assertEquals(200, uncross.getVolume());
+    matchingEngine.onTick(start + 500);
+    Assert.assertEquals(4, listener.events.size());
+    matchingEngine.onTick(start + 1000);
+    Assert.assertEquals("[new 1, new 2, new 3, new 4, fill 4 50@10.2, fill 3 150@10.2, fill 1 100@10.2, fill 2 100@10.2]", listener.events.toString());
+    Assert.assertTrue(matchingEngine.getOrderBook("ABC").isEmpty());
+  }
+
+  @Test
+  public void callAuctionChecksTheCreditOfBothSides() {
+    final MarketDataManager marketDataManager = new MarketDataManager(symbolRegistry, MissingQuotePolicy.REJECT);
+    final RecordingListener listener = new RecordingListener();
+    final ScriptedCredit credit = new ScriptedCredit(true, true, false); //the second seller fails.
+    final long start = 1000000000100L;
+    final MatchingEngine matchingEngine = auctionEngine(marketDataManager, credit, listener, start);
+    matchingEngine.setCurrentTime(start);
+    matchingEngine.onNewOrder(order(marketDataManager, "1", Side.SELL, OrdType.LIMIT, 10.0, 50));
+    matchingEngine.onNewOrder(order(marketDataManager, "2", Side.SELL, OrdType.LIMIT, 10.0, 50));
+    matchingEngine.onNewOrder(order(marketDataManager, "3", Side.BUY, OrdType.LIMIT, 10.0, 100));
+    matchingEngine.onTick(start + 1000);
+    Assert.assertEquals("[new 1, new 2, new 3, fill 3 100@10.0, fill 1 50@10.0, reject 2]", listener.events.toString());
+    Assert.assertEquals("[-1000.0, -500.0]", credit.amounts.toString());
+    Assert.assertTrue(matchingEngine.getOrderBook("ABC").isEmpty());
+  }
+
+  @Test
+  public void callAuctionCancelsUnfilledMarketAndImmediateOrders() {
+    final MarketDataManager marketDataManager = new MarketDataManager(symbolRegistry, MissingQuotePolicy.REJECT);
+    final RecordingListener listener = new RecordingListener();
+    final long start = 1000000000100L;
+    final MatchingEngine matchingEngine = auctionEngine(marketDataManager, listener, start);
+    matchingEngine.setCurrentTime(start);
+    matchingEngine.onNewOrder(order(marketDataManager, "1", Side.BUY, OrdType.MARKET, 0, 100));
+    matchingEngine.onNewOrder(new BookOrder("2", "2", null, "ABC", marketDataManager.getSymbolId("ABC"), Side.SELL, OrdType.LIMIT, 
+        TimeInForce.IMMEDIATE_OR_CANCEL, FixedPointPrice.fromDouble(10.0), FixedPointPrice.NONE, 100, OrderExpiry.NEVER));
+    Assert.assertEquals("[new 1, new 2, cancel 2]", listener.events.toString());
+    Assert.assertNull(matchingEngine.getOrderBook("ABC").getAuctionUncross(null));
+    matchingEngine.onTick(start + 1000);
+    Assert.assertEquals("[new 1, new 2, cancel 2, cancel 1]", listener.events.toString());
+    Assert.assertTrue(matchingEngine.getOrderBook("ABC").isEmpty());
+  }
+}
@@ -0,0 +1,94 @@
+package com.projects.tradingMachine.server;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+import com.projects.tradingMachine.utility.FixedPointPrice;
+
+import quickfix.field.OrdType;
+import quickfix.field.Side;
+import quickfix.field.TimeInForce;
+
+public class OrderBookTest {
+  @Rule
+  public final Timeout globalTimeout = new Timeout(10000);
+
+  private static long p(final double price) {
+    return FixedPointPrice.fromDouble(price);
+  }
+
+  private static BookOrder limitOrder(final String id, final char side, final long price, final int quantity) {
+    return new BookOrder(id, id, null, "ABC", 0, side, OrdType.LIMIT, TimeInForce.DAY, price, FixedPointPrice.NONE, quantity, OrderExpiry.NEVER);
+  }
+
+  @Test
+  public void bestContraFollowsPriceThenTimePriority() {
+    final OrderBook book = new OrderBook("ABC");
+    final BookOrder first = limitOrder("1", Side.SELL, p(10.5), 100);
+    final BookOrder second = limitOrder("2", Side.SELL, p(10.0), 100);
+    final BookOrder third = limitOrder("3", Side.SELL, p(10.0), 100);
+    book.add(first);
+    book.add(second);
+    book.add(third);
+    final BookOrder buy = limitOrder("4", Side.BUY, p(11.0), 50);
+    Assert.assertSame(second, book.getBestContra(buy));
+    Assert.assertTrue(book.remove(second));
+    Assert.assertSame(third, book.getBestContra(buy));
+    Assert.assertTrue(book.remove(third));
+    Assert.assertSame(first, book.getBestContra(buy));
+  }
+
+  @Test
+  public void removeFromMiddleOfLevelKeepsTimePriority() {
+    final OrderBook book = new OrderBook("ABC");
+    final BookOrder first = limitOrder("1", Side.SELL, p(10.0), 100);
+    final BookOrder second = limitOrder("2", Side.SELL, p(10.0), 100);
+    final BookOrder third = limitOrder("3", Side.SELL, p(10.0), 100);
+    book.add(first);
+    book.add(second);
+    book.add(third);
+    Assert.assertTrue(book.remove(second));
+    Assert.assertFalse(book.remove(second));
+    Assert.assertTrue(book.removeWorking(first));
+    final BookOrder buy = limitOrder("4", Side.BUY, p(10.0), 500);
+    Assert.assertSame(third, book.getBestContra(buy));
+    Assert.assertEquals(100, book.getContraQuantity(buy));
+    Assert.assertTrue(book.remove(third));
+    Assert.assertTrue(book.isEmpty());
+  }
+
+  @Test
+  public void contraQuantityStopsAtLimitPrice() {
+    final OrderBook book = new OrderBook("ABC");
+    book.add(limitOrder("1", Side.BUY, p(10.0), 100));
+    book.add(limitOrder("2", Side.BUY, p(9.0), 100));
+    Assert.assertEquals(100, book.getContraQuantity(limitOrder("3", Side.SELL, p(9.5), 500)));
+    Assert.assertEquals(200, book.getContraQuantity(limitOrder("4", Side.SELL, p(9.0), 500)));
+  }
+
+  @Test
+  public void removeUnknownOrder() {
+    final OrderBook book = new OrderBook("ABC");
+    Assert.assertFalse(book.remove(limitOrder("1", Side.BUY, p(10.0), 100)));
+    Assert.assertTrue(book.isEmpty());
+  }
+
+  @Test
+  public void triggeredStopsAndMarketableOrdersOnlyCrossedLevels() {
+    final OrderBook book = new OrderBook("ABC");
+    final BookOrder buyStop = new BookOrder("1", "1", null, "ABC", 0, Side.BUY, OrdType.STOP, TimeInForce.DAY, FixedPointPrice.NONE, p(10.0), 100, OrderExpiry.NEVER);
+    final BookOrder sellStop = new BookOrder("2", "2", null, "ABC", 0, Side.SELL, OrdType.STOP, TimeInForce.DAY, FixedPointPrice.NONE, p(8.0), 100, OrderExpiry.NEVER);
+    final BookOrder bid = limitOrder("3", Side.BUY, p(10.5), 100);
+    book.addStop(buyStop);
+    book.addStop(sellStop);
+    book.add(bid);
+    Assert.assertTrue(book.getTriggeredStops(p(9.0), p(9.5)).isEmpty());
+    Assert.assertEquals(1, book.getMarketableOrders(p(9.0), p(9.5)).size());
+    Assert.assertSame(buyStop, book.getTriggeredStops(p(9.0), p(10.5)).get(0));
+    Assert.assertSame(sellStop, book.getTriggeredStops(p(7.5), p(9.5)).get(0));
+    Assert.assertTrue(book.removeStop(buyStop));
+    Assert.assertTrue(book.getMarketableOrders(p(9.0), p(11.0)).isEmpty());
+  }
+}
@@ -0,0 +1,90 @@
+package com.projects.tradingMachine.server;
+
+import java.util.Arrays;
+import java.util.Date;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+import com.projects.tradingMachine.utility.FixedPointPrice;
+import com.projects.tradingMachine.utility.SymbolRegistry;
+import com.projects.tradingMachine.utility.marketData.MarketData;
+
+import quickfix.SessionID;
+import quickfix.field.OrdType;
+import quickfix.field.Side;
+import quickfix.field.TimeInForce;
+
+public class PositionKeeperTest {
+  @Rule
+  public final Timeout globalTimeout = new Timeout(10000);
+
+  private static final SymbolRegistry symbolRegistry = new SymbolRegistry(Arrays.asList("XYZ", "ABC"));
+  private static final SessionID client1 = new SessionID("FIXT.1.1", "TradingMachine", "CLIENT1");
+  private static final SessionID client2 = new SessionID("FIXT.1.1", "TradingMachine", "CLIENT2");
+
+  private static ExecutionEvent fill(final SessionID sessionID, final String symbol, final char side, final double price, final int quantity) {
+    final BookOrder order = new BookOrder("C"+quantity, "O"+quantity, sessionID, symbol, symbolRegistry.getId(symbol), side, OrdType.LIMIT, TimeInForce.DAY,
+        FixedPointPrice.fromDouble(price), FixedPointPrice.NONE, quantity, OrderExpiry.NEVER);
+    order.fill(FixedPointPrice.fromDouble(price), quantity);
+    return new ExecutionEvent().set(ExecutionEvent.Type.FILL, order, FixedPointPrice.fromDouble(price), quantity, null, false);
+  }
+
+  @Test
+  public void fillsOnTheSameSideAverageTheCost() {
+    final PositionKeeper positionKeeper = new PositionKeeper(new MarketDataManager(symbolRegistry, MissingQuotePolicy.REJECT));
+    positionKeeper.onExecution(fill(client1, "XYZ", Side.BUY, 10, 100));
+    positionKeeper.onExecution(fill(client1, "XYZ", Side.BUY, 13, 50));
+    Assert.assertEquals(150, positionKeeper.getNetQuantity("CLIENT1", "XYZ"));
+    Assert.assertEquals(0, positionKeeper.getRealizedPnl("CLIENT1"), 0);
+    Assert.assertEquals(0, positionKeeper.getUnrealizedPnl("CLIENT1"), 0); //no quote yet.
+    Assert.assertEquals(0, positionKeeper.getNetQuantity("CLIENT1", "ABC"));
+    Assert.assertEquals(1, positionKeeper.getPositions().length);
+    Assert.assertTrue(positionKeeper.getPositions()[0], positionKeeper.getPositions()[0].contains("averageCost=11.0"));
+  }
+
+  @Test
+  public void fillsOnTheOtherSideRealizeThePnl() {
+    final PositionKeeper positionKeeper = new PositionKeeper(new MarketDataManager(symbolRegistry, MissingQuotePolicy.REJECT));
+    positionKeeper.onExecution(fill(client1, "XYZ", Side.BUY, 10, 100));
+    positionKeeper.onExecution(fill(client1, "XYZ", Side.SELL, 12, 40));
+    Assert.assertEquals(60, positionKeeper.getNetQuantity("CLIENT1", "XYZ"));
+    Assert.assertEquals(80, positionKeeper.getRealizedPnl("CLIENT1"), 1e-9);
+    //flips short, the rest opening at the fill price.
+    positionKeeper.onExecution(fill(client1, "XYZ", Side.SELL, 9, 100));
+    Assert.assertEquals(-40, positionKeeper.getNetQuantity("CLIENT1", "XYZ"));
+    Assert.assertEquals(80 - 60, positionKeeper.getRealizedPnl("CLIENT1"), 1e-9);
+    positionKeeper.onExecution(fill(client1, "XYZ", Side.BUY, 8, 40));
+    Assert.assertEquals(0, positionKeeper.getNetQuantity("CLIENT1", "XYZ"));
+    Assert.assertEquals(80 - 60 + 40, positionKeeper.getRealizedPnl("CLIENT1"), 1e-9);
+  }
+
+  @Test
+  public void openPositionsAreMarkedAtTheMid() {
+    final MarketDataManager marketDataManager = new MarketDataManager(symbolRegistry, MissingQuotePolicy.REJECT);
+    final PositionKeeper positionKeeper = new PositionKeeper(marketDataManager);
+    positionKeeper.onExecution(fill(client1, "XYZ", Side.BUY, 10, 100));
+    positionKeeper.onExecution(fill(client2, "XYZ", Side.SELL, 10, 30));
+    marketDataManager.update(new MarketData("Q", "XYZ", 0, FixedPointPrice.fromDouble(11), FixedPointPrice.fromDouble(13), 100, 100, new Date()));
+    Assert.assertEquals(200, positionKeeper.getUnrealizedPnl("CLIENT1"), 1e-9);
+    Assert.assertEquals(-60, positionKeeper.getUnrealizedPnl("CLIENT2"), 1e-9);
+    Assert.assertEquals(70, positionKeeper.getSymbolNetQuantity("XYZ"));
+    Assert.assertEquals(140, positionKeeper.getSymbolUnrealizedPnl("XYZ"), 1e-9);
+    Assert.assertEquals(140, positionKeeper.getTotalUnrealizedPnl(), 1e-9);
+    Assert.assertArrayEquals(new String[] {"CLIENT1", "CLIENT2"}, positionKeeper.getCounterparties());
+  }
+
+  @Test
+  public void otherExecutionsLeaveThePositionsAsTheyAre() {
+    final PositionKeeper positionKeeper = new PositionKeeper(new MarketDataManager(symbolRegistry, MissingQuotePolicy.REJECT));
+    final ExecutionEvent fill = fill(client1, "ABC", Side.SELL, 10, 10);
+    positionKeeper.onExecution(new ExecutionEvent().set(ExecutionEvent.Type.CANCEL, fill.getOrder(), 0, 0, null, false));
+    Assert.assertEquals(0, positionKeeper.getCounterparties().length);
+    positionKeeper.onExecution(fill);
+    Assert.assertEquals(-10, positionKeeper.getNetQuantity("CLIENT1", "ABC"));
+    Assert.assertEquals(0, positionKeeper.getNetQuantity("OTHER", "ABC"));
+    Assert.assertEquals(0, positionKeeper.getNetQuantity("CLIENT1", "UNKNOWN"));
+  }
+}
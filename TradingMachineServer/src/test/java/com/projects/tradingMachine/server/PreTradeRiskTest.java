@@ -0,0 +1,163 @@
+package com.projects.tradingMachine.server;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+import com.projects.tradingMachine.utility.FixedPointPrice;
+import com.projects.tradingMachine.server.pipeline.RingBuffer;
+import com.projects.tradingMachine.server.pipeline.WaitStrategy;
+import com.projects.tradingMachine.utility.SymbolRegistry;
+import com.projects.tradingMachine.utility.database.creditCheck.ICreditCheck;
+import com.projects.tradingMachine.utility.id.IdBlockStore;
+import com.projects.tradingMachine.utility.id.IdGenerator;
+import com.projects.tradingMachine.utility.marketData.MarketData;
+
+import quickfix.SessionID;
+import quickfix.field.OrdType;
+import quickfix.field.Side;
+import quickfix.field.TimeInForce;
+
+public class PreTradeRiskTest {
+  @Rule
+  public final Timeout globalTimeout = new Timeout(10000);
+
+  private static final SymbolRegistry symbolRegistry = new SymbolRegistry(Arrays.asList("XYZ", "ABC"));
+  private static final SessionID client = new SessionID("FIXT.1.1", "TradingMachine", "CLIENT1");
+
+  private static PreTradeRisk risk(final MarketDataManager marketDataManager) {
+    final Map<String, PreTradeRisk.Limits> limits = new LinkedHashMap<>();
+    limits.put("CLIENT0", new PreTradeRisk.Limits(1, 1, 1, 1));
+    limits.put("CLIENT1", new PreTradeRisk.Limits(100, 5000, 150, 2));
+    return new PreTradeRisk(limits, marketDataManager);
+  }
+
+  private static BookOrder order(final SessionID sessionID, final char side, final char type, final double price, final int quantity) {
+    return new BookOrder("C"+quantity, "O"+quantity, sessionID, "XYZ", 0, side, type, TimeInForce.DAY,
+        type == OrdType.LIMIT ? FixedPointPrice.fromDouble(price) : FixedPointPrice.NONE, FixedPointPrice.NONE, quantity, OrderExpiry.NEVER);
+  }
+
+  private static ExecutionEvent fill(final BookOrder order, final int quantity) {
+    order.fill(FixedPointPrice.fromDouble(10), quantity);
+    return new ExecutionEvent().set(ExecutionEvent.Type.FILL, order, FixedPointPrice.fromDouble(10), quantity, null, false);
+  }
+
+  @Test
+  public void ordersWithinTheLimitsPass() {
+    final PreTradeRisk risk = risk(new MarketDataManager(symbolRegistry, MissingQuotePolicy.REJECT));
+    Assert.assertNull(risk.check(order(client, Side.BUY, OrdType.LIMIT, 10, 100)));
+    Assert.assertEquals(1, risk.getOpenOrders("CLIENT1"));
+    Assert.assertEquals("Order quantity limit", risk.check(order(client, Side.BUY, OrdType.LIMIT, 10, 101)));
+    Assert.assertEquals("Order notional limit", risk.check(order(client, Side.BUY, OrdType.LIMIT, 60, 100)));
+    Assert.assertEquals("Unknown counterparty", risk.check(order(new SessionID("FIXT.1.1", "TradingMachine", "OTHER"), Side.BUY, OrdType.LIMIT, 10, 1)));
+    Assert.assertEquals(1, risk.getOpenOrders("CLIENT1"));
+  }
+
+  @Test
+  public void marketOrdersAreValuedAtTheQuote() {
+    final MarketDataManager marketDataManager = new MarketDataManager(symbolRegistry, MissingQuotePolicy.REJECT);
+    final PreTradeRisk risk = risk(marketDataManager);
+    Assert.assertNull(risk.check(order(client, Side.BUY, OrdType.MARKET, 0, 100))); //no quote yet.
+    marketDataManager.update(new MarketData("Q", "XYZ", 0, FixedPointPrice.fromDouble(49), FixedPointPrice.fromDouble(51), 100, 100, new Date()));
+    Assert.assertEquals("Order notional limit", risk.check(order(client, Side.BUY, OrdType.MARKET, 0, 99)));
+    Assert.assertNull(risk.check(order(client, Side.SELL, OrdType.MARKET, 0, 99)));
+  }
+
+  @Test
+  public void openOrdersAreCountedUntilDone() {
+    final PreTradeRisk risk = risk(new MarketDataManager(symbolRegistry, MissingQuotePolicy.REJECT));
+    final BookOrder first = order(client, Side.BUY, OrdType.LIMIT, 10, 10);
+    final BookOrder second = order(client, Side.BUY, OrdType.LIMIT, 10, 20);
+    Assert.assertNull(risk.check(first));
+    Assert.assertNull(risk.check(second));
+    Assert.assertEquals("Open orders limit", risk.check(order(client, Side.BUY, OrdType.LIMIT, 10, 30)));
+    risk.onExecution(fill(first, 5));
+    Assert.assertEquals(2, risk.getOpenOrders("CLIENT1"));
+    risk.onExecution(fill(first, 5));
+    Assert.assertEquals(1, risk.getOpenOrders("CLIENT1"));
+    risk.onExecution(new ExecutionEvent().set(ExecutionEvent.Type.CANCEL, second, 0, 0, null, false));
+    Assert.assertEquals(0, risk.getOpenOrders("CLIENT1"));
+  }
+
+  @Test
+  public void restartsFromTheRecoveredBooks() throws IOException {
+    final MarketDataManager marketDataManager = new MarketDataManager(symbolRegistry, MissingQuotePolicy.REJECT);
+    final MarketData quote = new MarketData("Q", "XYZ", 0, FixedPointPrice.fromDouble(9), FixedPointPrice.fromDouble(11), 100, 100, new Date());
+    marketDataManager.update(quote);
+    final ICreditCheck unlimitedCredit = new ICreditCheck() {
+      @Override
+      public boolean hasEnoughCredit(final double credit) {
+        return true;
+      }
+
+      @Override
+      public void setCredit(final double credit) {
+      }
+
+      @Override
+      public void closeConnection() {
+      }
+    };
+    final MatchingEngine matchingEngine = MatchingEngine.builder(marketDataManager, unlimitedCredit, new ExecutionEventPublisher(
+        new RingBuffer<>(64, ExecutionEvent::new, WaitStrategy.fromName("blocking")), new IdGenerator("0-", IdBlockStore.startingAt(0)))).build();
+    matchingEngine.onQuote(quote);
+    matchingEngine.onNewOrder(order(client, Side.SELL, OrdType.LIMIT, 10, 100));
+    matchingEngine.onNewOrder(order(client, Side.BUY, OrdType.LIMIT, 5, 10));
+    matchingEngine.onNewOrder(order(new SessionID("FIXT.1.1", "TradingMachine", "CLIENT0"), Side.BUY, OrdType.LIMIT, 10, 40));
+    //the state survives the snapshot file, then takes the place of the counts made on start.
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    matchingEngine.snapshot(3).writeTo(new DataOutputStream(bytes));
+    final EngineSnapshot snapshot = EngineSnapshot.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    final MatchingEngine restoredEngine = MatchingEngine.builder(marketDataManager, unlimitedCredit, new ExecutionEventPublisher(
+        new RingBuffer<>(64, ExecutionEvent::new, WaitStrategy.fromName("blocking")), new IdGenerator("1-", IdBlockStore.startingAt(0)))).build();
+    restoredEngine.restore(snapshot);
+    final PreTradeRisk risk = risk(marketDataManager);
+    risk.restore(restoredEngine.snapshot(3));
+    Assert.assertEquals(-40, risk.getPosition("CLIENT1", 0));
+    Assert.assertEquals(40, risk.getPosition("CLIENT0", 0));
+    Assert.assertEquals(2, risk.getOpenOrders("CLIENT1"));
+    Assert.assertEquals(0, risk.getOpenOrders("CLIENT0"));
+    Assert.assertEquals("Open orders limit", risk.check(order(client, Side.BUY, OrdType.LIMIT, 10, 1)));
+    risk.onExecution(new ExecutionEvent().set(ExecutionEvent.Type.CANCEL, restoredEngine.getOrderBook("XYZ").getRestingOrders().get(0), 0, 0, null, false));
+    Assert.assertEquals(1, risk.getOpenOrders("CLIENT1"));
+  }
+
+  @Test
+  public void fillsMoveThePosition() {
+    final PreTradeRisk risk = risk(new MarketDataManager(symbolRegistry, MissingQuotePolicy.REJECT));
+    final BookOrder buy = order(client, Side.BUY, OrdType.LIMIT, 10, 100);
+    Assert.assertNull(risk.check(buy));
+    risk.onExecution(fill(buy, 100));
+    Assert.assertEquals(100, risk.getPosition("CLIENT1", 0));
+    Assert.assertEquals(0, risk.getPosition("CLIENT1", 1));
+    Assert.assertEquals("Position limit", risk.check(order(client, Side.BUY, OrdType.LIMIT, 10, 51)));
+    Assert.assertNull(risk.check(order(client, Side.SELL, OrdType.LIMIT, 10, 100)));
+  }
+
+  @Test
+  public void limitsComeFromTheProperties() {
+    final Properties properties = new Properties();
+    Assert.assertNull(PreTradeRisk.from(properties, new MarketDataManager(symbolRegistry, MissingQuotePolicy.REJECT)));
+    properties.setProperty("risk.counterparties", "CLIENT0, CLIENT1");
+    properties.setProperty("risk.default.maxOrderQuantity", "10");
+    properties.setProperty("risk.default.maxNotional", "1000");
+    properties.setProperty("risk.default.maxPosition", "100");
+    properties.setProperty("risk.default.maxOpenOrders", "5");
+    properties.setProperty("risk.CLIENT1.maxOrderQuantity", "50");
+    final PreTradeRisk risk = PreTradeRisk.from(properties, new MarketDataManager(symbolRegistry, MissingQuotePolicy.REJECT));
+    Assert.assertNull(risk.check(order(client, Side.BUY, OrdType.LIMIT, 10, 50)));
+    Assert.assertEquals("Order quantity limit", risk.check(order(new SessionID("FIXT.1.1", "TradingMachine", "CLIENT0"), Side.BUY, OrdType.LIMIT, 10, 50)));
+  }
+}
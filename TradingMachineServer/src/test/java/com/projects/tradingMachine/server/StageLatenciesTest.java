@@ -0,0 +1,102 @@
+package com.projects.tradingMachine.server;
+
+import java.util.Arrays;
+import java.util.Date;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+import com.projects.tradingMachine.utility.FixedPointPrice;
+import com.projects.tradingMachine.utility.SymbolRegistry;
+import com.projects.tradingMachine.utility.database.creditCheck.ICreditCheck;
+import com.projects.tradingMachine.utility.marketData.MarketData;
+
+import quickfix.field.OrdType;
+import quickfix.field.Side;
+import quickfix.field.TimeInForce;
+
+public class StageLatenciesTest {
+  @Rule
+  public final Timeout globalTimeout = new Timeout(10000);
+
+  private static int count(final StageLatencies stageLatencies, final StageLatencies.Stage stage) {
+    return (int)stageLatencies.getCounts()[stage.ordinal()];
+  }
+
+  @Test
+  public void percentilesCoverTheLastInterval() {
+    final StageLatencies stageLatencies = new StageLatencies();
+    final long now = System.nanoTime();
+    for (int i = 1; i <= 100; i++)
+      stageLatencies.recordSince(StageLatencies.Stage.CREDIT_CHECK, now - i * 1000);
+    Assert.assertEquals(0, count(stageLatencies, StageLatencies.Stage.CREDIT_CHECK));
+    stageLatencies.roll();
+    Assert.assertEquals(100, count(stageLatencies, StageLatencies.Stage.CREDIT_CHECK));
+    Assert.assertEquals(0, count(stageLatencies, StageLatencies.Stage.FROM_APP));
+    Assert.assertTrue(stageLatencies.getP50Micros()[StageLatencies.Stage.CREDIT_CHECK.ordinal()] >= 50);
+    Assert.assertTrue(stageLatencies.getMaxMicros()[StageLatencies.Stage.CREDIT_CHECK.ordinal()] >= 100);
+    Assert.assertEquals(StageLatencies.Stage.values().length, stageLatencies.getStages().length);
+    stageLatencies.roll();
+    Assert.assertEquals(0, count(stageLatencies, StageLatencies.Stage.CREDIT_CHECK));
+  }
+
+  @Test
+  public void engineTimesQuoteLookupsAndCreditChecks() {
+    final MarketDataManager marketDataManager = new MarketDataManager(new SymbolRegistry(Arrays.asList("ABC")), MissingQuotePolicy.REJECT);
+    final StageLatencies stageLatencies = new StageLatencies();
+    final MatchingEngine matchingEngine = MatchingEngine.builder(marketDataManager, new ICreditCheck() {
+      @Override
+      public boolean hasEnoughCredit(final double credit) {
+        return true;
+      }
+
+      @Override
+      public void setCredit(final double credit) {
+      }
+
+      @Override
+      public void closeConnection() {
+      }
+    }, new ExecutionListener() {
+      @Override
+      public void onNew(final BookOrder order) {
+      }
+
+      @Override
+      public void onFill(final BookOrder order, final long price, final int quantity, final String reference) {
+      }
+
+      @Override
+      public void onReject(final BookOrder order, final boolean creditCheckFailed) {
+      }
+
+      @Override
+      public void onCancel(final BookOrder order, final String reason) {
+      }
+
+      @Override
+      public void onDoneForDay(final BookOrder order) {
+      }
+
+      @Override
+      public void onCancelRequest(final BookOrder order, final String clOrdID) {
+      }
+
+      @Override
+      public void onReplace(final BookOrder replacement, final String origClOrdID) {
+      }
+
+      @Override
+      public void onCancelReject(final CancelReplaceRequest request, final int cxlRejReason, final String reason) {
+      }
+    }).stageLatencies(stageLatencies).build();
+    marketDataManager.update(new MarketData("MD", "ABC", 9.0, 11.0, 100, 100, new Date()));
+    matchingEngine.onNewOrder(new BookOrder("1", "1", null, "ABC", marketDataManager.getSymbolId("ABC"), Side.BUY, OrdType.MARKET, TimeInForce.DAY,
+        FixedPointPrice.NONE, FixedPointPrice.NONE, 100, OrderExpiry.NEVER));
+    stageLatencies.roll();
+    Assert.assertEquals(1, count(stageLatencies, StageLatencies.Stage.QUOTE_LOOKUP));
+    Assert.assertEquals(1, count(stageLatencies, StageLatencies.Stage.CREDIT_CHECK));
+  }
+}
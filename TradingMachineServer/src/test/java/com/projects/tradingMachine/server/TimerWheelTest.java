@@ -0,0 +1,91 @@
+package com.projects.tradingMachine.server;
+
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.Timeout;
+
+public class TimerWheelTest {
+  @Rule
+  public final Timeout globalTimeout = new Timeout(10000);
+
+  @Rule
+  public final ExpectedException thrown = ExpectedException.none();
+
+  @Test
+  public void expiresOnlyDueTimers() {
+    final TimerWheel<String> wheel = new TimerWheel<>(8, 10, 1000);
+    final List<String> expired = new ArrayList<>();
+    wheel.schedule(1025, "a");
+    wheel.schedule(1050, "b");
+    wheel.advance(1029, expired::add);
+    Assert.assertEquals("[]", expired.toString());
+    wheel.advance(1030, expired::add);
+    Assert.assertEquals("[a]", expired.toString());
+    wheel.advance(1050, expired::add);
+    Assert.assertEquals("[a, b]", expired.toString());
+    Assert.assertEquals(0, wheel.size());
+  }
+
+  @Test
+  public void deadlinesBeyondOneRoundWaitForTheirRound() {
+    final TimerWheel<String> wheel = new TimerWheel<>(4, 10, 0);
+    final List<String> expired = new ArrayList<>();
+    wheel.schedule(15, "near");
+    wheel.schedule(95, "far"); //same slot, two rounds later.
+    wheel.advance(20, expired::add);
+    Assert.assertEquals("[near]", expired.toString());
+    wheel.advance(90, expired::add);
+    Assert.assertEquals("[near]", expired.toString());
+    wheel.advance(100, expired::add);
+    Assert.assertEquals("[near, far]", expired.toString());
+  }
+
+  @Test
+  public void cancelledTimersNeverExpire() {
+    final TimerWheel<String> wheel = new TimerWheel<>(8, 10, 0);
+    final List<String> expired = new ArrayList<>();
+    final TimerWheel.Timer<String> first = wheel.schedule(10, "first");
+    final TimerWheel.Timer<String> second = wheel.schedule(10, "second");
+    final TimerWheel.Timer<String> third = wheel.schedule(10, "third");
+    Assert.assertTrue(wheel.cancel(second));
+    Assert.assertFalse(wheel.cancel(second));
+    Assert.assertEquals(2, wheel.size());
+    wheel.advance(10, expired::add);
+    Assert.assertEquals("[third, first]", expired.toString());
+    Assert.assertFalse(first.isScheduled());
+    Assert.assertFalse(wheel.cancel(third));
+  }
+
+  @Test
+  public void pastDeadlinesExpireOnNextTick() {
+    final TimerWheel<String> wheel = new TimerWheel<>(8, 10, 0);
+    final List<String> expired = new ArrayList<>();
+    wheel.advance(100, expired::add);
+    wheel.schedule(50, "late");
+    wheel.advance(110, expired::add);
+    Assert.assertEquals("[late]", expired.toString());
+  }
+
+  @Test
+  public void wheelSizeMustBePowerOfTwo() {
+    thrown.expect(IllegalArgumentException.class);
+    new TimerWheel<String>(6, 10, 0);
+  }
+
+  @Test
+  public void dayOrdersExpireAtNextEndOfDay() {
+    final OrderExpiry orderExpiry = new OrderExpiry(LocalTime.of(17, 30), ZoneOffset.UTC, 1000, 64);
+    final long morning = LocalDateTime.of(2020, 3, 2, 9, 0).toInstant(ZoneOffset.UTC).toEpochMilli();
+    final long evening = LocalDateTime.of(2020, 3, 2, 18, 0).toInstant(ZoneOffset.UTC).toEpochMilli();
+    Assert.assertEquals(LocalDateTime.of(2020, 3, 2, 17, 30).toInstant(ZoneOffset.UTC).toEpochMilli(), orderExpiry.getEndOfDay(morning));
+    Assert.assertEquals(LocalDateTime.of(2020, 3, 3, 17, 30).toInstant(ZoneOffset.UTC).toEpochMilli(), orderExpiry.getEndOfDay(evening));
+  }
+}
@@ -0,0 +1,351 @@
+package com.projects.tradingMachine.server.journal;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.rules.Timeout;
+
+import com.projects.tradingMachine.server.AuctionSchedule;
+import com.projects.tradingMachine.server.BookOrder;
+import com.projects.tradingMachine.server.CancelReplaceRequest;
+import com.projects.tradingMachine.server.ExecutionEvent;
+import com.projects.tradingMachine.server.MarketDataManager;
+import com.projects.tradingMachine.server.MatchingShards;
+import com.projects.tradingMachine.server.MissingQuotePolicy;
+import com.projects.tradingMachine.server.OrderExpiry;
+import com.projects.tradingMachine.utility.FixedPointPrice;
+import com.projects.tradingMachine.utility.SymbolRegistry;
+import com.projects.tradingMachine.utility.database.creditCheck.ICreditCheck;
+import com.projects.tradingMachine.utility.marketData.MarketData;
+
+import quickfix.SessionID;
+import quickfix.field.OrdType;
+import quickfix.field.Side;
+import quickfix.field.TimeInForce;
+
+public class JournalTest {
+  @Rule
+  public final Timeout globalTimeout = new Timeout(10000);
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  private static final SymbolRegistry symbolRegistry = new SymbolRegistry(Arrays.asList("XYZ", "ABC"));
+
+  private static final SessionID sessionID = new SessionID("FIXT.1.1", "EXECUTOR", "INITIATOR");
+
+  /**
+   * Grants fills up to 500.
+   * */
+  private static final ICreditCheck limitedCredit = new ICreditCheck() {
+    @Override
+    public boolean hasEnoughCredit(final double credit) {
+      return credit <= 500;
+    }
+
+    @Override
+    public void setCredit(final double credit) {
+    }
+
+    @Override
+    public void closeConnection() {
+    }
+  };
+
+  private static BookOrder order(final String clOrdID, final String symbol, final char side, final char type, final char timeInForce,
+      final double price, final int quantity, final long expireTime) {
+    return new BookOrder(clOrdID, clOrdID, sessionID, symbol, symbolRegistry.getId(symbol), side, type, timeInForce,
+        type == OrdType.LIMIT ? FixedPointPrice.fromDouble(price) : FixedPointPrice.NONE, FixedPointPrice.NONE, quantity, expireTime);
+  }
+
+  @Test
+  public void recordsRoundTripAndReopenedJournalGoesOn() throws Exception {
+    final Path directory = folder.getRoot().toPath().resolve("shard-0");
+    final JournalRecord record = new JournalRecord();
+    final BookOrder order = order("1", "ABC", Side.BUY, OrdType.LIMIT, TimeInForce.GOOD_TILL_DATE, 10.25, 100, 123456789L);
+    try (final Journal journal = new Journal(directory, 3 * JournalRecord.SIZE)) {
+      Assert.assertEquals(1, journal.append(record.setNewOrder(order, 1000)));
+      journal.append(record.setQuote(new MarketData("MD1", "ABC", 1, FixedPointPrice.fromDouble(9.5), FixedPointPrice.fromDouble(10.5), 10, 20,
+          new Date(900)), false, 1001));
+      journal.append(record.setCancelReplace(new CancelReplaceRequest("2", "1", sessionID, "ABC", 1, Side.BUY, true, 80,
+          FixedPointPrice.fromDouble(10.5), FixedPointPrice.NONE), 1002));
+      journal.append(record.setCreditCheck(1050.5, true, 1003)); //second segment.
+    }
+    final List<JournalRecord> records = new ArrayList<>();
+    try (final Journal journal = new Journal(directory, 3 * JournalRecord.SIZE)) {
+      Assert.assertEquals(4, journal.getLastSequence());
+      Assert.assertEquals(5, journal.append(record.setTick(2000, 2000)));
+    }
+    Assert.assertEquals(5, new JournalReader(directory).read(1, r -> records.add(r.copy())));
+    Assert.assertEquals(5, records.size());
+    final BookOrder readOrder = records.get(0).toBookOrder();
+    Assert.assertEquals(order.toString(), readOrder.toString());
+    Assert.assertEquals(sessionID, readOrder.getSessionID());
+    Assert.assertEquals(123456789L, readOrder.getExpireTime());
+    final MarketData readQuote = records.get(1).toMarketData();
+    Assert.assertEquals("MD1", readQuote.getID());
+    Assert.assertEquals(FixedPointPrice.fromDouble(10.5), readQuote.getAskPrice());
+    Assert.assertEquals(20, readQuote.getAskSize());
+    Assert.assertEquals(900, readQuote.getQuoteTime().getTime());
+    Assert.assertEquals("CancelReplaceRequest [clOrdID=2, origClOrdID=1, symbol=ABC, side=1, replace=true, quantity=80, price=10.5, stopPrice=none]",
+        records.get(2).toCancelReplaceRequest().toString());
+    Assert.assertTrue(records.get(3).isCreditGranted());
+    Assert.assertEquals(1050.5, records.get(3).getCreditValue(), 0);
+    Assert.assertEquals(JournalRecord.Type.TICK, records.get(4).getType());
+    Assert.assertEquals(2000, records.get(4).getTime());
+    final List<Long> fromFourth = new ArrayList<>();
+    new JournalReader(directory).read(4, r -> fromFourth.add(r.getSequence()));
+    Assert.assertEquals("[4, 5]", fromFourth.toString());
+  }
+
+  @Test
+  public void tailerFollowsSegmentRolloversAndWaitsForWholeRecords() throws Exception {
+    final Path directory = folder.getRoot().toPath().resolve("shard-0");
+    final JournalRecord record = new JournalRecord();
+    final JournalTailer tailer = new JournalTailer(directory, 1);
+    final List<Long> sequences = new ArrayList<>();
+    try (final Journal journal = new Journal(directory, 3 * JournalRecord.SIZE)) {
+      Assert.assertEquals(0, tailer.poll(r -> sequences.add(r.getSequence())));
+      journal.append(record.setTick(1000, 1000));
+      journal.append(record.setTick(1001, 1001));
+      Assert.assertEquals(2, tailer.poll(r -> sequences.add(r.getSequence())));
+      for (int i = 0; i < 5; i++)
+        journal.append(record.setTick(1002 + i, 1002 + i)); //two rollovers.
+      Assert.assertEquals(5, tailer.poll(r -> sequences.add(r.getSequence())));
+      Assert.assertEquals("[1, 2, 3, 4, 5, 6, 7]", sequences.toString());
+      Assert.assertEquals(8, tailer.getNextSequence());
+
+      //a record whose sequence is there before the rest of it isn't handed over until it's whole.
+      journal.append(record.setTick(2000, 2000));
+      final int bodyOffset = JournalRecord.SIZE + 9;
+      try (final FileChannel channel = FileChannel.open(directory.resolve(String.format("%020d", 7) + Journal.SEGMENT_SUFFIX), StandardOpenOption.READ,
+          StandardOpenOption.WRITE)) {
+        final ByteBuffer original = ByteBuffer.allocate(1);
+        channel.read(original, bodyOffset);
+        channel.write(ByteBuffer.wrap(new byte[] {(byte)(original.get(0) + 1)}), bodyOffset);
+        Assert.assertEquals(0, tailer.poll(r -> sequences.add(r.getSequence())));
+        original.flip();
+        channel.write(original, bodyOffset);
+      }
+      Assert.assertEquals(1, tailer.poll(r -> sequences.add(r.getSequence())));
+      Assert.assertEquals(2000, record.getTime());
+    }
+    Assert.assertEquals("[1, 2, 3, 4, 5, 6, 7, 8]", sequences.toString());
+    Assert.assertEquals(3, directory.toFile().list().length);
+  }
+
+  @Test
+  public void replayRebuildsShardState() throws Exception {
+    final MarketDataManager marketDataManager = new MarketDataManager(symbolRegistry, MissingQuotePolicy.REJECT);
+    final OrderExpiry orderExpiry = OrderExpiry.defaults();
+    final MatchingShards matchingShards = MatchingShards.builder(marketDataManager, limitedCredit, event -> {})
+        .ringBufferSize(64).orderExpiry(orderExpiry).journalSettings(new JournalSettings(folder.getRoot().toPath(), 8 * JournalRecord.SIZE, 0, 0, 2)).build();
+    matchingShards.start();
+    final long now = System.currentTimeMillis();
+    marketDataManager.update(new MarketData("MD1", "ABC", 9.0, 11.0, 100, 100, new Date()));
+    marketDataManager.addQuoteListener(matchingShards);
+    matchingShards.onNewOrder(order("1", "ABC", Side.SELL, OrdType.LIMIT, TimeInForce.GOOD_TILL_CANCEL, 10.0, 100, OrderExpiry.NEVER));
+    matchingShards.onNewOrder(order("2", "ABC", Side.BUY, OrdType.LIMIT, TimeInForce.DAY, 10.5, 40, OrderExpiry.NEVER));
+    matchingShards.onNewOrder(order("3", "ABC", Side.BUY, OrdType.LIMIT, TimeInForce.DAY, 10.5, 60, OrderExpiry.NEVER)); //not enough credit.
+    matchingShards.onNewOrder(order("4", "XYZ", Side.BUY, OrdType.MARKET, TimeInForce.DAY, 0, 10, OrderExpiry.NEVER)); //no quote.
+    matchingShards.onNewOrder(order("5", "ABC", Side.SELL, OrdType.LIMIT, TimeInForce.GOOD_TILL_DATE, 10.8, 30, now + 100));
+    matchingShards.onNewOrder(order("6", "ABC", Side.BUY, OrdType.LIMIT, TimeInForce.GOOD_TILL_CANCEL, 9.5, 20, OrderExpiry.NEVER));
+    matchingShards.onCancelReplace(new CancelReplaceRequest("7", "6", sessionID, "ABC", 1, Side.BUY, true, 50, FixedPointPrice.fromDouble(9.6),
+        FixedPointPrice.NONE));
+    matchingShards.onCancelReplace(new CancelReplaceRequest("8", "99", sessionID, "ABC", 1, Side.BUY, false, 0, FixedPointPrice.NONE, FixedPointPrice.NONE));
+    matchingShards.onQuote(new MarketData("MD2", "ABC", 1, FixedPointPrice.fromDouble(9.8), FixedPointPrice.fromDouble(10.2), 100, 100, new Date()));
+    matchingShards.onTick(now + 5000); //expires 5.
+    matchingShards.stop();
+
+    final JournalReplayer replayer = new JournalReplayer(symbolRegistry, MissingQuotePolicy.REJECT, orderExpiry);
+    final long lastSequence = new JournalReader(folder.getRoot().toPath().resolve("shard-0")).read(1, replayer::accept);
+    replayer.finish();
+    Assert.assertEquals(0, replayer.getMismatches());
+    Assert.assertEquals(lastSequence, replayer.getRecords());
+    Assert.assertTrue(folder.getRoot().toPath().resolve("shard-0").toFile().list().length > 1);
+    //the rest of 1 and the replacement of 6 are left.
+    final BookOrder buyProbe = order("P1", "ABC", Side.BUY, OrdType.MARKET, TimeInForce.DAY, 0, 1000, OrderExpiry.NEVER);
+    final BookOrder sellProbe = order("P2", "ABC", Side.SELL, OrdType.MARKET, TimeInForce.DAY, 0, 1000, OrderExpiry.NEVER);
+    Assert.assertEquals(60, replayer.getMatchingEngine().getOrderBook("ABC").getContraQuantity(buyProbe));
+    Assert.assertEquals(50, replayer.getMatchingEngine().getOrderBook("ABC").getContraQuantity(sellProbe));
+    Assert.assertEquals(0, replayer.getMatchingEngine().getScheduledExpiries());
+  }
+
+  @Test
+  public void restartRestoresSnapshotAndJournalTail() throws Exception {
+    final MarketDataManager marketDataManager = new MarketDataManager(symbolRegistry, MissingQuotePolicy.REJECT);
+    final OrderExpiry orderExpiry = OrderExpiry.defaults();
+    final JournalSettings journalSettings = new JournalSettings(folder.getRoot().toPath(), 64 * JournalRecord.SIZE, 0, 0, 2);
+    final MatchingShards before = MatchingShards.builder(marketDataManager, limitedCredit, event -> {})
+        .ringBufferSize(64).orderExpiry(orderExpiry).journalSettings(journalSettings).build();
+    before.start();
+    marketDataManager.update(new MarketData("MD1", "ABC", 9.0, 11.0, 100, 100, new Date()));
+    before.onNewOrder(order("1", "ABC", Side.SELL, OrdType.LIMIT, TimeInForce.GOOD_TILL_CANCEL, 10.0, 100, OrderExpiry.NEVER));
+    before.onNewOrder(order("2", "ABC", Side.SELL, OrdType.LIMIT, TimeInForce.DAY, 10.5, 50, OrderExpiry.NEVER));
+    before.snapshot();
+    before.onNewOrder(order("3", "ABC", Side.BUY, OrdType.LIMIT, TimeInForce.DAY, 10.0, 30, OrderExpiry.NEVER)); //journal tail only.
+    before.stop();
+    Assert.assertEquals(2, new SnapshotStore(folder.getRoot().toPath().resolve("shard-0"), 2).loadLatest().getWorkingOrders());
+
+    final List<String> reports = new ArrayList<>();
+    final MatchingShards after = MatchingShards.builder(marketDataManager, limitedCredit, (final ExecutionEvent event) -> reports.add(event.getType() + " " + event.getClOrdID() + " " + event.getLeavesQty()))
+        .ringBufferSize(64).orderExpiry(orderExpiry).journalSettings(journalSettings).build();
+    after.start();
+    after.onCancelReplace(new CancelReplaceRequest("4", "1", sessionID, "ABC", 1, Side.SELL, false, 0, FixedPointPrice.NONE, FixedPointPrice.NONE));
+    after.onCancelReplace(new CancelReplaceRequest("5", "2", sessionID, "ABC", 1, Side.SELL, false, 0, FixedPointPrice.NONE, FixedPointPrice.NONE));
+    after.onCancelReplace(new CancelReplaceRequest("6", "3", sessionID, "ABC", 1, Side.BUY, false, 0, FixedPointPrice.NONE, FixedPointPrice.NONE));
+    after.snapshot();
+    after.stop();
+    Assert.assertEquals("[CANCEL 4 70, CANCEL 5 50, CANCEL_REJECT 6 0]", reports.toString());
+    Assert.assertEquals(0, new SnapshotStore(folder.getRoot().toPath().resolve("shard-0"), 2).loadLatest().getWorkingOrders());
+
+    //the whole journal, across the restart, replays as it was handled.
+    final JournalReplayer replayer = new JournalReplayer(symbolRegistry, MissingQuotePolicy.REJECT, orderExpiry);
+    new JournalReader(folder.getRoot().toPath().resolve("shard-0")).read(1, replayer::accept);
+    replayer.finish();
+    Assert.assertEquals(0, replayer.getMismatches());
+    Assert.assertTrue(replayer.getMatchingEngine().getOrderBook("ABC").isEmpty());
+  }
+
+  @Test
+  public void syntheticQuotesSurviveARestart() throws Exception {
+    final MarketDataManager marketDataManager = new MarketDataManager(symbolRegistry, MissingQuotePolicy.SYNTHETIC);
+    final OrderExpiry orderExpiry = OrderExpiry.defaults();
+    final JournalSettings journalSettings = new JournalSettings(folder.getRoot().toPath(), 64 * JournalRecord.SIZE, 0, 0, 2);
+    final MatchingShards before = MatchingShards.builder(marketDataManager, limitedCredit, event -> {})
+        .ringBufferSize(64).orderExpiry(orderExpiry).journalSettings(journalSettings).build();
+    before.start();
+    before.onNewOrder(order("1", "ABC", Side.SELL, OrdType.LIMIT, TimeInForce.GOOD_TILL_CANCEL, 100000, 10, OrderExpiry.NEVER)); //no quote received.
+    before.onNewOrder(order("2", "ABC", Side.BUY, OrdType.LIMIT, TimeInForce.GOOD_TILL_CANCEL, 0.01, 10, OrderExpiry.NEVER));
+    before.snapshot();
+    before.stop();
+    Assert.assertEquals(2, new SnapshotStore(journalSettings.getShardDirectory(0), 2).loadLatest().getWorkingOrders());
+
+    final List<String> reports = new ArrayList<>();
+    final MatchingShards after = MatchingShards.builder(marketDataManager, limitedCredit, (final ExecutionEvent event) -> reports.add(event.getType() + " " + event.getClOrdID()))
+        .ringBufferSize(64).orderExpiry(orderExpiry).journalSettings(journalSettings).build();
+    after.start();
+    after.onCancelReplace(new CancelReplaceRequest("3", "1", sessionID, "ABC", 1, Side.SELL, false, 0, FixedPointPrice.NONE, FixedPointPrice.NONE));
+    after.onNewOrder(order("4", "ABC", Side.BUY, OrdType.LIMIT, TimeInForce.DAY, 0.01, 10, OrderExpiry.NEVER)); //matched against the restored quote.
+    after.stop();
+    Assert.assertEquals("[CANCEL 3, NEW 4]", reports.toString());
+
+    final JournalReplayer replayer = new JournalReplayer(symbolRegistry, MissingQuotePolicy.SYNTHETIC, orderExpiry);
+    new JournalReader(journalSettings.getShardDirectory(0)).read(1, replayer::accept);
+    replayer.finish();
+    Assert.assertEquals(0, replayer.getMismatches());
+  }
+
+  @Test
+  public void followerCatchesUpAcrossSegmentRollovers() throws Exception {
+    final MarketDataManager marketDataManager = new MarketDataManager(symbolRegistry, MissingQuotePolicy.REJECT);
+    final OrderExpiry orderExpiry = OrderExpiry.defaults();
+    final JournalSettings journalSettings = new JournalSettings(folder.getRoot().toPath(), 4 * JournalRecord.SIZE, 0, 0, 2);
+    final MatchingShards primary = MatchingShards.builder(marketDataManager, limitedCredit, event -> {})
+        .ringBufferSize(64).orderExpiry(orderExpiry).journalSettings(journalSettings).build();
+    primary.start();
+    final ShardFollower follower = ShardFollower.open(journalSettings.getShardDirectory(0), symbolRegistry, MissingQuotePolicy.REJECT, orderExpiry,
+        AuctionSchedule.none());
+    Assert.assertEquals(0, follower.getLastSequence());
+    marketDataManager.update(new MarketData("MD1", "ABC", 9.0, 11.0, 100, 100, new Date()));
+    for (int i = 1; i <= 6; i++)
+      primary.onNewOrder(order(String.valueOf(i), "ABC", Side.SELL, OrdType.LIMIT, TimeInForce.GOOD_TILL_CANCEL, 10.0 + i / 10d, 10, OrderExpiry.NEVER));
+    primary.onNewOrder(order("7", "ABC", Side.BUY, OrdType.LIMIT, TimeInForce.DAY, 10.2, 20, OrderExpiry.NEVER));
+    primary.stop();
+    final long lastSequence = new JournalReader(journalSettings.getShardDirectory(0)).read(1, r -> {});
+    Assert.assertTrue(journalSettings.getShardDirectory(0).toFile().list().length > 3);
+    follower.finish();
+    Assert.assertEquals(lastSequence, follower.getLastSequence());
+    Assert.assertEquals(lastSequence, follower.getRecords());
+    Assert.assertEquals(0, follower.getMismatches());
+    Assert.assertEquals(40, follower.getMatchingEngine().getOrderBook("ABC").getContraQuantity(
+        order("P1", "ABC", Side.BUY, OrdType.MARKET, TimeInForce.DAY, 0, 1000, OrderExpiry.NEVER)));
+  }
+
+  @Test
+  public void followerTracksLiveJournalAndTakesOver() throws Exception {
+    final MarketDataManager marketDataManager = new MarketDataManager(symbolRegistry, MissingQuotePolicy.REJECT);
+    final OrderExpiry orderExpiry = OrderExpiry.defaults();
+    final JournalSettings journalSettings = new JournalSettings(folder.getRoot().toPath(), 4 * JournalRecord.SIZE, 0, 0, 2);
+    final Set<String> execIDs = new HashSet<>();
+    final MatchingShards primary = MatchingShards.builder(marketDataManager, limitedCredit, event -> Assert.assertTrue(execIDs.add(event.getExecID())))
+        .ringBufferSize(64).orderExpiry(orderExpiry).journalSettings(journalSettings).build();
+    primary.start();
+    marketDataManager.update(new MarketData("MD1", "ABC", 9.0, 11.0, 100, 100, new Date()));
+    primary.onNewOrder(order("1", "ABC", Side.SELL, OrdType.LIMIT, TimeInForce.GOOD_TILL_CANCEL, 10.0, 100, OrderExpiry.NEVER));
+    primary.forceJournals();
+    final ShardFollower follower = ShardFollower.open(journalSettings.getShardDirectory(0), symbolRegistry, MissingQuotePolicy.REJECT, orderExpiry,
+        AuctionSchedule.none());
+    primary.onNewOrder(order("2", "ABC", Side.BUY, OrdType.LIMIT, TimeInForce.DAY, 10.0, 30, OrderExpiry.NEVER));
+    primary.onNewOrder(order("3", "ABC", Side.SELL, OrdType.LIMIT, TimeInForce.DAY, 10.5, 50, OrderExpiry.NEVER));
+    follower.poll(); //partially written segments are followed as they grow.
+    primary.onTick(System.currentTimeMillis());
+    primary.stop();
+    follower.finish();
+    Assert.assertEquals(0, follower.getMismatches());
+    Assert.assertEquals(120, follower.getMatchingEngine().getOrderBook("ABC").getContraQuantity(
+        order("P1", "ABC", Side.BUY, OrdType.MARKET, TimeInForce.DAY, 0, 1000, OrderExpiry.NEVER)));
+
+    final List<String> reports = new ArrayList<>();
+    final MatchingShards standby = MatchingShards.builder(marketDataManager, limitedCredit, (final ExecutionEvent event) -> {
+      reports.add(event.getType() + " " + event.getClOrdID() + " " + event.getLeavesQty());
+      Assert.assertTrue(execIDs.add(event.getExecID())); //ExecIDs go on from a new block.
+    }).ringBufferSize(64).orderExpiry(orderExpiry).journalSettings(journalSettings).followers(new ShardFollower[] {follower}).build();
+    standby.start();
+    standby.onCancelReplace(new CancelReplaceRequest("4", "1", sessionID, "ABC", 1, Side.SELL, false, 0, FixedPointPrice.NONE, FixedPointPrice.NONE));
+    standby.onCancelReplace(new CancelReplaceRequest("5", "3", sessionID, "ABC", 1, Side.SELL, false, 0, FixedPointPrice.NONE, FixedPointPrice.NONE));
+    standby.stop();
+    Assert.assertEquals("[CANCEL 4 70, CANCEL 5 50]", reports.toString());
+    Assert.assertTrue(execIDs.stream().allMatch(execID -> execID.startsWith("0-")));
+  }
+
+  @Test
+  public void fieldsTooLongForTheJournalAreCaught() throws Exception {
+    final String longID = String.join("", Collections.nCopies(40, "X"));
+    Assert.assertNull(JournalRecord.checkLengths(longID.substring(1), null, "ABC", sessionID));
+    Assert.assertEquals("ClOrdID longer than 39 characters", JournalRecord.checkLengths(longID, null, "ABC", sessionID));
+    Assert.assertEquals("OrigClOrdID longer than 39 characters", JournalRecord.checkLengths("1", longID, "ABC", sessionID));
+    Assert.assertEquals("Symbol longer than 15 characters", JournalRecord.checkLengths("1", null, longID.substring(24), sessionID));
+    Assert.assertEquals("SessionID longer than 59 characters", JournalRecord.checkLengths("1", null, "ABC", new SessionID("FIXT.1.1", longID, longID)));
+
+    //a quote the journal can't take is skipped, the next events go on.
+    final MarketDataManager marketDataManager = new MarketDataManager(symbolRegistry, MissingQuotePolicy.REJECT);
+    final List<String> reports = new ArrayList<>();
+    final MatchingShards matchingShards = MatchingShards.builder(marketDataManager, limitedCredit, (final ExecutionEvent event) -> reports.add(event.getType() + " " + event.getClOrdID()))
+        .ringBufferSize(64).journalSettings(new JournalSettings(folder.getRoot().toPath(), 8 * JournalRecord.SIZE, 0, 0, 2)).build();
+    matchingShards.start();
+    matchingShards.onQuote(new MarketData(longID, "ABC", 1, FixedPointPrice.fromDouble(9.8), FixedPointPrice.fromDouble(10.2), 100, 100, new Date()));
+    matchingShards.onNewOrder(order("1", "ABC", Side.BUY, OrdType.LIMIT, TimeInForce.DAY, 9.0, 10, OrderExpiry.NEVER));
+    matchingShards.stop();
+    Assert.assertEquals("[NEW 1, REJECT 1]", reports.toString()); //the skipped quote never reached the book.
+    final List<JournalRecord.Type> types = new ArrayList<>();
+    new JournalReader(folder.getRoot().toPath().resolve("shard-0")).read(1, r -> types.add(r.getType()));
+    Assert.assertEquals(JournalRecord.Type.NEW_ORDER, types.get(0));
+  }
+
+  @Test
+  public void primaryLockIsTakenOnceReleased() throws Exception {
+    final Path directory = folder.getRoot().toPath();
+    try (final FileChannel channel = FileChannel.open(directory.resolve("primary.lock"), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        final FileLock lock = channel.lock()) {
+      Assert.assertFalse(PrimaryLock.tryAcquire(directory));
+    }
+    Assert.assertTrue(PrimaryLock.tryAcquire(directory));
+    Assert.assertTrue(PrimaryLock.tryAcquire(directory));
+    PrimaryLock.release();
+  }
+}
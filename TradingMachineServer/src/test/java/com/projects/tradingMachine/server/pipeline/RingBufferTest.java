@@ -0,0 +1,67 @@
+package com.projects.tradingMachine.server.pipeline;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.Timeout;
+
+public class RingBufferTest {
+  @Rule
+  public final Timeout globalTimeout = new Timeout(10000);
+
+  @Rule
+  public final ExpectedException thrown = ExpectedException.none();
+
+  private static final class Slot {
+    int value;
+  }
+
+  @Test
+  public void sizeMustBePowerOfTwo() {
+    thrown.expect(IllegalArgumentException.class);
+    new RingBuffer<>(1000, Slot::new, new BlockingWaitStrategy());
+  }
+
+  @Test
+  public void consumerSeesEveryEventInOrderPerProducer() throws Exception {
+    final RingBuffer<Slot> ringBuffer = new RingBuffer<>(8, Slot::new, WaitStrategy.fromName("yielding"));
+    final List<Integer> received = Collections.synchronizedList(new ArrayList<>());
+    final RingBufferConsumer<Slot> consumer = new RingBufferConsumer<>(ringBuffer, slot -> received.add(slot.value), "test-consumer");
+    consumer.start();
+    final Thread[] producers = new Thread[2];
+    for (int p = 0; p < producers.length; p++) {
+      final int offset = p * 10000;
+      producers[p] = new Thread(() -> {
+        for (int i = 0; i < 1000; i++) {
+          final long sequence = ringBuffer.next();
+          ringBuffer.get(sequence).value = offset + i;
+          ringBuffer.publish(sequence);
+        }
+      });
+      producers[p].start();
+    }
+    for (final Thread producer : producers)
+      producer.join();
+    consumer.stop(5, TimeUnit.SECONDS);
+    Assert.assertEquals(2000, received.size());
+    Assert.assertEquals(2000, consumer.getProcessedEvents());
+    Assert.assertTrue(ringBuffer.getMaxDepth() <= ringBuffer.getSize());
+    int last0 = -1;
+    int last1 = 9999;
+    for (final int value : received) {
+      if (value < 10000) {
+        Assert.assertTrue(value > last0);
+        last0 = value;
+      } else {
+        Assert.assertTrue(value > last1);
+        last1 = value;
+      }
+    }
+  }
+}
@@ -14,6 +14,7 @@ import javax.jms.JMSException;
 import com.projects.tradingMachine.services.database.OrdersBackEndStore;
 import com.projects.tradingMachine.services.simulation.marketData.MarketDataProducer;
 import com.projects.tradingMachine.services.simulation.orders.OrdersProducer;
+import com.projects.tradingMachine.utility.FixedPointPrice;
 import com.projects.tradingMachine.utility.ServiceLifeCycle;
 import com.projects.tradingMachine.utility.Utility;
 
@@ -41,6 +42,7 @@ public final class ServicesRunner implements ServiceLifeCycle {
 	 * */
 	public ServicesRunner(final Properties properties) throws ClassNotFoundException, JMSException, SQLException, FileNotFoundException, IOException {
 		this.properties = properties;
+		FixedPointPrice.loadTickSizes(properties);
 		es = Executors.newFixedThreadPool(3);
 		filledOrdersBackEndStore = new OrdersBackEndStore(properties);
 	}
@@ -1,14 +1,12 @@
 package com.projects.tradingMachine.services.simulation.marketData;
 
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
 import java.util.Properties;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
 
 import javax.jms.JMSException;
 
@@ -17,6 +15,7 @@ import org.slf4j.LoggerFactory;
 
 import com.projects.tradingMachine.services.database.noSql.MongoDBConnection;
 import com.projects.tradingMachine.services.database.noSql.MongoDBManager;
+import com.projects.tradingMachine.utility.SymbolRegistry;
 import com.projects.tradingMachine.utility.TradingMachineMessageProducer;
 import com.projects.tradingMachine.utility.Utility;
 import com.projects.tradingMachine.utility.Utility.DestinationType;
@@ -33,9 +32,11 @@ public final class MarketDataProducer implements Runnable {
 	private final MongoDBManager mongoDBManager;
 	private final ExecutorService executorService;
 	private final Properties properties;
+	private final SymbolRegistry symbolRegistry;
 	
-	public MarketDataProducer(final Properties properties) throws JMSException {
+	public MarketDataProducer(final Properties properties) throws JMSException, IOException {
 		this.properties = properties;
+		symbolRegistry = SymbolRegistry.load(properties);
 		//marketDataTopic 価格データの生成[=>marketDataTopic]
 		marketDataProducer = new TradingMachineMessageProducer(properties.getProperty("activeMQ.url"), properties.getProperty("activeMQ.marketDataTopic"), DestinationType.Topic, "MarketDataProducer", null);
 		marketDataProducer.start();
@@ -50,10 +51,10 @@ public final class MarketDataProducer implements Runnable {
 	
 	@Override
 	public void run() {
-		final List<String> allowedSymbols = Arrays.stream(properties.getProperty("allowedSymbols").split(",")).collect(Collectors.toList());
 		while (!Thread.currentThread().isInterrupted()) {
-			final ArrayList<MarketData> marketDataItems = new ArrayList<MarketData>(allowedSymbols.size());
-			allowedSymbols.forEach(symbol ->  marketDataItems.add(Utility.buildRandomMarketDataItem(symbol)));
+			final ArrayList<MarketData> marketDataItems = new ArrayList<MarketData>(symbolRegistry.size());
+			for (int symbolId = 0; symbolId < symbolRegistry.size(); symbolId++)
+				marketDataItems.add(Utility.buildRandomMarketDataItem(symbolId, symbolRegistry.getSymbol(symbolId)));
 			try {
 				//market Dataを生成し、Topicにpublish
 				marketDataProducer.getProducer().
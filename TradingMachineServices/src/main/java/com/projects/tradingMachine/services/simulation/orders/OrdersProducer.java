@@ -1,19 +1,18 @@
 package com.projects.tradingMachine.services.simulation.orders;
 
-import java.util.Arrays;
-import java.util.List;
+import java.io.IOException;
 import java.util.Properties;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
 
 import javax.jms.JMSException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.projects.tradingMachine.utility.SymbolRegistry;
 import com.projects.tradingMachine.utility.TradingMachineMessageProducer;
 import com.projects.tradingMachine.utility.Utility;
 import com.projects.tradingMachine.utility.Utility.DestinationType;
@@ -23,10 +22,12 @@ public final class OrdersProducer implements Runnable {
 	private static final Logger logger = LoggerFactory.getLogger(OrdersProducer.class);
 	
 	private final Properties properties;
+	private final SymbolRegistry symbolRegistry;
 	private final TradingMachineMessageProducer ordersProducer;
 	
-	public OrdersProducer(final Properties properties) throws JMSException {
+	public OrdersProducer(final Properties properties) throws JMSException, IOException {
 		this.properties = properties;
+		symbolRegistry = SymbolRegistry.load(properties);
 		//ordersQueue 注文データの生成[=>ordersQueue]
 		ordersProducer = new TradingMachineMessageProducer(properties.getProperty("activeMQ.url"), properties.getProperty("activeMQ.ordersQueue"), DestinationType.Queue, "OrdersProducer", null);
 		ordersProducer.start();
@@ -34,10 +35,9 @@ public final class OrdersProducer implements Runnable {
 	
 	@Override
 	public void run() {
-		final List<String> allowedSymbols = Arrays.stream(properties.getProperty("allowedSymbols").split(",")).collect(Collectors.toList());
 		while (!Thread.currentThread().isInterrupted()) {
         	try {
-        		SimpleOrder simpleOrder = RandomOrdersBuilder.build(allowedSymbols);
+        		SimpleOrder simpleOrder = RandomOrdersBuilder.build(symbolRegistry);
         		ordersProducer.getProducer().send(ordersProducer.getSession().createObjectMessage(simpleOrder));
 				TimeUnit.SECONDS.sleep(Integer.valueOf(properties.getProperty("ordersPublishingPeriod")));
 			} 
@@ -2,10 +2,11 @@ package com.projects.tradingMachine.services.simulation.orders;
 
 import java.util.Arrays;
 import java.util.Date;
-import java.util.List;
 import java.util.Random;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.*;
 
+import com.projects.tradingMachine.utility.SymbolRegistry;
 import com.projects.tradingMachine.utility.Utility;
 import com.projects.tradingMachine.utility.order.OrderSide;
 import com.projects.tradingMachine.utility.order.OrderTimeInForce;
@@ -18,21 +19,26 @@ import com.projects.tradingMachine.utility.order.SimpleOrder;
 public final class RandomOrdersBuilder {
 	private static final Random randomGenerator = new Random();
 	
-	public static SimpleOrder build(final List<String> allowedSymbols) {
+	public static SimpleOrder build(final SymbolRegistry symbolRegistry) {
 		final SimpleOrder order = new SimpleOrder();	
 		order.setSide(randomEnumValue(OrderSide.class));
 		final OrderType randomOrderType = randomEnumValue(OrderType.class);
+		final int symbolId = randomGenerator.nextInt(symbolRegistry.size());
+		final String symbol = symbolRegistry.getSymbol(symbolId);
 		
 		switch(randomOrderType) {
-			case LIMIT: order.setLimit(Utility.roundDouble(randomGenerator.nextDouble() * 100, 2)); break;
-			case STOP: order.setStop(Utility.roundDouble(randomGenerator.nextDouble() * 100, 2)); break;
+			case LIMIT: order.setLimitPrice(Utility.buildRandomPrice(symbol, 100)); break;
+			case STOP: order.setStopPrice(Utility.buildRandomPrice(symbol, 100)); break;
 		default:
 			break;
 		}
 		order.setType(randomOrderType);
 		order.setQuantity(randomGenerator.nextInt(1000) + 1);
-		order.setSymbol(randomListValue(allowedSymbols));
+		order.setSymbol(symbol);
+		order.setSymbolId(symbolId);
 		order.setTimeInForce(randomEnumValue(OrderTimeInForce.class));
+		if (order.getTimeInForce() == OrderTimeInForce.GTD)
+			order.setExpireTime(new Date(System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(randomGenerator.nextInt(60) + 1)));
 		order.SetStoreDate(new Date());
 		order.setRejected(randomGenerator.nextBoolean());
 		return order;
@@ -42,16 +48,10 @@ public final class RandomOrdersBuilder {
         return enumClass.getEnumConstants()[randomGenerator.nextInt(enumClass.getEnumConstants().length)];
     }
 	
-	private static <T> T randomListValue(final List<T> list){
-	    if(list == null || list.isEmpty()){
-	        return null;
-	    }
-	    return list.get(randomGenerator.nextInt(list.size()));
-	}
-	
 	public static void main(final String[] args) {
-		//IntStream.range(0, 10).forEach(i -> System.out.println(RandomOrdersBuilder.build(Arrays.asList("RIEN", "UBSN", "CSGN"))));
-		final Stream<SimpleOrder> ordersStream = Stream.generate(() -> RandomOrdersBuilder.build(Arrays.asList("RIEN", "UBSN", "CSGN"))).limit(100000).parallel();
+		//IntStream.range(0, 10).forEach(i -> System.out.println(RandomOrdersBuilder.build(new SymbolRegistry(Arrays.asList("RIEN", "UBSN", "CSGN")))));
+		final SymbolRegistry symbolRegistry = new SymbolRegistry(Arrays.asList("RIEN", "UBSN", "CSGN"));
+		final Stream<SimpleOrder> ordersStream = Stream.generate(() -> RandomOrdersBuilder.build(symbolRegistry)).limit(100000).parallel();
 		ordersStream.forEach(System.out::println);
 	}
 	
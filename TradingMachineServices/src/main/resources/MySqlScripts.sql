@@ -21,6 +21,12 @@ CREATE TABLE `COUNTERPARTY` (
   PRIMARY KEY (`ID`)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8;
 
+CREATE TABLE `CREDIT_LEDGER` (
+  `ID` varchar(100) NOT NULL,
+  `APPLIED_SEQUENCE` bigint(20) NOT NULL,
+  PRIMARY KEY (`ID`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8;
+
 
 DELIMITER $$
 CREATE DEFINER=`root`@`localhost` PROCEDURE `addOrder`(pId varchar(50), pSymbol varchar(5), pQuantity int, pSide varchar(4), pType varchar(20), pTimeInForce varchar(3),
@@ -0,0 +1,85 @@
+package com.projects.tradingMachine.utility;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Fixed-point prices: a price is a long number of units, where {@link #SCALE} units make 1.0. Being plain longs,
+ * prices compare exactly and without allocations, while doubles are only used at the edges (FIX fields, back-end stores, UI).
+ * Every symbol has a tick size, also in units, which its prices are a multiple of.
+ * Tick sizes can be configured by the tickSizes property: comma separated list of SYMBOL:tickSize pairs, e.g. ABC:0.05.
+ * The other symbols use {@link #DEFAULT_TICK_SIZE}.
+ * */
+public final class FixedPointPrice {
+	public static final long SCALE = 10_000;
+	/**
+	 * Stands for a missing price, e.g. the limit price of a market order.
+	 * */
+	public static final long NONE = Long.MIN_VALUE;
+	/**
+	 * 0.01
+	 * */
+	public static final long DEFAULT_TICK_SIZE = SCALE / 100;
+
+	private static final Map<String, Long> tickSizes = new ConcurrentHashMap<>();
+
+	private FixedPointPrice() {
+	}
+
+	public static long fromDouble(final double price) {
+		return Math.round(price * SCALE);
+	}
+
+	public static double toDouble(final long price) {
+		return (double)price / SCALE;
+	}
+
+	/**
+	 * @return the price or {@link #NONE} if the given string is null or empty.
+	 * */
+	public static long parse(final String price) {
+		return price == null || price.isEmpty() ? NONE : fromDouble(Double.parseDouble(price));
+	}
+
+	public static long ofTicks(final long ticks, final long tickSize) {
+		return ticks * tickSize;
+	}
+
+	/**
+	 * Rounds half up the price to the nearest multiple of the tick size.
+	 * */
+	public static long roundToTick(final long price, final long tickSize) {
+		return Math.floorDiv(price + tickSize / 2, tickSize) * tickSize;
+	}
+
+	/**
+	 * Value of the given quantity at the given price, as a double.
+	 * */
+	public static double value(final long price, final int quantity) {
+		return toDouble(price * quantity);
+	}
+
+	public static long getTickSize(final String symbol) {
+		return tickSizes.getOrDefault(symbol, DEFAULT_TICK_SIZE);
+	}
+
+	public static void setTickSize(final String symbol, final double tickSize) {
+		final long units = fromDouble(tickSize);
+		if (units <= 0)
+			throw new IllegalArgumentException("Tick size of "+symbol+" must be at least "+toDouble(1)+": "+tickSize);
+		tickSizes.put(symbol, units);
+	}
+
+	public static void loadTickSizes(final Properties properties) {
+		Arrays.stream(properties.getProperty("tickSizes", "").split(",")).map(String::trim).filter(s -> !s.isEmpty()).forEach(s -> {
+			final String[] symbolTickSize = s.split(":");
+			setTickSize(symbolTickSize[0].trim(), Double.parseDouble(symbolTickSize[1].trim()));
+		});
+	}
+
+	public static String toString(final long price) {
+		return price == NONE ? "none" : String.valueOf(toDouble(price));
+	}
+}
@@ -0,0 +1,76 @@
+package com.projects.tradingMachine.utility;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.stream.Collectors;
+
+/**
+ * Maps each tradable symbol to a dense int id, from 0 to {@link #size()} - 1, so that per-symbol state can be kept in arrays indexed by id.
+ * Ids follow the order the symbols are listed in, so every component loading the same list gets the same ids.
+ * The symbols are read from the file given by the symbolsFile property, one per line, or otherwise from the comma separated allowedSymbols property.
+ * It's immutable once loaded, hence thread safe.
+ * */
+public final class SymbolRegistry {
+	/**
+	 * Id of the symbols not in the registry.
+	 * */
+	public static final int UNKNOWN = -1;
+
+	private final String[] symbols;
+	private final Map<String, Integer> symbolIds;
+
+	public SymbolRegistry(final List<String> symbols) {
+		this.symbols = symbols.stream().map(String::trim).filter(s -> !s.isEmpty()).distinct().toArray(String[]::new);
+		symbolIds = new HashMap<>(this.symbols.length * 2);
+		for (int i = 0; i < this.symbols.length; i++)
+			symbolIds.put(this.symbols[i], i);
+	}
+
+	public static SymbolRegistry load(final Properties properties) throws IOException {
+		final String symbolsFile = properties.getProperty("symbolsFile");
+		if (symbolsFile != null && !symbolsFile.trim().isEmpty())
+			return new SymbolRegistry(Files.readAllLines(Paths.get(symbolsFile.trim()), StandardCharsets.UTF_8).stream().
+					filter(line -> !line.trim().startsWith("#")).collect(Collectors.toList()));
+		return new SymbolRegistry(Arrays.asList(properties.getProperty("allowedSymbols", "").split(",")));
+	}
+
+	/**
+	 * @return the symbol id or {@link #UNKNOWN}.
+	 * */
+	public int getId(final String symbol) {
+		final Integer symbolId = symbolIds.get(symbol);
+		return symbolId == null ? UNKNOWN : symbolId;
+	}
+
+	/**
+	 * True if the id belongs to the registry and stands for the given symbol, which is cheaper than looking the symbol up.
+	 * */
+	public boolean isId(final int symbolId, final String symbol) {
+		return symbolId >= 0 && symbolId < symbols.length && symbols[symbolId].equals(symbol);
+	}
+
+	public String getSymbol(final int symbolId) {
+		return symbols[symbolId];
+	}
+
+	public int size() {
+		return symbols.length;
+	}
+
+	public List<String> getSymbols() {
+		return Collections.unmodifiableList(Arrays.asList(symbols));
+	}
+
+	@Override
+	public String toString() {
+		return "SymbolRegistry [symbols=" + Arrays.toString(symbols) + "]";
+	}
+}
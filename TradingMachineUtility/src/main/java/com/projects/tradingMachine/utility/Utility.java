@@ -52,6 +52,14 @@ public final class Utility {
 		return new BigDecimal(value).setScale(scale, RoundingMode.HALF_UP).doubleValue();
 	}
 	
+	/**
+	 * Random fixed-point price in [0, maxPrice), on the symbol's tick size.
+	 * */
+	public static long buildRandomPrice(final String symbol, final int maxPrice) {
+		final long tickSize = FixedPointPrice.getTickSize(symbol);
+		return FixedPointPrice.ofTicks(Random.nextInt((int)(maxPrice * FixedPointPrice.SCALE / tickSize)), tickSize);
+	}
+	
 	//FIX 相手にメッセージを送信する用
 	public static void sendMessage(final SessionID sessionID, final Message message) {
         try {
@@ -82,10 +90,15 @@ public final class Utility {
     }
     
     public static MarketData buildRandomMarketDataItem(final String symbol) {
+    	return buildRandomMarketDataItem(SymbolRegistry.UNKNOWN, symbol);
+    }
+    
+    public static MarketData buildRandomMarketDataItem(final int symbolId, final String symbol) {
     	return new MarketData(UUID.randomUUID().toString(),
     			symbol, 
-    			Utility.roundDouble(Random.nextDouble() * 100, 2), //bid
-				Utility.roundDouble(Random.nextDouble() * 100, 2), //ask 
+    			symbolId,
+    			buildRandomPrice(symbol, 100), //bid
+    			buildRandomPrice(symbol, 100), //ask 
 				Random.nextInt(1000),  //bidsize
 				Random.nextInt(1000),  //asksize
 				new Date()
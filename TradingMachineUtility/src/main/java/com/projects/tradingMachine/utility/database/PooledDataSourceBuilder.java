@@ -18,6 +18,8 @@ public final class PooledDataSourceBuilder {
 		ds.setPassword(dbProperties.getPassword());
 		ds.setInitialSize(poolSize);
 		ds.setMaxTotal(poolSize);
+		//batched statements sent in one round trip, rather than one per statement.
+		ds.addConnectionProperty("rewriteBatchedStatements", "true");
 		return ds;
 	}
 }
@@ -0,0 +1,184 @@
+package com.projects.tradingMachine.utility.database.creditCheck;
+
+import java.sql.SQLException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.projects.tradingMachine.utility.ServiceLifeCycle;
+import com.projects.tradingMachine.utility.Utility;
+
+/**
+ * Credit check answered from a local balance, so that the matching threads never wait on the database, neither to check the credit nor to set it:
+ * the amounts set are added to the local balance straight away, then settled to the database in batches by the {@link CreditSettlement}.
+ * The balance is refreshed from the database by a single thread, asynchronously, while no batch is being applied,
+ * so that the amounts set and not yet applied by the time of the query are added to it locally, each one exactly once.
+ * A circuit breaker opens when a refresh fails or takes longer than the latency threshold, and closes again with the first refresh within it.
+ * While it's open, or while the balance is older than the staleness bound, the conservative fallback answers instead:
+ * either no credit at all (fail-closed) or only the given share of the local balance.
+ * */
+public final class CachingCreditCheck implements ICreditCheck, ServiceLifeCycle {
+	private static final Logger logger = LoggerFactory.getLogger(CachingCreditCheck.class);
+	
+	public enum Fallback {FAIL_CLOSED, REDUCED_LIMIT}
+	
+	private final CreditSettlement creditSettlement;
+	private final String counterpartyId;
+	private final long maxStalenessMillis;
+	private final long refreshIntervalMillis;
+	private final long latencyThresholdNanos;
+	private final Fallback fallback;
+	private final double reducedLimitRatio;
+	private final ScheduledExecutorService refresher;
+	private final AtomicLong localCents; //all the amounts set so far, applied or not.
+	private final AtomicLong fallbackCalls;
+	private volatile Balance balance;
+	private volatile boolean open;
+	
+	/**
+	 * @param creditSettlement Settlement the amounts are set through, and the credit loaded from. Its credit check is never called, it's started and stopped by its owner.
+	 * @param reducedLimitRatio Share of the local balance granted while falling back to {@link Fallback#REDUCED_LIMIT}.
+	 * */
+	public CachingCreditCheck(final CreditSettlement creditSettlement, final long maxStalenessMillis, final long refreshIntervalMillis,
+			final long latencyThresholdMillis, final Fallback fallback, final double reducedLimitRatio) {
+		if (reducedLimitRatio < 0 || reducedLimitRatio > 1)
+			throw new IllegalArgumentException("Invalid reduced limit ratio: "+reducedLimitRatio);
+		this.creditSettlement = creditSettlement;
+		counterpartyId = creditSettlement.getCounterpartyId();
+		this.maxStalenessMillis = maxStalenessMillis;
+		this.refreshIntervalMillis = refreshIntervalMillis;
+		latencyThresholdNanos = TimeUnit.MILLISECONDS.toNanos(latencyThresholdMillis);
+		this.fallback = fallback;
+		this.reducedLimitRatio = reducedLimitRatio;
+		localCents = new AtomicLong();
+		fallbackCalls = new AtomicLong();
+		balance = new Balance(0, 0, 0);
+		open = true; //until the first refresh.
+		refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			final Thread thread = new Thread(runnable, "CreditCheckRefresher");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+	
+	/**
+	 * Loads the balance, then refreshes it every interval.
+	 * */
+	@Override
+	public void start() {
+		refreshQuietly();
+		refresher.scheduleWithFixedDelay(this::refreshQuietly, refreshIntervalMillis, refreshIntervalMillis, TimeUnit.MILLISECONDS);
+	}
+	
+	@Override
+	public void stop() throws InterruptedException {
+		Utility.shutdownExecutorService(refresher, 5, TimeUnit.SECONDS);
+	}
+	
+	private void refreshQuietly() {
+		try {
+			refresh();
+		}
+		catch(final SQLException | RuntimeException ex) {
+			logger.warn("Unable to refresh the credit of "+counterpartyId+", due to: "+ex.getMessage());
+		}
+	}
+	
+	/**
+	 * Loads the counterparty's credit, the amounts set and not applied to it being added locally. Opens the circuit if the query fails or is too slow.
+	 * */
+	void refresh() throws SQLException {
+		final long start = System.nanoTime();
+		final CreditSettlement.AppliedCredit credit;
+		try {
+			credit = creditSettlement.loadCredit();
+		}
+		catch(final SQLException | RuntimeException ex) {
+			trip("failed");
+			throw ex;
+		}
+		final long latency = System.nanoTime() - start;
+		if (credit == null)
+			throw new IllegalArgumentException("Unknown counterparty: "+counterpartyId);
+		balance = new Balance(credit.cents, credit.appliedCents, System.currentTimeMillis());
+		if (latency > latencyThresholdNanos)
+			trip("took "+TimeUnit.NANOSECONDS.toMillis(latency)+" ms");
+		else if (open) {
+			open = false;
+			logger.info("Credit check circuit closed, balance of "+counterpartyId+": "+getBalance());
+		}
+	}
+	
+	private void trip(final String reason) {
+		if (!open)
+			logger.warn("Credit check circuit opened, the credit refresh "+reason+", falling back to "+fallback);
+		open = true;
+	}
+	
+	/**
+	 * Never calls the database.
+	 * */
+	@Override
+	public boolean hasEnoughCredit(final double credit) {
+		final Balance current = balance;
+		final long available = current.cents + localCents.get() - current.appliedCents;
+		final long cents = CreditLedger.toCents(credit);
+		if (!open && System.currentTimeMillis() - current.refreshedAt <= maxStalenessMillis)
+			return available - cents > 0;
+		fallbackCalls.incrementAndGet();
+		return fallback == Fallback.REDUCED_LIMIT && (long)(available * reducedLimitRatio) - cents > 0;
+	}
+	
+	/**
+	 * Adds the amount to the local balance first, then to the next settlement batch, so that the local balance never misses an amount applied to the database.
+	 * */
+	@Override
+	public void setCredit(final double credit) {
+		localCents.addAndGet(CreditLedger.toCents(credit));
+		creditSettlement.setCredit(credit);
+	}
+	
+	/**
+	 * The database credit check is closed by its owner.
+	 * */
+	@Override
+	public void closeConnection() throws SQLException {
+	}
+	
+	public double getBalance() {
+		final Balance current = balance;
+		return (current.cents + localCents.get() - current.appliedCents) / 100d;
+	}
+	
+	public boolean isOpen() {
+		return open;
+	}
+	
+	public long getFallbackCalls() {
+		return fallbackCalls.get();
+	}
+	
+	@Override
+	public String toString() {
+		return "CachingCreditCheck [balance=" + getBalance() + ", open=" + open + ", fallback calls=" + getFallbackCalls() + ", credit settlement=" + creditSettlement + "]";
+	}
+	
+	/**
+	 * Credit loaded by a refresh, together with the amounts it includes.
+	 * */
+	private static final class Balance {
+		private final long cents;
+		private final long appliedCents;
+		private final long refreshedAt;
+	
+		private Balance(final long cents, final long appliedCents, final long refreshedAt) {
+			this.cents = cents;
+			this.appliedCents = appliedCents;
+			this.refreshedAt = refreshedAt;
+		}
+	}
+}
@@ -0,0 +1,252 @@
+package com.projects.tradingMachine.utility.database.creditCheck;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.projects.tradingMachine.utility.ServiceLifeCycle;
+import com.projects.tradingMachine.utility.Utility;
+
+/**
+ * In-memory counterparty credit, loaded from the {@link CreditStore} on creation, so that credit decisions never wait on the database.
+ * Each {@link Account} reserves credit with a compare-and-set on its available amount, then either commits or releases the reservation.
+ * Committed debits and credits are appended to a write-behind log, then applied to the store asynchronously, in batches adding up the amounts
+ * of each counterparty, together with the sequence of the last entry they include.
+ * On creation, the log entries after the store's applied sequence, i.e. the ones a crash kept from being applied, get applied first.
+ * Amounts are kept in cents, as the database does.
+ * */
+public final class CreditLedger implements ServiceLifeCycle {
+	private static final Logger logger = LoggerFactory.getLogger(CreditLedger.class);
+	
+	private final CreditStore creditStore;
+	private final WriteBehindLog log;
+	private final long flushIntervalMillis;
+	private final Map<String, Account> accounts;
+	private final ScheduledExecutorService flusher;
+	private long lastSequence; //guarded by log.
+	private long appliedSequence; //guarded by log.
+	
+	public CreditLedger(final CreditStore creditStore, final Path logFile, final long flushIntervalMillis) throws IOException, SQLException {
+		this.creditStore = creditStore;
+		this.flushIntervalMillis = flushIntervalMillis;
+		log = new WriteBehindLog(logFile);
+		appliedSequence = creditStore.loadAppliedSequence();
+		final Map<String, Long> unapplied = new HashMap<>();
+		lastSequence = Math.max(log.read(appliedSequence, unapplied), appliedSequence);
+		if (!unapplied.isEmpty()) {
+			creditStore.apply(unapplied, lastSequence);
+			logger.info("Applied the write-behind log entries up to "+lastSequence+": "+unapplied);
+		}
+		appliedSequence = lastSequence;
+		log.truncate();
+		final Map<String, Account> loaded = new HashMap<>();
+		creditStore.loadCredits().forEach((id, cents) -> loaded.put(id, new Account(id, cents)));
+		accounts = Collections.unmodifiableMap(loaded);
+		flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			final Thread thread = new Thread(runnable, "CreditLedgerFlusher");
+			thread.setDaemon(true);
+			return thread;
+		});
+		logger.info("Loaded "+accounts.size()+" counterparties from "+creditStore+", write-behind log: "+log);
+	}
+	
+	/**
+	 * @return the account of the counterparty, to be used as its credit check.
+	 * @throws IllegalArgumentException if the counterparty isn't in the store.
+	 * */
+	public Account getAccount(final String counterpartyId) {
+		final Account account = accounts.get(counterpartyId);
+		if (account == null)
+			throw new IllegalArgumentException("Unknown counterparty: "+counterpartyId);
+		return account;
+	}
+	
+	@Override
+	public void start() {
+		flusher.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+	}
+	
+	/**
+	 * Applies what's left in the log, then closes it.
+	 * */
+	@Override
+	public void stop() throws InterruptedException, IOException, SQLException {
+		Utility.shutdownExecutorService(flusher, 5, TimeUnit.SECONDS);
+		flush();
+		synchronized (log) {
+			log.close();
+		}
+	}
+	
+	private void flushQuietly() {
+		try {
+			flush();
+		}
+		catch(final IOException | SQLException | RuntimeException ex) {
+			logger.warn("Unable to apply the credit ledger entries, they will be retried, due to: "+ex.getMessage(), ex);
+		}
+	}
+	
+	/**
+	 * Applies the amounts committed since the previous batch to the store, in one batch. On failure, they're kept for the next one.
+	 * */
+	void flush() throws IOException, SQLException {
+		final Map<String, Long> credits = new HashMap<>();
+		final long batchSequence;
+		synchronized (log) {
+			if (lastSequence == appliedSequence)
+				return;
+			batchSequence = lastSequence;
+			for (final Account account : accounts.values())
+				if (account.unappliedCents != 0) {
+					credits.put(account.id, account.unappliedCents);
+					account.unappliedCents = 0;
+				}
+		}
+		try {
+			creditStore.apply(credits, batchSequence);
+		}
+		catch(final SQLException | RuntimeException ex) {
+			synchronized (log) {
+				credits.forEach((id, cents) -> accounts.get(id).unappliedCents += cents);
+			}
+			throw ex;
+		}
+		synchronized (log) {
+			appliedSequence = batchSequence;
+			if (lastSequence == appliedSequence)
+				log.truncate();
+		}
+	}
+	
+	/**
+	 * Appends the committed amount to the log, the store gets it with the next batch.
+	 * */
+	private void record(final Account account, final long cents) {
+		synchronized (log) {
+			try {
+				log.append(++lastSequence, cents, account.idBytes);
+			}
+			catch(final IOException e) {
+				throw new UncheckedIOException("Unable to append to "+log, e);
+			}
+			account.unappliedCents += cents;
+		}
+	}
+	
+	static long toCents(final double amount) {
+		return Math.round(amount * 100);
+	}
+	
+	/**
+	 * Credit of one counterparty. As an {@link ICreditCheck}, {@link #hasEnoughCredit(double)} reserves the amount if there's enough credit,
+	 * and {@link #setCredit(double)} commits it with a negative amount, or credits the counterparty with a positive one.
+	 * */
+	public final class Account implements ICreditCheck {
+		private final String id;
+		private final byte[] idBytes;
+		private final AtomicLong availableCents;
+		private final AtomicLong reservedCents;
+		private long unappliedCents; //guarded by log.
+	
+		private Account(final String id, final long cents) {
+			this.id = id;
+			idBytes = id.getBytes(StandardCharsets.UTF_8);
+			availableCents = new AtomicLong(cents);
+			reservedCents = new AtomicLong();
+		}
+	
+		/**
+		 * Takes the amount out of the available credit, as long as some credit is left afterwards.
+		 * 
+		 * @return false, taking nothing, if there's not enough credit.
+		 * */
+		public boolean reserve(final double amount) {
+			final long cents = toCents(amount);
+			long available;
+			do {
+				available = availableCents.get();
+				if (available - cents <= 0)
+					return false;
+			} while (!availableCents.compareAndSet(available, available - cents));
+			reservedCents.addAndGet(cents);
+			return true;
+		}
+	
+		/**
+		 * Debits a reserved amount, for good.
+		 * */
+		public void commit(final double amount) {
+			final long cents = toCents(amount);
+			reservedCents.addAndGet(-cents);
+			record(this, -cents);
+		}
+	
+		/**
+		 * Gives a reserved amount back to the available credit.
+		 * */
+		public void release(final double amount) {
+			final long cents = toCents(amount);
+			reservedCents.addAndGet(-cents);
+			availableCents.addAndGet(cents);
+		}
+	
+		/**
+		 * Adds to the available credit, for good.
+		 * */
+		public void credit(final double amount) {
+			final long cents = toCents(amount);
+			availableCents.addAndGet(cents);
+			record(this, cents);
+		}
+	
+		@Override
+		public boolean hasEnoughCredit(final double credit) {
+			return reserve(credit);
+		}
+	
+		@Override
+		public void setCredit(final double credit) {
+			if (credit < 0)
+				commit(-credit);
+			else
+				credit(credit);
+		}
+	
+		/**
+		 * The ledger is closed by its owner.
+		 * */
+		@Override
+		public void closeConnection() {
+		}
+	
+		public String getId() {
+			return id;
+		}
+	
+		public double getAvailable() {
+			return availableCents.get() / 100d;
+		}
+	
+		public double getReserved() {
+			return reservedCents.get() / 100d;
+		}
+	
+		@Override
+		public String toString() {
+			return "Account [id=" + id + ", available=" + getAvailable() + ", reserved=" + getReserved() + "]";
+		}
+	}
+}
@@ -0,0 +1,214 @@
+package com.projects.tradingMachine.utility.database.creditCheck;
+
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.projects.tradingMachine.utility.ServiceLifeCycle;
+import com.projects.tradingMachine.utility.Utility;
+
+/**
+ * Credit check still made by the database, whose debits and credits are settled in batches rather than one stored procedure call each:
+ * the amounts of each counterparty are added up in memory, then applied to the {@link CreditStore} with one batched update per counterparty,
+ * every window or as soon as the batch reaches its maximum size, by a single settlement thread.
+ * Amounts not yet applied, including the batch in flight, are taken into account by {@link #hasEnoughCredit(double)},
+ * so that the database credit isn't overdrawn in the meantime. On failure, the amounts are kept for the next batch.
+ * Unlike the {@link CreditLedger}, the pending amounts only live in memory: they're lost if the process dies before its next batch.
+ * It also takes the debits off the matching threads of the {@link CachingCreditCheck}, which loads the credit through {@link #loadCredit()}.
+ * */
+public final class CreditSettlement implements ICreditCheck, ServiceLifeCycle {
+	private static final Logger logger = LoggerFactory.getLogger(CreditSettlement.class);
+	
+	private final ICreditCheck creditCheck;
+	private final CreditStore creditStore;
+	private final String counterpartyId;
+	private final int maxBatchSize;
+	private final long windowMillis;
+	private final ScheduledExecutorService settler;
+	private final Object settleLock; //held while a batch is applied or the credit loaded.
+	private final Map<String, Long> pendingCents; //guarded by this.
+	private int pendingAmounts; //guarded by this.
+	private boolean settleRequested; //guarded by this.
+	private long inFlightCents; //counterpartyId's amount of the batch being applied, guarded by this.
+	private long batches; //guarded by this.
+	private long appliedCents; //counterpartyId's amounts applied so far, guarded by this.
+	
+	/**
+	 * @param creditCheck Database credit check, the available credit being asked to it.
+	 * @param counterpartyId Counterparty the {@link ICreditCheck} calls are made for.
+	 * */
+	public CreditSettlement(final ICreditCheck creditCheck, final CreditStore creditStore, final String counterpartyId,
+			final int maxBatchSize, final long windowMillis) {
+		if (maxBatchSize < 1)
+			throw new IllegalArgumentException("Invalid maximum batch size: "+maxBatchSize);
+		this.creditCheck = creditCheck;
+		this.creditStore = creditStore;
+		this.counterpartyId = counterpartyId;
+		this.maxBatchSize = maxBatchSize;
+		this.windowMillis = windowMillis;
+		pendingCents = new HashMap<>();
+		settleLock = new Object();
+		settler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			final Thread thread = new Thread(runnable, "CreditSettlement");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+	
+	@Override
+	public void start() {
+		settler.scheduleWithFixedDelay(this::settleQuietly, windowMillis, windowMillis, TimeUnit.MILLISECONDS);
+	}
+	
+	/**
+	 * Settles what's left.
+	 * */
+	@Override
+	public void stop() throws InterruptedException, SQLException {
+		Utility.shutdownExecutorService(settler, 5, TimeUnit.SECONDS);
+		settle();
+	}
+	
+	/**
+	 * Asks the database for the credit, less the debits it didn't get yet.
+	 * */
+	@Override
+	public boolean hasEnoughCredit(final double credit) {
+		final long unsettledDebitCents;
+		synchronized (this) {
+			unsettledDebitCents = Math.max(0, -(pendingCents.getOrDefault(counterpartyId, 0L) + inFlightCents));
+		}
+		return creditCheck.hasEnoughCredit(credit + unsettledDebitCents / 100d);
+	}
+	
+	/**
+	 * Debits, if negative, or credits the counterparty with the next batch.
+	 * */
+	@Override
+	public void setCredit(final double credit) {
+		add(counterpartyId, credit);
+	}
+	
+	/**
+	 * Adds the amount, negative for a debit, to the counterparty's next batch. Reaching the maximum batch size hands the batch over to the settlement thread straight away.
+	 * */
+	public void add(final String counterpartyId, final double amount) {
+		final boolean full;
+		synchronized (this) {
+			pendingCents.merge(counterpartyId, CreditLedger.toCents(amount), Long::sum);
+			full = ++pendingAmounts >= maxBatchSize && !settleRequested;
+			if (full)
+				settleRequested = true;
+		}
+		if (full && !settler.isShutdown())
+			settler.execute(this::settleQuietly);
+	}
+	
+	private void settleQuietly() {
+		try {
+			settle();
+		}
+		catch(final SQLException | RuntimeException ex) {
+			logger.warn("Unable to settle the credit, it will be retried, due to: "+ex.getMessage(), ex);
+		}
+	}
+	
+	/**
+	 * Applies the amounts added since the previous batch, one update per counterparty. On failure, they're kept for the next one.
+	 * */
+	void settle() throws SQLException {
+		synchronized (settleLock) {
+			final Map<String, Long> batch;
+			synchronized (this) {
+				settleRequested = false;
+				if (pendingCents.isEmpty())
+					return;
+				batch = new HashMap<>(pendingCents);
+				pendingCents.clear();
+				pendingAmounts = 0;
+				inFlightCents = batch.getOrDefault(counterpartyId, 0L);
+			}
+			try {
+				creditStore.apply(batch);
+				synchronized (this) {
+					batches++;
+					appliedCents += inFlightCents;
+				}
+			}
+			catch(final SQLException | RuntimeException ex) {
+				synchronized (this) {
+					batch.forEach((id, cents) -> pendingCents.merge(id, cents, Long::sum));
+					pendingAmounts += batch.size();
+				}
+				throw ex;
+			}
+			finally {
+				synchronized (this) {
+					inFlightCents = 0;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Loads the counterparty's database credit while no batch is being applied, so that it holds exactly the amounts applied so far.
+	 * 
+	 * @return null if the counterparty is unknown.
+	 * */
+	AppliedCredit loadCredit() throws SQLException {
+		synchronized (settleLock) {
+			final Long cents = creditStore.loadCredits().get(counterpartyId);
+			if (cents == null)
+				return null;
+			synchronized (this) {
+				return new AppliedCredit(cents, appliedCents);
+			}
+		}
+	}
+	
+	/**
+	 * The database credit check is closed by its owner.
+	 * */
+	@Override
+	public void closeConnection() throws SQLException {
+	}
+	
+	String getCounterpartyId() {
+		return counterpartyId;
+	}
+	
+	public synchronized long getBatches() {
+		return batches;
+	}
+	
+	/**
+	 * @return the amount not applied yet, negative if debited.
+	 * */
+	public synchronized double getPending(final String counterpartyId) {
+		return pendingCents.getOrDefault(counterpartyId, 0L) / 100d;
+	}
+	
+	@Override
+	public synchronized String toString() {
+		return "CreditSettlement [pending amounts=" + pendingAmounts + ", counterparties=" + pendingCents.size() + ", batches=" + batches + ", credit check=" + creditCheck + "]";
+	}
+	
+	/**
+	 * Database credit of the counterparty, in cents, together with the amounts applied to it by this settlement so far.
+	 * */
+	static final class AppliedCredit {
+		final long cents;
+		final long appliedCents;
+	
+		private AppliedCredit(final long cents, final long appliedCents) {
+			this.cents = cents;
+			this.appliedCents = appliedCents;
+		}
+	}
+}
@@ -0,0 +1,31 @@
+package com.projects.tradingMachine.utility.database.creditCheck;
+
+import java.sql.SQLException;
+import java.util.Map;
+
+/**
+ * Durable side of the {@link CreditLedger}: the counterparty credit limits, plus the sequence of the last ledger entry applied to them,
+ * so that the entries of the write-behind log get applied exactly once. Also where the {@link CreditSettlement} batches go.
+ * */
+public interface CreditStore {
+	
+	/**
+	 * @return the credit limit of each counterparty, in cents, by counterparty id.
+	 * */
+	Map<String, Long> loadCredits() throws SQLException;
+	
+	/**
+	 * @return the sequence of the last ledger entry applied, 0 if none.
+	 * */
+	long loadAppliedSequence() throws SQLException;
+	
+	/**
+	 * Adds the given amounts, in cents, to the counterparty credit limits and records the sequence of the last entry they include, all or nothing.
+	 * */
+	void apply(Map<String, Long> credits, long sequence) throws SQLException;
+	
+	/**
+	 * Adds the given amounts, in cents, to the counterparty credit limits, all or nothing, without recording any sequence.
+	 * */
+	void apply(Map<String, Long> credits) throws SQLException;
+}
@@ -0,0 +1,97 @@
+package com.projects.tradingMachine.utility.database.creditCheck;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+/**
+ * COUNTERPARTY credit limits, updated in one transaction per batch, one batched update per counterparty,
+ * together with the CREDIT_LEDGER row of the ledger when there's a sequence, see MySqlScripts.sql.
+ * */
+public final class JdbcCreditStore implements CreditStore {
+	
+	private final DataSource dataSource;
+	private final String ledgerId;
+	
+	/**
+	 * @param ledgerId Row of CREDIT_LEDGER keeping the applied sequence, one per ledger writing to the database.
+	 * */
+	public JdbcCreditStore(final DataSource dataSource, final String ledgerId) {
+		this.dataSource = dataSource;
+		this.ledgerId = ledgerId;
+	}
+	
+	@Override
+	public Map<String, Long> loadCredits() throws SQLException {
+		final Map<String, Long> result = new HashMap<>();
+		try(final Connection connection = dataSource.getConnection(); 
+				final PreparedStatement stm = connection.prepareStatement("select id, credit_limit from COUNTERPARTY"); 
+				final ResultSet rs = stm.executeQuery()) {
+			while (rs.next())
+				result.put(rs.getString(1), rs.getBigDecimal(2).movePointRight(2).longValueExact());
+		}
+		return result;
+	}
+	
+	@Override
+	public long loadAppliedSequence() throws SQLException {
+		try(final Connection connection = dataSource.getConnection(); 
+				final PreparedStatement stm = connection.prepareStatement("select applied_sequence from CREDIT_LEDGER where id = ?")) {
+			stm.setString(1, ledgerId);
+			try(final ResultSet rs = stm.executeQuery()) {
+				return rs.next() ? rs.getLong(1) : 0;
+			}
+		}
+	}
+	
+	@Override
+	public void apply(final Map<String, Long> credits, final long sequence) throws SQLException {
+		apply(credits, sequence, true);
+	}
+	
+	@Override
+	public void apply(final Map<String, Long> credits) throws SQLException {
+		apply(credits, 0, false);
+	}
+	
+	private void apply(final Map<String, Long> credits, final long sequence, final boolean checkpointed) throws SQLException {
+		try(final Connection connection = dataSource.getConnection()) {
+			final boolean autoCommit = connection.getAutoCommit();
+			connection.setAutoCommit(false);
+			try(final PreparedStatement update = connection.prepareStatement("update COUNTERPARTY set credit_limit = credit_limit + ? where id = ?"); 
+					final PreparedStatement checkpoint = connection.prepareStatement(
+							"insert into CREDIT_LEDGER(id, applied_sequence) values (?, ?) on duplicate key update applied_sequence = values(applied_sequence)")) {
+				for (final Map.Entry<String, Long> credit : credits.entrySet()) {
+					update.setBigDecimal(1, BigDecimal.valueOf(credit.getValue(), 2));
+					update.setString(2, credit.getKey());
+					update.addBatch();
+				}
+				update.executeBatch();
+				if (checkpointed) {
+					checkpoint.setString(1, ledgerId);
+					checkpoint.setLong(2, sequence);
+					checkpoint.executeUpdate();
+				}
+				connection.commit();
+			}
+			catch(final SQLException ex) {
+				connection.rollback();
+				throw ex;
+			}
+			finally {
+				connection.setAutoCommit(autoCommit);
+			}
+		}
+	}
+	
+	@Override
+	public String toString() {
+		return "JdbcCreditStore [ledgerId=" + ledgerId + "]";
+	}
+}
@@ -0,0 +1,45 @@
+package com.projects.tradingMachine.utility.database.creditCheck;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import javax.sql.DataSource;
+
+/**
+ * Credit check borrowing a pooled connection for each call, so that it can be shared across threads.
+ * */
+public final class PooledCreditCheck implements ICreditCheck {
+
+	private final DataSource dataSource;
+
+	public PooledCreditCheck(final DataSource dataSource) {
+		this.dataSource = dataSource;
+	}
+
+	@Override
+	public boolean hasEnoughCredit(final double credit) {
+		try(final Connection connection = dataSource.getConnection()) {
+			return new CreditCheck(connection).hasEnoughCredit(credit);
+		}
+		catch(final SQLException ex) {
+			throw new CreditCheckException(ex);
+		}
+	}
+
+	@Override
+	public void setCredit(final double credit) {
+		try(final Connection connection = dataSource.getConnection()) {
+			new CreditCheck(connection).setCredit(credit);
+		}
+		catch(final SQLException ex) {
+			throw new CreditCheckException(ex);
+		}
+	}
+
+	/**
+	 * Connections are given back to the pool after each call, the pool itself is closed by its owner.
+	 * */
+	@Override
+	public void closeConnection() throws SQLException {
+	}
+}
@@ -0,0 +1,86 @@
+package com.projects.tradingMachine.utility.database.creditCheck;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Append-only file of the {@link CreditLedger} entries not yet applied to the {@link CreditStore}: sequence, amount in cents and counterparty id.
+ * Appends go to the OS page cache, so that they outlive a crash of the process, the store batches being the copy forced to disk.
+ * A record cut short by a crash is ignored when the log is read back. Not thread safe, the ledger appends under its lock.
+ * */
+final class WriteBehindLog implements Closeable {
+	private static final int HEADER_LENGTH = Long.BYTES + Long.BYTES + Short.BYTES;
+	
+	private final Path file;
+	private final FileChannel channel;
+	private final ByteBuffer buffer;
+	private long position;
+	
+	WriteBehindLog(final Path file) throws IOException {
+		this.file = file;
+		if (file.getParent() != null)
+			Files.createDirectories(file.getParent());
+		channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		buffer = ByteBuffer.allocate(HEADER_LENGTH + Short.MAX_VALUE);
+		position = channel.size();
+	}
+	
+	void append(final long sequence, final long cents, final byte[] counterpartyId) throws IOException {
+		buffer.clear();
+		buffer.putLong(sequence).putLong(cents).putShort((short)counterpartyId.length).put(counterpartyId);
+		buffer.flip();
+		while (buffer.hasRemaining())
+			position += channel.write(buffer, position);
+	}
+	
+	/**
+	 * Adds up, by counterparty id, the amounts of the records after the given sequence.
+	 * 
+	 * @return the sequence of the last record.
+	 * */
+	long read(final long afterSequence, final Map<String, Long> credits) throws IOException {
+		final ByteBuffer content = ByteBuffer.allocate((int)channel.size());
+		while (content.hasRemaining() && channel.read(content, content.position()) >= 0);
+		content.flip();
+		long lastSequence = 0;
+		while (content.remaining() >= HEADER_LENGTH) {
+			final long sequence = content.getLong();
+			final long cents = content.getLong();
+			final int idLength = content.getShort();
+			if (idLength < 0 || content.remaining() < idLength)
+				break;
+			final byte[] id = new byte[idLength];
+			content.get(id);
+			lastSequence = sequence;
+			if (sequence > afterSequence)
+				credits.merge(new String(id, StandardCharsets.UTF_8), cents, Long::sum);
+		}
+		return lastSequence;
+	}
+	
+	/**
+	 * Drops every record, once they have all been applied.
+	 * */
+	void truncate() throws IOException {
+		channel.truncate(0);
+		position = 0;
+	}
+	
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+	
+	@Override
+	public String toString() {
+		return "WriteBehindLog [file=" + file + ", size=" + position + "]";
+	}
+}
@@ -0,0 +1,64 @@
+package com.projects.tradingMachine.utility.id;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Keeps the next free block in a file, so that the ids given out stay unique across restarts: a block is on disk as reserved before any of its ids is used.
+ * The file is locked while reserving, so that processes sharing it don't hand out the same block.
+ * The ids of the last blocks reserved before a restart and not used up are skipped.
+ * */
+public final class FileIdBlockStore implements IdBlockStore, Closeable {
+	private final Path file;
+	private final FileChannel channel;
+	private final ByteBuffer buffer;
+
+	public FileIdBlockStore(final Path file) throws IOException {
+		this.file = file;
+		if (file.getParent() != null)
+			Files.createDirectories(file.getParent());
+		channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		buffer = ByteBuffer.allocate(Long.BYTES);
+	}
+
+	@Override
+	public synchronized long reserve() {
+		try {
+			final FileLock lock = channel.lock();
+			try {
+				buffer.clear();
+				while (buffer.hasRemaining() && channel.read(buffer, buffer.position()) >= 0);
+				final long block = buffer.hasRemaining() ? 0 : buffer.getLong(0);
+				buffer.clear();
+				buffer.putLong(0, block + 1);
+				while (buffer.hasRemaining())
+					channel.write(buffer, buffer.position());
+				channel.force(false);
+				return block;
+			}
+			finally {
+				lock.release();
+			}
+		}
+		catch(final IOException e) {
+			throw new UncheckedIOException("Unable to reserve an id block in "+file, e);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	@Override
+	public String toString() {
+		return "FileIdBlockStore [file=" + file + "]";
+	}
+}
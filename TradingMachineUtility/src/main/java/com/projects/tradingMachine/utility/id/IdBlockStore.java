@@ -0,0 +1,24 @@
+package com.projects.tradingMachine.utility.id;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Source of the id blocks (high values) of the {@link IdGenerator}s: each block is handed out once, by any thread,
+ * while the ids within a block (low values) are given out by the generator which reserved it, without any further coordination.
+ * */
+@FunctionalInterface
+public interface IdBlockStore {
+	/**
+	 * @return a block never handed out before.
+	 * */
+	long reserve();
+
+	/**
+	 * Non-persistent store, handing out the blocks from the given one on.
+	 * Seeded with the current time in milliseconds, the ids stay unique across restarts as long as less than one block per millisecond gets reserved.
+	 * */
+	static IdBlockStore startingAt(final long firstBlock) {
+		final AtomicLong nextBlock = new AtomicLong(firstBlock);
+		return nextBlock::getAndIncrement;
+	}
+}
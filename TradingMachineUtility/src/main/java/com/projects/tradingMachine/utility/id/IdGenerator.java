@@ -0,0 +1,85 @@
+package com.projects.tradingMachine.utility.id;
+
+/**
+ * High/low id generator: the ids are the prefix followed by block * blockSize + n, n going from 0 to blockSize - 1 within each block reserved
+ * from the {@link IdBlockStore}. The prefix, e.g. the shard number, keeps apart the ids of generators sharing a namespace but not a block store.
+ * It's meant to be used by a single thread, so that no id but the first of each block involves any coordination,
+ * and the ids can be encoded into the caller's buffer without allocating, see {@link #nextId(char[])}.
+ * */
+public final class IdGenerator {
+	public static final int DEFAULT_BLOCK_SIZE = 1000;
+	private static final int MAX_DIGITS = 19;
+
+	private final char[] prefix;
+	private final IdBlockStore blockStore;
+	private final int blockSize;
+	private final char[] buffer;
+	private long next;
+	private long limit;
+
+	public IdGenerator(final String prefix, final IdBlockStore blockStore, final int blockSize) {
+		if (blockSize <= 0)
+			throw new IllegalArgumentException("Invalid block size: "+blockSize);
+		this.prefix = prefix.toCharArray();
+		this.blockStore = blockStore;
+		this.blockSize = blockSize;
+		buffer = new char[getMaxLength()];
+	}
+
+	public IdGenerator(final String prefix, final IdBlockStore blockStore) {
+		this(prefix, blockStore, DEFAULT_BLOCK_SIZE);
+	}
+
+	/**
+	 * @return the numeric part of the next id.
+	 * */
+	public long next() {
+		if (next == limit) {
+			next = Math.multiplyExact(blockStore.reserve(), (long)blockSize);
+			limit = next + blockSize;
+		}
+		return next++;
+	}
+
+	/**
+	 * Encodes the next id into the given buffer, at least {@link #getMaxLength()} long.
+	 *
+	 * @return the id length.
+	 * */
+	public int nextId(final char[] destination) {
+		return encode(next(), destination);
+	}
+
+	public String nextId() {
+		return new String(buffer, 0, nextId(buffer));
+	}
+
+	/**
+	 * Writes the prefix, then the digits of the given numeric id.
+	 *
+	 * @return the id length.
+	 * */
+	public int encode(long id, final char[] destination) {
+		if (id < 0)
+			throw new IllegalArgumentException("Negative id: "+id);
+		System.arraycopy(prefix, 0, destination, 0, prefix.length);
+		int digits = 1;
+		for (long rest = id / 10; rest > 0; rest /= 10)
+			digits++;
+		final int length = prefix.length + digits;
+		for (int i = length - 1; i >= prefix.length; i--) {
+			destination[i] = (char)('0' + id % 10);
+			id /= 10;
+		}
+		return length;
+	}
+
+	public int getMaxLength() {
+		return prefix.length + MAX_DIGITS;
+	}
+
+	@Override
+	public String toString() {
+		return "IdGenerator [prefix=" + new String(prefix) + ", blockStore=" + blockStore + ", blockSize=" + blockSize + "]";
+	}
+}
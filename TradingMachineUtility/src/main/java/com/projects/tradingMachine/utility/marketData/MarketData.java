@@ -5,15 +5,18 @@ import java.util.Date;
 import java.util.UUID;
 import java.util.stream.IntStream;
 
+import com.projects.tradingMachine.utility.FixedPointPrice;
+import com.projects.tradingMachine.utility.SymbolRegistry;
 import com.projects.tradingMachine.utility.Utility;
 
 public final class MarketData implements Serializable {
 
-	private static final long serialVersionUID = 1L;
+	private static final long serialVersionUID = 3L;
 
 	private final String symbol;
-	private final double bid; 
-	private final double ask;
+	private final int symbolId;
+	private final long bid; 
+	private final long ask;
 	private final int bidSize;
 	private final int askSize;
 	private final Date quoteDateTime;
@@ -24,8 +27,9 @@ public final class MarketData implements Serializable {
 	 * */
 	public MarketData(final String symbol, final double bid, final double ask, final int bidSize, final int askSize) {
 		this.symbol = symbol;
-		this.bid = bid;
-		this.ask = ask;
+		symbolId = SymbolRegistry.UNKNOWN;
+		this.bid = FixedPointPrice.fromDouble(bid);
+		this.ask = FixedPointPrice.fromDouble(ask);
 		this.bidSize = bidSize;
 		this.askSize = askSize;
 		quoteDateTime = new Date();
@@ -35,7 +39,16 @@ public final class MarketData implements Serializable {
 	 * This is used to set a new instance when loaded from a back-end store.
 	 * */
 	public MarketData(final String id, final String symbol, final double bid, final double ask, final int bidSize, final int askSize, final Date quoteDateTime) {
+		this(id, symbol, SymbolRegistry.UNKNOWN, FixedPointPrice.fromDouble(bid), FixedPointPrice.fromDouble(ask), bidSize, askSize, quoteDateTime);
+	}
+
+	/**
+	 * Bid and ask are fixed-point prices, see {@link FixedPointPrice}. The symbol id is the one given by the {@link SymbolRegistry}.
+	 * */
+	public MarketData(final String id, final String symbol, final int symbolId, final long bid, final long ask, final int bidSize, final int askSize, 
+			final Date quoteDateTime) {
 		this.symbol = symbol;
+		this.symbolId = symbolId;
 		this.bid = bid;
 		this.ask = ask;
 		this.bidSize = bidSize;
@@ -54,12 +67,34 @@ public final class MarketData implements Serializable {
 		return symbol;
 	}
 
+	/**
+	 * @return the id given by the producer's {@link SymbolRegistry}, or {@link SymbolRegistry#UNKNOWN}.
+	 * */
+	public int getSymbolId() {
+		return symbolId;
+	}
+
+	/**
+	 * Same quote with another symbol id.
+	 * */
+	public MarketData withSymbolId(final int symbolId) {
+		return new MarketData(id, symbol, symbolId, bid, ask, bidSize, askSize, quoteDateTime);
+	}
+
 
 	public double getBid() {
-		return bid;
+		return FixedPointPrice.toDouble(bid);
 	}
 
 	public double getAsk() {
+		return FixedPointPrice.toDouble(ask);
+	}
+
+	public long getBidPrice() {
+		return bid;
+	}
+
+	public long getAskPrice() {
 		return ask;
 	}
 
@@ -79,7 +114,7 @@ public final class MarketData implements Serializable {
 
 	@Override
 	public String toString() {
-		return "MarketData [id = "+id+", symbol=" + symbol + ", bid=" + bid + ", ask=" + ask + ", bidSize=" + bidSize + ", askSize="
+		return "MarketData [id = "+id+", symbol=" + symbol + ", bid=" + FixedPointPrice.toString(bid) + ", ask=" + FixedPointPrice.toString(ask) + ", bidSize=" + bidSize + ", askSize="
 				+ askSize + ", quoteTime=" + quoteDateTime + "]";
 	}
 	
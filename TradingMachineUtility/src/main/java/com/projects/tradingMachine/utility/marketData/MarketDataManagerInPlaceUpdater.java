@@ -33,7 +33,8 @@ public final class MarketDataManagerInPlaceUpdater {
 	}
 	
 	public MarketData get(final String symbol) {
-		return marketDataRepository.getOrDefault(symbol, Utility.buildRandomMarketDataItem(symbol));
+		final MarketData marketData = marketDataRepository.get(symbol);
+		return marketData != null ? marketData : Utility.buildRandomMarketDataItem(symbol);
 	}
 	
 	public void startUpdates() {
@@ -6,7 +6,7 @@ import java.util.Optional;
 import quickfix.field.TimeInForce;
 
 public enum OrderTimeInForce {
-	DAY("Day"), IOC("IOC"), FOK("FOK");
+	DAY("Day"), IOC("IOC"), FOK("FOK"), GTC("GTC"), GTD("GTD");
 
     private final String timeInForceName;
 
@@ -23,6 +23,8 @@ public enum OrderTimeInForce {
     		case DAY: return new TimeInForce(TimeInForce.DAY);
     		case IOC: return new TimeInForce(TimeInForce.IMMEDIATE_OR_CANCEL);
     		case FOK: return new TimeInForce(TimeInForce.FILL_OR_KILL);
+    		case GTC: return new TimeInForce(TimeInForce.GOOD_TILL_CANCEL);
+    		case GTD: return new TimeInForce(TimeInForce.GOOD_TILL_DATE);
     		default: throw new IllegalArgumentException("Unable to convert "+this+" to quickfixj time in force.");
     	}
     }
@@ -3,22 +3,32 @@ package com.projects.tradingMachine.utility.order;
 import java.io.Serializable;
 import java.util.Date;
 
+import com.projects.tradingMachine.utility.FixedPointPrice;
+import com.projects.tradingMachine.utility.SymbolRegistry;
+import com.projects.tradingMachine.utility.id.IdBlockStore;
+import com.projects.tradingMachine.utility.id.IdGenerator;
+
 import quickfix.SessionID;
 
 public class SimpleOrder implements Serializable {
 
-	private static final long serialVersionUID = 1L;
-	private static int nextID = 1;
+	private static final long serialVersionUID = 3L;
+	/**
+	 * One generator per thread, e.g. building orders in a parallel stream, sharing the blocks seeded with the start time.
+	 * */
+	private static final IdBlockStore idBlockStore = IdBlockStore.startingAt(System.currentTimeMillis());
+	private static final ThreadLocal<IdGenerator> idGenerator = ThreadLocal.withInitial(() -> new IdGenerator("", idBlockStore));
 	private SessionID sessionID = null;
     private String symbol = null;
+    private int symbolId = SymbolRegistry.UNKNOWN;
     private int quantity = 0;
     private int open = 0;
     private int executed = 0;
     private OrderSide side = OrderSide.BUY;
     private OrderType type = OrderType.MARKET;
     private OrderTimeInForce timeInForce = OrderTimeInForce.DAY;
-    private Double limitPrice = null;
-    private Double stopPrice = null;
+    private long limitPrice = FixedPointPrice.NONE;
+    private long stopPrice = FixedPointPrice.NONE;
     private double avgPx = 0.0;
     private boolean rejected;
     private boolean canceled;
@@ -29,10 +39,11 @@ public class SimpleOrder implements Serializable {
     private boolean creditCheckFailed;
     
     private Date storeDate;
+    private Date expireTime;
     private String marketDataID;
     
     public SimpleOrder() {
-        ID = Long.valueOf(System.currentTimeMillis() + (nextID++)).toString();
+        ID = idGenerator.get().nextId();
     }
 
     /**
@@ -47,8 +58,8 @@ public class SimpleOrder implements Serializable {
     	this.side = side;
     	this.type = type;
     	this.timeInForce = timeInForce;
-    	this.limitPrice = limitPrice;
-    	this.stopPrice = stopPrice;
+    	setLimit(limitPrice);
+    	setStop(stopPrice);
     	this.avgPx = price;
     	this.originalID = originalID;
     	this.storeDate = storeDate;
@@ -77,6 +88,17 @@ public class SimpleOrder implements Serializable {
         this.symbol = symbol;
     }
 
+    /**
+     * @return the id given by the {@link SymbolRegistry} of the order producer, or {@link SymbolRegistry#UNKNOWN}.
+     * */
+    public int getSymbolId() {
+        return symbolId;
+    }
+
+    public void setSymbolId(final int symbolId) {
+        this.symbolId = symbolId;
+    }
+
     public int getQuantity() {
         return quantity;
     }
@@ -126,35 +148,60 @@ public class SimpleOrder implements Serializable {
     }
 
     public Double getLimit() {
-        return limitPrice;
+        return limitPrice == FixedPointPrice.NONE ? null : FixedPointPrice.toDouble(limitPrice);
     }
 
     public void setLimit(final Double limit) {
-        this.limitPrice = limit;
+        this.limitPrice = limit == null ? FixedPointPrice.NONE : FixedPointPrice.fromDouble(limit);
     }
 
     public void setLimit(final String limit) {
-        if (limit == null || limit.equals("")) {
-            this.limitPrice = null;
-        } else {
-            this.limitPrice = new Double(limit);
-        }
+        this.limitPrice = FixedPointPrice.parse(limit);
+    }
+
+    /**
+     * Fixed-point limit price, {@link FixedPointPrice#NONE} if not set.
+     * */
+    public long getLimitPrice() {
+        return limitPrice;
+    }
+
+    public void setLimitPrice(final long limitPrice) {
+        this.limitPrice = limitPrice;
+    }
+
+    /**
+     * Expiry time of GTD orders, null otherwise.
+     * */
+    public Date getExpireTime() {
+        return expireTime;
+    }
+
+    public void setExpireTime(final Date expireTime) {
+        this.expireTime = expireTime;
     }
 
     public Double getStop() {
-        return stopPrice;
+        return stopPrice == FixedPointPrice.NONE ? null : FixedPointPrice.toDouble(stopPrice);
     }
 
     public void setStop(final Double stop) {
-        this.stopPrice = stop;
+        this.stopPrice = stop == null ? FixedPointPrice.NONE : FixedPointPrice.fromDouble(stop);
     }
 
     public void setStop(final String stop) {
-        if (stop == null || stop.equals("")) {
-            this.stopPrice = null;
-        } else {
-            this.stopPrice = new Double(stop);
-        }
+        this.stopPrice = FixedPointPrice.parse(stop);
+    }
+
+    /**
+     * Fixed-point stop price, {@link FixedPointPrice#NONE} if not set.
+     * */
+    public long getStopPrice() {
+        return stopPrice;
+    }
+
+    public void setStopPrice(final long stopPrice) {
+        this.stopPrice = stopPrice;
     }
 
     public void setAvgPx(final double avgPx) {
@@ -248,7 +295,7 @@ public class SimpleOrder implements Serializable {
 		result = prime * result + (canceled ? 1231 : 1237);
 		result = prime * result + executed;
 		result = prime * result + (isNew ? 1231 : 1237);
-		result = prime * result + ((limitPrice == null) ? 0 : limitPrice.hashCode());
+		result = prime * result + (int) (limitPrice ^ (limitPrice >>> 32));
 		result = prime * result + ((message == null) ? 0 : message.hashCode());
 		result = prime * result + open;
 		result = prime * result + ((originalID == null) ? 0 : originalID.hashCode());
@@ -256,7 +303,7 @@ public class SimpleOrder implements Serializable {
 		result = prime * result + (rejected ? 1231 : 1237);
 		result = prime * result + ((sessionID == null) ? 0 : sessionID.hashCode());
 		result = prime * result + ((side == null) ? 0 : side.hashCode());
-		result = prime * result + ((stopPrice == null) ? 0 : stopPrice.hashCode());
+		result = prime * result + (int) (stopPrice ^ (stopPrice >>> 32));
 		result = prime * result + ((symbol == null) ? 0 : symbol.hashCode());
 		result = prime * result + ((timeInForce == null) ? 0 : timeInForce.hashCode());
 		result = prime * result + ((type == null) ? 0 : type.hashCode());
@@ -285,10 +332,7 @@ public class SimpleOrder implements Serializable {
 			return false;
 		if (isNew != other.isNew)
 			return false;
-		if (limitPrice == null) {
-			if (other.limitPrice != null)
-				return false;
-		} else if (!limitPrice.equals(other.limitPrice))
+		if (limitPrice != other.limitPrice)
 			return false;
 		if (message == null) {
 			if (other.message != null)
@@ -313,10 +357,7 @@ public class SimpleOrder implements Serializable {
 			return false;
 		if (side != other.side)
 			return false;
-		if (stopPrice == null) {
-			if (other.stopPrice != null)
-				return false;
-		} else if (!stopPrice.equals(other.stopPrice))
+		if (stopPrice != other.stopPrice)
 			return false;
 		if (symbol == null) {
 			if (other.symbol != null)
@@ -334,7 +375,7 @@ public class SimpleOrder implements Serializable {
 	public String toString() {
 		return "Order [sessionID=" + sessionID + ", symbol=" + symbol + ", quantity=" + quantity + ", open=" + open
 				+ ", executed=" + executed + ", side=" + side + ", type=" + type + ", timeInForce=" + timeInForce
-				+ ", limit=" + limitPrice + ", stop=" + stopPrice + ", avgPx=" + avgPx + ", rejected=" + rejected + ", canceled="
+				+ ", limit=" + FixedPointPrice.toString(limitPrice) + ", stop=" + FixedPointPrice.toString(stopPrice) + ", avgPx=" + avgPx + ", rejected=" + rejected + ", canceled="
 				+ canceled + ", isNew=" + isNew + ", message=" + message + ", ID=" + ID + ", originalID=" + originalID
 				+ "]";
 	}
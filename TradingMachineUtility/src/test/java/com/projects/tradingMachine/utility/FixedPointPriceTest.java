@@ -0,0 +1,58 @@
+package com.projects.tradingMachine.utility;
+
+import java.util.Properties;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.Timeout;
+
+public class FixedPointPriceTest {
+  @Rule
+  public final Timeout globalTimeout = new Timeout(10000);
+
+  @Rule
+  public final ExpectedException thrown = ExpectedException.none();
+
+  @Test
+  public void fromDoubleIsExact() {
+    Assert.assertEquals(FixedPointPrice.fromDouble(0.3), FixedPointPrice.fromDouble(0.1) + FixedPointPrice.fromDouble(0.2));
+    Assert.assertEquals(12345L, FixedPointPrice.fromDouble(1.2345));
+    Assert.assertEquals(1.2345, FixedPointPrice.toDouble(12345L), 0.0);
+  }
+
+  @Test
+  public void parse() {
+    Assert.assertEquals(FixedPointPrice.NONE, FixedPointPrice.parse(""));
+    Assert.assertEquals(FixedPointPrice.NONE, FixedPointPrice.parse(null));
+    Assert.assertEquals(105000L, FixedPointPrice.parse("10.5"));
+  }
+
+  @Test
+  public void roundToTick() {
+    Assert.assertEquals(100500L, FixedPointPrice.roundToTick(100250L, 500L));
+    Assert.assertEquals(100000L, FixedPointPrice.roundToTick(100249L, 500L));
+    Assert.assertEquals(-500L, FixedPointPrice.roundToTick(-501L, 500L));
+  }
+
+  @Test
+  public void value() {
+    Assert.assertEquals(1050.0, FixedPointPrice.value(FixedPointPrice.fromDouble(10.5), 100), 0.0);
+  }
+
+  @Test
+  public void loadTickSizes() {
+    final Properties properties = new Properties();
+    properties.setProperty("tickSizes", "TICK1:0.05, TICK2:1");
+    FixedPointPrice.loadTickSizes(properties);
+    Assert.assertEquals(500L, FixedPointPrice.getTickSize("TICK1"));
+    Assert.assertEquals(FixedPointPrice.SCALE, FixedPointPrice.getTickSize("TICK2"));
+    Assert.assertEquals(FixedPointPrice.DEFAULT_TICK_SIZE, FixedPointPrice.getTickSize("OTHER"));
+  }
+
+  @Test
+  public void tickSizeTooSmall() {
+    thrown.expect(IllegalArgumentException.class);
+    FixedPointPrice.setTickSize("ABC", 0.00001);
+  }
+}
@@ -0,0 +1,57 @@
+package com.projects.tradingMachine.utility;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Properties;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.rules.Timeout;
+
+public class SymbolRegistryTest {
+  @Rule
+  public final Timeout globalTimeout = new Timeout(10000);
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void denseIdsInListOrder() {
+    final SymbolRegistry symbolRegistry = new SymbolRegistry(Arrays.asList("ABBN", " UBSN", "", "ABBN", "CSGN"));
+    Assert.assertEquals(3, symbolRegistry.size());
+    Assert.assertEquals(0, symbolRegistry.getId("ABBN"));
+    Assert.assertEquals(1, symbolRegistry.getId("UBSN"));
+    Assert.assertEquals(2, symbolRegistry.getId("CSGN"));
+    Assert.assertEquals(SymbolRegistry.UNKNOWN, symbolRegistry.getId("RO"));
+    Assert.assertEquals("UBSN", symbolRegistry.getSymbol(1));
+  }
+
+  @Test
+  public void isId() {
+    final SymbolRegistry symbolRegistry = new SymbolRegistry(Arrays.asList("ABBN", "UBSN"));
+    Assert.assertTrue(symbolRegistry.isId(1, "UBSN"));
+    Assert.assertFalse(symbolRegistry.isId(0, "UBSN"));
+    Assert.assertFalse(symbolRegistry.isId(SymbolRegistry.UNKNOWN, "UBSN"));
+    Assert.assertFalse(symbolRegistry.isId(2, "UBSN"));
+  }
+
+  @Test
+  public void loadFromAllowedSymbols() throws Exception {
+    final Properties properties = new Properties();
+    properties.setProperty("allowedSymbols", "ABBN,BION");
+    Assert.assertEquals(Arrays.asList("ABBN", "BION"), SymbolRegistry.load(properties).getSymbols());
+  }
+
+  @Test
+  public void loadFromFile() throws Exception {
+    final File file = folder.newFile("symbols.txt");
+    Files.write(file.toPath(), Arrays.asList("#tickers", "RO", "RIEN", ""), StandardCharsets.UTF_8);
+    final Properties properties = new Properties();
+    properties.setProperty("symbolsFile", file.getAbsolutePath());
+    properties.setProperty("allowedSymbols", "ABBN");
+    Assert.assertEquals(Arrays.asList("RO", "RIEN"), SymbolRegistry.load(properties).getSymbols());
+  }
+}
@@ -0,0 +1,201 @@
+package com.projects.tradingMachine.utility.database.creditCheck;
+
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.Timeout;
+
+public class CachingCreditCheckTest {
+  @Rule
+  public final Timeout globalTimeout = new Timeout(10000);
+
+  @Rule
+  public final ExpectedException thrown = ExpectedException.none();
+
+  /**
+   * Credit limits in memory, slow or failing while asked to.
+   * */
+  private static final class SlowCreditStore implements CreditStore {
+    private final Map<String, Long> credits = new HashMap<>();
+    private long delayMillis;
+    private boolean failing;
+    private Runnable whileLoading = () -> {};
+
+    @Override
+    public Map<String, Long> loadCredits() throws SQLException {
+      if (failing)
+        throw new SQLException("Database down.");
+      whileLoading.run();
+      try {
+        Thread.sleep(delayMillis);
+      }
+      catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      return new HashMap<>(credits);
+    }
+
+    @Override
+    public long loadAppliedSequence() {
+      return 0;
+    }
+
+    @Override
+    public void apply(final Map<String, Long> credits, final long sequence) {
+      apply(credits);
+    }
+
+    @Override
+    public void apply(final Map<String, Long> credits) {
+      credits.forEach((id, cents) -> this.credits.merge(id, cents, Long::sum));
+    }
+  }
+
+  /**
+   * Database credit check, never called: the amounts go through the settlement, the credit is loaded from the store.
+   * */
+  private static final ICreditCheck unusedCreditCheck = new ICreditCheck() {
+    @Override
+    public boolean hasEnoughCredit(final double credit) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void setCredit(final double credit) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void closeConnection() {
+    }
+  };
+
+  private static SlowCreditStore store(final long cents) {
+    final SlowCreditStore store = new SlowCreditStore();
+    store.credits.put("TRADING_COUNTERPARTY", cents);
+    return store;
+  }
+
+  private static CreditSettlement settlement(final SlowCreditStore store) {
+    return new CreditSettlement(unusedCreditCheck, store, "TRADING_COUNTERPARTY", 100, 60000);
+  }
+
+  private static CachingCreditCheck creditCheck(final SlowCreditStore store, final long maxStalenessMillis, final CachingCreditCheck.Fallback fallback) {
+    return new CachingCreditCheck(settlement(store), maxStalenessMillis, 1000, 50, fallback, 0.5);
+  }
+
+  @Test
+  public void creditIsCheckedAgainstTheLocalBalance() throws Exception {
+    final SlowCreditStore store = store(100_00);
+    final CreditSettlement settlement = settlement(store);
+    final CachingCreditCheck creditCheck = new CachingCreditCheck(settlement, 60000, 1000, 50, CachingCreditCheck.Fallback.FAIL_CLOSED, 0.5);
+    Assert.assertFalse(creditCheck.hasEnoughCredit(10)); //nothing loaded yet.
+    creditCheck.refresh();
+    Assert.assertFalse(creditCheck.isOpen());
+    Assert.assertTrue(creditCheck.hasEnoughCredit(60));
+    creditCheck.setCredit(-60);
+    Assert.assertEquals(100_00, store.credits.get("TRADING_COUNTERPARTY").longValue()); //not settled yet.
+    Assert.assertEquals(-60, settlement.getPending("TRADING_COUNTERPARTY"), 0);
+    Assert.assertEquals(40, creditCheck.getBalance(), 0);
+    Assert.assertFalse(creditCheck.hasEnoughCredit(60));
+    creditCheck.refresh();
+    Assert.assertEquals(40, creditCheck.getBalance(), 0);
+    settlement.settle();
+    Assert.assertEquals(40_00, store.credits.get("TRADING_COUNTERPARTY").longValue());
+    Assert.assertEquals(40, creditCheck.getBalance(), 0);
+    creditCheck.refresh();
+    Assert.assertEquals(40, creditCheck.getBalance(), 0); //not counted twice.
+    store.credits.put("TRADING_COUNTERPARTY", 200_00L);
+    creditCheck.refresh();
+    Assert.assertTrue(creditCheck.hasEnoughCredit(60));
+  }
+
+  @Test
+  public void batchesWaitForTheRefreshQuery() throws Exception {
+    final SlowCreditStore store = store(100_00);
+    final CreditSettlement settlement = settlement(store);
+    final CachingCreditCheck creditCheck = new CachingCreditCheck(settlement, 60000, 1000, 1000, CachingCreditCheck.Fallback.FAIL_CLOSED, 0.5);
+    creditCheck.refresh();
+    creditCheck.setCredit(-30);
+    final Thread settler = new Thread(() -> {
+      try {
+        settlement.settle();
+      }
+      catch (final SQLException e) {
+        throw new IllegalStateException(e);
+      }
+    });
+    store.whileLoading = () -> {
+      settler.start();
+      try {
+        settler.join(100);
+      }
+      catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      Assert.assertTrue(settler.isAlive()); //the batch isn't applied in the middle of the query.
+    };
+    creditCheck.refresh();
+    settler.join();
+    Assert.assertEquals(70_00, store.credits.get("TRADING_COUNTERPARTY").longValue());
+    Assert.assertEquals(70, creditCheck.getBalance(), 0);
+    store.whileLoading = () -> {};
+    creditCheck.refresh();
+    Assert.assertEquals(70, creditCheck.getBalance(), 0);
+  }
+
+  @Test
+  public void slowRefreshesOpenTheCircuit() throws Exception {
+    final SlowCreditStore store = store(100_00);
+    final CachingCreditCheck creditCheck = creditCheck(store, 60000, CachingCreditCheck.Fallback.REDUCED_LIMIT);
+    creditCheck.refresh();
+    store.delayMillis = 100;
+    creditCheck.refresh();
+    Assert.assertTrue(creditCheck.isOpen());
+    Assert.assertTrue(creditCheck.hasEnoughCredit(40));
+    Assert.assertFalse(creditCheck.hasEnoughCredit(60)); //half of the balance only.
+    Assert.assertEquals(2, creditCheck.getFallbackCalls());
+    store.delayMillis = 0;
+    creditCheck.refresh();
+    Assert.assertFalse(creditCheck.isOpen());
+    Assert.assertTrue(creditCheck.hasEnoughCredit(60));
+  }
+
+  @Test
+  public void failedRefreshesOpenTheCircuit() throws Exception {
+    final SlowCreditStore store = store(100_00);
+    final CachingCreditCheck creditCheck = creditCheck(store, 60000, CachingCreditCheck.Fallback.FAIL_CLOSED);
+    creditCheck.refresh();
+    store.failing = true;
+    try {
+      creditCheck.refresh();
+      Assert.fail();
+    }
+    catch (final SQLException e) {
+    }
+    Assert.assertTrue(creditCheck.isOpen());
+    Assert.assertFalse(creditCheck.hasEnoughCredit(1));
+  }
+
+  @Test
+  public void staleBalancesFallBack() throws Exception {
+    final SlowCreditStore store = store(100_00);
+    final CachingCreditCheck creditCheck = creditCheck(store, 20, CachingCreditCheck.Fallback.FAIL_CLOSED);
+    creditCheck.refresh();
+    Assert.assertTrue(creditCheck.hasEnoughCredit(1));
+    Thread.sleep(50);
+    Assert.assertFalse(creditCheck.isOpen());
+    Assert.assertFalse(creditCheck.hasEnoughCredit(1));
+  }
+
+  @Test
+  public void invalidReducedLimitRatio() {
+    thrown.expect(IllegalArgumentException.class);
+    new CachingCreditCheck(settlement(store(0)), 1000, 1000, 50, CachingCreditCheck.Fallback.REDUCED_LIMIT, 2);
+  }
+}
@@ -0,0 +1,170 @@
+package com.projects.tradingMachine.utility.database.creditCheck;
+
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+import org.junit.rules.Timeout;
+
+public class CreditLedgerTest {
+  @Rule
+  public final Timeout globalTimeout = new Timeout(10000);
+
+  @Rule
+  public final ExpectedException thrown = ExpectedException.none();
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  /**
+   * Credit limits in memory, failing the batches while asked to.
+   * */
+  private static final class MemoryCreditStore implements CreditStore {
+    private final Map<String, Long> credits = new HashMap<>();
+    private long appliedSequence;
+    private int batches;
+    private boolean failing;
+
+    @Override
+    public Map<String, Long> loadCredits() {
+      return new HashMap<>(credits);
+    }
+
+    @Override
+    public long loadAppliedSequence() {
+      return appliedSequence;
+    }
+
+    @Override
+    public void apply(final Map<String, Long> credits, final long sequence) throws SQLException {
+      if (failing)
+        throw new SQLException("Database down.");
+      credits.forEach((id, cents) -> this.credits.merge(id, cents, Long::sum));
+      appliedSequence = sequence;
+      batches++;
+    }
+
+    @Override
+    public void apply(final Map<String, Long> credits) throws SQLException {
+      apply(credits, appliedSequence);
+    }
+  }
+
+  private MemoryCreditStore store(final long cents) {
+    final MemoryCreditStore store = new MemoryCreditStore();
+    store.credits.put("TRADING_COUNTERPARTY", cents);
+    return store;
+  }
+
+  @Test
+  public void reservationsNeverOverdrawTheCredit() throws Exception {
+    final CreditLedger ledger = new CreditLedger(store(1000_00), folder.getRoot().toPath().resolve("ledger.log"), 1000);
+    final CreditLedger.Account account = ledger.getAccount("TRADING_COUNTERPARTY");
+    final AtomicInteger granted = new AtomicInteger();
+    final ExecutorService executorService = Executors.newFixedThreadPool(4);
+    for (int i = 0; i < 400; i++)
+      executorService.execute(() -> {
+        if (account.hasEnoughCredit(10)) {
+          granted.incrementAndGet();
+          account.setCredit(-10);
+        }
+      });
+    executorService.shutdown();
+    Assert.assertTrue(executorService.awaitTermination(5, TimeUnit.SECONDS));
+    Assert.assertEquals(99, granted.get()); //some credit must be left.
+    Assert.assertEquals(10, account.getAvailable(), 0);
+    Assert.assertEquals(0, account.getReserved(), 0);
+  }
+
+  @Test
+  public void releasedReservationsAreAvailableAgain() throws Exception {
+    final CreditLedger ledger = new CreditLedger(store(100_00), folder.getRoot().toPath().resolve("ledger.log"), 1000);
+    final CreditLedger.Account account = ledger.getAccount("TRADING_COUNTERPARTY");
+    Assert.assertTrue(account.reserve(60));
+    Assert.assertFalse(account.reserve(60));
+    Assert.assertEquals(60, account.getReserved(), 0);
+    account.release(60);
+    Assert.assertTrue(account.reserve(60));
+    Assert.assertEquals(40, account.getAvailable(), 0);
+  }
+
+  @Test
+  public void committedAmountsAreAppliedInOneBatch() throws Exception {
+    final MemoryCreditStore store = store(100_00);
+    final CreditLedger ledger = new CreditLedger(store, folder.getRoot().toPath().resolve("ledger.log"), 1000);
+    final CreditLedger.Account account = ledger.getAccount("TRADING_COUNTERPARTY");
+    for (int i = 0; i < 3; i++) {
+      Assert.assertTrue(account.reserve(10.25));
+      account.commit(10.25);
+    }
+    account.credit(5);
+    Assert.assertEquals(100_00, store.credits.get("TRADING_COUNTERPARTY").longValue());
+    ledger.flush();
+    Assert.assertEquals(1, store.batches);
+    Assert.assertEquals(4, store.appliedSequence);
+    Assert.assertEquals(100_00 - 3 * 10_25 + 5_00, store.credits.get("TRADING_COUNTERPARTY").longValue());
+    ledger.flush();
+    Assert.assertEquals(1, store.batches); //nothing new.
+  }
+
+  @Test
+  public void failedBatchesAreRetried() throws Exception {
+    final MemoryCreditStore store = store(100_00);
+    final CreditLedger ledger = new CreditLedger(store, folder.getRoot().toPath().resolve("ledger.log"), 1000);
+    final CreditLedger.Account account = ledger.getAccount("TRADING_COUNTERPARTY");
+    account.reserve(10);
+    account.commit(10);
+    store.failing = true;
+    try {
+      ledger.flush();
+      Assert.fail();
+    }
+    catch (final SQLException e) {
+    }
+    account.reserve(20);
+    account.commit(20);
+    store.failing = false;
+    ledger.flush();
+    Assert.assertEquals(70_00, store.credits.get("TRADING_COUNTERPARTY").longValue());
+    Assert.assertEquals(2, store.appliedSequence);
+  }
+
+  @Test
+  public void logEntriesNotAppliedBeforeACrashAreAppliedOnRestart() throws Exception {
+    final MemoryCreditStore store = store(100_00);
+    final Path logFile = folder.getRoot().toPath().resolve("ledger.log");
+    final CreditLedger ledger = new CreditLedger(store, logFile, 1000);
+    final CreditLedger.Account account = ledger.getAccount("TRADING_COUNTERPARTY");
+    account.reserve(10);
+    account.commit(10);
+    ledger.flush();
+    account.reserve(15);
+    account.commit(15);
+    account.reserve(5);
+    account.commit(5);
+    //crash: the last two entries are only in the log.
+    final CreditLedger restarted = new CreditLedger(store, logFile, 1000);
+    Assert.assertEquals(70_00, store.credits.get("TRADING_COUNTERPARTY").longValue());
+    Assert.assertEquals(3, store.appliedSequence);
+    Assert.assertEquals(70, restarted.getAccount("TRADING_COUNTERPARTY").getAvailable(), 0);
+    new CreditLedger(store, logFile, 1000);
+    Assert.assertEquals(70_00, store.credits.get("TRADING_COUNTERPARTY").longValue()); //applied once.
+  }
+
+  @Test
+  public void unknownCounterparty() throws Exception {
+    final CreditLedger ledger = new CreditLedger(store(100_00), folder.getRoot().toPath().resolve("ledger.log"), 1000);
+    thrown.expect(IllegalArgumentException.class);
+    ledger.getAccount("OTHER");
+  }
+}
@@ -0,0 +1,150 @@
+package com.projects.tradingMachine.utility.database.creditCheck;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.Timeout;
+
+public class CreditSettlementTest {
+  @Rule
+  public final Timeout globalTimeout = new Timeout(10000);
+
+  @Rule
+  public final ExpectedException thrown = ExpectedException.none();
+
+  /**
+   * Records the batches, failing them while asked to.
+   * */
+  private static final class BatchRecorder implements CreditStore {
+    private final List<Map<String, Long>> batches = new ArrayList<>();
+    private final CountDownLatch applied = new CountDownLatch(1);
+    private boolean failing;
+
+    @Override
+    public Map<String, Long> loadCredits() {
+      return new HashMap<>();
+    }
+
+    @Override
+    public long loadAppliedSequence() {
+      return 0;
+    }
+
+    @Override
+    public void apply(final Map<String, Long> credits, final long sequence) throws SQLException {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public synchronized void apply(final Map<String, Long> credits) throws SQLException {
+      if (failing)
+        throw new SQLException("Database down.");
+      batches.add(new HashMap<>(credits));
+      applied.countDown();
+    }
+  }
+
+  /**
+   * Database credit check granting what's left of its credit, recording the amounts asked.
+   * */
+  private static final class FixedCreditCheck implements ICreditCheck {
+    private final List<Double> asked = new ArrayList<>();
+    private final double credit;
+
+    private FixedCreditCheck(final double credit) {
+      this.credit = credit;
+    }
+
+    @Override
+    public boolean hasEnoughCredit(final double amount) {
+      asked.add(amount);
+      return credit - amount > 0;
+    }
+
+    @Override
+    public void setCredit(final double amount) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void closeConnection() {
+    }
+  }
+
+  @Test
+  public void debitsOfACounterpartyAreCoalescedIntoOneUpdate() throws Exception {
+    final BatchRecorder store = new BatchRecorder();
+    final CreditSettlement settlement = new CreditSettlement(new FixedCreditCheck(1000), store, "TRADING_COUNTERPARTY", 100, 1000);
+    settlement.setCredit(-10.25);
+    settlement.setCredit(-20);
+    settlement.add("OTHER", -5);
+    settlement.setCredit(3);
+    Assert.assertEquals(-27.25, settlement.getPending("TRADING_COUNTERPARTY"), 0);
+    settlement.settle();
+    Assert.assertEquals(1, store.batches.size());
+    Assert.assertEquals(-27_25, store.batches.get(0).get("TRADING_COUNTERPARTY").longValue());
+    Assert.assertEquals(-5_00, store.batches.get(0).get("OTHER").longValue());
+    Assert.assertEquals(0, settlement.getPending("TRADING_COUNTERPARTY"), 0);
+    settlement.settle();
+    Assert.assertEquals(1, settlement.getBatches()); //nothing new.
+  }
+
+  @Test
+  public void unsettledDebitsAreCheckedTogetherWithTheNewAmount() throws Exception {
+    final FixedCreditCheck creditCheck = new FixedCreditCheck(100);
+    final CreditSettlement settlement = new CreditSettlement(creditCheck, new BatchRecorder(), "TRADING_COUNTERPARTY", 100, 1000);
+    Assert.assertTrue(settlement.hasEnoughCredit(60));
+    settlement.setCredit(-60);
+    Assert.assertFalse(settlement.hasEnoughCredit(60));
+    Assert.assertEquals(120, creditCheck.asked.get(1), 0);
+    settlement.setCredit(70); //credits don't add to the check.
+    Assert.assertTrue(settlement.hasEnoughCredit(60));
+    Assert.assertEquals(60, creditCheck.asked.get(2), 0);
+  }
+
+  @Test
+  public void failedBatchesAreRetried() throws Exception {
+    final BatchRecorder store = new BatchRecorder();
+    final CreditSettlement settlement = new CreditSettlement(new FixedCreditCheck(1000), store, "TRADING_COUNTERPARTY", 100, 1000);
+    settlement.setCredit(-10);
+    store.failing = true;
+    try {
+      settlement.settle();
+      Assert.fail();
+    }
+    catch (final SQLException e) {
+    }
+    Assert.assertEquals(-10, settlement.getPending("TRADING_COUNTERPARTY"), 0);
+    settlement.setCredit(-15);
+    store.failing = false;
+    settlement.settle();
+    Assert.assertEquals(-25_00, store.batches.get(0).get("TRADING_COUNTERPARTY").longValue());
+  }
+
+  @Test
+  public void fullBatchesAreSettledWithoutWaitingForTheWindow() throws Exception {
+    final BatchRecorder store = new BatchRecorder();
+    final CreditSettlement settlement = new CreditSettlement(new FixedCreditCheck(1000), store, "TRADING_COUNTERPARTY", 3, 60000);
+    settlement.start();
+    for (int i = 0; i < 3; i++)
+      settlement.setCredit(-1);
+    Assert.assertTrue(store.applied.await(5, TimeUnit.SECONDS));
+    settlement.stop();
+    Assert.assertEquals(-3_00, store.batches.get(0).get("TRADING_COUNTERPARTY").longValue());
+  }
+
+  @Test
+  public void invalidBatchSize() {
+    thrown.expect(IllegalArgumentException.class);
+    new CreditSettlement(new FixedCreditCheck(1000), new BatchRecorder(), "TRADING_COUNTERPARTY", 0, 1000);
+  }
+}
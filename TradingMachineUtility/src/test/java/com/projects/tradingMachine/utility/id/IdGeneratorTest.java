@@ -0,0 +1,68 @@
+package com.projects.tradingMachine.utility.id;
+
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+import org.junit.rules.Timeout;
+
+public class IdGeneratorTest {
+  @Rule
+  public final Timeout globalTimeout = new Timeout(10000);
+
+  @Rule
+  public final ExpectedException thrown = ExpectedException.none();
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void idsFollowTheReservedBlocks() {
+    final IdGenerator generator = new IdGenerator("S1-", IdBlockStore.startingAt(7), 3);
+    Assert.assertEquals("S1-21", generator.nextId());
+    Assert.assertEquals(22, generator.next());
+    Assert.assertEquals(23, generator.next());
+    Assert.assertEquals("S1-24", generator.nextId()); //next block.
+    final char[] buffer = new char[generator.getMaxLength()];
+    Assert.assertEquals(4, generator.encode(0, buffer));
+    Assert.assertEquals("S1-0", new String(buffer, 0, 4));
+    Assert.assertEquals("S1-" + Long.MAX_VALUE, new String(buffer, 0, generator.encode(Long.MAX_VALUE, buffer)));
+  }
+
+  @Test
+  public void generatorsSharingAStoreNeverClash() {
+    final IdBlockStore blockStore = IdBlockStore.startingAt(0);
+    final IdGenerator first = new IdGenerator("", blockStore, 2);
+    final IdGenerator second = new IdGenerator("", blockStore, 2);
+    final Set<String> ids = new HashSet<>();
+    for (int i = 0; i < 5; i++) {
+      Assert.assertTrue(ids.add(first.nextId()));
+      Assert.assertTrue(ids.add(second.nextId()));
+    }
+  }
+
+  @Test
+  public void reservedBlocksSurviveRestarts() throws Exception {
+    final Path file = folder.getRoot().toPath().resolve("ids").resolve("order.ids");
+    try (final FileIdBlockStore blockStore = new FileIdBlockStore(file)) {
+      final IdGenerator generator = new IdGenerator("", blockStore, 10);
+      Assert.assertEquals(0, generator.next());
+      Assert.assertEquals(1, generator.next());
+    }
+    try (final FileIdBlockStore blockStore = new FileIdBlockStore(file)) {
+      Assert.assertEquals(10, new IdGenerator("", blockStore, 10).next()); //the rest of the first block is skipped.
+      Assert.assertEquals(2, blockStore.reserve());
+    }
+  }
+
+  @Test
+  public void invalidBlockSize() {
+    thrown.expect(IllegalArgumentException.class);
+    new IdGenerator("", IdBlockStore.startingAt(0), 0);
+  }
+}